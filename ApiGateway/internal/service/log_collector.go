@@ -111,24 +111,51 @@ func (c *LogCollector) connectToPeer(peer models.Peer) {
 	defer resp.Body.Close()
 
 	scanner := bufio.NewScanner(resp.Body)
+	// A "logs" event carries a batch of logs, so lines can be long
+	scanner.Buffer(make([]byte, 64*1024), 4*1024*1024)
+	eventName := ""
 	for scanner.Scan() {
 		line := scanner.Text()
-		if strings.HasPrefix(line, "data:") {
-			data := strings.TrimPrefix(line, "data:")
+		if line == "" {
+			eventName = ""
+			continue
+		}
+		if strings.HasPrefix(line, "event:") {
+			eventName = strings.TrimSpace(strings.TrimPrefix(line, "event:"))
+			continue
+		}
+		if !strings.HasPrefix(line, "data:") {
+			continue
+		}
+		data := strings.TrimPrefix(line, "data:")
+		switch eventName {
+		case "logs":
+			var batch []interface{}
+			if err := json.Unmarshal([]byte(data), &batch); err == nil {
+				for _, logEntry := range batch {
+					c.addLog(c.wrap(peer, logEntry))
+				}
+			}
+		case "log", "":
 			var logEntry interface{}
 			if err := json.Unmarshal([]byte(data), &logEntry); err == nil {
-				// Wrap in PeerResponse
-				entry := models.PeerResponse{
-					PeerID:    peer.ID,
-					PeerIP:    peer.IP,
-					Contenido: logEntry,
-				}
-				c.addLog(entry)
+				c.addLog(c.wrap(peer, logEntry))
 			}
+		case "descartados":
+			fmt.Printf("Peer %s dropped logs for this stream: %s\n", peer.ID, data)
 		}
 	}
 }
 
+// wrap tags a log with the peer it came from
+func (c *LogCollector) wrap(peer models.Peer, logEntry interface{}) models.PeerResponse {
+	return models.PeerResponse{
+		PeerID:    peer.ID,
+		PeerIP:    peer.IP,
+		Contenido: logEntry,
+	}
+}
+
 func (c *LogCollector) addLog(entry models.PeerResponse) {
 	c.mu.Lock()
 	defer c.mu.Unlock()
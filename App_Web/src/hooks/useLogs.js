@@ -88,8 +88,18 @@ export const useLogs = (selectedPeer) => {
             }
         };
 
+        // Peers send batches of logs in a single "logs" event
+        const handleBatch = (event) => {
+            try {
+                JSON.parse(event.data).forEach(log => handleMessage({ data: JSON.stringify(log) }));
+            } catch (e) {
+                console.error("Error parsing SSE log batch:", e);
+            }
+        };
+
         eventSource.onmessage = handleMessage;
         eventSource.addEventListener('log', handleMessage);
+        eventSource.addEventListener('logs', handleBatch);
 
         eventSource.onerror = (err) => {
             console.error("SSE Error:", err);
@@ -100,6 +110,7 @@ export const useLogs = (selectedPeer) => {
         // Cleanup
         return () => {
             eventSource.removeEventListener('log', handleMessage);
+            eventSource.removeEventListener('logs', handleBatch);
             eventSource.close();
         };
     }, [selectedPeer, paused, getLogs]);
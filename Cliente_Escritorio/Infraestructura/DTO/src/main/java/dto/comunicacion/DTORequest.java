@@ -7,10 +7,16 @@ package dto.comunicacion;
 public final class DTORequest {
     private final String action;
     private final Object payload; // Los datos de la petición (ej. un DTOAutenticacion)
+    private final String requestId; // Id de correlación; el servidor lo devuelve en la respuesta
 
     public DTORequest(String action, Object payload) {
+        this(action, payload, null);
+    }
+
+    public DTORequest(String action, Object payload, String requestId) {
         this.action = action;
         this.payload = payload;
+        this.requestId = requestId;
     }
 
     public String getAction() {
@@ -20,5 +26,9 @@ public final class DTORequest {
     public Object getPayload() {
         return payload;
     }
+
+    public String getRequestId() {
+        return requestId;
+    }
 }
 
@@ -12,6 +12,7 @@ public final class DTOResponse {
     private final String status;
     private final String message;
     private final Object data;
+    private String requestId; // Id de correlación de la petición original (si se envió)
 
     // Constructor completo
     public DTOResponse(String action, String type, String resource, String status, String message, Object data) {
@@ -52,6 +53,10 @@ public final class DTOResponse {
         return data;
     }
 
+    public String getRequestId() {
+        return requestId;
+    }
+
     /**
      * Obtiene el identificador de la respuesta, que puede ser action o type.
      * @return action si existe, sino type, sino null
@@ -8,6 +8,7 @@ public class DTOSolicitarHistorialCanal {
     private String usuarioId;
     private int limite;
     private int offset;
+    private String antesDe; // ID del mensaje más antiguo ya cargado (null = los más recientes)
 
     public DTOSolicitarHistorialCanal() {
     }
@@ -51,4 +52,12 @@ public class DTOSolicitarHistorialCanal {
     public void setOffset(int offset) {
         this.offset = offset;
     }
+
+    public String getAntesDe() {
+        return antesDe;
+    }
+
+    public void setAntesDe(String antesDe) {
+        this.antesDe = antesDe;
+    }
 }
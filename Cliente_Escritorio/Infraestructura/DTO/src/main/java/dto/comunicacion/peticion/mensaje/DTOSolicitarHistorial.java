@@ -9,13 +9,23 @@ public class DTOSolicitarHistorial {
     private final String peerRemitenteId;      // UUID del peer del solicitante
     private final String destinatarioId;       // UUID del contacto del chat
     private final String peerDestinatarioId;   // UUID del peer del destinatario
+    private final int limite;                  // Mensajes por página
+    private final String antesDe;              // ID del mensaje más antiguo ya cargado (null = los más recientes)
 
     public DTOSolicitarHistorial(String remitenteId, String peerRemitenteId,
                                   String destinatarioId, String peerDestinatarioId) {
+        this(remitenteId, peerRemitenteId, destinatarioId, peerDestinatarioId, 0, null);
+    }
+
+    public DTOSolicitarHistorial(String remitenteId, String peerRemitenteId,
+                                  String destinatarioId, String peerDestinatarioId,
+                                  int limite, String antesDe) {
         this.remitenteId = remitenteId;
         this.peerRemitenteId = peerRemitenteId;
         this.destinatarioId = destinatarioId;
         this.peerDestinatarioId = peerDestinatarioId;
+        this.limite = limite;
+        this.antesDe = antesDe;
     }
 
     public String getRemitenteId() {
@@ -34,6 +44,14 @@ public class DTOSolicitarHistorial {
         return peerDestinatarioId;
     }
 
+    public int getLimite() {
+        return limite;
+    }
+
+    public String getAntesDe() {
+        return antesDe;
+    }
+
     @Override
     public String toString() {
         return "DTOSolicitarHistorial{" +
@@ -41,6 +59,8 @@ public class DTOSolicitarHistorial {
                 ", peerRemitenteId='" + peerRemitenteId + '\'' +
                 ", destinatarioId='" + destinatarioId + '\'' +
                 ", peerDestinatarioId='" + peerDestinatarioId + '\'' +
+                ", limite=" + limite +
+                ", antesDe='" + antesDe + '\'' +
                 '}';
     }
 }
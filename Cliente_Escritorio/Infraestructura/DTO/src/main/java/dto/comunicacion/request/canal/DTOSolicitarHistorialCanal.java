@@ -18,4 +18,5 @@ public class DTOSolicitarHistorialCanal {
     public String getUsuarioId() { return original.getUsuarioId(); }
     public int getLimite() { return original.getLimite(); }
     public int getOffset() { return original.getOffset(); }
+    public String getAntesDe() { return original.getAntesDe(); }
 }
@@ -20,5 +20,7 @@ public class DTOSolicitarHistorial {
     public String getPeerRemitenteId() { return original.getPeerRemitenteId(); }
     public String getDestinatarioId() { return original.getDestinatarioId(); }
     public String getPeerDestinatarioId() { return original.getPeerDestinatarioId(); }
+    public int getLimite() { return original.getLimite(); }
+    public String getAntesDe() { return original.getAntesDe(); }
 
 }
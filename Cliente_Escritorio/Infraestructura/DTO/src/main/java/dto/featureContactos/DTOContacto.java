@@ -69,6 +69,27 @@ public class DTOContacto {
         this.conectado = null;
     }
 
+    // Copia con otro estado (ver conEstado)
+    private DTOContacto(DTOContacto origen, String estado) {
+        this.id = origen.id;
+        this.peerId = origen.peerId;
+        this.nombre = origen.nombre;
+        this.email = origen.email;
+        this.estado = estado;
+        this.photoId = origen.photoId;
+        this.fechaRegistro = origen.fechaRegistro;
+        this.imagenBase64 = origen.imagenBase64;
+        this.conectado = origen.conectado;
+        this.localPhotoPath = origen.localPhotoPath;
+    }
+
+    /**
+     * Devuelve una copia del contacto con otro estado (p. ej. al recibir un cambio de presencia).
+     */
+    public DTOContacto conEstado(String estado) {
+        return new DTOContacto(this, estado);
+    }
+
     public String getId() {
         return id;
     }
@@ -1,7 +1,5 @@
 package dto.gestionConexion.conexion;
 
-import java.io.BufferedReader;
-import java.io.PrintWriter;
 import java.net.Socket;
 
 /**
@@ -12,13 +10,11 @@ import java.net.Socket;
 public final class DTOSesion {
 
     private final Socket socket;
-    private final PrintWriter out;
-    private final BufferedReader in;
+    private final ICanalMensajes canal;
 
-    public DTOSesion(Socket socket, PrintWriter out, BufferedReader in) {
+    public DTOSesion(Socket socket, ICanalMensajes canal) {
         this.socket = socket;
-        this.out = out;
-        this.in = in;
+        this.canal = canal;
     }
 
     // --- Getters ---
@@ -27,12 +23,8 @@ public final class DTOSesion {
         return socket;
     }
 
-    public PrintWriter getOut() {
-        return out;
-    }
-
-    public BufferedReader getIn() {
-        return in;
+    public ICanalMensajes getCanal() {
+        return canal;
     }
 
     /**
@@ -0,0 +1,39 @@
+package dto.gestionConexion.conexion;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Contrato de un canal orientado a mensajes con el servidor.
+ * Cada mensaje se envía como una única trama y la recepción es por callback,
+ * sin hilos bloqueados leyendo. Lo implementa el módulo de transporte; se define
+ * aquí para que las capas superiores lo usen sin depender de él.
+ */
+public interface ICanalMensajes {
+
+    /**
+     * Envía un mensaje completo (una trama, un flush).
+     * @return futuro que se completa cuando el mensaje se escribió en el socket,
+     *         o falla si el canal está cerrado o la escritura no fue posible.
+     */
+    CompletableFuture<Void> enviar(String mensaje);
+
+    /**
+     * Registra el callback que recibe cada mensaje entrante. Se invoca en el hilo de
+     * E/S del canal, en orden de llegada. Mientras no haya manejador no se leen mensajes.
+     * @param manejador el callback, o null para pausar la lectura.
+     */
+    void setManejadorEntrante(Consumer<String> manejador);
+
+    /**
+     * Registra una acción a ejecutar cuando el canal se cierre (por cualquier motivo).
+     */
+    void setManejadorCierre(Runnable manejador);
+
+    boolean estaActivo();
+
+    /**
+     * Cierra el canal y libera sus recursos.
+     */
+    void cerrar();
+}
@@ -3,6 +3,9 @@ package fachada;
 import gestionNotificaciones.GestorSincronizacionGlobal;
 import observador.IObservador;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Coordinador que conecta el GestorSincronizacionGlobal con las fachadas.
  * Se registra como observador del gestor y dispara las actualizaciones
@@ -66,9 +69,24 @@ public class CoordinadorActualizaciones implements IObservador {
                     actualizarCanales();
                     break;
 
+                case "ACTUALIZAR_ESTADO_CONTACTO":
+                    System.out.println("    → Procesando: ACTUALIZAR_ESTADO_CONTACTO");
+                    actualizarEstadoContacto(datos);
+                    break;
+
+                case "ACTUALIZAR_MIEMBROS_CANAL":
+                    System.out.println("    → Procesando: ACTUALIZAR_MIEMBROS_CANAL");
+                    actualizarMiembrosCanales(datos);
+                    break;
+
+                case "ACTUALIZAR_INVITACIONES":
+                    // Lo atiende GestorInvitaciones, que también observa el gestor global
+                    System.out.println("    → ACTUALIZAR_INVITACIONES: la atiende GestorInvitaciones");
+                    break;
+
                 case "ACTUALIZAR_MENSAJES_PRIVADOS":
                     System.out.println("    → Procesando: ACTUALIZAR_MENSAJES_PRIVADOS");
-                    actualizarMensajesPrivados();
+                    actualizarMensajesPrivados(datos);
                     break;
 
                 case "ACTUALIZAR_MENSAJES_CANALES":
@@ -86,7 +104,7 @@ public class CoordinadorActualizaciones implements IObservador {
                     System.out.println("    🔄 Sincronización global iniciada - actualizando TODO");
                     actualizarContactos();
                     actualizarCanales();
-                    actualizarMensajesPrivados();
+                    actualizarMensajesPrivados(null);
                     actualizarMensajesCanales();
                     actualizarNotificaciones();
                     System.out.println("    ✅ Sincronización global completada");
@@ -194,6 +212,41 @@ public class CoordinadorActualizaciones implements IObservador {
         }
     }
 
+    /**
+     * Aplica un cambio de presencia ({id, estado}) sobre el contacto en caché,
+     * sin pedir la lista al servidor.
+     */
+    private void actualizarEstadoContacto(Object datos) {
+        if (!(datos instanceof Map)) {
+            return;
+        }
+        Map<?, ?> delta = (Map<?, ?>) datos;
+        Object id = delta.get("id");
+        Object estado = delta.get("estado");
+        if (id == null || estado == null) {
+            return;
+        }
+        System.out.println("    │ 👤 Contacto " + id + " → " + estado);
+        fachadaGeneral.getFachadaContactos().aplicarCambioEstadoContacto(id.toString(), estado.toString());
+    }
+
+    /**
+     * Solicita los miembros solo de los canales invalidados.
+     */
+    private void actualizarMiembrosCanales(Object datos) {
+        if (!(datos instanceof Collection)) {
+            return;
+        }
+        try {
+            for (Object canalId : (Collection<?>) datos) {
+                System.out.println("    │ 👥 Solicitando miembros del canal " + canalId);
+                fachadaGeneral.getFachadaCanales().solicitarMiembrosCanal(canalId.toString());
+            }
+        } catch (Exception e) {
+            System.err.println("    ❌ Error al actualizar miembros de canales: " + e.getMessage());
+        }
+    }
+
     /**
      * Solicita actualización de notificaciones.
      */
@@ -232,14 +285,16 @@ public class CoordinadorActualizaciones implements IObservador {
     /**
      * Notifica a las vistas de chat para que actualicen sus mensajes.
      * Las vistas se encargan de solicitar su propio historial si están activas.
+     *
+     * @param ids Conversaciones afectadas, o null si pueden ser todas
      */
-    private void actualizarMensajesPrivados() {
+    private void actualizarMensajesPrivados(Object ids) {
         try {
             System.out.println("    ┌─ ACTUALIZANDO MENSAJES PRIVADOS ─────────────────────┐");
             System.out.println("    │ Enviando señal REFRESCAR_MENSAJES a vistas...        │");
             // Notificar a través de la fachada de contactos/chat
             // Las vistas activas recibirán la señal y actualizarán su historial
-            fachadaGeneral.getFachadaContactos().notificarObservadores("REFRESCAR_MENSAJES", null);
+            fachadaGeneral.getFachadaContactos().notificarObservadores("REFRESCAR_MENSAJES", ids);
             System.out.println("    │ ✓ Señal enviada a todas las vistas de chat activas   │");
             System.out.println("    └────────────────────────────────────────────────────────┘");
         } catch (Exception e) {
@@ -101,6 +101,11 @@ public class FachadaCanalesImpl implements IFachadaCanales {
         gestorMensajes.solicitarHistorialCanal(canalId, limite);
     }
 
+    @Override
+    public void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite) {
+        gestorMensajes.solicitarMensajesAnterioresCanal(canalId, antesDeMensajeId, limite);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String canalId, String contenido) {
         return gestorMensajes.enviarMensajeTexto(canalId, contenido);
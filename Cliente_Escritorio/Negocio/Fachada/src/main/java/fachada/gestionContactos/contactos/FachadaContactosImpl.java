@@ -75,6 +75,11 @@ public class FachadaContactosImpl implements IFachadaContactos, IObservador {
         gestionContactos.sincronizarContactosConBD(contactos);
     }
 
+    @Override
+    public void aplicarCambioEstadoContacto(String contactoId, String estado) {
+        gestionContactos.aplicarCambioEstado(contactoId, estado);
+    }
+
     /**
      * Este método es llamado por GestionContactos cuando hay datos nuevos.
      */
@@ -93,6 +98,12 @@ public class FachadaContactosImpl implements IFachadaContactos, IObservador {
         gestionMensajes.solicitarHistorial(contactoId);
     }
 
+    @Override
+    public void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId) {
+        System.out.println("➡️ [FachadaContactos]: Delegando solicitud de mensajes anteriores al gestor - ContactoId: " + contactoId);
+        gestionMensajes.solicitarHistorialAnterior(contactoId, antesDeMensajeId);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido) {
         System.out.println("➡️ [FachadaContactos]: Delegando envío de mensaje de texto al gestor - DestinatarioId: " + destinatarioId);
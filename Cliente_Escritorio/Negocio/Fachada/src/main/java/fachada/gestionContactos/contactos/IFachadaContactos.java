@@ -20,8 +20,16 @@ public interface IFachadaContactos extends ISujeto {
      */
     void sincronizarContactosConBD(List<DTOContacto> contactos);
 
+    /**
+     * Aplica un cambio de presencia recibido del servidor sobre el contacto en caché
+     * @param contactoId ID del contacto
+     * @param estado Nuevo estado ("ONLINE", "OFFLINE")
+     */
+    void aplicarCambioEstadoContacto(String contactoId, String estado);
+
     // Métodos para el chat
     void solicitarHistorial(String contactoId);
+    void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId);
     CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido);
     CompletableFuture<Void> enviarMensajeAudio(String destinatarioId, String audioFileId);
 }
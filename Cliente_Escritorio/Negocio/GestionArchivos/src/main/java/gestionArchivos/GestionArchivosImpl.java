@@ -1,9 +1,8 @@
 package gestionArchivos;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import comunicacion.EnviadorPeticiones;
-import comunicacion.GestorRespuesta;
 import comunicacion.IEnviadorPeticiones;
-import comunicacion.IGestorRespuesta;
 import dominio.Archivo;
 import dto.comunicacion.DTORequest;
 import dto.comunicacion.DTOResponse;
@@ -13,15 +12,25 @@ import repositorio.archivo.IRepositorioArchivo;
 import repositorio.archivo.RepositorioArchivoImpl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 
 /**
  * Implementación del componente de negocio que gestiona la subida y descarga de archivos por chunks.
@@ -31,17 +40,29 @@ import java.util.concurrent.CompletableFuture;
 public class GestionArchivosImpl implements IGestionArchivos {
 
     private final IEnviadorPeticiones enviadorPeticiones;
-    private final IGestorRespuesta gestorRespuesta;
     private final IRepositorioArchivo repositorioArchivo;
     private final Gson gson;
     private static final int CHUNK_SIZE = 524288; // 512 KB (512 * 1024)
+    // Chunks enviados sin confirmar a la vez y reintentos por chunk (configurables en configuracion.txt)
+    private static final int VENTANA_SUBIDA_DEFECTO = 8;
+    private static final int REINTENTOS_CHUNK_DEFECTO = 3;
+    // Veces que una subida interrumpida se retoma con getUploadStatus antes de fallar
+    private static final int REANUDACIONES_SUBIDA = 2;
+    private static final String CONFIG_FILE_NAME = "configuracion.txt";
+
+    // Las respuestas del servidor completan sus futuros en el event loop de Netty: las
+    // continuaciones que leen o escriben archivos (hashes, ensamblado) saltan a este pool
+    private static final ExecutorService HILOS_ARCHIVOS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "GestionArchivos-IO");
+        t.setDaemon(true);
+        return t;
+    });
 
     // Patrón Observador
     private final List<IObservador> observadores;
 
     public GestionArchivosImpl() {
         this.enviadorPeticiones = new EnviadorPeticiones();
-        this.gestorRespuesta = GestorRespuesta.getInstancia();
         this.repositorioArchivo = new RepositorioArchivoImpl();
         this.gson = new Gson();
         this.observadores = new ArrayList<>();
@@ -74,30 +95,58 @@ public class GestionArchivosImpl implements IGestionArchivos {
     @Override
     public CompletableFuture<String> subirArchivo(File archivo) {
         System.out.println("[GestionArchivos] Iniciando subida autenticada de archivo: " + archivo.getName());
-        CompletableFuture<String> futuroSubida = new CompletableFuture<>();
+        return subir(archivo, this::iniciarSubida, "subida autenticada");
+    }
 
-        try {
-            byte[] fileBytes = Files.readAllBytes(archivo.toPath());
-            String fileHash = calcularHashSHA256(fileBytes);
-            int totalChunks = (int) Math.ceil((double) fileBytes.length / CHUNK_SIZE);
+    public CompletableFuture<String> subirArchivoParaRegistro(File archivo) {
+        System.out.println("[GestionArchivos] Iniciando subida para REGISTRO (sin autenticación) de archivo: " + archivo.getName());
+        return subir(archivo, this::iniciarSubidaParaRegistro, "subida para registro");
+    }
 
-            System.out.println("[GestionArchivos] Archivo leído - Tamaño: " + fileBytes.length + " bytes, Hash: " + fileHash + ", Total chunks: " + totalChunks);
+    /**
+     * Flujo común de subida: comprobar si el servidor ya tiene el contenido (por su
+     * hash) y, si no, iniciar (obtener uploadId), transferir los chunks con una
+     * ventana de envíos en vuelo y finalizar con ese mismo hash: el archivo se lee
+     * entero para hashearlo una sola vez.
+     */
+    private CompletableFuture<String> subir(File archivo, BiFunction<File, Integer, CompletableFuture<String>> iniciar,
+                                            String descripcion) {
+        CompletableFuture<String> futuroSubida = new CompletableFuture<>();
 
-            iniciarSubida(archivo, totalChunks)
-                    .thenCompose(uploadId -> {
-                        System.out.println("[GestionArchivos] Upload iniciado con ID: " + uploadId);
-                        return transferirChunks(uploadId, fileBytes, totalChunks);
-                    })
-                    .thenCompose(uploadId -> {
-                        System.out.println("[GestionArchivos] Chunks transferidos. Finalizando subida...");
-                        return finalizarSubida(uploadId, fileHash);
-                    })
+        try {
+            SubidaPorVentana subida = new SubidaPorVentana(archivo.toPath(), CHUNK_SIZE,
+                    leerConfiguracionEntera("archivos.subida.ventana", VENTANA_SUBIDA_DEFECTO),
+                    leerConfiguracionEntera("archivos.subida.reintentos", REINTENTOS_CHUNK_DEFECTO),
+                    this::enviarChunk,
+                    progreso -> notificarObservadores("SUBIDA_PROGRESO", progreso));
+            int totalChunks = subida.getTotalChunks();
+
+            System.out.println("[GestionArchivos] Archivo a subir - Tamaño: " + subida.getTamanoArchivo() + " bytes, Total chunks: " + totalChunks);
+
+            CompletableFuture.supplyAsync(() -> calcularHashArchivo(archivo), HILOS_ARCHIVOS)
+                    .thenCompose(fileHash -> comprobarContenido(archivo, fileHash, subida.getTamanoArchivo())
+                            .thenCompose(fileIdExistente -> {
+                                if (fileIdExistente != null) {
+                                    System.out.println("[GestionArchivos] El servidor ya tiene el contenido: subida omitida");
+                                    notificarObservadores("SUBIDA_PROGRESO", 100);
+                                    return CompletableFuture.completedFuture(fileIdExistente);
+                                }
+                                return iniciar.apply(archivo, totalChunks).thenCompose(uploadId -> {
+                                    System.out.println("[GestionArchivos] Upload iniciado con ID: " + uploadId);
+                                    return subida.ejecutar(uploadId)
+                                            .exceptionallyCompose(error -> reanudarSubida(subida, uploadId, error, REANUDACIONES_SUBIDA))
+                                            .thenCompose(ignorado -> {
+                                                System.out.println("[GestionArchivos] Chunks transferidos (hash " + fileHash + "). Finalizando subida...");
+                                                return finalizarSubida(uploadId, fileHash);
+                                            });
+                                });
+                            }))
                     .thenAccept(fileName -> {
                         System.out.println("[GestionArchivos] Subida completada exitosamente. Archivo final: " + fileName);
                         futuroSubida.complete(fileName);
                     })
                     .exceptionally(ex -> {
-                        System.err.println("[GestionArchivos] ERROR en subida autenticada: " + ex.getMessage());
+                        System.err.println("[GestionArchivos] ERROR en " + descripcion + ": " + ex.getMessage());
                         ex.printStackTrace();
                         futuroSubida.completeExceptionally(ex);
                         return null;
@@ -112,143 +161,130 @@ public class GestionArchivosImpl implements IGestionArchivos {
         return futuroSubida;
     }
 
-    public CompletableFuture<String> subirArchivoParaRegistro(File archivo) {
-        System.out.println("[GestionArchivos] Iniciando subida para REGISTRO (sin autenticación) de archivo: " + archivo.getName());
-        CompletableFuture<String> futuroSubida = new CompletableFuture<>();
-
-        try {
-            byte[] fileBytes = Files.readAllBytes(archivo.toPath());
-            String fileHash = calcularHashSHA256(fileBytes);
-            int totalChunks = (int) Math.ceil((double) fileBytes.length / CHUNK_SIZE);
-
-            System.out.println("[GestionArchivos] Archivo leído para registro - Tamaño: " + fileBytes.length + " bytes, Hash: " + fileHash + ", Total chunks: " + totalChunks);
-
-            iniciarSubidaParaRegistro(archivo, totalChunks)
-                    .thenCompose(uploadId -> {
-                        System.out.println("[GestionArchivos] Upload para registro iniciado con ID: " + uploadId);
-                        return transferirChunks(uploadId, fileBytes, totalChunks);
-                    })
-                    .thenCompose(uploadId -> {
-                        System.out.println("[GestionArchivos] Chunks para registro transferidos. Finalizando subida...");
-                        return finalizarSubida(uploadId, fileHash);
-                    })
-                    .thenAccept(fileName -> {
-                        System.out.println("[GestionArchivos] Subida para registro completada exitosamente. Archivo final: " + fileName);
-                        futuroSubida.complete(fileName);
-                    })
-                    .exceptionally(ex -> {
-                        System.err.println("[GestionArchivos] ERROR en subida para registro: " + ex.getMessage());
-                        ex.printStackTrace();
-                        futuroSubida.completeExceptionally(ex);
+    /**
+     * Pregunta al servidor si ya tiene el contenido del archivo. Si lo tiene, pide el
+     * SHA-256 de un rango al azar (prueba de que el cliente tiene el archivo) y, si
+     * coincide, registra el archivo sin transferencia y devuelve su fileId.
+     *
+     * @return Futuro con el fileId registrado, o null si hay que subir el archivo
+     */
+    private CompletableFuture<String> comprobarContenido(File archivo, String hash, long tamano) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("fileHash", hash);
+        payload.addProperty("fileName", archivo.getName());
+        payload.addProperty("mimeType", getMimeType(archivo));
+        payload.addProperty("size", tamano);
+        System.out.println("[GestionArchivos] Comprobando contenido en el servidor - Hash: " + hash);
+
+        return enviadorPeticiones.enviarYEsperar(new DTORequest("checkFileHash", payload))
+                .thenComposeAsync(res -> {
+                    FileUploadResponse response = leerComprobacion(res);
+                    if (response == null || response.challengeId == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    JsonObject prueba = new JsonObject();
+                    prueba.addProperty("challengeId", response.challengeId);
+                    prueba.addProperty("proof", calcularHashRango(archivo, response.offset, response.length));
+                    return enviadorPeticiones.enviarYEsperar(new DTORequest("checkFileHash", prueba))
+                            .thenApply(this::leerComprobacion);
+                }, HILOS_ARCHIVOS)
+                .handle((response, error) -> {
+                    if (error != null || response == null) {
+                        // Ante cualquier fallo se sube normalmente
+                        System.out.println("[GestionArchivos] Comprobación de contenido no disponible, se sube el archivo");
                         return null;
-                    });
+                    }
+                    return response.exists ? response.fileId : null;
+                });
+    }
 
-        } catch (Exception e) {
-            System.err.println("[GestionArchivos] ERROR al leer archivo para registro: " + e.getMessage());
-            e.printStackTrace();
-            futuroSubida.completeExceptionally(e);
+    private FileUploadResponse leerComprobacion(DTOResponse res) {
+        if (res == null || !res.fueExitoso() || res.getData() == null) {
+            return null;
         }
-
-        return futuroSubida;
+        return gson.fromJson(gson.toJson(res.getData()), FileUploadResponse.class);
     }
 
-    private CompletableFuture<String> iniciarSubida(File archivo, int totalChunks) {
-        final String ACCION = "startFileUpload";
-        System.out.println("[GestionArchivos] Registrando manejador para acción: " + ACCION);
-
-        CompletableFuture<String> futuroUploadId = new CompletableFuture<>();
-
-        gestorRespuesta.registrarManejador(ACCION, (DTOResponse res) -> {
-            System.out.println("[GestionArchivos] Respuesta recibida para " + ACCION + " - Exitoso: " + res.fueExitoso());
-            if (res.fueExitoso()) {
-                String uploadId = gson.fromJson(gson.toJson(res.getData()), UploadIdResponse.class).uploadId;
-                System.out.println("[GestionArchivos] UploadId obtenido: " + uploadId);
-                futuroUploadId.complete(uploadId);
-            } else {
-                System.err.println("[GestionArchivos] ERROR en " + ACCION + ": " + res.getMessage());
-                futuroUploadId.completeExceptionally(new RuntimeException(res.getMessage()));
+    /**
+     * SHA-256 de [offset, offset + length) del archivo.
+     */
+    private String calcularHashRango(File archivo, long offset, int length) {
+        try (FileChannel canal = FileChannel.open(archivo.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, offset + buffer.position()) < 0) break;
             }
-        });
+            buffer.flip();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer);
+            return aHex(digest.digest());
+        } catch (Exception e) {
+            throw new RuntimeException("No se pudo leer el rango pedido por el servidor", e);
+        }
+    }
 
-        DTOStartUpload payload = new DTOStartUpload(archivo.getName(), getMimeType(archivo), totalChunks);
-        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - Archivo: " + archivo.getName() + ", MIME: " + getMimeType(archivo) + ", Chunks: " + totalChunks);
-        enviadorPeticiones.enviar(new DTORequest(ACCION, payload));
+    /**
+     * Retoma una subida cuyos chunks fallaron (p. ej. tras una reconexión): pregunta al
+     * servidor qué chunks le faltan con getUploadStatus y reenvía solo esos.
+     */
+    private CompletableFuture<Void> reanudarSubida(SubidaPorVentana subida, String uploadId,
+                                                   Throwable causa, int reanudaciones) {
+        if (reanudaciones <= 0) {
+            return CompletableFuture.failedFuture(causa);
+        }
+        System.err.println("[GestionArchivos] Subida " + uploadId + " interrumpida (" + causa.getMessage() +
+                "), consultando chunks faltantes...");
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("uploadId", uploadId);
+        return enviadorPeticiones.enviarYEsperar(new DTORequest("getUploadStatus", payload))
+                .handle((res, error) -> error != null || res == null || !res.fueExitoso() || res.getData() == null
+                        ? null
+                        : gson.fromJson(gson.toJson(res.getData()), UploadStatusResponse.class))
+                .thenCompose(estado -> {
+                    if (estado == null) {
+                        // El servidor ya no tiene la subida: no hay nada que retomar
+                        return CompletableFuture.<Void>failedFuture(causa);
+                    }
+                    System.out.println("[GestionArchivos] Reanudando subida " + uploadId + ": faltan " +
+                            estado.missingChunks.size() + "/" + estado.totalChunks + " chunks");
+                    return subida.reanudar(uploadId, estado.missingChunks)
+                            .exceptionallyCompose(error -> reanudarSubida(subida, uploadId, error, reanudaciones - 1));
+                });
+    }
 
-        return futuroUploadId;
+    private CompletableFuture<String> iniciarSubida(File archivo, int totalChunks) {
+        return pedirUploadId("startFileUpload", archivo, totalChunks);
     }
 
     private CompletableFuture<String> iniciarSubidaParaRegistro(File archivo, int totalChunks) {
-        final String ACCION = "uploadFileForRegistration";
-        System.out.println("[GestionArchivos] Registrando manejador para acción: " + ACCION);
-
-        CompletableFuture<String> futuroUploadId = new CompletableFuture<>();
-
-        gestorRespuesta.registrarManejador(ACCION, (DTOResponse res) -> {
-            System.out.println("[GestionArchivos] Respuesta recibida para " + ACCION + " - Exitoso: " + res.fueExitoso());
-            if (res.fueExitoso()) {
-                String uploadId = gson.fromJson(gson.toJson(res.getData()), UploadIdResponse.class).uploadId;
-                System.out.println("[GestionArchivos] UploadId para registro obtenido: " + uploadId);
-                futuroUploadId.complete(uploadId);
-            } else {
-                System.err.println("[GestionArchivos] ERROR en " + ACCION + ": " + res.getMessage());
-                futuroUploadId.completeExceptionally(new RuntimeException(res.getMessage()));
-            }
-        });
-
-        DTOStartUpload payload = new DTOStartUpload(archivo.getName(), getMimeType(archivo), totalChunks);
-        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - Archivo: " + archivo.getName() + ", MIME: " + getMimeType(archivo) + ", Chunks: " + totalChunks);
-        enviadorPeticiones.enviar(new DTORequest(ACCION, payload));
-
-        return futuroUploadId;
+        return pedirUploadId("uploadFileForRegistration", archivo, totalChunks);
     }
 
-    private CompletableFuture<String> transferirChunks(String uploadId, byte[] fileBytes, int totalChunks) {
-        System.out.println("[GestionArchivos] Iniciando transferencia de " + totalChunks + " chunks para uploadId: " + uploadId);
-        CompletableFuture<String> futuroTransferencia = new CompletableFuture<>();
-        CompletableFuture<Void> futuroChunkActual = CompletableFuture.completedFuture(null);
-
-        for (int i = 0; i < totalChunks; i++) {
-            final int chunkNumber = i + 1;
-            int offset = i * CHUNK_SIZE;
-            int length = Math.min(CHUNK_SIZE, fileBytes.length - offset);
-            byte[] chunkData = new byte[length];
-            System.arraycopy(fileBytes, offset, chunkData, 0, length);
-            String chunkBase64 = Base64.getEncoder().encodeToString(chunkData);
-
-            System.out.println("[GestionArchivos] Preparando chunk " + chunkNumber + "/" + totalChunks + " - Tamaño: " + length + " bytes");
-            futuroChunkActual = futuroChunkActual.thenCompose(v -> enviarChunk(uploadId, chunkNumber, chunkBase64));
-        }
+    /**
+     * Abre una subida en el servidor. La respuesta se correlaciona por requestId, así que
+     * dos subidas simultáneas no se quedan con el uploadId de la otra.
+     */
+    private CompletableFuture<String> pedirUploadId(String accion, File archivo, int totalChunks) {
+        DTOStartUpload payload = new DTOStartUpload(archivo.getName(), getMimeType(archivo), totalChunks);
+        System.out.println("[GestionArchivos] Enviando petición " + accion + " - Archivo: " + archivo.getName() + ", MIME: " + getMimeType(archivo) + ", Chunks: " + totalChunks);
 
-        futuroChunkActual.thenRun(() -> {
-            System.out.println("[GestionArchivos] Todos los chunks transferidos exitosamente para uploadId: " + uploadId);
-            futuroTransferencia.complete(uploadId);
-        }).exceptionally(ex -> {
-            System.err.println("[GestionArchivos] ERROR durante transferencia de chunks: " + ex.getMessage());
-            futuroTransferencia.completeExceptionally(ex);
-            return null;
+        return enviadorPeticiones.enviarYEsperar(new DTORequest(accion, payload)).thenApply(res -> {
+            System.out.println("[GestionArchivos] Respuesta recibida para " + accion + " - Exitoso: " + res.fueExitoso());
+            if (!res.fueExitoso()) {
+                System.err.println("[GestionArchivos] ERROR en " + accion + ": " + res.getMessage());
+                throw new RuntimeException(res.getMessage());
+            }
+            String uploadId = gson.fromJson(gson.toJson(res.getData()), UploadIdResponse.class).uploadId;
+            System.out.println("[GestionArchivos] UploadId obtenido: " + uploadId);
+            return uploadId;
         });
-
-        return futuroTransferencia;
     }
 
     // java
     private CompletableFuture<Void> enviarChunk(String uploadId, int chunkNumber, String chunkBase64) {
-        final String ACCION_RESPUESTA = "uploadFileChunk_" + uploadId + "_" + chunkNumber;
-        System.out.println("[GestionArchivos] Registrando manejador para chunk: " + ACCION_RESPUESTA);
-
         CompletableFuture<Void> futuroChunk = new CompletableFuture<>();
 
-        gestorRespuesta.registrarManejador(ACCION_RESPUESTA, (DTOResponse res) -> {
-            System.out.println("[GestionArchivos] Respuesta recibida para chunk " + chunkNumber + " - Exitoso: " + res.fueExitoso());
-            if (res.fueExitoso()) {
-                System.out.println("[GestionArchivos] Chunk " + chunkNumber + " enviado exitosamente");
-                futuroChunk.complete(null);
-            } else {
-                System.err.println("[GestionArchivos] ERROR en chunk " + chunkNumber + ": " + res.getMessage());
-                futuroChunk.completeExceptionally(new RuntimeException(res.getMessage()));
-            }
-        });
-
         DTOUploadChunk payload = new DTOUploadChunk(uploadId, chunkNumber, chunkBase64);
 
         // --- Safe logging: create a masked copy for logs to avoid printing Base64 data ---
@@ -258,7 +294,22 @@ public class GestionArchivosImpl implements IGestionArchivos {
                 ", Payload: " + gson.toJson(maskedForLog));
         // ---------------------------------------------------------------------------------
 
-        enviadorPeticiones.enviar(new DTORequest("uploadFileChunk", payload));
+        // La respuesta se correlaciona por requestId: no hace falta un manejador por chunk
+        enviadorPeticiones.enviarYEsperar(new DTORequest("uploadFileChunk", payload)).whenComplete((res, error) -> {
+            if (error != null) {
+                System.err.println("[GestionArchivos] ERROR en chunk " + chunkNumber + ": " + error.getMessage());
+                futuroChunk.completeExceptionally(error);
+                return;
+            }
+            System.out.println("[GestionArchivos] Respuesta recibida para chunk " + chunkNumber + " - Exitoso: " + res.fueExitoso());
+            if (res.fueExitoso()) {
+                System.out.println("[GestionArchivos] Chunk " + chunkNumber + " enviado exitosamente");
+                futuroChunk.complete(null);
+            } else {
+                System.err.println("[GestionArchivos] ERROR en chunk " + chunkNumber + ": " + res.getMessage());
+                futuroChunk.completeExceptionally(new RuntimeException(res.getMessage()));
+            }
+        });
 
         return futuroChunk;
     }
@@ -266,31 +317,23 @@ public class GestionArchivosImpl implements IGestionArchivos {
 
     private CompletableFuture<String> finalizarSubida(String uploadId, String fileHash) {
         final String ACCION = "endFileUpload";
-        System.out.println("[GestionArchivos] Registrando manejador para finalizar subida: " + ACCION);
-
-        CompletableFuture<String> futuroFinal = new CompletableFuture<>();
+        DTOEndUpload payload = new DTOEndUpload(uploadId, fileHash);
+        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - UploadId: " + uploadId + ", Hash: " + fileHash);
 
-        gestorRespuesta.registrarManejador(ACCION, (DTOResponse res) -> {
+        return enviadorPeticiones.enviarYEsperar(new DTORequest(ACCION, payload)).thenApply(res -> {
             System.out.println("[GestionArchivos] Respuesta recibida para " + ACCION + " - Exitoso: " + res.fueExitoso());
-            if (res.fueExitoso()) {
-                // ✅ CORRECCIÓN: Retornar fileId en lugar de fileName
-                FileUploadResponse response = gson.fromJson(gson.toJson(res.getData()), FileUploadResponse.class);
-                System.out.println("[GestionArchivos] Subida finalizada exitosamente");
-                System.out.println("   → FileId: " + response.fileId);
-                System.out.println("   → FileName: " + response.fileName);
-                System.out.println("   → Size: " + response.size + " bytes");
-                futuroFinal.complete(response.fileId); // ← Retornar fileId, no fileName
-            } else {
+            if (!res.fueExitoso()) {
                 System.err.println("[GestionArchivos] ERROR al finalizar subida: " + res.getMessage());
-                futuroFinal.completeExceptionally(new RuntimeException(res.getMessage()));
+                throw new RuntimeException(res.getMessage());
             }
+            // ✅ CORRECCIÓN: Retornar fileId en lugar de fileName
+            FileUploadResponse response = gson.fromJson(gson.toJson(res.getData()), FileUploadResponse.class);
+            System.out.println("[GestionArchivos] Subida finalizada exitosamente");
+            System.out.println("   → FileId: " + response.fileId);
+            System.out.println("   → FileName: " + response.fileName);
+            System.out.println("   → Size: " + response.size + " bytes");
+            return response.fileId; // ← Retornar fileId, no fileName
         });
-
-        DTOEndUpload payload = new DTOEndUpload(uploadId, fileHash);
-        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - UploadId: " + uploadId + ", Hash: " + fileHash);
-        enviadorPeticiones.enviar(new DTORequest(ACCION, payload));
-
-        return futuroFinal;
     }
 
     private String getMimeType(File file) {
@@ -304,18 +347,36 @@ public class GestionArchivosImpl implements IGestionArchivos {
         }
     }
 
+    private int leerConfiguracionEntera(String clave, int porDefecto) {
+        Properties prop = new Properties();
+        try (InputStream input = new FileInputStream(CONFIG_FILE_NAME)) {
+            prop.load(input);
+            return Integer.parseInt(prop.getProperty(clave, String.valueOf(porDefecto)).trim());
+        } catch (Exception e) {
+            return porDefecto;
+        }
+    }
+
+    /**
+     * Hash SHA-256 de un archivo leído por bloques, sin cargarlo en memoria.
+     */
+    private String calcularHashArchivo(File archivo) {
+        try (InputStream input = new DigestInputStream(new FileInputStream(archivo), MessageDigest.getInstance("SHA-256"))) {
+            byte[] buffer = new byte[64 * 1024];
+            while (input.read(buffer) != -1) {
+                // El DigestInputStream actualiza el hash al leer
+            }
+            return aHex(((DigestInputStream) input).getMessageDigest().digest());
+        } catch (Exception e) {
+            throw new RuntimeException("No se pudo calcular el hash del archivo", e);
+        }
+    }
+
     private String calcularHashSHA256(byte[] fileBytes) {
         try {
             System.out.println("[GestionArchivos] Calculando hash SHA-256...");
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] encodedhash = digest.digest(fileBytes);
-            StringBuilder hexString = new StringBuilder(2 * encodedhash.length);
-            for (byte b : encodedhash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            String hash = hexString.toString();
+            String hash = aHex(digest.digest(fileBytes));
             System.out.println("[GestionArchivos] Hash calculado: " + hash);
             return hash;
         } catch (Exception e) {
@@ -324,6 +385,16 @@ public class GestionArchivosImpl implements IGestionArchivos {
         }
     }
 
+    private static String aHex(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
     /**
      * Extrae el nombre del archivo del fileId.
      * Formato esperado: "tipo/nombre.ext" o "tipo\nombre.ext"
@@ -354,12 +425,22 @@ public class GestionArchivosImpl implements IGestionArchivos {
 
     private static class UploadIdResponse { String uploadId; }
     private static class FileNameResponse { String fileName; }
+    private static class UploadStatusResponse {
+        int totalChunks;
+        List<Integer> missingChunks = new ArrayList<>();
+    }
+
     private static class FileUploadResponse {
         String fileId;
         String fileName;
         long size;
         String mimeType;
         String hash;
+        boolean exists;
+        // Desafío de checkFileHash: rango cuyo SHA-256 hay que devolver
+        String challengeId;
+        long offset;
+        int length;
     }
 
     @Override
@@ -528,7 +609,7 @@ public class GestionArchivosImpl implements IGestionArchivos {
             );
         }
 
-        futuroChunkActual.thenRun(() -> {
+        futuroChunkActual.thenRunAsync(() -> {
             try {
                 // Ensamblar todos los chunks en el archivo final
                 try (FileOutputStream fos = new FileOutputStream(archivoDestino)) {
@@ -595,7 +676,7 @@ public class GestionArchivosImpl implements IGestionArchivos {
                 repositorioArchivo.actualizarEstado(fileId, "error");
                 futuroArchivo.completeExceptionally(e);
             }
-        }).exceptionally(ex -> {
+        }, HILOS_ARCHIVOS).exceptionally(ex -> {
             System.err.println("[GestionArchivos] ERROR durante recepción de chunks: " + ex.getMessage());
             repositorioArchivo.actualizarEstado(fileId, "error");
             futuroArchivo.completeExceptionally(ex);
@@ -606,12 +687,20 @@ public class GestionArchivosImpl implements IGestionArchivos {
     }
 
     private CompletableFuture<byte[]> solicitarChunk(String downloadId, int chunkNumber) {
-        final String ACCION_RESPUESTA = "downloadFileChunk_" + downloadId + "_" + chunkNumber;
         System.out.println("[GestionArchivos] Solicitando chunk " + chunkNumber + " para downloadId: " + downloadId);
 
         CompletableFuture<byte[]> futuroChunk = new CompletableFuture<>();
 
-        gestorRespuesta.registrarManejador(ACCION_RESPUESTA, (DTOResponse res) -> {
+        DTORequestChunk payload = new DTORequestChunk(downloadId, chunkNumber);
+        System.out.println("[GestionArchivos] Enviando petición requestFileChunk - Chunk: " + chunkNumber);
+
+        // La respuesta se correlaciona por requestId: no hace falta un manejador por chunk
+        enviadorPeticiones.enviarYEsperar(new DTORequest("requestFileChunk", payload)).whenComplete((res, error) -> {
+            if (error != null) {
+                System.err.println("[GestionArchivos] ERROR en chunk " + chunkNumber + ": " + error.getMessage());
+                futuroChunk.completeExceptionally(error);
+                return;
+            }
             System.out.println("[GestionArchivos] Respuesta recibida para chunk " + chunkNumber + " - Exitoso: " + res.fueExitoso());
             if (res.fueExitoso()) {
                 try {
@@ -657,37 +746,26 @@ public class GestionArchivosImpl implements IGestionArchivos {
             }
         });
 
-        DTORequestChunk payload = new DTORequestChunk(downloadId, chunkNumber);
-        System.out.println("[GestionArchivos] Enviando petición requestFileChunk - Chunk: " + chunkNumber);
-        enviadorPeticiones.enviar(new DTORequest("requestFileChunk", payload));
-
         return futuroChunk;
     }
 
     private CompletableFuture<DTODownloadInfo> solicitarInicioDescarga(String fileId) {
         final String ACCION = "startFileDownload";
-        System.out.println("[GestionArchivos] Solicitando inicio de descarga para fileId: " + fileId);
-
-        CompletableFuture<DTODownloadInfo> futuroInfo = new CompletableFuture<>();
+        DTOStartDownload payload = new DTOStartDownload(fileId);
+        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - FileId: " + fileId);
 
-        gestorRespuesta.registrarManejador(ACCION, (DTOResponse res) -> {
+        // Correlacionada por requestId: descargas simultáneas no se cruzan sus downloadId
+        return enviadorPeticiones.enviarYEsperar(new DTORequest(ACCION, payload)).thenApply(res -> {
             System.out.println("[GestionArchivos] Respuesta recibida para " + ACCION + " - Exitoso: " + res.fueExitoso());
-            if (res.fueExitoso()) {
-                DTODownloadInfo downloadInfo = gson.fromJson(gson.toJson(res.getData()), DTODownloadInfo.class);
-                System.out.println("[GestionArchivos] DownloadInfo obtenido - ID: " + downloadInfo.getDownloadId() +
-                                 ", Archivo: " + downloadInfo.getFileName());
-                futuroInfo.complete(downloadInfo);
-            } else {
+            if (!res.fueExitoso()) {
                 System.err.println("[GestionArchivos] ERROR en " + ACCION + ": " + res.getMessage());
-                futuroInfo.completeExceptionally(new RuntimeException(res.getMessage()));
+                throw new RuntimeException(res.getMessage());
             }
+            DTODownloadInfo downloadInfo = gson.fromJson(gson.toJson(res.getData()), DTODownloadInfo.class);
+            System.out.println("[GestionArchivos] DownloadInfo obtenido - ID: " + downloadInfo.getDownloadId() +
+                             ", Archivo: " + downloadInfo.getFileName());
+            return downloadInfo;
         });
-
-        DTOStartDownload payload = new DTOStartDownload(fileId);
-        System.out.println("[GestionArchivos] Enviando petición " + ACCION + " - FileId: " + fileId);
-        enviadorPeticiones.enviar(new DTORequest(ACCION, payload));
-
-        return futuroInfo;
     }
 
     @Override
@@ -781,7 +859,7 @@ public class GestionArchivosImpl implements IGestionArchivos {
             );
         }
 
-        futuroChunkActual.thenRun(() -> {
+        futuroChunkActual.thenRunAsync(() -> {
             try {
                 // Ensamblar todos los chunks en un solo array de bytes
                 int totalSize = chunks.stream().mapToInt(chunk -> chunk.length).sum();
@@ -831,7 +909,7 @@ public class GestionArchivosImpl implements IGestionArchivos {
                 System.err.println("[GestionArchivos] ERROR al ensamblar chunks en memoria: " + e.getMessage());
                 futuroBytes.completeExceptionally(e);
             }
-        }).exceptionally(ex -> {
+        }, HILOS_ARCHIVOS).exceptionally(ex -> {
             System.err.println("[GestionArchivos] ERROR durante recepción de chunks: " + ex.getMessage());
             futuroBytes.completeExceptionally(ex);
             return null;
@@ -0,0 +1,245 @@
+package gestionArchivos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Subida de un archivo por chunks con una ventana de chunks en vuelo.
+ *
+ * - Los chunks se leen bajo demanda del {@link FileChannel} (lectura posicional),
+ *   sin cargar el archivo completo en memoria.
+ * - Se mantienen hasta {@code ventana} chunks enviados sin confirmar, en lugar de
+ *   esperar la confirmación de cada uno antes de enviar el siguiente.
+ * - Un chunk que falla se reintenta por separado hasta {@code reintentos} veces.
+ * - Una subida interrumpida se retoma con {@link #reanudar}, que envía solo los chunks
+ *   que el servidor informa como faltantes.
+ *
+ * Todo el estado se toca únicamente desde el hilo propio de la subida, sin locks.
+ */
+class SubidaPorVentana {
+
+    /**
+     * Envía un chunk al servidor; el futuro se completa con su confirmación.
+     */
+    @FunctionalInterface
+    interface EnviadorChunk {
+        CompletableFuture<Void> enviar(String uploadId, int chunkNumber, String chunkBase64);
+    }
+
+    private static final long ESPERA_REINTENTO_MS = 500;
+
+    private final Path ruta;
+    private final int tamanoChunk;
+    private final int ventana;
+    private final int reintentos;
+    private final EnviadorChunk enviador;
+    private final IntConsumer progreso;
+
+    private final long tamanoArchivo;
+    private final int totalChunks;
+
+    // Estado de la subida (solo desde el hilo de la subida)
+    private ScheduledExecutorService hilo;
+    private FileChannel canal;
+    private CompletableFuture<Void> resultado;
+    private String uploadId;
+    private final Deque<Integer> porEnviar = new ArrayDeque<>();
+    private int aConfirmar = 0;
+    private int enVuelo = 0;
+    private int confirmados = 0;
+    private int chunksConReintento = 0;
+    private long inicio;
+    private boolean terminada = false;
+
+    /**
+     * @param progreso Recibe el porcentaje confirmado tras cada chunk
+     */
+    SubidaPorVentana(Path ruta, int tamanoChunk, int ventana, int reintentos,
+                     EnviadorChunk enviador, IntConsumer progreso) throws IOException {
+        this.ruta = ruta;
+        this.tamanoChunk = tamanoChunk;
+        this.ventana = Math.max(1, ventana);
+        this.reintentos = Math.max(0, reintentos);
+        this.enviador = enviador;
+        this.progreso = progreso;
+        this.tamanoArchivo = Files.size(ruta);
+        this.totalChunks = (int) ((tamanoArchivo + tamanoChunk - 1) / tamanoChunk);
+    }
+
+    int getTotalChunks() {
+        return totalChunks;
+    }
+
+    long getTamanoArchivo() {
+        return tamanoArchivo;
+    }
+
+    /**
+     * Envía todos los chunks de la subida indicada.
+     *
+     * @return Futuro que se completa cuando el servidor confirmó todos los chunks
+     */
+    CompletableFuture<Void> ejecutar(String uploadId) {
+        porEnviar.clear();
+        for (int i = 1; i <= totalChunks; i++) {
+            porEnviar.add(i);
+        }
+        return iniciar(uploadId);
+    }
+
+    /**
+     * Reenvía solo los chunks indicados de una subida interrumpida.
+     * Solo se llama con la ejecución anterior ya terminada.
+     */
+    CompletableFuture<Void> reanudar(String uploadId, List<Integer> faltantes) {
+        porEnviar.clear();
+        porEnviar.addAll(faltantes);
+        return iniciar(uploadId);
+    }
+
+    private CompletableFuture<Void> iniciar(String uploadId) {
+        this.uploadId = uploadId;
+        aConfirmar = porEnviar.size();
+        enVuelo = 0;
+        confirmados = 0;
+        chunksConReintento = 0;
+        terminada = false;
+        resultado = new CompletableFuture<>();
+        hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Subida-" + ruta.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        hilo.execute(() -> {
+            try {
+                canal = FileChannel.open(ruta, StandardOpenOption.READ);
+            } catch (IOException e) {
+                terminar(e);
+                return;
+            }
+            inicio = System.nanoTime();
+            System.out.println("[GestionArchivos] Subida por ventana: " + aConfirmar + " chunks, hasta " +
+                    ventana + " en vuelo");
+            if (aConfirmar == 0) {
+                terminar(null);
+            } else {
+                rellenarVentana();
+            }
+        });
+        return resultado;
+    }
+
+    private void rellenarVentana() {
+        while (!terminada && enVuelo < ventana && !porEnviar.isEmpty()) {
+            enviarChunk(porEnviar.poll(), 0);
+        }
+    }
+
+    private void enviarChunk(int chunkNumber, int intento) {
+        String chunkBase64;
+        try {
+            chunkBase64 = Base64.getEncoder().encodeToString(leerChunk(chunkNumber));
+        } catch (IOException e) {
+            terminar(e);
+            return;
+        }
+
+        enVuelo++;
+        CompletableFuture<Void> envio;
+        try {
+            envio = enviador.enviar(uploadId, chunkNumber, chunkBase64);
+        } catch (Exception e) {
+            envio = CompletableFuture.failedFuture(e);
+        }
+        // Con el hilo de esta ejecución: una confirmación tardía no toca la siguiente
+        ScheduledExecutorService hiloEnvio = hilo;
+        envio.whenComplete((v, error) -> ejecutarEnHilo(hiloEnvio, () -> chunkTerminado(chunkNumber, intento, error)));
+    }
+
+    private void chunkTerminado(int chunkNumber, int intento, Throwable error) {
+        enVuelo--;
+        if (terminada) return;
+
+        if (error != null) {
+            if (intento < reintentos) {
+                if (intento == 0) chunksConReintento++;
+                System.err.println("[GestionArchivos] Chunk " + chunkNumber + " falló (" + error.getMessage() +
+                        "), reintento " + (intento + 1) + "/" + reintentos);
+                enVuelo++; // Conserva su hueco en la ventana mientras espera el reintento
+                hilo.schedule(() -> {
+                    enVuelo--;
+                    if (!terminada) enviarChunk(chunkNumber, intento + 1);
+                }, ESPERA_REINTENTO_MS * (intento + 1), TimeUnit.MILLISECONDS);
+            } else {
+                terminar(new IOException("El chunk " + chunkNumber + " falló tras " + (intento + 1) + " intentos", error));
+            }
+            return;
+        }
+
+        confirmados++;
+        progreso.accept(((totalChunks - aConfirmar + confirmados) * 100) / totalChunks);
+        if (confirmados == aConfirmar) {
+            terminar(null);
+        } else {
+            rellenarVentana();
+        }
+    }
+
+    /**
+     * Lee el chunk indicado del archivo.
+     */
+    private byte[] leerChunk(int chunkNumber) throws IOException {
+        long posicion = (long) (chunkNumber - 1) * tamanoChunk;
+        int longitud = (int) Math.min(tamanoChunk, tamanoArchivo - posicion);
+        byte[] datos = new byte[longitud];
+        ByteBuffer buffer = ByteBuffer.wrap(datos);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                throw new IOException("El archivo cambió de tamaño durante la subida");
+            }
+        }
+        return datos;
+    }
+
+    private void terminar(Throwable error) {
+        if (terminada) return;
+        terminada = true;
+        try {
+            if (canal != null) canal.close();
+        } catch (IOException ignored) {
+        }
+        hilo.shutdown();
+
+        if (error != null) {
+            resultado.completeExceptionally(error);
+            return;
+        }
+
+        double segundos = Math.max(1e-3, (System.nanoTime() - inicio) / 1e9);
+        double megas = tamanoArchivo / (1024.0 * 1024.0);
+        System.out.println(String.format("[GestionArchivos] Subida de %s: %.2f MB en %.2f s (%.2f MB/s, ventana %d, %d chunks reintentados)",
+                ruta.getFileName(), megas, segundos, megas / segundos, ventana, chunksConReintento));
+        resultado.complete(null);
+    }
+
+    private static void ejecutarEnHilo(ScheduledExecutorService hiloEnvio, Runnable tarea) {
+        try {
+            hiloEnvio.execute(tarea);
+        } catch (Exception e) {
+            // La subida ya terminó: confirmaciones tardías sin efecto
+        }
+    }
+}
@@ -24,6 +24,8 @@ import java.io.File;
 import java.lang.reflect.Type;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -113,6 +115,14 @@ public class GestorMensajesCanalImpl implements IGestorMensajesCanal, IObservado
             return;
         }
 
+        // Invalidación con los canales afectados: solo esos historiales
+        if (datos instanceof Collection && !((Collection<?>) datos).isEmpty()) {
+            for (Object cid : (Collection<?>) datos) {
+                solicitarHistorialCanal(cid.toString(), 50);
+            }
+            return;
+        }
+
         // 2) Si hay un canal abierto en la UI, solicitar sólo su historial
         if (this.canalActivoId != null && !this.canalActivoId.isEmpty()) {
             System.out.println("📍 [GestorMensajesCanal]: Canal activo detectado, solicitando historial de: " + this.canalActivoId);
@@ -239,6 +249,12 @@ public class GestorMensajesCanalImpl implements IGestorMensajesCanal, IObservado
                 historial.add(mensaje);
             }
 
+            // Página anterior (scroll hacia arriba): se guarda sin reemplazar el historial local
+            if (dataWrapper.get("antesDe") != null) {
+                manejarPaginaAnterior(dataWrapper, historial);
+                return;
+            }
+
             // ✅ ORDENAR MENSAJES POR TIMESTAMP (del más antiguo al más reciente)
             historial.sort((m1, m2) -> {
                 if (m1.getFechaEnvio() == null && m2.getFechaEnvio() == null) return 0;
@@ -274,6 +290,23 @@ public class GestorMensajesCanalImpl implements IGestorMensajesCanal, IObservado
         }
     }
 
+    /**
+     * Guarda una página de mensajes anteriores y la notifica como "HISTORIAL_CANAL_ANTERIOR".
+     * El servidor ya la envía en orden cronológico.
+     */
+    private void manejarPaginaAnterior(Map<String, Object> dataWrapper, List<DTOMensajeCanal> pagina) {
+        Map<String, Object> anteriores = new HashMap<>();
+        anteriores.put("canalId", dataWrapper.get("canalId"));
+        anteriores.put("mensajes", pagina);
+        anteriores.put("hayMasMensajes", Boolean.TRUE.equals(dataWrapper.get("hayMasMensajes")));
+
+        for (DTOMensajeCanal mensaje : pagina) {
+            repositorioMensajes.guardarMensajeRecibido(convertirDTOAMensajeRecibido(mensaje));
+        }
+        System.out.println("📋 [GestorMensajesCanal]: Página anterior recibida - Total: " + pagina.size());
+        notificarObservadores("HISTORIAL_CANAL_ANTERIOR", anteriores);
+    }
+
     /**
      * Maneja la confirmación de envío de mensaje.
      */
@@ -320,6 +353,21 @@ public class GestorMensajesCanalImpl implements IGestorMensajesCanal, IObservado
         System.out.println("→ Solicitando historial del canal: " + canalId);
     }
 
+    @Override
+    public void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite) {
+        String usuarioId = gestorSesion.getUserId();
+        if (usuarioId == null) {
+            System.err.println("✗ No se puede solicitar historial: usuario no autenticado");
+            return;
+        }
+
+        DTOSolicitarHistorialCanal payload = new DTOSolicitarHistorialCanal(canalId, usuarioId, limite, 0);
+        payload.setAntesDe(antesDeMensajeId);
+        enviadorPeticiones.enviar(new DTORequest("solicitarHistorialCanal", payload));
+
+        System.out.println("→ Solicitando mensajes anteriores a " + antesDeMensajeId + " del canal: " + canalId);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String canalId, String contenido) {
         String remitenteId = gestorSesion.getUserId();
@@ -19,6 +19,16 @@ public interface IGestorMensajesCanal extends ISujeto {
      */
     void solicitarHistorialCanal(String canalId, int limite);
 
+    /**
+     * Solicita la página de mensajes anterior a uno ya cargado (scroll hacia arriba).
+     * La respuesta se notifica como "HISTORIAL_CANAL_ANTERIOR".
+     *
+     * @param canalId El ID del canal.
+     * @param antesDeMensajeId El ID del mensaje más antiguo que ya se muestra.
+     * @param limite Cantidad máxima de mensajes a obtener.
+     */
+    void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite);
+
     /**
      * Envía un mensaje de texto a un canal.
      * 
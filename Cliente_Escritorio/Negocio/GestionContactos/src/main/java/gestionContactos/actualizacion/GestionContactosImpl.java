@@ -202,6 +202,32 @@ public class GestionContactosImpl implements IGestionContactos {
         return new ArrayList<>(contactosCache);
     }
 
+    @Override
+    public void aplicarCambioEstado(String contactoId, String estado) {
+        if (contactoId.equals(usuarioIdActual)) {
+            return; // El usuario local no está en la lista
+        }
+
+        List<DTOContacto> actualizados = new ArrayList<>(contactosCache);
+        for (int i = 0; i < actualizados.size(); i++) {
+            DTOContacto contacto = actualizados.get(i);
+            if (contactoId.equals(contacto.getId())) {
+                if (estado.equalsIgnoreCase(contacto.getEstado())) {
+                    return;
+                }
+                actualizados.set(i, contacto.conEstado(estado));
+                this.contactosCache = actualizados;
+                System.out.println("👤 [GestionContactos]: " + contacto.getNombre() + " → " + estado);
+                notificarObservadores("ACTUALIZAR_CONTACTOS", this.contactosCache);
+                return;
+            }
+        }
+
+        // Contacto desconocido (p. ej. registrado después de cargar la lista)
+        System.out.println("📤 [GestionContactos]: Contacto " + contactoId + " no está en caché, se pide la lista");
+        solicitarActualizacionContactos();
+    }
+
     @Override
     public void sincronizarContactosConBD(List<DTOContacto> contactos) {
         System.out.println("🔄 [GestionContactos]: Sincronizando " + contactos.size() + " contactos con la BD...");
@@ -34,4 +34,12 @@ public interface IGestionContactos extends ISujeto {
      * @param contactos Lista de contactos a sincronizar
      */
     void sincronizarContactosConBD(List<DTOContacto> contactos);
+
+    /**
+     * Cambia el estado de un contacto en caché y notifica la lista actualizada.
+     * Si el contacto no está en caché (usuario nuevo) se pide la lista al servidor.
+     * @param contactoId ID del contacto
+     * @param estado Nuevo estado
+     */
+    void aplicarCambioEstado(String contactoId, String estado);
 }
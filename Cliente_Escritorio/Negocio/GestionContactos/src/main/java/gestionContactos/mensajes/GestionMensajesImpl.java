@@ -16,7 +16,9 @@
     import observador.IObservador;
 
     import java.util.ArrayList;
+    import java.util.HashMap;
     import java.util.List;
+    import java.util.Map;
     import java.util.concurrent.CompletableFuture;
 
     /**
@@ -33,6 +35,9 @@
         private final GestorContactoPeers gestorContactoPeers;
         private final Gson gson;
 
+        // Mensajes por página del historial privado
+        private static final int LIMITE_HISTORIAL = 50;
+
         // ✅ Cachés temporales para completar mensajes cuando el servidor responde
         private DTOMensaje ultimoMensajeTextoEnviado;
         private DTOMensaje ultimoMensajeAudioEnviado;
@@ -85,7 +90,9 @@
                     userId,
                     peerRemitenteId,
                     contactoId,
-                    peerDestinatarioId // puede ser null
+                    peerDestinatarioId, // puede ser null
+                    LIMITE_HISTORIAL,
+                    null
             );
 
             // ✅ CORRECCIÓN: El servidor espera la acción en minúsculas sin camelCase
@@ -94,6 +101,21 @@
             System.out.println("✅ [GestionMensajes]: Petición de historial enviada al servidor");
         }
 
+        @Override
+        public void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId) {
+            System.out.println("📡 [GestionMensajes]: Solicitando mensajes anteriores a " + antesDeMensajeId + " con " + contactoId);
+
+            DTOSolicitarHistorial payload = new DTOSolicitarHistorial(
+                    gestorSesionUsuario.getUserId(),
+                    gestorSesionUsuario.getPeerId(),
+                    contactoId,
+                    gestorContactoPeers.getPeerIdDeContacto(contactoId),
+                    LIMITE_HISTORIAL,
+                    antesDeMensajeId
+            );
+            enviadorPeticiones.enviar(new DTORequest("solicitarhistorialprivado", payload));
+        }
+
         @Override
         public CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido) {
             String remitenteId = gestorSesionUsuario.getUserId();
@@ -563,6 +585,11 @@
                 List<DTOMensaje> mensajes = new ArrayList<>();
 
                 Object data = r.getData();
+                // Las páginas pedidas con cursor llegan envueltas: { contactoId, mensajes, hayMasMensajes, antesDe }
+                Map<?, ?> pagina = data instanceof Map ? (Map<?, ?>) data : null;
+                if (pagina != null) {
+                    data = pagina.get("mensajes");
+                }
                 if (data instanceof List) {
                     @SuppressWarnings("unchecked")
                     List<Object> listData = (List<Object>) data;
@@ -581,6 +608,16 @@
                     determinarTipoMensaje(mensaje);
                 }
 
+                if (pagina != null) {
+                    Map<String, Object> anteriores = new HashMap<>();
+                    anteriores.put("contactoId", pagina.get("contactoId"));
+                    anteriores.put("mensajes", mensajes);
+                    anteriores.put("hayMasMensajes", Boolean.TRUE.equals(pagina.get("hayMasMensajes")));
+                    System.out.println("✅ [GestionMensajes]: Página anterior recibida con " + mensajes.size() + " mensajes");
+                    notificarObservadores("HISTORIAL_MENSAJES_ANTERIORES", anteriores);
+                    return;
+                }
+
                 System.out.println("✅ [GestionMensajes]: Historial recibido con " + mensajes.size() + " mensajes");
                 notificarObservadores("HISTORIAL_MENSAJES_RECIBIDO", mensajes);
             } else {
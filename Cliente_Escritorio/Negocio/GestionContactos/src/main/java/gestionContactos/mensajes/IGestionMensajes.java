@@ -10,6 +10,13 @@ import java.util.concurrent.CompletableFuture;
  */
 public interface IGestionMensajes extends ISujeto {
     void solicitarHistorial(String contactoId);
+
+    /**
+     * Solicita la página de mensajes anterior a uno ya cargado (scroll hacia arriba).
+     * La respuesta se notifica como "HISTORIAL_MENSAJES_ANTERIORES".
+     * @param antesDeMensajeId ID del mensaje más antiguo que ya se muestra.
+     */
+    void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId);
     CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido);
 
     /**
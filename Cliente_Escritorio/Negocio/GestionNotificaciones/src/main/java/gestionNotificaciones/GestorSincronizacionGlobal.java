@@ -6,27 +6,65 @@ import dto.comunicacion.DTOResponse;
 import observador.IObservador;
 import observador.ISujeto;
 
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Gestor centralizado que maneja la señal SIGNAL_UPDATE del servidor.
- * Cuando recibe esta señal, dispara la actualización de todos los componentes
- * de la interfaz (contactos, canales, mensajes, etc.).
+ * Gestor centralizado que maneja las señales de actualización del servidor.
+ *
+ * <p>INVALIDATE trae el recurso que cambió (CONTACTOS, CANALES, MIEMBROS_CANAL,
+ * INVITACIONES, MENSAJES), el id afectado y una versión. Solo se refresca ese
+ * recurso; si trae un delta (p. ej. un cambio de presencia) se aplica sin pedir
+ * nada al servidor. Las invalidaciones que llegan en ráfaga se agrupan y cada
+ * recurso se refresca una sola vez.</p>
+ *
+ * <p>SIGNAL_UPDATE (servidores anteriores) dispara la actualización de todos los
+ * componentes de la interfaz (contactos, canales, mensajes, etc.).</p>
  *
  * <p>Este gestor actúa como coordinador central para mantener la aplicación
  * sincronizada con el estado del servidor.</p>
  */
 public class GestorSincronizacionGlobal implements ISujeto {
 
+    // Espera para agrupar invalidaciones que llegan seguidas
+    private static final long ESPERA_AGRUPACION_MS = 250;
+    // Claves "origen|recurso:id" recordadas; las menos usadas se descartan
+    private static final int MAX_VERSIONES = 2048;
+
     private static GestorSincronizacionGlobal instancia;
     private final IGestorRespuesta gestorRespuesta;
     private final List<IObservador> observadores;
     private boolean inicializado = false;
 
+    // Última versión aplicada por "origen|recurso:id". Cada servidor numera sus
+    // invalidaciones por separado, así que tras un failover el contador del nuevo
+    // servidor no se compara con el del anterior. Acotado con orden de acceso (LRU).
+    private final Map<String, Long> versiones = new LinkedHashMap<String, Long>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> mayor) {
+            return size() > MAX_VERSIONES;
+        }
+    };
+    // Invalidaciones pendientes: recurso -> ids (vacío = todo el recurso)
+    private final Map<String, Set<String>> pendientes = new LinkedHashMap<>();
+    private boolean envioProgramado = false;
+    private final ScheduledExecutorService agrupador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SincronizacionGlobal-Invalidaciones");
+        t.setDaemon(true);
+        return t;
+    });
+
     private GestorSincronizacionGlobal() {
         this.gestorRespuesta = GestorRespuesta.getInstancia();
-        this.observadores = new ArrayList<>();
+        // Se notifica también desde el hilo que agrupa invalidaciones
+        this.observadores = new CopyOnWriteArrayList<>();
         System.out.println("✅ [GestorSincronizacionGlobal]: Instancia creada");
     }
 
@@ -52,13 +90,119 @@ public class GestorSincronizacionGlobal implements ISujeto {
 
         System.out.println("🔧 [GestorSincronizacionGlobal]: Inicializando y registrando manejadores...");
 
-        // Registrar manejador para SIGNAL_UPDATE
+        // Registrar manejador para INVALIDATE (por recurso)
+        gestorRespuesta.registrarManejador("INVALIDATE", this::manejarInvalidacion);
+
+        // Registrar manejador para SIGNAL_UPDATE (servidores anteriores)
         gestorRespuesta.registrarManejador("SIGNAL_UPDATE", this::manejarSignalUpdate);
 
         inicializado = true;
         System.out.println("✅ [GestorSincronizacionGlobal]: Inicialización completa");
     }
 
+    /**
+     * Maneja una invalidación INVALIDATE enviada por el servidor.
+     * Formato: { "type": "INVALIDATE", "resource": "CANALES",
+     *            "data": { "id": "...", "origen": "...", "version": 123, "delta": {...} } }
+     */
+    private void manejarInvalidacion(DTOResponse respuesta) {
+        String recurso = respuesta.getResource();
+        if (recurso == null || recurso.isEmpty()) {
+            System.err.println("⚠️ [GestorSincronizacionGlobal]: INVALIDATE sin recurso, se ignora");
+            return;
+        }
+
+        String id = null;
+        String origen = "";
+        long version = 0;
+        Object delta = null;
+        if (respuesta.getData() instanceof Map) {
+            Map<?, ?> data = (Map<?, ?>) respuesta.getData();
+            id = data.get("id") != null ? data.get("id").toString() : null;
+            if (data.get("version") instanceof Number) {
+                version = ((Number) data.get("version")).longValue();
+            }
+            delta = data.get("delta");
+            if (data.get("origen") != null) {
+                origen = data.get("origen").toString();
+            }
+        }
+
+        // Una versión ya aplicada (p. ej. un push repetido) no se vuelve a procesar
+        String clave = recurso + ":" + (id != null ? id : "*");
+        if (version > 0) {
+            synchronized (versiones) {
+                Long anterior = versiones.get(origen + "|" + clave);
+                if (anterior != null && anterior >= version) {
+                    System.out.println("⏩ [GestorSincronizacionGlobal]: INVALIDATE " + clave + " v" + version + " ya aplicada");
+                    return;
+                }
+                versiones.put(origen + "|" + clave, version);
+            }
+        }
+
+        System.out.println("🔔 [GestorSincronizacionGlobal]: INVALIDATE " + clave + " v" + version);
+
+        // Cambio de presencia: se aplica directamente sobre el contacto
+        if ("CONTACTOS".equals(recurso) && delta instanceof Map) {
+            notificarObservadores("ACTUALIZAR_ESTADO_CONTACTO", delta);
+            return;
+        }
+
+        synchronized (pendientes) {
+            Set<String> ids = pendientes.computeIfAbsent(recurso, k -> new HashSet<>());
+            // Si el recurso entero ya está pendiente, un id concreto no añade nada
+            boolean todoPendiente = ids.contains("*");
+            if (id == null) {
+                ids.clear();
+                ids.add("*");
+            } else if (!todoPendiente) {
+                ids.add(id);
+            }
+            if (!envioProgramado) {
+                envioProgramado = true;
+                agrupador.schedule(this::despacharInvalidaciones, ESPERA_AGRUPACION_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Dispara un evento por recurso invalidado, con los ids afectados
+     * (null si se invalidó el recurso entero).
+     */
+    private void despacharInvalidaciones() {
+        Map<String, Set<String>> lote;
+        synchronized (pendientes) {
+            lote = new LinkedHashMap<>(pendientes);
+            pendientes.clear();
+            envioProgramado = false;
+        }
+
+        for (Map.Entry<String, Set<String>> entrada : lote.entrySet()) {
+            Set<String> ids = entrada.getValue().contains("*") ? null : entrada.getValue();
+            switch (entrada.getKey()) {
+                case "CONTACTOS":
+                    notificarObservadores("ACTUALIZAR_CONTACTOS", ids);
+                    break;
+                case "CANALES":
+                    notificarObservadores("ACTUALIZAR_CANALES", ids);
+                    break;
+                case "MIEMBROS_CANAL":
+                    notificarObservadores("ACTUALIZAR_MIEMBROS_CANAL", ids);
+                    break;
+                case "INVITACIONES":
+                    notificarObservadores("ACTUALIZAR_INVITACIONES", ids);
+                    break;
+                case "MENSAJES":
+                    notificarObservadores("ACTUALIZAR_MENSAJES_PRIVADOS", ids);
+                    notificarObservadores("ACTUALIZAR_MENSAJES_CANALES", ids);
+                    break;
+                default:
+                    System.out.println("⚠️ [GestorSincronizacionGlobal]: Recurso no reconocido: " + entrada.getKey());
+            }
+        }
+    }
+
     /**
      * Maneja la señal SIGNAL_UPDATE enviada por el servidor.
      * Esta señal indica que hay cambios en el servidor y se debe refrescar todo.
@@ -153,9 +297,6 @@ public class GestorSincronizacionGlobal implements ISujeto {
         System.out.println("   🔔 Solicitando actualización de notificaciones...");
         notificarObservadores("ACTUALIZAR_NOTIFICACIONES", null);
 
-        // Evento general para componentes que necesiten refrescarse
-        notificarObservadores("SINCRONIZACION_GLOBAL", System.currentTimeMillis());
-
         System.out.println("✅ [GestorSincronizacionGlobal]: Actualización global completada");
     }
 
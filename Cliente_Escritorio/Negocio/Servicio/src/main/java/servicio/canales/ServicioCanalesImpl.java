@@ -61,6 +61,12 @@ public class ServicioCanalesImpl implements IServicioCanales, IObservador {
         fachadaCanales.solicitarHistorialCanal(canalId, limite);
     }
 
+    @Override
+    public void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite) {
+        System.out.println("➡️ [ServicioCanales]: Solicitando mensajes anteriores del canal: " + canalId);
+        fachadaCanales.solicitarMensajesAnterioresCanal(canalId, antesDeMensajeId, limite);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String canalId, String contenido) {
         System.out.println("➡️ [ServicioCanales]: Enviando mensaje de texto al canal: " + canalId);
@@ -10,6 +10,7 @@ import java.util.concurrent.CompletableFuture;
  */
 public interface IServicioChat {
     void solicitarHistorial(String contactoId);
+    void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId);
     CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido);
     CompletableFuture<Void> enviarMensajeAudio(String destinatarioId, String audioFileId);
 
@@ -42,6 +42,12 @@ public class ServicioChatImpl implements IServicioChat, IObservador {
         fachadaContactos.solicitarHistorial(contactoId);
     }
 
+    @Override
+    public void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId) {
+        System.out.println("➡️ [ServicioChat]: Delegando solicitud de mensajes anteriores a la fachada - ContactoId: " + contactoId);
+        fachadaContactos.solicitarHistorialAnterior(contactoId, antesDeMensajeId);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido) {
         System.out.println("➡️ [ServicioChat]: Delegando envío de mensaje de texto a la fachada");
@@ -4,20 +4,28 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import conexion.GestorConexion;
 import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
 import dto.gestionConexion.conexion.DTOSesion;
 
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementación del componente encargado de enviar peticiones al servidor.
  */
 public class EnviadorPeticiones implements IEnviadorPeticiones {
 
+    // Plazo por defecto para las peticiones que esperan su respuesta
+    private static final long TIMEOUT_RESPUESTA_MS = 30000;
+    private static final int MAX_LOG = 500;
+
     private final GestorConexion gestorConexion;
+    private final PeticionesPendientes pendientes;
     private final Gson gson;
 
     public EnviadorPeticiones() {
         this.gestorConexion = GestorConexion.getInstancia();
+        this.pendientes = PeticionesPendientes.getInstancia();
         // ✅ CORRECCIÓN: Configurar Gson para serializar campos nulos
         // Esto es necesario para que peerRemitenteId y peerDestinoId se incluyan aunque sean null
         this.gson = new GsonBuilder()
@@ -27,25 +35,46 @@ public class EnviadorPeticiones implements IEnviadorPeticiones {
 
     @Override
     public void enviar(DTORequest request) {
+        escribir(request).exceptionally(error -> {
+            System.err.println("Error al enviar la petición " + request.getAction() + ": " + error.getMessage());
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<DTOResponse> enviarYEsperar(DTORequest request) {
+        return enviarYEsperar(request, TIMEOUT_RESPUESTA_MS);
+    }
+
+    @Override
+    public CompletableFuture<DTOResponse> enviarYEsperar(DTORequest request, long timeoutMs) {
+        String requestId = pendientes.nuevoId();
+        // Se registra antes de enviar para no perder una respuesta muy rápida
+        CompletableFuture<DTOResponse> futuro = pendientes.registrar(requestId, timeoutMs);
+        escribir(new DTORequest(request.getAction(), request.getPayload(), requestId)).exceptionally(error -> {
+            pendientes.fallar(requestId, new IOException("No se pudo enviar la petición " + request.getAction(), error));
+            return null;
+        });
+        return futuro;
+    }
+
+    /**
+     * Escribe la petición como un único mensaje en el canal de la sesión.
+     * @return futuro que se completa cuando el mensaje salió por el socket.
+     */
+    private CompletableFuture<Void> escribir(DTORequest request) {
         // CORRECCIÓN: Se utiliza el nombre de método correcto 'getSesion()'.
         DTOSesion sesion = gestorConexion.getSesion();
 
-        if (sesion != null && sesion.estaActiva()) {
-            try {
-                PrintWriter out = sesion.getOut();
-                String jsonRequest = gson.toJson(request);
-                out.println(jsonRequest);
-                System.out.println(">> Petición enviada: " + jsonRequest);
-            } catch (Exception e) {
-                // Es una buena práctica verificar si el socket se cerró para dar un mensaje más útil.
-                if (sesion.getSocket().isClosed()) {
-                    System.err.println("Error al enviar la petición: la conexión parece estar cerrada.");
-                } else {
-                    System.err.println("Error al enviar la petición: " + e.getMessage());
-                }
-            }
-        } else {
+        if (sesion == null || !sesion.estaActiva()) {
             System.err.println("No se puede enviar la petición, no hay sesión activa.");
+            return CompletableFuture.failedFuture(new IOException("No hay sesión activa"));
         }
+
+        String jsonRequest = gson.toJson(request);
+        // Truncar el log: los chunks de archivos llevan cientos de KB en base64
+        System.out.println(">> Petición enviada: " + (jsonRequest.length() > MAX_LOG
+                ? jsonRequest.substring(0, MAX_LOG) + "... [mensaje truncado]" : jsonRequest));
+        return sesion.getCanal().enviar(jsonRequest);
     }
 }
@@ -5,8 +5,8 @@ import com.google.gson.JsonSyntaxException;
 import conexion.GestorConexion;
 import dto.comunicacion.DTOResponse;
 import dto.gestionConexion.conexion.DTOSesion;
+import dto.gestionConexion.conexion.ICanalMensajes;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,13 +21,19 @@ public class GestorRespuesta implements IGestorRespuesta {
     private static GestorRespuesta instancia; // Instancia única del Singleton
     private final GestorConexion gestorConexion;
     private final Map<String, Consumer<DTOResponse>> manejadores;
+    // Mismos manejadores indexados por el nombre en minúsculas (búsqueda sin distinguir mayúsculas)
+    private final Map<String, Consumer<DTOResponse>> manejadoresNormalizados;
+    private final PeticionesPendientes pendientes;
     private final Gson gson;
-    private Thread hiloEscucha;
+    private volatile ICanalMensajes canalEscuchado;
+    private volatile boolean escuchando;
 
     // El constructor ahora es privado.
     private GestorRespuesta() {
         this.gestorConexion = GestorConexion.getInstancia();
         this.manejadores = new ConcurrentHashMap<>();
+        this.manejadoresNormalizados = new ConcurrentHashMap<>();
+        this.pendientes = PeticionesPendientes.getInstancia();
         this.gson = new Gson();
     }
 
@@ -42,63 +48,59 @@ public class GestorRespuesta implements IGestorRespuesta {
         return instancia;
     }
 
-    // ... El resto de los métodos permanecen igual, pero ahora se accede a ellos
-    // a través de GestorRespuesta.getInstancia().metodo()
     @Override
     public void iniciarEscucha() {
-        if (hiloEscucha != null && hiloEscucha.isAlive()) {
+        if (escuchando) {
             System.out.println("El gestor de respuestas ya está escuchando.");
             return;
         }
 
-        hiloEscucha = new Thread(() -> {
-            DTOSesion sesion = gestorConexion.getSesion();
-            if (sesion == null || !sesion.estaActiva()) {
-                System.err.println("No se puede iniciar la escucha, no hay sesión activa.");
-                return;
-            }
+        DTOSesion sesion = gestorConexion.getSesion();
+        if (sesion == null || !sesion.estaActiva()) {
+            System.err.println("No se puede iniciar la escucha, no hay sesión activa.");
+            return;
+        }
 
-            try (BufferedReader in = sesion.getIn()) {
-                System.out.println("Gestor de respuestas iniciado. Esperando mensajes...");
-                String respuestaServidor;
-                while (!Thread.currentThread().isInterrupted() && (respuestaServidor = in.readLine()) != null) {
-                    // Truncar respuestas muy largas para evitar imprimir imágenes en base64
-                    String respuestaParaLog = truncarRespuesta(respuestaServidor, 500);
-                    System.out.println("<< Respuesta recibida: " + respuestaParaLog);
-                    procesarRespuesta(respuestaServidor);
-                }
-            } catch (IOException e) {
-                if (!Thread.currentThread().isInterrupted()) {
-                    System.err.println("La conexión con el servidor se ha perdido.");
-                }
-            } finally {
-                System.out.println("El gestor de respuestas ha dejado de escuchar.");
+        ICanalMensajes canal = sesion.getCanal();
+        canalEscuchado = canal;
+        escuchando = true;
+        // Los mensajes llegan por callback desde el hilo de E/S del transporte, sin hilo lector propio
+        canal.setManejadorCierre(() -> {
+            if (canalEscuchado != canal) {
+                return; // Cierre de una sesión anterior ya reemplazada
             }
+            escuchando = false;
+            System.err.println("La conexión con el servidor se ha perdido.");
+            // Sin conexión no llegará ninguna respuesta pendiente
+            pendientes.cancelarTodas(new IOException("Conexión con el servidor cerrada"));
+            System.out.println("El gestor de respuestas ha dejado de escuchar.");
         });
-        hiloEscucha.start();
+        canal.setManejadorEntrante(respuestaServidor -> {
+            // Truncar respuestas muy largas para evitar imprimir imágenes en base64
+            String respuestaParaLog = truncarRespuesta(respuestaServidor, 500);
+            System.out.println("<< Respuesta recibida: " + respuestaParaLog);
+            procesarRespuesta(respuestaServidor);
+        });
+        System.out.println("Gestor de respuestas iniciado. Esperando mensajes...");
     }
 
     private void procesarRespuesta(String jsonResponse) {
         try {
             DTOResponse response = gson.fromJson(jsonResponse, DTOResponse.class);
             if (response != null) {
+                // Respuesta a una petición con id de correlación: va directa a su futuro
+                if (pendientes.completar(response)) {
+                    return;
+                }
+
                 // Obtener el identificador (puede ser action o type)
                 String identificador = response.getIdentificador();
 
                 if (identificador != null) {
-                    // Normalizar el identificador a minúsculas para comparación case-insensitive
-                    String identificadorNormalizado = identificador.toLowerCase();
-
-                    // Buscar manejador con el identificador original o normalizado
+                    // Buscar manejador con el identificador original o, si no, normalizado a minúsculas
                     Consumer<DTOResponse> manejador = manejadores.get(identificador);
                     if (manejador == null) {
-                        // Intentar buscar con todas las claves normalizadas
-                        for (Map.Entry<String, Consumer<DTOResponse>> entry : manejadores.entrySet()) {
-                            if (entry.getKey().toLowerCase().equals(identificadorNormalizado)) {
-                                manejador = entry.getValue();
-                                break;
-                            }
-                        }
+                        manejador = manejadoresNormalizados.get(identificador.toLowerCase());
                     }
 
                     if (manejador != null) {
@@ -119,14 +121,17 @@ public class GestorRespuesta implements IGestorRespuesta {
 
     @Override
     public void detenerEscucha() {
-        if (hiloEscucha != null && hiloEscucha.isAlive()) {
-            hiloEscucha.interrupt();
+        if (escuchando && canalEscuchado != null) {
+            canalEscuchado.setManejadorEntrante(null);
+            escuchando = false;
+            System.out.println("El gestor de respuestas ha dejado de escuchar.");
         }
     }
 
     @Override
     public void registrarManejador(String tipoOperacion, Consumer<DTOResponse> manejador) {
         manejadores.put(tipoOperacion, manejador);
+        manejadoresNormalizados.put(tipoOperacion.toLowerCase(), manejador);
     }
 
     /**
@@ -1,6 +1,10 @@
 package comunicacion;
 
 import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
+
+import java.util.concurrent.CompletableFuture;
+
     /**
      * Contrato para el componente encargado de enviar peticiones al servidor.
      */
@@ -10,4 +14,18 @@ public interface IEnviadorPeticiones {
      * @param request El DTO de la petición a enviar.
      */
     void enviar(DTORequest request);
-}
\ No newline at end of file
+
+    /**
+     * Envía una petición con un id de correlación y devuelve un futuro que se completa
+     * con SU respuesta, aunque haya otras peticiones de la misma acción en vuelo.
+     * El futuro falla si no se pudo enviar, si vence el plazo o si se pierde la conexión.
+     * @param request El DTO de la petición (se ignora su requestId, se asigna uno nuevo).
+     * @param timeoutMs Plazo máximo de espera de la respuesta.
+     */
+    CompletableFuture<DTOResponse> enviarYEsperar(DTORequest request, long timeoutMs);
+
+    /**
+     * Igual que {@link #enviarYEsperar(DTORequest, long)} con el plazo por defecto.
+     */
+    CompletableFuture<DTOResponse> enviarYEsperar(DTORequest request);
+}
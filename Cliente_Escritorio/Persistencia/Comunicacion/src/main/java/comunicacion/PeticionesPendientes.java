@@ -0,0 +1,100 @@
+package comunicacion;
+
+import dto.comunicacion.DTOResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tabla de peticiones en vuelo indexada por id de correlación.
+ *
+ * Permite tener varias peticiones de la misma acción pendientes a la vez: cada
+ * respuesta se entrega al futuro de su petición por el {@code requestId}, en lugar
+ * de registrar un manejador con un nombre de acción único por petición.
+ */
+public class PeticionesPendientes {
+
+    private static PeticionesPendientes instancia;
+
+    private final Map<String, CompletableFuture<DTOResponse>> pendientes;
+    private final AtomicLong contador;
+
+    private PeticionesPendientes() {
+        this.pendientes = new ConcurrentHashMap<>();
+        this.contador = new AtomicLong();
+    }
+
+    public static synchronized PeticionesPendientes getInstancia() {
+        if (instancia == null) {
+            instancia = new PeticionesPendientes();
+        }
+        return instancia;
+    }
+
+    /**
+     * Genera un id de correlación nuevo, único mientras dure el proceso.
+     */
+    public String nuevoId() {
+        return Long.toString(contador.incrementAndGet());
+    }
+
+    /**
+     * Registra una petición en vuelo. El futuro falla con {@code TimeoutException}
+     * si la respuesta no llega dentro del plazo, y sale de la tabla al completarse.
+     */
+    public CompletableFuture<DTOResponse> registrar(String requestId, long timeoutMs) {
+        CompletableFuture<DTOResponse> futuro = new CompletableFuture<>();
+        pendientes.put(requestId, futuro);
+        futuro.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((respuesta, error) -> pendientes.remove(requestId, futuro));
+        return futuro;
+    }
+
+    /**
+     * Entrega una respuesta a la petición que la espera.
+     *
+     * @return true si había una petición pendiente con su {@code requestId}
+     */
+    public boolean completar(DTOResponse respuesta) {
+        String requestId = respuesta.getRequestId();
+        if (requestId == null) {
+            return false;
+        }
+        CompletableFuture<DTOResponse> futuro = pendientes.remove(requestId);
+        if (futuro == null) {
+            return false;
+        }
+        futuro.complete(respuesta);
+        return true;
+    }
+
+    /**
+     * Hace fallar una petición concreta (p. ej. si no se pudo enviar).
+     */
+    public void fallar(String requestId, Throwable causa) {
+        CompletableFuture<DTOResponse> futuro = pendientes.remove(requestId);
+        if (futuro != null) {
+            futuro.completeExceptionally(causa);
+        }
+    }
+
+    /**
+     * Hace fallar todas las peticiones en vuelo, p. ej. al perderse la conexión.
+     */
+    public void cancelarTodas(Throwable causa) {
+        List<CompletableFuture<DTOResponse>> enVuelo = new ArrayList<>(pendientes.values());
+        pendientes.clear();
+        for (CompletableFuture<DTOResponse> futuro : enVuelo) {
+            futuro.completeExceptionally(causa);
+        }
+    }
+
+    public int cantidadEnVuelo() {
+        return pendientes.size();
+    }
+}
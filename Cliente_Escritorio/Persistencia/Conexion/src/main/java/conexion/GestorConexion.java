@@ -54,8 +54,7 @@ public class GestorConexion implements ISujeto {
         if (sesionActiva != null && sesionActiva.estaActiva()) {
             try {
                 System.out.println("Cerrando recursos de la sesión activa...");
-                if (sesionActiva.getIn() != null) sesionActiva.getIn().close();
-                if (sesionActiva.getOut() != null) sesionActiva.getOut().close();
+                if (sesionActiva.getCanal() != null) sesionActiva.getCanal().cerrar();
                 if (sesionActiva.getSocket() != null) sesionActiva.getSocket().close();
                 System.out.println("Recursos de la sesión cerrados correctamente.");
             } catch (IOException e) {
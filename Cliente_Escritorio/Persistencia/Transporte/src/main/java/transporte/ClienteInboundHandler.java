@@ -3,26 +3,54 @@ package transporte;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
 
 /**
- * Handler que recibe mensajes del servidor y los pone en una cola
- * para que puedan ser consumidos por el BufferedReader adaptado.
+ * Handler que recibe mensajes del servidor y los entrega al manejador registrado
+ * en el {@link NettyCanalMensajes}, en el propio hilo de E/S del canal.
  */
 public class ClienteInboundHandler extends SimpleChannelInboundHandler<String> {
 
     private static final String TAG = "[ClienteHandler] ";
-    private final BlockingQueue<String> mensajesEntrantes;
 
-    public ClienteInboundHandler(BlockingQueue<String> mensajesEntrantes) {
-        this.mensajesEntrantes = mensajesEntrantes;
+    // Mensajes llegados sin manejador registrado (solo se toca desde el event loop)
+    private final Queue<String> sinManejador = new ArrayDeque<>();
+    private volatile Consumer<String> manejador;
+
+    /**
+     * Cambia el manejador de mensajes entrantes. Debe llamarse desde el event loop
+     * del canal; entrega primero los mensajes que llegaron sin manejador.
+     */
+    void setManejador(Consumer<String> manejador) {
+        this.manejador = manejador;
+        if (manejador == null) return;
+        String mensaje;
+        while ((mensaje = sinManejador.poll()) != null) {
+            entregar(manejador, mensaje);
+        }
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, String mensaje) throws Exception {
-        // Agregar el mensaje a la cola para que pueda ser leído
-        mensajesEntrantes.offer(mensaje);
         System.out.println(TAG + "✓ Mensaje recibido (" + mensaje.length() + " bytes)");
+        Consumer<String> actual = manejador;
+        if (actual != null) {
+            entregar(actual, mensaje);
+        } else {
+            sinManejador.add(mensaje);
+        }
+    }
+
+    private void entregar(Consumer<String> destino, String mensaje) {
+        try {
+            destino.accept(mensaje);
+        } catch (Exception e) {
+            // Un fallo del manejador no debe cerrar la conexión
+            System.err.println(TAG + "Error procesando mensaje: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
 
     @Override
@@ -44,4 +72,3 @@ public class ClienteInboundHandler extends SimpleChannelInboundHandler<String> {
         ctx.close();
     }
 }
-
@@ -0,0 +1,80 @@
+package transporte;
+
+import dto.gestionConexion.conexion.ICanalMensajes;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Canal de mensajes sobre un Channel de Netty.
+ * Cada mensaje sale como una trama (LengthFieldPrepender) con un único writeAndFlush,
+ * y los mensajes entrantes se entregan por callback desde el event loop.
+ * Los futuros de {@link #enviar} también se completan en el event loop: quien encadene
+ * trabajo bloqueante (disco, BD) debe usar las variantes *Async con su propio executor.
+ */
+public class NettyCanalMensajes implements ICanalMensajes {
+
+    private static final String TAG = "[NettyCanal] ";
+
+    private final Channel channel;
+    private final EventLoopGroup group;
+    private final ClienteInboundHandler handler;
+
+    public NettyCanalMensajes(Channel channel, EventLoopGroup group, ClienteInboundHandler handler) {
+        this.channel = channel;
+        this.group = group;
+        this.handler = handler;
+        // Al cerrarse el canal se liberan los hilos de Netty
+        channel.closeFuture().addListener(f -> group.shutdownGracefully());
+    }
+
+    @Override
+    public CompletableFuture<Void> enviar(String mensaje) {
+        CompletableFuture<Void> resultado = new CompletableFuture<>();
+        if (!channel.isActive()) {
+            resultado.completeExceptionally(new IOException("El canal está cerrado"));
+            return resultado;
+        }
+        channel.writeAndFlush(mensaje).addListener(f -> {
+            if (f.isSuccess()) {
+                resultado.complete(null);
+            } else {
+                resultado.completeExceptionally(f.cause());
+            }
+        });
+        return resultado;
+    }
+
+    @Override
+    public void setManejadorEntrante(Consumer<String> manejador) {
+        channel.eventLoop().execute(() -> {
+            handler.setManejador(manejador);
+            // Sin manejador se deja de leer: el servidor queda frenado por TCP
+            channel.config().setAutoRead(manejador != null);
+        });
+    }
+
+    @Override
+    public void setManejadorCierre(Runnable manejador) {
+        channel.closeFuture().addListener(f -> {
+            try {
+                manejador.run();
+            } catch (Exception e) {
+                System.err.println(TAG + "Error en el manejador de cierre: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public boolean estaActivo() {
+        return channel.isActive();
+    }
+
+    @Override
+    public void cerrar() {
+        channel.close();
+    }
+}
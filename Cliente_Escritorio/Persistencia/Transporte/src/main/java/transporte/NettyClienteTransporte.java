@@ -12,9 +12,6 @@ import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 /**
  * Implementación de ITransporte usando Netty con el protocolo LengthField.
  * Este protocolo es compatible con el servidor que usa LengthFieldPrepender/Decoder.
@@ -26,19 +23,17 @@ public class NettyClienteTransporte implements ITransporte {
 
     @Override
     public DTOSesion conectar(DTOConexion datosConexion) {
+        // Un solo hilo de E/S basta para una conexión
+        EventLoopGroup group = new NioEventLoopGroup(1);
         try {
-            // Cola para recibir mensajes del servidor
-            BlockingQueue<String> mensajesEntrantes = new LinkedBlockingQueue<>();
-            
-            // EventLoopGroup para el cliente
-            EventLoopGroup group = new NioEventLoopGroup();
-            
-            // Objeto para mantener la referencia del canal
-            final Channel[] channelRef = new Channel[1];
+            // Handler que entrega los mensajes entrantes al manejador del canal
+            ClienteInboundHandler handler = new ClienteInboundHandler();
 
             Bootstrap b = new Bootstrap();
             b.group(group)
                 .channel(NioSocketChannel.class)
+                // No se lee nada hasta que haya un manejador de mensajes registrado
+                .option(ChannelOption.AUTO_READ, false)
                 .handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel ch) {
@@ -56,7 +51,7 @@ public class NettyClienteTransporte implements ITransporte {
                         p.addLast(new StringEncoder());
                         
                         // 4. Handler personalizado para recibir mensajes
-                        p.addLast(new ClienteInboundHandler(mensajesEntrantes));
+                        p.addLast(handler);
                     }
                 });
 
@@ -64,18 +59,11 @@ public class NettyClienteTransporte implements ITransporte {
             ChannelFuture future = b.connect(datosConexion.getHost(), datosConexion.getPuerto()).sync();
             
             if (future.isSuccess()) {
-                channelRef[0] = future.channel();
+                Channel channel = future.channel();
                 System.out.println(TAG + "✓ Conexión establecida con " + 
                     datosConexion.getHost() + ":" + datosConexion.getPuerto());
                 
-                // Crear adaptador compatible con DTOSesion
-                NettySessionAdapter adapter = new NettySessionAdapter(
-                    channelRef[0], 
-                    group, 
-                    mensajesEntrantes
-                );
-                
-                return new DTOSesion(adapter.getSocket(), adapter.getOut(), adapter.getIn());
+                return new DTOSesion(new NettySocketWrapper(channel), new NettyCanalMensajes(channel, group, handler));
             } else {
                 group.shutdownGracefully();
                 System.err.println(TAG + "✗ No se pudo conectar al servidor");
@@ -85,6 +73,7 @@ public class NettyClienteTransporte implements ITransporte {
         } catch (Exception e) {
             System.err.println(TAG + "Error al crear la conexión: " + e.getMessage());
             e.printStackTrace();
+            group.shutdownGracefully();
             return null;
         }
     }
@@ -59,12 +59,12 @@ public class NettySocketWrapper extends Socket {
     
     @Override
     public InputStream getInputStream() throws IOException {
-        throw new UnsupportedOperationException("Use BufferedReader from NettySessionAdapter");
+        throw new UnsupportedOperationException("Use ICanalMensajes from DTOSesion");
     }
     
     @Override
     public OutputStream getOutputStream() throws IOException {
-        throw new UnsupportedOperationException("Use PrintWriter from NettySessionAdapter");
+        throw new UnsupportedOperationException("Use ICanalMensajes from DTOSesion");
     }
 }
 
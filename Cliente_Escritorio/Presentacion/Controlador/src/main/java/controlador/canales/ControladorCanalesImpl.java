@@ -50,6 +50,11 @@ public class ControladorCanalesImpl implements IControladorCanales {
         servicioCanales.solicitarHistorialCanal(canalId, limite);
     }
 
+    @Override
+    public void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite) {
+        servicioCanales.solicitarMensajesAnterioresCanal(canalId, antesDeMensajeId, limite);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String canalId, String contenido) {
         return servicioCanales.enviarMensajeTexto(canalId, contenido);
@@ -10,6 +10,7 @@ public interface IControladorCanales {
     List<DTOCanalCreado> obtenerCanalesCache();
     void registrarObservadorListado(IObservador observador);
     void solicitarHistorialCanal(String canalId, int limite);
+    void solicitarMensajesAnterioresCanal(String canalId, String antesDeMensajeId, int limite);
     CompletableFuture<Void> enviarMensajeTexto(String canalId, String contenido);
     CompletableFuture<Void> enviarMensajeAudio(String canalId, String audioFileId);
     CompletableFuture<Void> enviarArchivo(String canalId, String fileId);
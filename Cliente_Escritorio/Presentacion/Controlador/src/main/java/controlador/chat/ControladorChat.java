@@ -27,6 +27,12 @@ public class ControladorChat implements IControladorChat {
         servicioChat.solicitarHistorial(contactoId);
     }
 
+    @Override
+    public void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId) {
+        System.out.println("➡️ [ControladorChat]: Delegando solicitud de mensajes anteriores al Servicio para el contacto: " + contactoId);
+        servicioChat.solicitarHistorialAnterior(contactoId, antesDeMensajeId);
+    }
+
     @Override
     public CompletableFuture<Void> enviarMensajeTexto(String destinatarioId, String contenido) {
         System.out.println("➡️ [ControladorChat]: Delegando envío de mensaje de texto al Servicio");
@@ -17,6 +17,13 @@ public interface IControladorChat {
      */
     void solicitarHistorial(String contactoId);
 
+    /**
+     * Solicita los mensajes anteriores al más antiguo que se muestra (scroll hacia arriba).
+     * @param contactoId El ID del contacto.
+     * @param antesDeMensajeId El ID del mensaje más antiguo ya cargado.
+     */
+    void solicitarHistorialAnterior(String contactoId, String antesDeMensajeId);
+
     /**
      * Envía un mensaje de texto a un destinatario.
      * @param destinatarioId El ID del destinatario.
@@ -23,6 +23,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
@@ -51,6 +52,12 @@ public class VistaCanal extends BorderPane implements IObservador {
     // ✅ Campo de instancia para el ScrollPane
     private ScrollPane scrollPane;
 
+    // Scroll infinito: al llegar arriba se pide la página anterior al mensaje más antiguo
+    private static final int LIMITE_PAGINA = 50;
+    private String mensajeMasAntiguoId;
+    private boolean hayMasAnteriores = false;
+    private boolean cargandoAnteriores = false;
+
     public VistaCanal(DTOCanalCreado canal, Runnable onVolver, Consumer<DTOCanalCreado> onVerMiembros, IControladorCanales controlador) {
         System.out.println("🔧 [VistaCanal]: Inicializando vista de canal...");
         System.out.println("   → Canal: " + canal.getNombre() + " (ID: " + canal.getId() + ")");
@@ -103,6 +110,11 @@ public class VistaCanal extends BorderPane implements IObservador {
         scrollPane.setFitToWidth(true);
         // ✅ ELIMINAR el binding automático que hace scroll hacia arriba
         // scrollPane.vvalueProperty().bind(mensajesBox.heightProperty());
+        scrollPane.vvalueProperty().addListener((obs, anterior, actual) -> {
+            if (actual.doubleValue() <= 0.0 && anterior.doubleValue() > 0.0) {
+                cargarMensajesAnteriores();
+            }
+        });
 
         // === INPUT AREA ===
         VBox inputArea = new VBox(5);
@@ -167,7 +179,7 @@ public class VistaCanal extends BorderPane implements IObservador {
 
         // Solicitar historial inicial
         System.out.println("📡 [VistaCanal]: Solicitando historial del canal...");
-        controlador.solicitarHistorialCanal(canal.getId(), 50);
+        controlador.solicitarHistorialCanal(canal.getId(), LIMITE_PAGINA);
         System.out.println("✅ [VistaCanal]: Vista inicializada correctamente");
     }
 
@@ -428,6 +440,16 @@ public class VistaCanal extends BorderPane implements IObservador {
                     }
                     break;
 
+                case "HISTORIAL_CANAL_ANTERIOR":
+                    if (datos instanceof Map) {
+                        Map<?, ?> pagina = (Map<?, ?>) datos;
+                        if (canal.getId().equals(pagina.get("canalId"))) {
+                            cargarPaginaAnterior((List<DTOMensajeCanal>) pagina.get("mensajes"),
+                                    Boolean.TRUE.equals(pagina.get("hayMasMensajes")));
+                        }
+                    }
+                    break;
+
                 case "MENSAJE_CANAL_RECIBIDO":
                 case "MENSAJE_CANAL_ENVIADO":
                 case "NUEVO_MENSAJE_CANAL":
@@ -458,6 +480,10 @@ public class VistaCanal extends BorderPane implements IObservador {
     private void cargarHistorial(List<DTOMensajeCanal> mensajes) {
         mensajesBox.getChildren().clear();
         mensajesMostrados.clear();
+        // El servidor devuelve como mucho una página: si vino llena puede haber más
+        mensajeMasAntiguoId = mensajes.isEmpty() ? null : mensajes.get(0).getMensajeId();
+        hayMasAnteriores = mensajes.size() >= LIMITE_PAGINA;
+        cargandoAnteriores = false;
 
         if (mensajes.isEmpty()) {
             Label sinMensajes = new Label("📭 No hay mensajes en este canal. ¡Sé el primero en escribir!");
@@ -478,12 +504,62 @@ public class VistaCanal extends BorderPane implements IObservador {
         }
     }
 
+    /**
+     * Pide la página anterior al mensaje más antiguo mostrado, si quedan y no hay otra en curso.
+     */
+    private void cargarMensajesAnteriores() {
+        if (!hayMasAnteriores || cargandoAnteriores || mensajeMasAntiguoId == null) {
+            return;
+        }
+        cargandoAnteriores = true;
+        System.out.println("⬆️ [VistaCanal]: Cargando mensajes anteriores a " + mensajeMasAntiguoId);
+        controlador.solicitarMensajesAnterioresCanal(canal.getId(), mensajeMasAntiguoId, LIMITE_PAGINA);
+    }
+
+    /**
+     * Inserta una página anterior encima de los mensajes mostrados sin mover la vista.
+     */
+    private void cargarPaginaAnterior(List<DTOMensajeCanal> mensajes, boolean hayMas) {
+        double altoAntes = mensajesBox.getHeight();
+        int posicion = 0;
+        for (DTOMensajeCanal mensaje : mensajes) {
+            if (insertarMensaje(mensaje, posicion)) posicion++;
+        }
+        if (!mensajes.isEmpty()) {
+            mensajeMasAntiguoId = mensajes.get(0).getMensajeId();
+        }
+        hayMasAnteriores = hayMas;
+        cargandoAnteriores = false;
+        System.out.println("📜 [VistaCanal]: Página anterior cargada - Total mensajes: " + mensajes.size());
+
+        mensajesBox.applyCss();
+        mensajesBox.layout();
+        double altoDespues = mensajesBox.getHeight();
+        double desplazable = altoDespues - scrollPane.getViewportBounds().getHeight();
+        if (desplazable > 0) {
+            scrollPane.setVvalue((altoDespues - altoAntes) / desplazable);
+        }
+    }
+
     private void agregarMensaje(DTOMensajeCanal mensaje) {
+        if (insertarMensaje(mensaje, -1)) {
+            // ✅ Hacer scroll automático hacia abajo cuando se agrega un nuevo mensaje
+            Platform.runLater(() -> {
+                scrollPane.setVvalue(1.0); // 1.0 = scroll al final (abajo)
+            });
+        }
+    }
+
+    /**
+     * @param posicion Índice en la lista de mensajes, o -1 para añadir al final
+     * @return false si el mensaje estaba repetido o vacío
+     */
+    private boolean insertarMensaje(DTOMensajeCanal mensaje, int posicion) {
         // Validación para evitar burbujas vacías o duplicadas
         String id = mensaje.getMensajeId();
         if (id != null && !id.isEmpty() && mensajesMostrados.contains(id)) {
             System.out.println("⚠️ [VistaCanal]: Mensaje ya mostrado, ignorando ID: " + id);
-            return;
+            return false;
         }
 
         boolean hasText = mensaje.getContenido() != null && !mensaje.getContenido().trim().isEmpty();
@@ -491,7 +567,7 @@ public class VistaCanal extends BorderPane implements IObservador {
 
         if (!hasText && !hasFile) {
             System.out.println("⚠️ [VistaCanal]: Mensaje vacío, no se mostrará");
-            return;
+            return false;
         }
 
         // ✅ Mensajes propios a la DERECHA (verde), otros a la IZQUIERDA (blanco)
@@ -507,18 +583,18 @@ public class VistaCanal extends BorderPane implements IObservador {
         System.out.println("   → Timestamp: " + mensaje.getFechaEnvio());
 
         VBox burbuja = crearBurbujaMensaje(mensaje, alineacion);
-        mensajesBox.getChildren().add(burbuja);
+        if (posicion < 0) {
+            mensajesBox.getChildren().add(burbuja);
+        } else {
+            mensajesBox.getChildren().add(posicion, burbuja);
+        }
 
         if (id != null && !id.isEmpty()) {
             mensajesMostrados.add(id);
         }
 
-        // ✅ Hacer scroll automático hacia abajo cuando se agrega un nuevo mensaje
-        Platform.runLater(() -> {
-            scrollPane.setVvalue(1.0); // 1.0 = scroll al final (abajo)
-        });
-
         System.out.println("✅ [VistaCanal]: Mensaje agregado a la vista");
+        return true;
     }
 
     private VBox crearBurbujaMensaje(DTOMensajeCanal mensaje, Pos alineacion) {
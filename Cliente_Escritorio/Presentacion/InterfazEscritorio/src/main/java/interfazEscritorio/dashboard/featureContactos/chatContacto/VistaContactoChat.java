@@ -20,7 +20,9 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Collections;
 import java.util.HashSet;
@@ -41,6 +43,13 @@ public class VistaContactoChat extends BorderPane implements IObservador {
     // Evitar mensajes duplicados
     private final Set<String> mensajesMostrados = Collections.synchronizedSet(new HashSet<>());
 
+    // Scroll infinito: al llegar arriba se pide la página anterior al mensaje más antiguo
+    private static final int LIMITE_PAGINA = 50;
+    private final ScrollPane scrollPane;
+    private String mensajeMasAntiguoId;
+    private boolean hayMasAnteriores = false;
+    private boolean cargandoAnteriores = false;
+
     public VistaContactoChat(DTOContacto contacto, IControladorChat controlador, Runnable onVolver) {
         System.out.println("🔧 [VistaContactoChat]: Inicializando vista de chat...");
         System.out.println("   → Contacto: " + contacto.getNombre() + " (ID: " + contacto.getId() + ")");
@@ -64,9 +73,14 @@ public class VistaContactoChat extends BorderPane implements IObservador {
         mensajesBox.setPadding(new Insets(10));
         mensajesBox.setStyle("-fx-background-color: #f9f9f9; -fx-border-color: #e0e0e0; -fx-border-radius: 5;");
 
-        ScrollPane scrollPane = new ScrollPane(mensajesBox);
+        scrollPane = new ScrollPane(mensajesBox);
         scrollPane.setFitToWidth(true);
-        scrollPane.vvalueProperty().bind(mensajesBox.heightProperty()); // Auto-scroll
+        // Sin binding de auto-scroll: el usuario debe poder subir para cargar mensajes anteriores
+        scrollPane.vvalueProperty().addListener((obs, anterior, actual) -> {
+            if (actual.doubleValue() <= 0.0 && anterior.doubleValue() > 0.0) {
+                cargarMensajesAnteriores();
+            }
+        });
         this.setCenter(scrollPane);
 
         // --- Área de Entrada (Abajo) ---
@@ -159,8 +173,11 @@ public class VistaContactoChat extends BorderPane implements IObservador {
 
         switch (tipoDeDato) {
             case "REFRESCAR_MENSAJES":
-                // Señal de actualización global - refrescar el historial
-                System.out.println("🔄 [VistaContactoChat]: Refrescando mensajes por SIGNAL_UPDATE");
+                // Si la señal dice qué conversaciones cambiaron, solo refresca si es esta
+                if (datos instanceof Collection && !((Collection<?>) datos).contains(contacto.getId())) {
+                    break;
+                }
+                System.out.println("🔄 [VistaContactoChat]: Refrescando mensajes por señal de actualización");
                 Platform.runLater(() -> {
                     controlador.solicitarHistorial(contacto.getId());
                 });
@@ -294,42 +311,61 @@ public class VistaContactoChat extends BorderPane implements IObservador {
 
             case "HISTORIAL_MENSAJES_RECIBIDO":
             case "HISTORIAL_MENSAJES":
-                // Historial completo recibido
+                // Última página del historial (los mensajes más recientes)
                 if (datos instanceof List) {
                     List<?> lista = (List<?>) datos;
                     System.out.println("📜 [VistaContactoChat]: Historial recibido - Total mensajes: " + lista.size());
                     Platform.runLater(() -> {
                         mensajesBox.getChildren().clear();
                         mensajesMostrados.clear();
+                        mensajeMasAntiguoId = null;
 
-                        // ✅ NUEVO: Descargar todos los audios del historial a caché local
                         for (Object obj : lista) {
                             if (obj instanceof DTOMensaje) {
                                 DTOMensaje mensaje = (DTOMensaje) obj;
+                                if (mensajeMasAntiguoId == null) mensajeMasAntiguoId = mensaje.getMensajeId();
                                 agregarMensaje(mensaje);
-
-                                // ✅ CORRECCIÓN: Si es audio, descargar usando el FILEID (no el contenido)
-                                if (mensaje.esAudio() && mensaje.getFileId() != null && !mensaje.getFileId().isEmpty()) {
-                                    String fileId = mensaje.getFileId();
-                                    System.out.println("📥 [VistaContactoChat]: Descargando audio del historial - FileId: " + fileId);
-                                    controlador.descargarAudioALocal(fileId)
-                                            .thenAccept(archivo -> {
-                                                if (archivo != null) {
-                                                    System.out.println("✅ [VistaContactoChat]: Audio del historial descargado: " + archivo.getName());
-                                                }
-                                            })
-                                            .exceptionally(ex -> {
-                                                System.err.println("⚠️ [VistaContactoChat]: Error al descargar audio del historial: " + ex.getMessage());
-                                                return null;
-                                            });
-                                }
+                                descargarAudioDelHistorial(mensaje);
                             }
                         }
+                        // El servidor devuelve como mucho una página: si vino llena puede haber más
+                        hayMasAnteriores = lista.size() >= LIMITE_PAGINA;
+                        cargandoAnteriores = false;
                         System.out.println("✅ [VistaContactoChat]: Historial cargado en la vista");
                     });
                 }
                 break;
 
+            case "HISTORIAL_MENSAJES_ANTERIORES":
+                // Página anterior (scroll hacia arriba): se inserta encima de lo que ya se muestra
+                if (datos instanceof Map) {
+                    Map<?, ?> pagina = (Map<?, ?>) datos;
+                    if (!contacto.getId().equals(pagina.get("contactoId"))) {
+                        break;
+                    }
+                    List<?> lista = (List<?>) pagina.get("mensajes");
+                    boolean hayMas = Boolean.TRUE.equals(pagina.get("hayMasMensajes"));
+                    System.out.println("📜 [VistaContactoChat]: Mensajes anteriores recibidos - Total: " + lista.size());
+                    Platform.runLater(() -> {
+                        double altoAntes = mensajesBox.getHeight();
+                        int posicion = 0;
+                        for (Object obj : lista) {
+                            if (obj instanceof DTOMensaje) {
+                                DTOMensaje mensaje = (DTOMensaje) obj;
+                                if (insertarMensaje(mensaje, posicion)) posicion++;
+                                descargarAudioDelHistorial(mensaje);
+                            }
+                        }
+                        if (!lista.isEmpty() && lista.get(0) instanceof DTOMensaje) {
+                            mensajeMasAntiguoId = ((DTOMensaje) lista.get(0)).getMensajeId();
+                        }
+                        hayMasAnteriores = hayMas;
+                        cargandoAnteriores = false;
+                        mantenerPosicionScroll(altoAntes);
+                    });
+                }
+                break;
+
             case "ERROR_ENVIO_MENSAJE":
             case "ERROR_ENVIO_MENSAJE_AUDIO": // ✅ Agregado para errores de audio
                 // Error al enviar mensaje
@@ -356,12 +392,68 @@ public class VistaContactoChat extends BorderPane implements IObservador {
         }
     }
 
+    /**
+     * Pide la página anterior al mensaje más antiguo mostrado, si quedan y no hay otra en curso.
+     */
+    private void cargarMensajesAnteriores() {
+        if (!hayMasAnteriores || cargandoAnteriores || mensajeMasAntiguoId == null) {
+            return;
+        }
+        cargandoAnteriores = true;
+        System.out.println("⬆️ [VistaContactoChat]: Cargando mensajes anteriores a " + mensajeMasAntiguoId);
+        controlador.solicitarHistorialAnterior(contacto.getId(), mensajeMasAntiguoId);
+    }
+
+    /**
+     * Tras insertar mensajes arriba, desplaza el scroll para que la vista no salte.
+     */
+    private void mantenerPosicionScroll(double altoAntes) {
+        mensajesBox.applyCss();
+        mensajesBox.layout();
+        double altoDespues = mensajesBox.getHeight();
+        double desplazable = altoDespues - scrollPane.getViewportBounds().getHeight();
+        if (desplazable > 0) {
+            scrollPane.setVvalue((altoDespues - altoAntes) / desplazable);
+        }
+    }
+
+    /**
+     * Descarga a caché local el audio de un mensaje del historial (usando su FILEID).
+     */
+    private void descargarAudioDelHistorial(DTOMensaje mensaje) {
+        if (mensaje.esAudio() && mensaje.getFileId() != null && !mensaje.getFileId().isEmpty()) {
+            String fileId = mensaje.getFileId();
+            System.out.println("📥 [VistaContactoChat]: Descargando audio del historial - FileId: " + fileId);
+            controlador.descargarAudioALocal(fileId)
+                    .thenAccept(archivo -> {
+                        if (archivo != null) {
+                            System.out.println("✅ [VistaContactoChat]: Audio del historial descargado: " + archivo.getName());
+                        }
+                    })
+                    .exceptionally(ex -> {
+                        System.err.println("⚠️ [VistaContactoChat]: Error al descargar audio del historial: " + ex.getMessage());
+                        return null;
+                    });
+        }
+    }
+
     private void agregarMensaje(DTOMensaje mensaje) {
+        if (insertarMensaje(mensaje, -1)) {
+            // Auto-scroll al final al añadir un mensaje nuevo
+            Platform.runLater(() -> scrollPane.setVvalue(1.0));
+        }
+    }
+
+    /**
+     * @param posicion Índice en la lista de mensajes, o -1 para añadir al final
+     * @return false si el mensaje estaba repetido o vacío
+     */
+    private boolean insertarMensaje(DTOMensaje mensaje, int posicion) {
         // Validaciones para evitar burbujas vacías o duplicadas
         String id = mensaje.getMensajeId();
         if (id != null && !id.isEmpty() && mensajesMostrados.contains(id)) {
             System.out.println("⚠️ [VistaContactoChat]: Mensaje ya mostrado, ignorando ID: " + id);
-            return;
+            return false;
         }
 
         boolean hasText = mensaje.getContenido() != null && !mensaje.getContenido().trim().isEmpty();
@@ -369,7 +461,7 @@ public class VistaContactoChat extends BorderPane implements IObservador {
 
         if (!hasText && !hasFile) {
             System.out.println("⚠️ [VistaContactoChat]: Mensaje vacío, no se mostrará");
-            return;
+            return false;
         }
 
         // ✅ CORRECTO: Mensajes del usuario a la DERECHA, mensajes del contacto a la IZQUIERDA
@@ -402,7 +494,11 @@ public class VistaContactoChat extends BorderPane implements IObservador {
                     "[" + mensaje.getTipo() + "] " + mensaje.getContenido(), alineacion);
         }
 
-        mensajesBox.getChildren().add(burbuja);
+        if (posicion < 0) {
+            mensajesBox.getChildren().add(burbuja);
+        } else {
+            mensajesBox.getChildren().add(posicion, burbuja);
+        }
 
         if (id != null && !id.isEmpty()) {
             mensajesMostrados.add(id);
@@ -410,6 +506,7 @@ public class VistaContactoChat extends BorderPane implements IObservador {
 
         System.out.println("✅ [VistaContactoChat]: Mensaje agregado a la vista - " +
                 (mensaje.esMio() ? "Enviado (izquierda)" : "Recibido (derecha)") + " - Tipo: " + mensaje.getTipo());
+        return true;
     }
 
     private VBox crearBurbujaMensaje(DTOMensaje mensaje, String autor, String contenido, Pos alineacion) {
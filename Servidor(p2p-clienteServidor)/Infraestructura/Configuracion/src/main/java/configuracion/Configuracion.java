@@ -111,4 +111,107 @@ public class Configuracion {
     public int getDbMaxPool() {
         return Integer.parseInt(props.getProperty("db.max.pool", "10"));
     }
-}
\ No newline at end of file
+
+    // --- Configuración del despacho de mensajes (Transporte) ---
+
+    /**
+     * Indica si los mensajes recibidos se procesan fuera de los event loops de Netty.
+     * @return true por defecto
+     */
+    public boolean isDespachoHabilitado() {
+        return Boolean.parseBoolean(props.getProperty("transporte.despacho.habilitado", "true"));
+    }
+
+    /**
+     * Obtiene el número de hilos del pool de despacho (cuando no se usan hilos virtuales).
+     * @return Número de hilos (por defecto: 2 x núcleos)
+     */
+    public int getDespachoHilos() {
+        String valor = props.getProperty("transporte.despacho.hilos");
+        return valor != null && !valor.trim().isEmpty()
+                ? Integer.parseInt(valor.trim())
+                : Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    /**
+     * Obtiene el máximo de mensajes pendientes por conexión antes de pausar la lectura del socket.
+     * @return Máximo de mensajes pendientes (por defecto: 256)
+     */
+    public int getDespachoMaxPendientesPorConexion() {
+        return Integer.parseInt(props.getProperty("transporte.despacho.max.pendientes", "256"));
+    }
+
+    /**
+     * Indica si se deben usar hilos virtuales para el despacho (solo disponible en Java 21+).
+     * @return true por defecto
+     */
+    public boolean isDespachoHilosVirtuales() {
+        return Boolean.parseBoolean(props.getProperty("transporte.despacho.hilos.virtuales", "true"));
+    }
+
+    /**
+     * Obtiene cada cuántos segundos se registran en el log las métricas del despachador.
+     * @return Intervalo en segundos (por defecto: 60; 0 lo desactiva)
+     */
+    public int getDespachoMetricasIntervaloSeg() {
+        return Integer.parseInt(props.getProperty("transporte.despacho.metricas.intervalo.seg", "60"));
+    }
+
+    // --- Configuración de la sincronización P2P ---
+
+    /**
+     * Obtiene cuántas entidades se piden/envían por trama en las fases 4 y 5 de la sincronización.
+     * @return Entidades por lote (por defecto: 200)
+     */
+    public int getSyncLoteTamano() {
+        return Integer.parseInt(props.getProperty("sync.lote.tamano", "200"));
+    }
+
+    /**
+     * Obtiene el máximo de lotes sin respuesta por peer y tipo de entidad.
+     * @return Lotes en vuelo (por defecto: 4)
+     */
+    public int getSyncLoteMaxEnVuelo() {
+        return Integer.parseInt(props.getProperty("sync.lote.max.en.vuelo", "4"));
+    }
+
+    /**
+     * Obtiene la espera sin nuevos cambios antes de avisar a los peers (agrupación de cambios).
+     * @return Milisegundos de espera (por defecto: 500)
+     */
+    public long getSyncDebounceMs() {
+        return Long.parseLong(props.getProperty("sync.debounce.ms", "500"));
+    }
+
+    /**
+     * Obtiene la espera máxima desde el primer cambio agrupado, aunque sigan llegando cambios.
+     * @return Milisegundos máximos de espera (por defecto: 2000)
+     */
+    public long getSyncDebounceMaxMs() {
+        return Long.parseLong(props.getProperty("sync.debounce.max.ms", "2000"));
+    }
+
+    /**
+     * Obtiene cada cuánto se lanza una ronda completa de anti-entropía con los peers.
+     * @return Segundos entre rondas; 0 la desactiva (por defecto: 60)
+     */
+    public long getSyncAntientropiaSegundos() {
+        return Long.parseLong(props.getProperty("sync.antientropia.segundos", "60"));
+    }
+
+    /**
+     * Obtiene cada cuánto se reenvían los deltas sin confirmar y se vuelven a pedir los huecos.
+     * @return Milisegundos entre revisiones (por defecto: 2000)
+     */
+    public long getSyncDeltaReintentoMs() {
+        return Long.parseLong(props.getProperty("sync.delta.reintento.ms", "2000"));
+    }
+
+    /**
+     * Obtiene cuántas entradas del log de replicación local se conservan para reenvíos.
+     * @return Entradas conservadas (por defecto: 100000)
+     */
+    public long getSyncDeltaRetencion() {
+        return Long.parseLong(props.getProperty("sync.delta.retencion", "100000"));
+    }
+}
@@ -7,6 +7,9 @@ package dto.canales;
 public class DTOListarMiembros {
     private String canalId;
     private String solicitanteId;
+    // Paginación opcional: máximo de miembros (0 = todos) e ID del último recibido
+    private int limite;
+    private String cursor;
 
     public DTOListarMiembros() {}
 
@@ -31,11 +34,29 @@ public class DTOListarMiembros {
         this.solicitanteId = solicitanteId;
     }
 
+    public int getLimite() {
+        return limite;
+    }
+
+    public void setLimite(int limite) {
+        this.limite = limite;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     @Override
     public String toString() {
         return "DTOListarMiembros{" +
                 "canalId='" + canalId + '\'' +
                 ", solicitanteId='" + solicitanteId + '\'' +
+                ", limite=" + limite +
+                ", cursor='" + cursor + '\'' +
                 '}';
     }
 }
@@ -13,6 +13,9 @@ public class DTOSolicitarHistorialCanal implements Serializable {
     private String usuarioId;
     private int limite;
     private int offset;
+    // Cursores (ID de mensaje) para paginar; sin ellos se devuelven los más recientes
+    private String antesDe;
+    private String despuesDe;
 
     public DTOSolicitarHistorialCanal() {
         this.limite = 50; // Valor por defecto
@@ -59,6 +62,22 @@ public class DTOSolicitarHistorialCanal implements Serializable {
         this.offset = offset;
     }
 
+    public String getAntesDe() {
+        return antesDe;
+    }
+
+    public void setAntesDe(String antesDe) {
+        this.antesDe = antesDe;
+    }
+
+    public String getDespuesDe() {
+        return despuesDe;
+    }
+
+    public void setDespuesDe(String despuesDe) {
+        this.despuesDe = despuesDe;
+    }
+
     @Override
     public String toString() {
         return "DTOSolicitarHistorialCanal{" +
@@ -66,6 +85,8 @@ public class DTOSolicitarHistorialCanal implements Serializable {
                 ", usuarioId='" + usuarioId + '\'' +
                 ", limite=" + limite +
                 ", offset=" + offset +
+                ", antesDe='" + antesDe + '\'' +
+                ", despuesDe='" + despuesDe + '\'' +
                 '}';
     }
 }
@@ -12,6 +12,8 @@ public class DTOLog {
     private String level;
     private String source;
     private String message;
+    // Posición en el almacén de logs del nodo; permite paginar con cursores
+    private long secuencia;
 
     public DTOLog() {
     }
@@ -63,6 +65,14 @@ public class DTOLog {
         this.message = message;
     }
 
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public void setSecuencia(long secuencia) {
+        this.secuencia = secuencia;
+    }
+
     @Override
     public String toString() {
         return String.format("[%s] %s - %s: %s", timestamp, level, source, message);
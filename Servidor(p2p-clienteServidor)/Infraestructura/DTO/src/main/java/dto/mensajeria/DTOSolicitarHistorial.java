@@ -9,6 +9,10 @@ public class DTOSolicitarHistorial {
     private String destinatarioId;
     private String peerRemitenteId;
     private String peerDestinatarioId;
+    // Paginación opcional: máximo de mensajes y cursores (ID de mensaje)
+    private int limite;
+    private String antesDe;
+    private String despuesDe;
 
     public DTOSolicitarHistorial() {}
 
@@ -50,4 +54,28 @@ public class DTOSolicitarHistorial {
     public void setPeerDestinatarioId(String peerDestinatarioId) {
         this.peerDestinatarioId = peerDestinatarioId;
     }
-}
\ No newline at end of file
+
+    public int getLimite() {
+        return limite;
+    }
+
+    public void setLimite(int limite) {
+        this.limite = limite;
+    }
+
+    public String getAntesDe() {
+        return antesDe;
+    }
+
+    public void setAntesDe(String antesDe) {
+        this.antesDe = antesDe;
+    }
+
+    public String getDespuesDe() {
+        return despuesDe;
+    }
+
+    public void setDespuesDe(String despuesDe) {
+        this.despuesDe = despuesDe;
+    }
+}
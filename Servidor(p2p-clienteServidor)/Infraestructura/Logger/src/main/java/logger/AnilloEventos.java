@@ -0,0 +1,98 @@
+package logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Buffer circular acotado sin locks para varios productores y un único consumidor.
+ *
+ * Cada hueco lleva un número de secuencia que indica si está libre para la vuelta
+ * actual del productor o ya publicado para el consumidor: los productores solo
+ * compiten por un CAS sobre la cola y el consumidor no usa operaciones atómicas
+ * compuestas. Con el buffer lleno {@link #ofrecer} devuelve false y el llamador
+ * decide qué hacer (esperar o descartar).
+ */
+final class AnilloEventos<T> {
+
+    private final Object[] elementos;
+    private final AtomicLongArray secuencias;
+    private final int mascara;
+    private final AtomicLong cola = new AtomicLong();
+    // Solo lo toca el consumidor
+    private long cabeza = 0;
+
+    /**
+     * @param capacidad Se redondea a la siguiente potencia de 2
+     */
+    AnilloEventos(int capacidad) {
+        int tamano = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.elementos = new Object[tamano];
+        this.secuencias = new AtomicLongArray(tamano);
+        this.mascara = tamano - 1;
+        for (int i = 0; i < tamano; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Publica un elemento. Puede llamarse desde cualquier hilo.
+     *
+     * @return false si el buffer está lleno
+     */
+    boolean ofrecer(T elemento) {
+        long posicion = cola.get();
+        while (true) {
+            int indice = (int) (posicion & mascara);
+            long diferencia = secuencias.get(indice) - posicion;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    elementos[indice] = elemento;
+                    // La escritura volátil de la secuencia publica el elemento al consumidor
+                    secuencias.set(indice, posicion + 1);
+                    return true;
+                }
+                posicion = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                posicion = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Extrae el siguiente elemento publicado. Solo desde el hilo consumidor.
+     *
+     * @return null si no hay elementos
+     */
+    @SuppressWarnings("unchecked")
+    T tomar() {
+        int indice = (int) (cabeza & mascara);
+        if (secuencias.get(indice) != cabeza + 1) {
+            return null;
+        }
+        T elemento = (T) elementos[indice];
+        elementos[indice] = null;
+        // El hueco queda libre para la siguiente vuelta de los productores
+        secuencias.set(indice, cabeza + mascara + 1);
+        cabeza++;
+        return elemento;
+    }
+
+    /**
+     * Posiciones reservadas por los productores hasta ahora (publicadas o a punto de
+     * publicarse). Cuando el consumidor ha extraído esta cantidad, todo lo reservado
+     * antes de la llamada está consumido.
+     */
+    long reservados() {
+        return cola.get();
+    }
+
+    boolean estaVacio() {
+        return secuencias.get((int) (cabeza & mascara)) != cabeza + 1;
+    }
+
+    int capacidad() {
+        return mascara + 1;
+    }
+}
@@ -2,28 +2,65 @@ package logger;
 
 import observador.IObservador;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
-
+import java.util.function.Supplier;
+
+/**
+ * Logger central asíncrono.
+ *
+ * Los hilos que registran solo comprueban el nivel, capturan hora e hilo y publican
+ * el evento en un buffer circular sin locks ({@link AnilloEventos}). Un hilo propio
+ * consume los eventos por lotes: da formato, imprime en consola, escribe en
+ * logs/app.log (un flush por lote) y notifica a los observadores.
+ *
+ * Configuración (propiedad del sistema o variable de entorno):
+ * - LOGGER_LEVEL: DEBUG | INFO | WARN | ERROR
+ * - LOGGER_BUFFER: capacidad del buffer (eventos, por defecto 8192)
+ * - LOGGER_DESBORDE: qué hacer con el buffer lleno
+ *     BLOQUEAR        el hilo espera a que haya hueco (no se pierde nada)
+ *     DESCARTAR_DEBUG se descartan los DEBUG; el resto espera (por defecto)
+ *     MUESTREAR       se conserva 1 de cada 100 DEBUG/INFO; WARN y ERROR esperan
+ */
 public final class LoggerCentral {
 
     private static final DateTimeFormatter TF = DateTimeFormatter.ofPattern("HH:mm:ss"); // Formato hora corta para consola
     private static final DateTimeFormatter FULL_TF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"); // Formato completo para logs
+    private static final ZoneId ZONA = ZoneId.systemDefault();
     private static final Level LEVEL;
+    private static final Desborde DESBORDE;
     private static PrintWriter fileWriter;
 
+    // Eventos por lote del consumidor y muestreo con el buffer lleno
+    private static final int TAMANO_LOTE = 512;
+    private static final int MUESTREO = 100;
+
     // Hook para la interfaz de usuario (Consola limpia)
-    private static Consumer<String> printer;
+    private static volatile Consumer<String> printer;
 
     // Lista de observadores para logs en tiempo real
-    private static final List<IObservador> observadores = new ArrayList<>();
+    private static final List<IObservador> observadores = new CopyOnWriteArrayList<>();
+
+    private static final AnilloEventos<Evento> buffer;
+    private static final Thread consumidor;
+    private static volatile boolean consumidorEsperando = false;
+    private static final AtomicLong descartados = new AtomicLong();
+    private static final AtomicLong contadorMuestreo = new AtomicLong();
+    // Eventos extraídos del buffer (escritos o perdidos por un error); solo lo escribe el consumidor
+    private static volatile long procesados = 0;
 
     // Colores ANSI
     private static final String RESET = "\u001B[0m";
@@ -34,15 +71,30 @@ public final class LoggerCentral {
     private static final String GRIS = "\u001B[90m";
 
     static {
-        String lvl = System.getProperty("LOGGER_LEVEL");
-        if (lvl == null) lvl = System.getenv("LOGGER_LEVEL");
+        String lvl = leerConfiguracion("LOGGER_LEVEL");
         Level parsed = Level.DEBUG; // Default a DEBUG para ver todo en desarrollo
         if (lvl != null) {
-            try { parsed = Level.valueOf(lvl.trim().toUpperCase()); } 
+            try { parsed = Level.valueOf(lvl.trim().toUpperCase()); }
             catch (IllegalArgumentException e) { /* Nivel invalido, usa DEBUG por defecto */ }
         }
         LEVEL = parsed;
 
+        String desborde = leerConfiguracion("LOGGER_DESBORDE");
+        Desborde politica = Desborde.DESCARTAR_DEBUG;
+        if (desborde != null) {
+            try { politica = Desborde.valueOf(desborde.trim().toUpperCase()); }
+            catch (IllegalArgumentException e) { /* Política inválida, usa DESCARTAR_DEBUG */ }
+        }
+        DESBORDE = politica;
+
+        int capacidad = 8192;
+        String cap = leerConfiguracion("LOGGER_BUFFER");
+        if (cap != null) {
+            try { capacidad = Math.max(64, Integer.parseInt(cap.trim())); }
+            catch (NumberFormatException e) { /* Capacidad inválida, usa 8192 */ }
+        }
+        buffer = new AnilloEventos<>(capacidad);
+
         try {
             File dir = new File("logs");
             if (!dir.exists()) {
@@ -52,15 +104,28 @@ public final class LoggerCentral {
                 }
             }
             File f = new File(dir, "app.log");
-            fileWriter = new PrintWriter(new FileWriter(f, true), true);
+            // Sin autoflush: el consumidor hace un flush por lote
+            fileWriter = new PrintWriter(new BufferedWriter(new FileWriter(f, true), 64 * 1024), false);
         } catch (IOException e) {
             fileWriter = null;
             System.err.println("[LoggerCentral] No se pudo abrir logs/app.log: " + e.getMessage());
         }
+
+        consumidor = new Thread(LoggerCentral::consumir, "LoggerCentral");
+        consumidor.setDaemon(true);
+        consumidor.start();
+
+        // Al salir se escriben los eventos pendientes
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> vaciar(2000), "LoggerCentral-cierre"));
     }
 
     private LoggerCentral() {}
 
+    private static String leerConfiguracion(String clave) {
+        String valor = System.getProperty(clave);
+        return valor != null ? valor : System.getenv(clave);
+    }
+
     /**
      * Permite que la Vista se suscriba para manejar la impresión (borrar línea, etc).
      */
@@ -71,96 +136,62 @@ public final class LoggerCentral {
     // --- GESTIÓN DE OBSERVADORES ---
 
     public static void registrarObservador(IObservador observador) {
-        synchronized (observadores) {
-            if (!observadores.contains(observador)) {
-                observadores.add(observador);
-            }
+        if (!observadores.contains(observador)) {
+            observadores.add(observador);
         }
     }
 
     public static void removerObservador(IObservador observador) {
-        synchronized (observadores) {
-            observadores.remove(observador);
-        }
-    }
-
-    private static void notificarObservadores(String tipoDeDato, Object datos) {
-        synchronized (observadores) {
-            for (IObservador obs : observadores) {
-                obs.actualizar(tipoDeDato, datos);
-            }
-        }
+        observadores.remove(observador);
     }
 
-    private static String prefijo() {
-        return GRIS + "[" + TF.format(LocalDateTime.now()) + "] [" + Thread.currentThread().getName() + "] " + RESET;
-    }
-
-    private static synchronized void write(String consoleMsg, String fileMsg, boolean err, String level, String source) {
-        // 1. Imprimir en Consola (vía Printer si existe, o System.out)
-        if (printer != null) {
-            printer.accept(consoleMsg);
-        } else {
-            if (err) System.err.println(consoleMsg); else System.out.println(consoleMsg);
-        }
-
-        // 2. Imprimir en Fichero (Sin colores ANSI)
-        if (fileWriter != null) {
-            fileWriter.println(fileMsg);
-        }
+    // --- CONSULTA DE NIVEL ---
 
-        // 3. Notificar a observadores con información estructurada
-        String timestamp = FULL_TF.format(LocalDateTime.now());
-        String[] logData = {timestamp, level, source, extractMessage(fileMsg)};
-        notificarObservadores("NUEVO_LOG", logData);
+    public static boolean debugHabilitado() {
+        return LEVEL.level <= Level.DEBUG.level;
     }
 
-    private static String extractMessage(String fileMsg) {
-        // Extrae el mensaje eliminando el prefijo [LEVEL]
-        if (fileMsg.startsWith("[")) {
-            int endBracket = fileMsg.indexOf("]");
-            if (endBracket > 0 && endBracket < fileMsg.length() - 1) {
-                return fileMsg.substring(endBracket + 2);
-            }
-        }
-        return fileMsg;
+    public static boolean infoHabilitado() {
+        return LEVEL.level <= Level.INFO.level;
     }
 
     // --- MÉTODOS CON TAG (Para mantener compatibilidad con el código generado) ---
 
     public static void info(String tag, String msg) {
         if (LEVEL.level <= Level.INFO.level) {
-            String fullMsg = "[" + tag + "] " + msg;
-            String console = prefijo() + VERDE + "INFO: " + RESET + fullMsg;
-            String file = "[INFO] " + fullMsg;
-            write(console, file, false, "INFO", tag);
+            publicar(Level.INFO, tag, msg, null);
         }
     }
 
     public static void debug(String tag, String msg) {
         if (LEVEL.level <= Level.DEBUG.level) {
-            String fullMsg = "[" + tag + "] " + msg;
-            String console = prefijo() + MAGENTA + "DEBUG: " + RESET + fullMsg;
-            String file = "[DEBUG] " + fullMsg;
-            write(console, file, false, "DEBUG", tag);
+            publicar(Level.DEBUG, tag, msg, null);
         }
     }
 
     public static void warn(String tag, String msg) {
         if (LEVEL.level <= Level.WARN.level) {
-            String fullMsg = "[" + tag + "] " + msg;
-            String console = prefijo() + AMARILLO + "WARN: " + RESET + fullMsg;
-            String file = "[WARN] " + fullMsg;
-            write(console, file, true, "WARNING", tag);
+            publicar(Level.WARN, tag, msg, null);
         }
     }
 
     public static void error(String tag, String msg) {
         if (LEVEL.level <= Level.ERROR.level) {
-            String fullMsg = "[" + tag + "] " + msg;
-            String console = prefijo() + ROJO + "ERROR: " + RESET + fullMsg;
-            String file = "[ERROR] " + fullMsg;
-            write(console, file, true, "ERROR", tag);
+            publicar(Level.ERROR, tag, msg, null);
+        }
+    }
+
+    // --- MÉTODOS CON MENSAJE DIFERIDO (el mensaje solo se construye si el nivel está activo) ---
+
+    public static void info(String tag, Supplier<String> msg) {
+        if (LEVEL.level <= Level.INFO.level) {
+            publicar(Level.INFO, tag, msg.get(), null);
+        }
+    }
+
+    public static void debug(String tag, Supplier<String> msg) {
+        if (LEVEL.level <= Level.DEBUG.level) {
+            publicar(Level.DEBUG, tag, msg.get(), null);
         }
     }
 
@@ -168,48 +199,210 @@ public final class LoggerCentral {
 
     public static void info(String msg) {
         if (LEVEL.level <= Level.INFO.level) {
-            String console = prefijo() + VERDE + "INFO: " + RESET + msg;
-            String file = "[INFO] " + msg;
-            write(console, file, false, "INFO", "System");
+            publicar(Level.INFO, null, msg, null);
         }
     }
 
     public static void debug(String msg) {
         if (LEVEL.level <= Level.DEBUG.level) {
-            String console = prefijo() + MAGENTA + "DEBUG: " + RESET + msg;
-            String file = "[DEBUG] " + msg;
-            write(console, file, false, "DEBUG", "System");
+            publicar(Level.DEBUG, null, msg, null);
         }
     }
 
     public static void warn(String msg) {
         if (LEVEL.level <= Level.WARN.level) {
-            String console = prefijo() + AMARILLO + "WARN: " + RESET + msg;
-            String file = "[WARN] " + msg;
-            write(console, file, true, "WARNING", "System");
+            publicar(Level.WARN, null, msg, null);
         }
     }
 
     public static void error(String msg) {
         if (LEVEL.level <= Level.ERROR.level) {
-            String console = prefijo() + ROJO + "ERROR: " + RESET + msg;
-            String file = "[ERROR] " + msg;
-            write(console, file, true, "ERROR", "System");
+            publicar(Level.ERROR, null, msg, null);
         }
     }
 
     public static void error(String msg, Throwable t) {
         if (LEVEL.level <= Level.ERROR.level) {
-            String console = prefijo() + ROJO + "ERROR: " + RESET + msg + " - " + t.getMessage();
-            String file = "[ERROR] " + msg + " - " + t.getMessage();
-            write(console, file, true, "ERROR", "System");
-            if (fileWriter != null) t.printStackTrace(fileWriter);
+            publicar(Level.ERROR, null, msg + " - " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Espera a que el consumidor escriba todo lo publicado hasta ahora.
+     * Se compara con las posiciones reservadas en el buffer y no con un contador
+     * aparte: un evento ya reservado pero aún sin contar no puede quedar fuera.
+     *
+     * @return false si se agotó el plazo
+     */
+    public static boolean vaciar(long timeoutMs) {
+        long objetivo = buffer.reservados();
+        long limite = System.currentTimeMillis() + timeoutMs;
+        LockSupport.unpark(consumidor);
+        while (procesados < objetivo) {
+            if (System.currentTimeMillis() > limite) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
         }
+        return true;
+    }
+
+    // --- PRODUCTORES ---
+
+    private static void publicar(Level nivel, String tag, String msg, Throwable t) {
+        Evento evento = new Evento(nivel, tag, msg, t, System.currentTimeMillis(), Thread.currentThread().getName());
+        if (Thread.currentThread() == consumidor) {
+            // Un observador que registra desde el consumidor no puede esperar hueco
+            if (!buffer.ofrecer(evento)) descartados.incrementAndGet();
+            return;
+        }
+
+        while (!buffer.ofrecer(evento)) {
+            if (descartarConBufferLleno(nivel)) {
+                descartados.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(consumidor);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        if (consumidorEsperando) {
+            LockSupport.unpark(consumidor);
+        }
+    }
+
+    private static boolean descartarConBufferLleno(Level nivel) {
+        switch (DESBORDE) {
+            case DESCARTAR_DEBUG:
+                return nivel == Level.DEBUG;
+            case MUESTREAR:
+                return nivel.level <= Level.INFO.level && contadorMuestreo.incrementAndGet() % MUESTREO != 0;
+            default:
+                return false;
+        }
+    }
+
+    // --- CONSUMIDOR ---
+
+    private static void consumir() {
+        StringBuilder salida = new StringBuilder();
+        StringBuilder errores = new StringBuilder();
+        while (true) {
+            int procesadosLote = 0;
+            try {
+                Evento evento;
+                while (procesadosLote < TAMANO_LOTE && (evento = buffer.tomar()) != null) {
+                    // Se cuenta al extraerlo: si escribir() falla, el evento ya salió del buffer
+                    procesadosLote++;
+                    escribir(evento, salida, errores);
+                }
+
+                if (procesadosLote == 0) {
+                    consumidorEsperando = true;
+                    if (buffer.estaVacio()) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                    }
+                    consumidorEsperando = false;
+                    continue;
+                }
+
+                if (salida.length() > 0) {
+                    System.out.print(salida);
+                }
+                if (errores.length() > 0) {
+                    System.err.print(errores);
+                }
+                if (fileWriter != null) {
+                    fileWriter.flush();
+                }
+            } catch (Throwable e) {
+                System.err.println("[LoggerCentral] Error en el hilo de logs (lote de " + procesadosLote + "): " + e.getMessage());
+            } finally {
+                // Pase lo que pase el lote cuenta como procesado, o vaciar() esperaría hasta el plazo
+                salida.setLength(0);
+                errores.setLength(0);
+                procesados += procesadosLote;
+            }
+
+            long perdidos = descartados.getAndSet(0);
+            if (perdidos > 0) {
+                publicar(Level.WARN, "LoggerCentral", perdidos + " mensajes descartados con el buffer lleno (" + DESBORDE + ")", null);
+            }
+        }
+    }
+
+    /**
+     * Da formato al evento y lo entrega a consola, fichero y observadores.
+     * Sin printer, la consola se acumula y se imprime una vez por lote.
+     */
+    private static void escribir(Evento evento, StringBuilder salida, StringBuilder errores) {
+        Level nivel = evento.nivel;
+        String fullMsg = evento.tag != null ? "[" + evento.tag + "] " + evento.msg : evento.msg;
+        LocalDateTime momento = LocalDateTime.ofInstant(Instant.ofEpochMilli(evento.momento), ZONA);
+
+        // 1. Imprimir en Consola (vía Printer si existe, o System.out)
+        String console = GRIS + "[" + TF.format(momento) + "] [" + evento.hilo + "] " + RESET +
+                nivel.color + nivel.name() + ": " + RESET + fullMsg;
+        Consumer<String> p = printer;
+        if (p != null) {
+            p.accept(console);
+        } else {
+            (nivel.level >= Level.WARN.level ? errores : salida).append(console).append(System.lineSeparator());
+        }
+
+        // 2. Imprimir en Fichero (Sin colores ANSI)
+        if (fileWriter != null) {
+            fileWriter.println("[" + nivel.name() + "] " + fullMsg);
+            if (evento.error != null) evento.error.printStackTrace(fileWriter);
+        }
+
+        // 3. Notificar a observadores con información estructurada
+        if (!observadores.isEmpty()) {
+            String[] logData = {FULL_TF.format(momento), nivel.etiqueta, evento.tag != null ? evento.tag : "System", fullMsg};
+            for (IObservador obs : observadores) {
+                try {
+                    obs.actualizar("NUEVO_LOG", logData);
+                } catch (Exception e) {
+                    System.err.println("[LoggerCentral] Error en observador: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Evento publicado por un hilo productor. El formato se aplica en el consumidor.
+     */
+    private static final class Evento {
+        final Level nivel;
+        final String tag;
+        final String msg;
+        final Throwable error;
+        final long momento;
+        final String hilo;
+
+        Evento(Level nivel, String tag, String msg, Throwable error, long momento, String hilo) {
+            this.nivel = nivel;
+            this.tag = tag;
+            this.msg = msg;
+            this.error = error;
+            this.momento = momento;
+            this.hilo = hilo;
+        }
+    }
+
+    private enum Desborde {
+        BLOQUEAR, DESCARTAR_DEBUG, MUESTREAR
     }
 
     private enum Level {
-        DEBUG(1), INFO(2), WARN(3), ERROR(4);
+        DEBUG(1, MAGENTA, "DEBUG"), INFO(2, VERDE, "INFO"), WARN(3, AMARILLO, "WARNING"), ERROR(4, ROJO, "ERROR");
         final int level;
-        Level(int level) { this.level = level; }
+        final String color;
+        // Nombre que reciben los observadores (compatibilidad con la tabla de logs)
+        final String etiqueta;
+        Level(int level, String color, String etiqueta) {
+            this.level = level;
+            this.color = color;
+            this.etiqueta = etiqueta;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package logger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnilloEventosTest {
+
+    @Test
+    void capacidadSeRedondeaAPotenciaDeDos() {
+        assertEquals(8, new AnilloEventos<String>(5).capacidad());
+        assertEquals(8, new AnilloEventos<String>(8).capacidad());
+        assertEquals(16, new AnilloEventos<String>(9).capacidad());
+    }
+
+    @Test
+    void entregaEnOrdenYRechazaConElBufferLleno() {
+        AnilloEventos<Integer> anillo = new AnilloEventos<>(4);
+        assertTrue(anillo.estaVacio());
+        assertNull(anillo.tomar());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(anillo.ofrecer(i));
+        }
+        assertFalse(anillo.ofrecer(4));
+        assertEquals(4, anillo.reservados());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, anillo.tomar());
+        }
+        assertTrue(anillo.estaVacio());
+        assertNull(anillo.tomar());
+    }
+
+    @Test
+    void losHuecosSeReutilizanEnCadaVuelta() {
+        AnilloEventos<Integer> anillo = new AnilloEventos<>(4);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(anillo.ofrecer(i));
+            if (i % 3 == 0) {
+                assertTrue(anillo.ofrecer(-i));
+                assertEquals(i, anillo.tomar());
+                assertEquals(-i, anillo.tomar());
+            } else {
+                assertEquals(i, anillo.tomar());
+            }
+        }
+        assertTrue(anillo.estaVacio());
+    }
+
+    @Test
+    void variosProductoresNoPierdenNiDuplicanElementos() throws Exception {
+        int productores = 4;
+        int porProductor = 50_000;
+        AnilloEventos<long[]> anillo = new AnilloEventos<>(256);
+        CountDownLatch salida = new CountDownLatch(1);
+
+        List<Thread> hilos = new ArrayList<>();
+        for (int p = 0; p < productores; p++) {
+            final int productor = p;
+            Thread hilo = new Thread(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < porProductor; i++) {
+                    long[] evento = {productor, i};
+                    while (!anillo.ofrecer(evento)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+
+        long[] siguientePorProductor = new long[productores];
+        int recibidos = 0;
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        salida.countDown();
+        while (recibidos < productores * porProductor) {
+            long[] evento = anillo.tomar();
+            if (evento == null) {
+                assertTrue(System.nanoTime() < limite, "El consumidor no recibió todos los eventos a tiempo");
+                Thread.onSpinWait();
+                continue;
+            }
+            // Cada productor publica en orden: el consumidor lo ve en el mismo orden
+            assertEquals(siguientePorProductor[(int) evento[0]], evento[1]);
+            siguientePorProductor[(int) evento[0]]++;
+            recibidos++;
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertTrue(anillo.estaVacio());
+        assertEquals((long) productores * porProductor, anillo.reservados());
+    }
+}
@@ -1,8 +1,13 @@
 package conexion.clientes.impl;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
+import conexion.codec.CodificadorBinario;
 import dto.cliente.DTOSesionCliente;
+import dto.comunicacion.DTOResponse;
+import transporte.p2p.codec.TramaBinaria;
 import transporte.p2p.interfaces.IMensajeListener;
 import transporte.p2p.interfaces.ITransporteTcp;
 import transporte.p2p.impl.NettyTransporteImpl;
@@ -10,6 +15,7 @@ import transporte.p2p.impl.NettyTransporteImpl;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -36,6 +42,7 @@ public class GestorConexionesClienteImpl implements IGestorConexionesCliente, IM
     private Consumer<String> onClienteConectadoCallback;
     private Consumer<String> onClienteDesconectadoCallback;
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
 
     public GestorConexionesClienteImpl() {
         this.poolSesiones = new ConcurrentHashMap<>();
@@ -77,6 +84,20 @@ public class GestorConexionesClienteImpl implements IGestorConexionesCliente, IM
         }
     }
 
+    @Override
+    public void enviarRespuesta(String idSesion, DTOResponse respuesta, int correlacion) {
+        DTOSesionCliente sesion = poolSesiones.get(idSesion);
+        if (sesion == null) {
+            System.err.println(TAG + "Error: Sesión no encontrada " + idSesion);
+            return;
+        }
+        if (transporte.soportaBinario(sesion.getIp(), sesion.getPuerto())) {
+            transporte.enviarTrama(sesion.getIp(), sesion.getPuerto(), CodificadorBinario.codificarRespuesta(respuesta, correlacion));
+        } else {
+            transporte.enviarMensaje(sesion.getIp(), sesion.getPuerto(), gson.toJson(respuesta));
+        }
+    }
+
     @Override
     public void enviarMensajeAUsuario(String idUsuario, String mensaje) {
         String idSesion = mapaUsuarioSesion.get(idUsuario);
@@ -89,6 +110,20 @@ public class GestorConexionesClienteImpl implements IGestorConexionesCliente, IM
         }
     }
 
+    @Override
+    public int enviarMensajeAUsuarios(Collection<String> idsUsuarios, String excluido, String mensaje) {
+        List<String> destinos = new ArrayList<>();
+        for (String idUsuario : idsUsuarios) {
+            if (idUsuario.equals(excluido)) continue;
+            String idSesion = mapaUsuarioSesion.get(idUsuario);
+            DTOSesionCliente sesion = idSesion != null ? poolSesiones.get(idSesion) : null;
+            if (sesion != null) {
+                destinos.add(sesion.getIp() + ":" + sesion.getPuerto());
+            }
+        }
+        return destinos.isEmpty() ? 0 : transporte.difundirMensaje(destinos, mensaje);
+    }
+
     @Override
     public boolean registrarUsuarioEnSesion(String idSesion, String idUsuario) {
         DTOSesionCliente sesion = poolSesiones.get(idSesion);
@@ -204,6 +239,17 @@ public class GestorConexionesClienteImpl implements IGestorConexionesCliente, IM
         }
     }
 
+    @Override
+    public void onTramaRecibida(TramaBinaria trama, String origen) {
+        if (!poolSesiones.containsKey(origen)) {
+            onNuevaConexion(origen);
+        }
+
+        if (router != null) {
+            router.procesarTrama(trama, origen);
+        }
+    }
+
     @Override
     public void onDesconexion(String origen) {
         DTOSesionCliente sesion = poolSesiones.remove(origen);
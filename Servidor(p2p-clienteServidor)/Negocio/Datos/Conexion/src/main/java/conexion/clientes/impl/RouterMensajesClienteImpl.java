@@ -2,48 +2,83 @@ package conexion.clientes.impl;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
+import conexion.codec.CodificadorBinario;
 import dto.comunicacion.DTORequest;
 import dto.comunicacion.DTOResponse;
+import transporte.p2p.codec.TramaBinaria;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RouterMensajesClienteImpl implements IRouterMensajesCliente {
 
     private final Gson gson;
     private final Map<String, IManejadorAccion> rutas;
+    // Índice por id de acción para clientes que usan el protocolo binario
+    private final Map<Integer, IManejadorAccion> rutasPorId;
     private final IGestorConexionesCliente gestorClientes;
 
     public RouterMensajesClienteImpl(IGestorConexionesCliente gestorClientes) {
         this.gestorClientes = gestorClientes;
-        this.rutas = new HashMap<>();
+        this.rutas = new ConcurrentHashMap<>();
+        this.rutasPorId = new ConcurrentHashMap<>();
         this.gson = new GsonBuilder().serializeNulls().create();
     }
 
     @Override
     public void registrarAccion(String accion, IManejadorAccion manejador) {
         rutas.put(accion.toLowerCase(), manejador);
+        rutasPorId.put(CodificadorBinario.registrarAccion(accion), manejador);
     }
 
     @Override
     public void procesarMensaje(String json, String idSesion) {
         try {
-            DTORequest request = gson.fromJson(json, DTORequest.class);
+            JsonObject raw = JsonParser.parseString(json).getAsJsonObject();
+            DTORequest request = gson.fromJson(raw, DTORequest.class);
 
             if (request != null && request.getAction() != null) {
-                manejarPeticion(request, idSesion);
+                // Id de correlación opcional del cliente: se devuelve tal cual en la respuesta
+                JsonElement requestId = raw.get("requestId");
+                manejarPeticion(request, requestId != null && !requestId.isJsonNull() ? requestId.getAsString() : null, idSesion);
             } else {
                 System.err.println("[RouterCliente] JSON inválido o sin acción: " + idSesion);
             }
-        } catch (JsonSyntaxException e) {
+        } catch (JsonParseException | IllegalStateException e) {
             System.err.println("[RouterCliente] Error JSON de " + idSesion + ": " + e.getMessage());
         }
     }
 
-    private void manejarPeticion(DTORequest request, String idSesion) {
+    @Override
+    public void procesarTrama(TramaBinaria trama, String idSesion) {
+        if (!trama.esPeticion()) {
+            System.err.println("[RouterCliente] Trama binaria no es petición: " + idSesion);
+            return;
+        }
+        String accion = CodificadorBinario.nombreAccion(trama.getAccionId());
+        IManejadorAccion handler = rutasPorId.get(trama.getAccionId());
+
+        if (handler == null) {
+            gestorClientes.enviarRespuesta(idSesion, new DTOResponse(accion, "error", "Acción desconocida", null), trama.getCorrelacion());
+            return;
+        }
+        try {
+            DTOResponse respuesta = handler.ejecutar(CodificadorBinario.decodificarPayload(trama), idSesion);
+            if (respuesta != null) {
+                gestorClientes.enviarRespuesta(idSesion, respuesta, trama.getCorrelacion());
+            }
+        } catch (Exception e) {
+            gestorClientes.enviarRespuesta(idSesion, new DTOResponse(accion, "error", "Error interno: " + e.getMessage(), null), trama.getCorrelacion());
+        }
+    }
+
+    private void manejarPeticion(DTORequest request, String requestId, String idSesion) {
         String accion = request.getAction().toLowerCase();
         IManejadorAccion handler = rutas.get(accion);
 
@@ -51,20 +86,28 @@ public class RouterMensajesClienteImpl implements IRouterMensajesCliente {
             try {
                 DTOResponse respuesta = handler.ejecutar(request.getPayload(), idSesion);
                 if (respuesta != null) {
-                    String jsonRes = gson.toJson(respuesta);
-                    gestorClientes.enviarMensaje(idSesion, jsonRes);
+                    gestorClientes.enviarMensaje(idSesion, serializar(respuesta, requestId));
                 }
             } catch (Exception e) {
                 e.printStackTrace(); // Debug
-                enviarError(idSesion, request.getAction(), "Error interno: " + e.getMessage());
+                enviarError(idSesion, request.getAction(), requestId, "Error interno: " + e.getMessage());
             }
         } else {
-            enviarError(idSesion, request.getAction(), "Acción desconocida");
+            enviarError(idSesion, request.getAction(), requestId, "Acción desconocida");
         }
     }
 
-    private void enviarError(String idSesion, String accion, String msg) {
+    private void enviarError(String idSesion, String accion, String requestId, String msg) {
         DTOResponse err = new DTOResponse(accion, "error", msg, null);
-        gestorClientes.enviarMensaje(idSesion, gson.toJson(err));
+        gestorClientes.enviarMensaje(idSesion, serializar(err, requestId));
+    }
+
+    private String serializar(DTOResponse respuesta, String requestId) {
+        if (requestId == null) {
+            return gson.toJson(respuesta);
+        }
+        JsonObject json = gson.toJsonTree(respuesta).getAsJsonObject();
+        json.addProperty("requestId", requestId);
+        return gson.toJson(json);
     }
 }
\ No newline at end of file
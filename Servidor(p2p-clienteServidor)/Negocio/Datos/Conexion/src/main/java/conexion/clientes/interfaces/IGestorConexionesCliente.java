@@ -1,6 +1,8 @@
 package conexion.clientes.interfaces;
 
 import dto.cliente.DTOSesionCliente;
+import dto.comunicacion.DTOResponse;
+import java.util.Collection;
 import java.util.List;
 
 public interface IGestorConexionesCliente {
@@ -15,11 +17,25 @@ public interface IGestorConexionesCliente {
      */
     void enviarMensaje(String idSesion, String mensaje);
 
+    /**
+     * Envía una respuesta a una sesión en el formato que negoció (binario o JSON),
+     * conservando el id de correlación de la petición.
+     */
+    void enviarRespuesta(String idSesion, DTOResponse respuesta, int correlacion);
+
     /**
      * Envía un mensaje a un usuario específico (busca su sesión activa).
      */
     void enviarMensajeAUsuario(String idUsuario, String mensaje);
 
+    /**
+     * Envía el mismo mensaje a los usuarios conectados de la colección (p. ej. los
+     * miembros de un canal). Los que no tienen sesión en este servidor se omiten.
+     * @param excluido Usuario al que no se envía (p. ej. el remitente), puede ser null
+     * @return Cantidad de sesiones a las que se entregó
+     */
+    int enviarMensajeAUsuarios(Collection<String> idsUsuarios, String excluido, String mensaje);
+
     void broadcast(String mensaje);
     void desconectar(String idSesion);
 
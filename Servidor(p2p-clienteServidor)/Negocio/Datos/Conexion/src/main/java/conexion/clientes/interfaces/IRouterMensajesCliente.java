@@ -2,12 +2,15 @@ package conexion.clientes.interfaces;
 
 import com.google.gson.JsonElement;
 import dto.comunicacion.DTOResponse;
-import java.util.function.Consumer;
+import transporte.p2p.codec.TramaBinaria;
 
 public interface IRouterMensajesCliente {
     // El peerOrigenId aquí será el idSesion del cliente
     void procesarMensaje(String json, String idSesion);
 
+    // Clientes que negociaron el protocolo binario
+    void procesarTrama(TramaBinaria trama, String idSesion);
+
     void registrarAccion(String accion, IManejadorAccion manejador);
 
     @FunctionalInterface
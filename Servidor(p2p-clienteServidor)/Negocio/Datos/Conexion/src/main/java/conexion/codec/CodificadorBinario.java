@@ -0,0 +1,320 @@
+package conexion.codec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
+import transporte.p2p.codec.TramaBinaria;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codificación compacta (hecha a mano) de los payloads JsonElement para {@link TramaBinaria}.
+ *
+ * Cada valor empieza por un byte de tipo; longitudes y enteros van como varint, así que
+ * no hay tokenización de texto ni escapes: el receptor reconstruye el árbol directamente.
+ * <pre>
+ *   0 null | 1 true | 2 false | 3 entero (zigzag varint) | 4 double (8 bytes)
+ *   5 string (varint len + UTF-8) | 6 array (varint n + valores)
+ *   7 objeto (varint n + (clave string, valor)*) | 8 número decimal (como texto)
+ * </pre>
+ * Las respuestas llevan al inicio del payload status y message, seguidos de data.
+ *
+ * Al leer, toda longitud o cantidad que viene del cable se valida contra los bytes
+ * que quedan en la trama y contra un máximo fijo antes de reservar memoria, y el
+ * anidamiento está acotado: una trama forjada no puede forzar reservas enormes ni
+ * desbordar la pila.
+ */
+public final class CodificadorBinario {
+
+    private static final byte T_NULL = 0;
+    private static final byte T_TRUE = 1;
+    private static final byte T_FALSE = 2;
+    private static final byte T_ENTERO = 3;
+    private static final byte T_DOUBLE = 4;
+    private static final byte T_STRING = 5;
+    private static final byte T_ARRAY = 6;
+    private static final byte T_OBJETO = 7;
+    private static final byte T_DECIMAL = 8;
+
+    // Límites de lectura (tramas forjadas)
+    private static final int MAX_ELEMENTOS = 1_000_000;
+    private static final int MAX_PROFUNDIDAD = 64;
+    // Capacidad inicial máxima de un array: si la cantidad miente, crece solo con lo que llega
+    private static final int CAPACIDAD_INICIAL_MAXIMA = 1024;
+
+    // id de acción -> nombre. Se llena al registrar rutas y al codificar, para poder
+    // reconstruir DTOResponse.getAction() en las respuestas recibidas.
+    private static final Map<Integer, String> NOMBRES_ACCIONES = new ConcurrentHashMap<>();
+
+    private CodificadorBinario() {}
+
+    public static int registrarAccion(String accion) {
+        int id = TramaBinaria.idAccion(accion);
+        String previo = NOMBRES_ACCIONES.putIfAbsent(id, accion.toLowerCase());
+        if (previo != null && !previo.equals(accion.toLowerCase())) {
+            System.err.println("[CodificadorBinario] Colisión de id de acción entre '" + previo + "' y '" + accion + "'");
+        }
+        return id;
+    }
+
+    public static String nombreAccion(int id) {
+        String nombre = NOMBRES_ACCIONES.get(id);
+        return nombre != null ? nombre : "accion#" + Integer.toHexString(id);
+    }
+
+    // --- DTOs <-> Tramas ---
+
+    public static TramaBinaria codificarPeticion(DTORequest request, int correlacion) {
+        int id = registrarAccion(request.getAction());
+        Salida out = new Salida();
+        escribir(out, request.getPayload());
+        return new TramaBinaria(TramaBinaria.TIPO_PETICION, id, correlacion, out.toByteArray());
+    }
+
+    public static TramaBinaria codificarRespuesta(DTOResponse response, int correlacion) {
+        int id = registrarAccion(response.getAction());
+        Salida out = new Salida();
+        escribirString(out, response.getStatus());
+        escribirString(out, response.getMessage());
+        escribir(out, response.getData());
+        return new TramaBinaria(TramaBinaria.TIPO_RESPUESTA, id, correlacion, out.toByteArray());
+    }
+
+    /**
+     * Payload de una petición. Solo se llama cuando ya hay un handler para la acción.
+     */
+    public static JsonElement decodificarPayload(TramaBinaria trama) {
+        ByteBuffer in = ByteBuffer.wrap(trama.getPayload());
+        return in.hasRemaining() ? leer(in, 0) : JsonNull.INSTANCE;
+    }
+
+    public static DTOResponse decodificarRespuesta(TramaBinaria trama) {
+        ByteBuffer in = ByteBuffer.wrap(trama.getPayload());
+        String status = leerStringNullable(in);
+        String message = leerStringNullable(in);
+        JsonElement data = in.hasRemaining() ? leer(in, 0) : JsonNull.INSTANCE;
+        return new DTOResponse(nombreAccion(trama.getAccionId()), status, message, data.isJsonNull() ? null : data);
+    }
+
+    // --- Escritura ---
+
+    private static void escribir(Salida out, JsonElement e) {
+        if (e == null || e.isJsonNull()) {
+            out.write(T_NULL);
+        } else if (e.isJsonObject()) {
+            JsonObject obj = e.getAsJsonObject();
+            out.write(T_OBJETO);
+            escribirVarint(out, obj.size());
+            for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+                escribirTexto(out, entry.getKey());
+                escribir(out, entry.getValue());
+            }
+        } else if (e.isJsonArray()) {
+            JsonArray arr = e.getAsJsonArray();
+            out.write(T_ARRAY);
+            escribirVarint(out, arr.size());
+            for (JsonElement item : arr) {
+                escribir(out, item);
+            }
+        } else {
+            JsonPrimitive p = e.getAsJsonPrimitive();
+            if (p.isBoolean()) {
+                out.write(p.getAsBoolean() ? T_TRUE : T_FALSE);
+            } else if (p.isString()) {
+                escribirString(out, p.getAsString());
+            } else {
+                escribirNumero(out, p.getAsNumber());
+            }
+        }
+    }
+
+    private static void escribirNumero(Salida out, Number n) {
+        if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+            out.write(T_ENTERO);
+            escribirVarlong(out, zigzag(n.longValue()));
+        } else if (n instanceof Double || n instanceof Float) {
+            out.write(T_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(n.doubleValue()));
+        } else {
+            // LazilyParsedNumber, BigDecimal, BigInteger: entero si cabe en long, si no como texto
+            String texto = n.toString();
+            try {
+                long valor = Long.parseLong(texto);
+                out.write(T_ENTERO);
+                escribirVarlong(out, zigzag(valor));
+            } catch (NumberFormatException ex) {
+                out.write(T_DECIMAL);
+                escribirTexto(out, texto);
+            }
+        }
+    }
+
+    private static void escribirString(Salida out, String s) {
+        if (s == null) {
+            out.write(T_NULL);
+        } else {
+            out.write(T_STRING);
+            escribirTexto(out, s);
+        }
+    }
+
+    private static void escribirTexto(Salida out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        escribirVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void escribirVarint(Salida out, int valor) {
+        escribirVarlong(out, valor & 0xFFFFFFFFL);
+    }
+
+    private static void escribirVarlong(Salida out, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            out.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        out.write((int) valor);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    // --- Lectura ---
+
+    private static JsonElement leer(ByteBuffer in, int profundidad) {
+        if (profundidad > MAX_PROFUNDIDAD) {
+            throw new IllegalArgumentException("Anidamiento binario demasiado profundo");
+        }
+        byte tipo = in.get();
+        switch (tipo) {
+            case T_NULL:
+                return JsonNull.INSTANCE;
+            case T_TRUE:
+                return new JsonPrimitive(true);
+            case T_FALSE:
+                return new JsonPrimitive(false);
+            case T_ENTERO: {
+                long z = leerVarlong(in);
+                return new JsonPrimitive((z >>> 1) ^ -(z & 1));
+            }
+            case T_DOUBLE:
+                return new JsonPrimitive(Double.longBitsToDouble(in.getLong()));
+            case T_STRING:
+                return new JsonPrimitive(leerTexto(in));
+            case T_DECIMAL:
+                return new JsonPrimitive(new BigDecimal(leerTexto(in)));
+            case T_ARRAY: {
+                // Cada valor ocupa al menos 1 byte
+                int n = leerCantidad(in, 1, MAX_ELEMENTOS);
+                JsonArray arr = new JsonArray(Math.min(n, CAPACIDAD_INICIAL_MAXIMA));
+                for (int i = 0; i < n; i++) {
+                    arr.add(leer(in, profundidad + 1));
+                }
+                return arr;
+            }
+            case T_OBJETO: {
+                // Cada entrada ocupa al menos 2 bytes (longitud de la clave y tipo del valor)
+                int n = leerCantidad(in, 2, MAX_ELEMENTOS);
+                JsonObject obj = new JsonObject();
+                for (int i = 0; i < n; i++) {
+                    String clave = leerTexto(in);
+                    obj.add(clave, leer(in, profundidad + 1));
+                }
+                return obj;
+            }
+            default:
+                throw new IllegalArgumentException("Tipo binario desconocido: " + tipo);
+        }
+    }
+
+    private static String leerStringNullable(ByteBuffer in) {
+        if (!in.hasRemaining()) return null;
+        byte tipo = in.get();
+        if (tipo == T_NULL) return null;
+        if (tipo != T_STRING) throw new IllegalArgumentException("Se esperaba string, tipo: " + tipo);
+        return leerTexto(in);
+    }
+
+    private static String leerTexto(ByteBuffer in) {
+        // Cada byte del texto viene en la trama
+        int len = leerCantidad(in, 1, Integer.MAX_VALUE);
+        String s = new String(in.array(), in.arrayOffset() + in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    /**
+     * Cantidad de elementos o longitud de texto leída del cable, validada antes de
+     * usarla para reservar memoria.
+     *
+     * @param bytesMinimos Bytes que ocupa como mínimo cada elemento en la trama
+     * @param maximo       Tope fijo, además del que imponen los bytes restantes
+     */
+    private static int leerCantidad(ByteBuffer in, int bytesMinimos, int maximo) {
+        long n = leerVarlong(in);
+        if (n < 0 || n > maximo) {
+            throw new IllegalArgumentException("Cantidad binaria inválida: " + n);
+        }
+        if (n * bytesMinimos > in.remaining()) {
+            throw new IllegalArgumentException("Cantidad binaria " + n + " mayor que lo que queda de trama (" + in.remaining() + ")");
+        }
+        return (int) n;
+    }
+
+    private static long leerVarlong(ByteBuffer in) {
+        long resultado = 0;
+        int desplazamiento = 0;
+        while (true) {
+            byte b = in.get();
+            resultado |= (long) (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) return resultado;
+            desplazamiento += 7;
+            if (desplazamiento > 63) throw new IllegalArgumentException("Varint demasiado largo");
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream sin sincronización y con escritura de long.
+     */
+    private static final class Salida extends ByteArrayOutputStream {
+        Salida() {
+            super(256);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void writeLong(long v) {
+            for (int i = 7; i >= 0; i--) {
+                write((int) (v >>> (i * 8)));
+            }
+        }
+
+        private void ensureCapacity(int minimo) {
+            if (minimo > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minimo));
+            }
+        }
+    }
+}
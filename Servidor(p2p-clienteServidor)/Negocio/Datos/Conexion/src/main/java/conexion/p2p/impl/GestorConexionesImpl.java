@@ -1,14 +1,22 @@
 package conexion.p2p.impl;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import conexion.codec.CodificadorBinario;
 import conexion.p2p.interfaces.IGestorConexiones;
 import conexion.p2p.interfaces.IRouterMensajes;
+import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
 import dto.p2p.DTOPeerDetails;
 import observador.IObservador;
 import observador.ISujeto;
+import transporte.p2p.codec.TramaArchivo;
+import transporte.p2p.codec.TramaBinaria;
 import transporte.p2p.interfaces.IMensajeListener;
 import transporte.p2p.interfaces.ITransporteTcp;
 import transporte.p2p.impl.NettyTransporteImpl;
 
+import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -35,6 +43,7 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
     private final Map<String, DTOPeerDetails> poolPeers;
     private IRouterMensajes routerMensajes;
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
 
     // NUEVO: Callback para notificar desconexiones
     private Consumer<String> onPeerDisconnectedCallback;
@@ -92,16 +101,64 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
 
     @Override
     public void enviarMensaje(DTOPeerDetails peerDto, String mensaje) {
+        String[] destino = resolverDestino(peerDto);
+        if (destino != null) {
+            transporte.enviarMensaje(destino[0], Integer.parseInt(destino[1]), mensaje);
+        }
+    }
+
+    @Override
+    public void enviarPeticion(DTOPeerDetails peerDto, DTORequest peticion) {
+        String[] destino = resolverDestino(peerDto);
+        if (destino == null) return;
+
+        String ip = destino[0];
+        int puerto = Integer.parseInt(destino[1]);
+        if (transporte.soportaBinario(ip, puerto)) {
+            transporte.enviarTrama(ip, puerto, CodificadorBinario.codificarPeticion(peticion, 0));
+        } else {
+            transporte.enviarMensaje(ip, puerto, gson.toJson(peticion));
+        }
+    }
+
+    @Override
+    public void enviarRespuesta(DTOPeerDetails peerDto, DTOResponse respuesta, int correlacion) {
+        String[] destino = resolverDestino(peerDto);
+        if (destino == null) return;
+
+        String ip = destino[0];
+        int puerto = Integer.parseInt(destino[1]);
+        if (transporte.soportaBinario(ip, puerto)) {
+            transporte.enviarTrama(ip, puerto, CodificadorBinario.codificarRespuesta(respuesta, correlacion));
+        } else {
+            transporte.enviarMensaje(ip, puerto, gson.toJson(respuesta));
+        }
+    }
+
+    @Override
+    public boolean enviarRangoArchivo(DTOPeerDetails peerDto, String accion, String clave, File archivo, long offset, int longitud) {
+        String[] destino = resolverDestino(peerDto);
+        if (destino == null) return false;
+
+        TramaArchivo trama = new TramaArchivo(CodificadorBinario.registrarAccion(accion), 0, clave, archivo, offset, longitud);
+        return transporte.enviarRangoArchivo(destino[0], Integer.parseInt(destino[1]), trama);
+    }
+
+    /**
+     * Resuelve IP y puerto reales de un peer: pool en memoria, datos del DTO o, como último
+     * recurso, el propio ID con formato "ip:puerto".
+     * @return {ip, puerto} o null si no se pudo resolver
+     */
+    private String[] resolverDestino(DTOPeerDetails peerDto) {
         // 1. Validación de entrada
         if (peerDto == null || peerDto.getId() == null) {
             System.err.println(TAG + ROJO + "Error: Se intentó enviar mensaje a un Peer NULO o sin ID." + RESET);
-            return;
+            return null;
         }
 
         String targetId = peerDto.getId();
         String ipDestino = null;
         int puertoDestino = 0;
-        String fuenteDatos = "DESCONOCIDO";
 
         // 2. Intentar obtener datos reales del Pool (Memoria)
         DTOPeerDetails peerEnMemoria = poolPeers.get(targetId);
@@ -109,13 +166,11 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
         if (peerEnMemoria != null && peerEnMemoria.getIp() != null) {
             ipDestino = peerEnMemoria.getIp();
             puertoDestino = peerEnMemoria.getPuerto();
-            fuenteDatos = "POOL (Memoria)";
         }
         // 3. Si no está en memoria, usar los datos del DTO entrante
         else if (peerDto.getIp() != null) {
             ipDestino = peerDto.getIp();
             puertoDestino = peerDto.getPuerto();
-            fuenteDatos = "DTO (Entrante)";
         }
         // 4. FALLBACK CRÍTICO: Extraer IP del ID (formato "ip:puerto")
         else {
@@ -125,23 +180,18 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
                     ipDestino = parts[0];
                     if (ipDestino.startsWith("/")) ipDestino = ipDestino.substring(1);
                     puertoDestino = Integer.parseInt(parts[1]);
-                    fuenteDatos = "ID PARSE (Fallback)";
                 }
             } catch (Exception e) { /* Falló el parsing */ }
         }
 
-        // 5. Ejecutar envío solo si tenemos datos válidos
+        // 5. Solo devolvemos destino si tenemos datos válidos
         if (ipDestino != null && !ipDestino.equals("null") && puertoDestino > 0) {
-            // Log de depuración detallado
-            // System.out.println(TAG + "Enviando a " + CYAN + targetId + RESET +
-            //                    " usando IP: " + VERDE + ipDestino + ":" + puertoDestino + RESET +
-            //                    " [Fuente: " + AMARILLO + fuenteDatos + RESET + "]");
-
-            transporte.enviarMensaje(ipDestino, puertoDestino, mensaje);
-        } else {
-            System.err.println(TAG + ROJO + "ERROR FATAL: No se pudo resolver IP para ID: " + targetId +
-                    ". Datos disponibles -> DTO_IP: " + peerDto.getIp() + ", EnPool: " + (peerEnMemoria != null) + RESET);
+            return new String[]{ipDestino, String.valueOf(puertoDestino)};
         }
+
+        System.err.println(TAG + ROJO + "ERROR FATAL: No se pudo resolver IP para ID: " + targetId +
+                ". Datos disponibles -> DTO_IP: " + peerDto.getIp() + ", EnPool: " + (peerEnMemoria != null) + RESET);
+        return null;
     }
 
     @Override
@@ -154,6 +204,24 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
         });
     }
 
+    @Override
+    public void broadcastPeticion(DTORequest peticion) {
+        System.out.println(TAG + "Iniciando BROADCAST (" + peticion.getAction() + ") a " + poolPeers.size() + " peers...");
+        // Se codifica de forma perezosa y una sola vez por formato
+        String json = null;
+        TramaBinaria trama = null;
+        for (DTOPeerDetails peer : poolPeers.values()) {
+            if (peer.getIp() == null) continue;
+            if (transporte.soportaBinario(peer.getIp(), peer.getPuerto())) {
+                if (trama == null) trama = CodificadorBinario.codificarPeticion(peticion, 0);
+                transporte.enviarTrama(peer.getIp(), peer.getPuerto(), trama);
+            } else {
+                if (json == null) json = gson.toJson(peticion);
+                transporte.enviarMensaje(peer.getIp(), peer.getPuerto(), json);
+            }
+        }
+    }
+
     @Override
     public void desconectar(DTOPeerDetails peerDto) {
         if (peerDto != null) {
@@ -195,6 +263,17 @@ public class GestorConexionesImpl implements IGestorConexiones, IMensajeListener
         }
     }
 
+    @Override
+    public void onTramaRecibida(TramaBinaria trama, String origen) {
+        DTOPeerDetails peer = poolPeers.computeIfAbsent(origen, this::crearPeerDesdeOrigen);
+
+        if (routerMensajes != null) {
+            routerMensajes.procesarTrama(trama, peer.getId());
+        } else {
+            System.err.println(TAG + ROJO + "ALERTA: Trama recibida pero NO hay Router configurado." + RESET);
+        }
+    }
+
     @Override
     public void onNuevaConexion(String origen) {
         DTOPeerDetails nuevoPeer = crearPeerDesdeOrigen(origen);
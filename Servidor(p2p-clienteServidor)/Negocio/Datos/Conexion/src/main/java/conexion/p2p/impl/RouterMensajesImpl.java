@@ -2,65 +2,132 @@ package conexion.p2p.impl;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import conexion.codec.CodificadorBinario;
 import conexion.p2p.interfaces.IGestorConexiones;
 import conexion.p2p.interfaces.IRouterMensajes;
 import dto.comunicacion.DTORequest;
 import dto.comunicacion.DTOResponse;
 import dto.p2p.DTOPeerDetails;
+import transporte.p2p.codec.BloqueDatos;
+import transporte.p2p.codec.TramaBinaria;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class RouterMensajesImpl implements IRouterMensajes {
 
     private final Gson gson;
     private final Map<String, IManejadorAccion> rutasPeticiones;
-    private final Map<String, Consumer<DTOResponse>> rutasRespuestas;
+    private final Map<String, BiConsumer<DTOResponse, String>> rutasRespuestas;
+    // Índices por id de acción para el protocolo binario (se decide sin tocar el payload)
+    private final Map<Integer, IManejadorAccion> rutasPeticionesPorId;
+    private final Map<Integer, BiConsumer<DTOResponse, String>> rutasRespuestasPorId;
+    private final Map<Integer, IManejadorDatos> rutasDatosPorId;
     private final IGestorConexiones gestorConexiones;
 
     public RouterMensajesImpl(IGestorConexiones gestorConexiones) {
         this.gestorConexiones = gestorConexiones;
-        this.rutasPeticiones = new HashMap<>();
-        this.rutasRespuestas = new HashMap<>();
+        this.rutasPeticiones = new ConcurrentHashMap<>();
+        this.rutasRespuestas = new ConcurrentHashMap<>();
+        this.rutasPeticionesPorId = new ConcurrentHashMap<>();
+        this.rutasRespuestasPorId = new ConcurrentHashMap<>();
+        this.rutasDatosPorId = new ConcurrentHashMap<>();
         this.gson = new GsonBuilder().serializeNulls().create();
     }
 
     @Override
     public void registrarAccion(String accion, IManejadorAccion manejador) {
         rutasPeticiones.put(accion.toLowerCase(), manejador);
+        rutasPeticionesPorId.put(CodificadorBinario.registrarAccion(accion), manejador);
     }
 
     @Override
     public void registrarManejadorRespuesta(String accion, Consumer<DTOResponse> manejador) {
+        registrarManejadorRespuestaConOrigen(accion, (respuesta, origen) -> manejador.accept(respuesta));
+    }
+
+    @Override
+    public void registrarManejadorRespuestaConOrigen(String accion, BiConsumer<DTOResponse, String> manejador) {
         rutasRespuestas.put(accion.toLowerCase(), manejador);
+        rutasRespuestasPorId.put(CodificadorBinario.registrarAccion(accion), manejador);
+    }
+
+    @Override
+    public void registrarManejadorDatos(String accion, IManejadorDatos manejador) {
+        rutasDatosPorId.put(CodificadorBinario.registrarAccion(accion), manejador);
     }
 
     @Override
     public void procesarMensaje(String json, String peerOrigenId) {
         try {
-            // 1. Intentamos como Request
-            DTORequest request = gson.fromJson(json, DTORequest.class);
-            if (request != null && request.getAction() != null && !json.contains("\"status\"")) {
-                manejarPeticion(request, peerOrigenId);
-                return;
-            }
+            // Fallback JSON: se parsea UNA sola vez y se decide por la clave "status" de primer nivel
+            JsonElement arbol = JsonParser.parseString(json);
+            if (arbol != null && arbol.isJsonObject()) {
+                JsonObject obj = arbol.getAsJsonObject();
+
+                // 1. Response
+                if (obj.has("status") && !obj.get("status").isJsonNull()) {
+                    DTOResponse response = gson.fromJson(obj, DTOResponse.class);
+                    if (response.getAction() != null) {
+                        manejarRespuesta(response, peerOrigenId);
+                        return;
+                    }
+                }
 
-            // 2. Intentamos como Response
-            DTOResponse response = gson.fromJson(json, DTOResponse.class);
-            if (response != null && response.getStatus() != null) {
-                manejarRespuesta(response, peerOrigenId);
-                return;
+                // 2. Request
+                if (obj.has("action") && !obj.get("action").isJsonNull()) {
+                    manejarPeticion(gson.fromJson(obj, DTORequest.class), peerOrigenId);
+                    return;
+                }
             }
 
             System.out.println("[Router] Ignorado: No es Request ni Response válido.");
 
-        } catch (JsonSyntaxException e) {
+        } catch (JsonParseException | IllegalStateException e) {
             System.err.println("[Router] Error JSON inválido de " + peerOrigenId);
         }
     }
 
+    @Override
+    public void procesarTrama(TramaBinaria trama, String peerOrigenId) {
+        try {
+            if (trama.esPeticion()) {
+                IManejadorAccion handler = rutasPeticionesPorId.get(trama.getAccionId());
+                String accion = CodificadorBinario.nombreAccion(trama.getAccionId());
+                if (handler == null) {
+                    enviarRespuesta(new DTOResponse(accion, "error", "Acción no soportada", null), peerOrigenId, trama.getCorrelacion());
+                    return;
+                }
+                try {
+                    DTOResponse respuesta = handler.ejecutar(CodificadorBinario.decodificarPayload(trama), peerOrigenId);
+                    if (respuesta != null) {
+                        enviarRespuesta(respuesta, peerOrigenId, trama.getCorrelacion());
+                    }
+                } catch (Exception e) {
+                    enviarRespuesta(new DTOResponse(accion, "error", "Error interno: " + e.getMessage(), null), peerOrigenId, trama.getCorrelacion());
+                }
+            } else if (trama.esRespuesta()) {
+                BiConsumer<DTOResponse, String> handler = rutasRespuestasPorId.get(trama.getAccionId());
+                if (handler != null) {
+                    handler.accept(CodificadorBinario.decodificarRespuesta(trama), peerOrigenId);
+                }
+            } else if (trama.esDatos()) {
+                IManejadorDatos handler = rutasDatosPorId.get(trama.getAccionId());
+                if (handler != null) {
+                    handler.recibir(BloqueDatos.desde(trama), peerOrigenId);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[Router] Trama binaria inválida de " + peerOrigenId + ": " + e.getMessage());
+        }
+    }
+
     private void manejarPeticion(DTORequest request, String peerOrigenId) {
         String accion = request.getAction().toLowerCase();
         IManejadorAccion handler = rutasPeticiones.get(accion);
@@ -81,11 +148,11 @@ public class RouterMensajesImpl implements IRouterMensajes {
 
     private void manejarRespuesta(DTOResponse response, String peerOrigenId) {
         String accion = response.getAction().toLowerCase();
-        Consumer<DTOResponse> handler = rutasRespuestas.get(accion);
+        BiConsumer<DTOResponse, String> handler = rutasRespuestas.get(accion);
 
         if (handler != null) {
             try {
-                handler.accept(response);
+                handler.accept(response, peerOrigenId);
             } catch (Exception e) {
                 System.err.println("[Router] Error en handler de respuesta: " + e.getMessage());
             }
@@ -93,9 +160,13 @@ public class RouterMensajesImpl implements IRouterMensajes {
     }
 
     private void enviarRespuesta(DTOResponse respuesta, String peerDestinoId) {
-        String jsonRespuesta = gson.toJson(respuesta);
+        enviarRespuesta(respuesta, peerDestinoId, 0);
+    }
+
+    private void enviarRespuesta(DTOResponse respuesta, String peerDestinoId, int correlacion) {
         // Asumimos que existe un DTO de peer simple para enviar
         DTOPeerDetails destino = new DTOPeerDetails(peerDestinoId, null, 0, null, null);
-        gestorConexiones.enviarMensaje(destino, jsonRespuesta);
+        // El gestor decide el formato: binario si la conexión lo negoció, JSON en otro caso
+        gestorConexiones.enviarRespuesta(destino, respuesta, correlacion);
     }
 }
\ No newline at end of file
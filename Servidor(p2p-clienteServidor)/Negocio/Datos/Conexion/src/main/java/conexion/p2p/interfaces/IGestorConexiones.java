@@ -1,6 +1,9 @@
 package conexion.p2p.interfaces;
 
+import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
 import dto.p2p.DTOPeerDetails;
+import java.io.File;
 import java.util.List;
 
 public interface IGestorConexiones {
@@ -8,6 +11,28 @@ public interface IGestorConexiones {
     void conectarAPeer(String host, int puerto);
     void enviarMensaje(DTOPeerDetails peer, String mensaje);
     void broadcast(String mensaje);
+
+    /**
+     * Envía una petición usando el protocolo binario si la conexión lo negoció, o JSON si no.
+     */
+    void enviarPeticion(DTOPeerDetails peer, DTORequest peticion);
+
+    /**
+     * Envía una respuesta en el formato negociado, conservando el id de correlación de la petición.
+     */
+    void enviarRespuesta(DTOPeerDetails peer, DTOResponse respuesta, int correlacion);
+
+    /**
+     * Broadcast de una petición: se codifica una sola vez por formato (binario/JSON).
+     */
+    void broadcastPeticion(DTORequest peticion);
+
+    /**
+     * Sirve un rango de un archivo al peer sin Base64 ni copia al heap (FileRegion).
+     * @param clave Identificador del archivo que el receptor usará para ubicar el bloque
+     * @return false si la conexión no negoció el protocolo binario; el llamador debe responder por JSON
+     */
+    boolean enviarRangoArchivo(DTOPeerDetails peer, String accion, String clave, File archivo, long offset, int longitud);
     void desconectar(DTOPeerDetails peer);
 
     /**
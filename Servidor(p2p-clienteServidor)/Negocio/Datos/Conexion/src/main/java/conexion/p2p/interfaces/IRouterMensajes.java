@@ -2,15 +2,41 @@ package conexion.p2p.interfaces;
 
 import com.google.gson.JsonElement;
 import dto.comunicacion.DTOResponse; // Nota el cambio de paquete
+import transporte.p2p.codec.BloqueDatos;
+import transporte.p2p.codec.TramaBinaria;
+
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public interface IRouterMensajes {
     void procesarMensaje(String json, String peerOrigenId);
+
+    /**
+     * Procesa una trama del protocolo binario. El enrutamiento se decide con la cabecera;
+     * el payload solo se decodifica si existe un handler para la acción.
+     */
+    void procesarTrama(TramaBinaria trama, String peerOrigenId);
     void registrarAccion(String accion, IManejadorAccion manejador);
     void registrarManejadorRespuesta(String accion, Consumer<DTOResponse> manejador);
 
+    /**
+     * Igual que {@link #registrarManejadorRespuesta}, pero el manejador recibe también el id
+     * del peer que respondió (necesario cuando la conversación continúa solo con ese peer).
+     */
+    void registrarManejadorRespuestaConOrigen(String accion, BiConsumer<DTOResponse, String> manejador);
+
+    /**
+     * Registra el receptor de bloques de datos crudos (rangos de archivo) de una acción.
+     */
+    void registrarManejadorDatos(String accion, IManejadorDatos manejador);
+
     @FunctionalInterface
     interface IManejadorAccion {
         DTOResponse ejecutar(JsonElement datos, String peerOrigenId);
     }
+
+    @FunctionalInterface
+    interface IManejadorDatos {
+        void recibir(BloqueDatos bloque, String peerOrigenId);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package conexion.codec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import dto.comunicacion.DTORequest;
+import dto.comunicacion.DTOResponse;
+import org.junit.jupiter.api.Test;
+import transporte.p2p.codec.TramaBinaria;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodificadorBinarioTest {
+
+    @Test
+    void peticionIdaYVuelta() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("tipo", "MENSAJE");
+        payload.addProperty("texto", "¿Qué tal? 漢字 🚀");
+        payload.addProperty("vacio", "");
+        payload.addProperty("cero", 0);
+        payload.addProperty("negativo", -123456789012L);
+        payload.addProperty("maximo", Long.MAX_VALUE);
+        payload.addProperty("minimo", Long.MIN_VALUE);
+        payload.addProperty("real", 3.25);
+        payload.addProperty("decimal", new BigDecimal("12345678901234567890.125"));
+        payload.addProperty("activo", true);
+        payload.addProperty("borrado", false);
+        payload.add("nulo", JsonNull.INSTANCE);
+        JsonArray ids = new JsonArray();
+        ids.add("a");
+        ids.add(7);
+        ids.add(new JsonArray());
+        JsonObject anidado = new JsonObject();
+        anidado.add("lista", ids);
+        payload.add("anidado", anidado);
+
+        TramaBinaria trama = CodificadorBinario.codificarPeticion(new DTORequest("sync_merkle", payload), 9);
+
+        assertTrue(trama.esPeticion());
+        assertEquals(TramaBinaria.idAccion("sync_merkle"), trama.getAccionId());
+        assertEquals(9, trama.getCorrelacion());
+        assertEquals(payload, CodificadorBinario.decodificarPayload(trama));
+        assertEquals("sync_merkle", CodificadorBinario.nombreAccion(trama.getAccionId()));
+    }
+
+    @Test
+    void payloadNuloSeDecodificaComoJsonNull() {
+        TramaBinaria trama = CodificadorBinario.codificarPeticion(new DTORequest("ping", null), 1);
+        assertTrue(CodificadorBinario.decodificarPayload(trama).isJsonNull());
+    }
+
+    @Test
+    void respuestaIdaYVuelta() {
+        JsonArray data = new JsonArray();
+        JsonObject hoja = new JsonObject();
+        hoja.addProperty("id", "u-1");
+        hoja.addProperty("hash", "ab12");
+        data.add(hoja);
+
+        TramaBinaria trama = CodificadorBinario.codificarRespuesta(
+                new DTOResponse("sync_hojas", "success", null, data), 5);
+        DTOResponse leida = CodificadorBinario.decodificarRespuesta(trama);
+
+        assertTrue(trama.esRespuesta());
+        assertEquals(5, trama.getCorrelacion());
+        assertEquals("sync_hojas", leida.getAction());
+        assertEquals("success", leida.getStatus());
+        assertNull(leida.getMessage());
+        assertEquals(data, leida.getData());
+    }
+
+    @Test
+    void respuestaSinDataDevuelveNull() {
+        TramaBinaria trama = CodificadorBinario.codificarRespuesta(
+                new DTOResponse("sync_hojas", "error", "sin datos", null), 6);
+        DTOResponse leida = CodificadorBinario.decodificarRespuesta(trama);
+
+        assertEquals("error", leida.getStatus());
+        assertEquals("sin datos", leida.getMessage());
+        assertNull(leida.getData());
+    }
+
+    @Test
+    void accionDesconocidaConservaSuId() {
+        TramaBinaria trama = new TramaBinaria(TramaBinaria.TIPO_RESPUESTA, 0x1234abcd, 1, new byte[0]);
+        assertEquals("accion#1234abcd", CodificadorBinario.decodificarRespuesta(trama).getAction());
+    }
+
+    @Test
+    void cantidadForjadaSeRechazaAntesDeReservar() {
+        // Array que dice tener ~2^21 elementos en una trama de 4 bytes
+        byte[] forjado = {6, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        TramaBinaria trama = new TramaBinaria(TramaBinaria.TIPO_PETICION, 1, 1, forjado);
+
+        assertThrows(IllegalArgumentException.class, () -> CodificadorBinario.decodificarPayload(trama));
+    }
+
+    @Test
+    void textoMasLargoQueLaTramaSeRechaza() {
+        byte[] forjado = {5, 100, 'h', 'o', 'l', 'a'};
+        TramaBinaria trama = new TramaBinaria(TramaBinaria.TIPO_PETICION, 1, 1, forjado);
+
+        assertThrows(IllegalArgumentException.class, () -> CodificadorBinario.decodificarPayload(trama));
+    }
+
+    @Test
+    void anidamientoExcesivoSeRechaza() {
+        // 100 arrays anidados de un elemento y un null al fondo
+        byte[] forjado = new byte[201];
+        for (int i = 0; i < 100; i++) {
+            forjado[2 * i] = 6;
+            forjado[2 * i + 1] = 1;
+        }
+        TramaBinaria trama = new TramaBinaria(TramaBinaria.TIPO_PETICION, 1, 1, forjado);
+
+        assertThrows(IllegalArgumentException.class, () -> CodificadorBinario.decodificarPayload(trama));
+    }
+
+    @Test
+    void anidamientoPermitidoSeDecodifica() {
+        JsonElement actual = JsonNull.INSTANCE;
+        for (int i = 0; i < 32; i++) {
+            JsonArray envoltura = new JsonArray();
+            envoltura.add(actual);
+            actual = envoltura;
+        }
+        TramaBinaria trama = CodificadorBinario.codificarPeticion(new DTORequest("anidado", actual), 1);
+        assertEquals(actual, CodificadorBinario.decodificarPayload(trama));
+    }
+}
@@ -0,0 +1,42 @@
+package transporte.p2p.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Vista de lectura de una trama {@link TramaBinaria#TIPO_DATOS} recibida:
+ * separa los metadatos (clave, offset, tamaño total) de los bytes del rango sin copiarlos.
+ */
+public final class BloqueDatos {
+
+    private final String clave;
+    private final long offset;
+    private final long tamanoTotal;
+    private final ByteBuffer datos;
+
+    private BloqueDatos(String clave, long offset, long tamanoTotal, ByteBuffer datos) {
+        this.clave = clave;
+        this.offset = offset;
+        this.tamanoTotal = tamanoTotal;
+        this.datos = datos;
+    }
+
+    public static BloqueDatos desde(TramaBinaria trama) {
+        ByteBuffer in = ByteBuffer.wrap(trama.getPayload());
+        int lenClave = in.getShort() & 0xFFFF;
+        String clave = new String(in.array(), in.position(), lenClave, StandardCharsets.UTF_8);
+        in.position(in.position() + lenClave);
+        long offset = in.getLong();
+        long tamanoTotal = in.getLong();
+        return new BloqueDatos(clave, offset, tamanoTotal, in.slice().asReadOnlyBuffer());
+    }
+
+    public String getClave() { return clave; }
+    public long getOffset() { return offset; }
+    public long getTamanoTotal() { return tamanoTotal; }
+
+    /** Bytes del rango (buffer de solo lectura, posición 0). */
+    public ByteBuffer getDatos() { return datos.duplicate(); }
+
+    public int getLongitud() { return datos.remaining(); }
+}
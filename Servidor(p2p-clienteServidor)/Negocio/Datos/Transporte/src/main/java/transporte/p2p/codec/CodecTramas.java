@@ -0,0 +1,65 @@
+package transporte.p2p.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Sustituye al par StringDecoder/StringEncoder. Trabaja sobre frames ya delimitados
+ * por LengthFieldBasedFrameDecoder:
+ * - Entrada: si el frame empieza por {@link TramaBinaria#MAGIA} produce una {@link TramaBinaria},
+ *   en otro caso un String UTF-8 (JSON de clientes y peers antiguos). La MAGIA no puede
+ *   empezar un texto UTF-8, así que un frame con MAGIA más corto que la cabecera es un error.
+ * - Salida: acepta tanto String (JSON) como {@link TramaBinaria}.
+ */
+public class CodecTramas extends MessageToMessageCodec<ByteBuf, Object> {
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) {
+        return msg instanceof String || msg instanceof TramaBinaria;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) {
+        if (msg instanceof TramaBinaria) {
+            TramaBinaria trama = (TramaBinaria) msg;
+            byte[] payload = trama.getPayload();
+            ByteBuf buf = ctx.alloc().buffer(TramaBinaria.TAMANO_CABECERA + payload.length);
+            buf.writeByte(TramaBinaria.MAGIA);
+            buf.writeByte(trama.getVersion());
+            buf.writeByte(trama.getTipo());
+            buf.writeInt(trama.getAccionId());
+            buf.writeInt(trama.getCorrelacion());
+            buf.writeBytes(payload);
+            out.add(buf);
+        } else {
+            out.add(ByteBufUtil.encodeString(ctx.alloc(), CharBuffer.wrap((String) msg), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) {
+        if (frame.isReadable() && frame.getByte(frame.readerIndex()) == TramaBinaria.MAGIA) {
+            if (frame.readableBytes() < TramaBinaria.TAMANO_CABECERA) {
+                throw new CorruptedFrameException("Trama binaria truncada: " + frame.readableBytes()
+                        + " bytes, la cabecera ocupa " + TramaBinaria.TAMANO_CABECERA);
+            }
+            frame.skipBytes(1);
+            byte version = frame.readByte();
+            byte tipo = frame.readByte();
+            int accionId = frame.readInt();
+            int correlacion = frame.readInt();
+            byte[] payload = new byte[frame.readableBytes()];
+            frame.readBytes(payload);
+            out.add(new TramaBinaria(version, tipo, accionId, correlacion, payload));
+        } else {
+            out.add(frame.toString(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package transporte.p2p.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Codifica {@link TramaArchivo} como [prefijo de longitud][cabecera][FileRegion].
+ *
+ * Va en el pipeline ANTES del LengthFieldPrepender (más cerca del socket), porque el
+ * prefijo de longitud debe cubrir también la región de archivo, que no es un ByteBuf.
+ */
+public class EncoderTramaArchivo extends MessageToMessageEncoder<TramaArchivo> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, TramaArchivo trama, List<Object> out) {
+        byte[] clave = trama.getClave().getBytes(StandardCharsets.UTF_8);
+        int metadatos = 2 + clave.length + 8 + 8;
+        int tamanoTrama = TramaBinaria.TAMANO_CABECERA + metadatos + trama.getLongitud();
+
+        ByteBuf cabecera = ctx.alloc().buffer(4 + TramaBinaria.TAMANO_CABECERA + metadatos);
+        cabecera.writeInt(tamanoTrama);
+        cabecera.writeByte(TramaBinaria.MAGIA);
+        cabecera.writeByte(TramaBinaria.VERSION);
+        cabecera.writeByte(TramaBinaria.TIPO_DATOS);
+        cabecera.writeInt(trama.getAccionId());
+        cabecera.writeInt(trama.getCorrelacion());
+        cabecera.writeShort(clave.length);
+        cabecera.writeBytes(clave);
+        cabecera.writeLong(trama.getOffset());
+        cabecera.writeLong(trama.getArchivo().length());
+
+        out.add(cabecera);
+        // El archivo se abre de forma perezosa y se cierra al liberar la región
+        out.add(new DefaultFileRegion(trama.getArchivo(), trama.getOffset(), trama.getLongitud()));
+    }
+}
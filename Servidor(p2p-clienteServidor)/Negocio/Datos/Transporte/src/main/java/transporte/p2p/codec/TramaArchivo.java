@@ -0,0 +1,41 @@
+package transporte.p2p.codec;
+
+import java.io.File;
+
+/**
+ * Mensaje de salida que sirve un rango de un archivo sin cargarlo en el heap.
+ *
+ * {@link EncoderTramaArchivo} lo convierte en una cabecera pequeña (misma envoltura que
+ * {@link TramaBinaria} con tipo {@link TramaBinaria#TIPO_DATOS}) seguida de un
+ * DefaultFileRegion, que en NIO se transmite con sendfile (zero-copy).
+ *
+ * Payload de la trama en el cable:
+ * <pre>
+ *   [2 bytes len clave][clave UTF-8][8 bytes offset][8 bytes tamaño total][bytes del rango...]
+ * </pre>
+ */
+public final class TramaArchivo {
+
+    private final int accionId;
+    private final int correlacion;
+    private final String clave;
+    private final File archivo;
+    private final long offset;
+    private final int longitud;
+
+    public TramaArchivo(int accionId, int correlacion, String clave, File archivo, long offset, int longitud) {
+        this.accionId = accionId;
+        this.correlacion = correlacion;
+        this.clave = clave;
+        this.archivo = archivo;
+        this.offset = offset;
+        this.longitud = longitud;
+    }
+
+    public int getAccionId() { return accionId; }
+    public int getCorrelacion() { return correlacion; }
+    public String getClave() { return clave; }
+    public File getArchivo() { return archivo; }
+    public long getOffset() { return offset; }
+    public int getLongitud() { return longitud; }
+}
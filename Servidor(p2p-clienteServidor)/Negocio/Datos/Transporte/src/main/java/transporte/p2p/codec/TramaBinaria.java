@@ -0,0 +1,80 @@
+package transporte.p2p.codec;
+
+/**
+ * Envoltura binaria del protocolo (negociada por conexión, JSON sigue siendo el fallback).
+ *
+ * Formato en el cable (big-endian, dentro del frame LengthField de 4 bytes):
+ * <pre>
+ *   [1 byte MAGIA][1 byte versión][1 byte tipo][4 bytes id acción][4 bytes correlación][payload...]
+ * </pre>
+ * El router decide con la cabecera (tipo + id de acción) sin deserializar el payload.
+ */
+public final class TramaBinaria {
+
+    /** Primer byte de toda trama binaria. Nunca coincide con el inicio de un JSON ('{', '[' o espacios). */
+    public static final byte MAGIA = (byte) 0xB7;
+    public static final byte VERSION = 1;
+    public static final int TAMANO_CABECERA = 11;
+
+    public static final byte TIPO_SALUDO = 0;
+    public static final byte TIPO_PETICION = 1;
+    public static final byte TIPO_RESPUESTA = 2;
+    /** Bloque de bytes crudos de un archivo (ver {@link TramaArchivo} y {@link BloqueDatos}). */
+    public static final byte TIPO_DATOS = 3;
+
+    /**
+     * Saludo JSON que envía el lado que inicia la conexión. Un nodo antiguo lo trata como
+     * una acción desconocida; uno nuevo lo intercepta en el transporte y contesta con un
+     * {@link #TIPO_SALUDO} binario, a partir del cual ambos lados usan tramas binarias.
+     */
+    public static final String ACCION_SALUDO = "protocolo_binario";
+    public static final String SALUDO_JSON = "{\"action\":\"" + ACCION_SALUDO + "\",\"payload\":{\"version\":" + VERSION + "}}";
+
+    private final byte version;
+    private final byte tipo;
+    private final int accionId;
+    private final int correlacion;
+    private final byte[] payload;
+
+    public TramaBinaria(byte tipo, int accionId, int correlacion, byte[] payload) {
+        this(VERSION, tipo, accionId, correlacion, payload);
+    }
+
+    public TramaBinaria(byte version, byte tipo, int accionId, int correlacion, byte[] payload) {
+        this.version = version;
+        this.tipo = tipo;
+        this.accionId = accionId;
+        this.correlacion = correlacion;
+        this.payload = payload != null ? payload : new byte[0];
+    }
+
+    public static TramaBinaria saludo() {
+        return new TramaBinaria(TIPO_SALUDO, 0, 0, null);
+    }
+
+    /**
+     * Id estable de una acción: FNV-1a de 32 bits sobre el nombre en minúsculas.
+     * Ambos extremos lo calculan igual, así que no hace falta una tabla compartida.
+     */
+    public static int idAccion(String accion) {
+        if (accion == null) return 0;
+        String a = accion.toLowerCase();
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < a.length(); i++) {
+            hash ^= a.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    public byte getVersion() { return version; }
+    public byte getTipo() { return tipo; }
+    public int getAccionId() { return accionId; }
+    public int getCorrelacion() { return correlacion; }
+    public byte[] getPayload() { return payload; }
+
+    public boolean esSaludo() { return tipo == TIPO_SALUDO; }
+    public boolean esPeticion() { return tipo == TIPO_PETICION; }
+    public boolean esRespuesta() { return tipo == TIPO_RESPUESTA; }
+    public boolean esDatos() { return tipo == TIPO_DATOS; }
+}
@@ -0,0 +1,263 @@
+package transporte.p2p.impl;
+
+import io.netty.channel.Channel;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Etapa de despacho entre los hilos de I/O de Netty y la lógica de negocio.
+ *
+ * Los handlers de los routers hacen llamadas bloqueantes (JDBC vía MySQLManager),
+ * así que NUNCA deben ejecutarse en el event loop. Este despachador:
+ * - Mantiene una cola por conexión y la drena en orden (un solo hilo a la vez por conexión).
+ * - Ejecuta las colas en un executor acotado (hilos virtuales en Java 21+, pool de plataforma en 17).
+ * - Aplica backpressure: si una conexión acumula demasiados mensajes, pausa su autoRead
+ *   hasta que la cola baja del umbral inferior.
+ * - Expone métricas de profundidad de cola y tiempo de espera.
+ */
+public class DespachadorMensajes {
+
+    private static final String TAG = "\u001B[34m[Despachador] \u001B[0m";
+    private static final String AMARILLO = "\u001B[33m";
+    private static final String ROJO = "\u001B[31m";
+    private static final String RESET = "\u001B[0m";
+
+    private final ExecutorService executor;
+    private final boolean hilosVirtuales;
+    private final int maxPendientesPorConexion;
+    private final int umbralReanudar;
+
+    // Colas por conexión: "ip:puerto" -> cola ordenada
+    private final Map<String, ColaConexion> colas = new ConcurrentHashMap<>();
+
+    // --- MÉTRICAS ---
+    private final AtomicInteger pendientesTotales = new AtomicInteger();
+    private final AtomicInteger maxPendientesObservado = new AtomicInteger();
+    private final AtomicLong tareasEjecutadas = new AtomicLong();
+    private final AtomicLong esperaAcumuladaNanos = new AtomicLong();
+    private final AtomicLong esperaMaximaNanos = new AtomicLong();
+    private final AtomicLong pausasLectura = new AtomicLong();
+
+    /**
+     * @param hilos                    Tamaño del pool de plataforma (ignorado con hilos virtuales).
+     * @param maxPendientesPorConexion Mensajes encolados por conexión antes de pausar autoRead.
+     * @param usarHilosVirtuales       Si es true y la JVM lo soporta (21+), usa hilos virtuales.
+     */
+    public DespachadorMensajes(int hilos, int maxPendientesPorConexion, boolean usarHilosVirtuales) {
+        this.maxPendientesPorConexion = Math.max(1, maxPendientesPorConexion);
+        this.umbralReanudar = Math.max(0, this.maxPendientesPorConexion / 2);
+
+        ExecutorService virtual = usarHilosVirtuales ? crearExecutorVirtual() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.hilosVirtuales = true;
+        } else {
+            int n = Math.max(1, hilos);
+            // La cola del pool solo contiene "drenadores" (uno por conexión como máximo),
+            // así que su tamaño queda acotado por el número de conexiones. El límite real
+            // de mensajes lo impone el backpressure por conexión.
+            this.executor = new ThreadPoolExecutor(n, n, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new FabricaHilos());
+            this.hilosVirtuales = false;
+        }
+
+        System.out.println(TAG + "Inicializado (" + (hilosVirtuales ? "hilos virtuales" : "pool de " + Math.max(1, hilos) + " hilos")
+                + ", max pendientes/conexión=" + this.maxPendientesPorConexion + ")");
+    }
+
+    /**
+     * Encola una tarea para la conexión indicada. Las tareas de una misma conexión
+     * se ejecutan en el orden en que llegaron; las de conexiones distintas en paralelo.
+     */
+    public void despachar(Channel canal, String origen, Runnable tarea) {
+        ColaConexion cola = colas.get(origen);
+        if (cola == null || cola.canal != canal) {
+            // Conexión nueva, o reconexión desde el mismo ip:puerto antes de liberar la anterior
+            cola = colas.compute(origen, (k, c) -> c != null && c.canal == canal ? c : new ColaConexion(canal));
+        }
+        cola.encolar(new Tarea(tarea, System.nanoTime()));
+    }
+
+    /**
+     * Quita la cola de una conexión cerrada. Se invoca desde la propia cola, como
+     * última tarea de la desconexión: el drenador en curso termina con su referencia
+     * y una reconexión desde el mismo ip:puerto empieza con una cola nueva, sin
+     * arrastrar el backpressure del canal muerto.
+     *
+     * Solo se quita si la cola sigue siendo la de ese canal (la reconexión pudo
+     * registrar ya la suya).
+     */
+    public void liberar(Channel canal, String origen) {
+        colas.computeIfPresent(origen, (k, cola) -> cola.canal == canal ? null : cola);
+    }
+
+    public void detener() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        colas.clear();
+    }
+
+    // --- MÉTRICAS ---
+
+    public int getProfundidadCola() {
+        return pendientesTotales.get();
+    }
+
+    public int getProfundidadMaximaObservada() {
+        return maxPendientesObservado.get();
+    }
+
+    public long getTareasEjecutadas() {
+        return tareasEjecutadas.get();
+    }
+
+    public double getEsperaPromedioMs() {
+        long n = tareasEjecutadas.get();
+        return n == 0 ? 0.0 : (esperaAcumuladaNanos.get() / (double) n) / 1_000_000.0;
+    }
+
+    public double getEsperaMaximaMs() {
+        return esperaMaximaNanos.get() / 1_000_000.0;
+    }
+
+    public long getPausasLectura() {
+        return pausasLectura.get();
+    }
+
+    public int getConexionesActivas() {
+        return colas.size();
+    }
+
+    public boolean usaHilosVirtuales() {
+        return hilosVirtuales;
+    }
+
+    // --- INTERNOS ---
+
+    private void registrarEspera(long esperaNanos) {
+        tareasEjecutadas.incrementAndGet();
+        esperaAcumuladaNanos.addAndGet(esperaNanos);
+        esperaMaximaNanos.accumulateAndGet(esperaNanos, Math::max);
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() solo existe en Java 21+.
+     * Se resuelve por reflexión para seguir compilando con target 17.
+     */
+    private static ExecutorService crearExecutorVirtual() {
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println(TAG + AMARILLO + "Hilos virtuales no disponibles en esta JVM, usando pool de plataforma." + RESET);
+            return null;
+        }
+    }
+
+    private static final class Tarea {
+        final Runnable accion;
+        final long encoladaEn;
+
+        Tarea(Runnable accion, long encoladaEn) {
+            this.accion = accion;
+            this.encoladaEn = encoladaEn;
+        }
+    }
+
+    /**
+     * Cola serial de una conexión. Como máximo hay un drenador activo por conexión,
+     * lo que garantiza el orden de los mensajes sin bloquear otras conexiones.
+     */
+    private final class ColaConexion implements Runnable {
+        private final Channel canal;
+        private final Queue<Tarea> tareas = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendientes = new AtomicInteger();
+        private final AtomicBoolean programada = new AtomicBoolean(false);
+        private final AtomicBoolean lecturaPausada = new AtomicBoolean(false);
+
+        ColaConexion(Channel canal) {
+            this.canal = canal;
+        }
+
+        void encolar(Tarea tarea) {
+            tareas.add(tarea);
+            int enCola = pendientes.incrementAndGet();
+            int total = pendientesTotales.incrementAndGet();
+            maxPendientesObservado.accumulateAndGet(total, Math::max);
+
+            if (enCola >= maxPendientesPorConexion && canal != null && lecturaPausada.compareAndSet(false, true)) {
+                pausasLectura.incrementAndGet();
+                canal.config().setAutoRead(false);
+                System.out.println(TAG + AMARILLO + "Backpressure: pausando lectura de " + canal.remoteAddress()
+                        + " (" + enCola + " mensajes pendientes)" + RESET);
+            }
+            programar();
+        }
+
+        private void programar() {
+            if (programada.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    programada.set(false);
+                    System.err.println(TAG + ROJO + "Executor detenido, se descartan mensajes de " + canal.remoteAddress() + RESET);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Tarea tarea;
+            while ((tarea = tareas.poll()) != null) {
+                registrarEspera(System.nanoTime() - tarea.encoladaEn);
+                try {
+                    tarea.accion.run();
+                } catch (Exception e) {
+                    System.err.println(TAG + ROJO + "Error procesando mensaje: " + e.getMessage() + RESET);
+                } finally {
+                    pendientesTotales.decrementAndGet();
+                    int restantes = pendientes.decrementAndGet();
+                    if (restantes <= umbralReanudar && lecturaPausada.compareAndSet(true, false)) {
+                        canal.config().setAutoRead(true);
+                    }
+                }
+            }
+            programada.set(false);
+            // Si llegó algo entre el último poll y la liberación del flag, volvemos a programar
+            if (!tareas.isEmpty()) {
+                programar();
+            }
+        }
+    }
+
+    private static final class FabricaHilos implements ThreadFactory {
+        private final AtomicInteger contador = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "despachador-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
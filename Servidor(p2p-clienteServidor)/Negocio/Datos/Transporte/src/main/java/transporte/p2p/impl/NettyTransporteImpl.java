@@ -1,6 +1,8 @@
 package transporte.p2p.impl;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -10,13 +12,25 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 // IMPORTANTE: Nuevos decodificadores para evitar JSONs rotos
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import configuracion.Configuracion;
+import logger.LoggerCentral;
+import transporte.p2p.codec.CodecTramas;
+import transporte.p2p.codec.EncoderTramaArchivo;
+import transporte.p2p.codec.TramaArchivo;
+import transporte.p2p.codec.TramaBinaria;
 import transporte.p2p.interfaces.IMensajeListener;
 import transporte.p2p.interfaces.ITransporteTcp;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class NettyTransporteImpl implements ITransporteTcp {
 
@@ -27,14 +41,41 @@ public class NettyTransporteImpl implements ITransporteTcp {
     // Aumentamos límite a 50MB para soportar listas grandes de sincronización
     private static final int MAX_FRAME_SIZE = 50 * 1024 * 1024;
 
+    // Marca por canal: true cuando el otro extremo negoció el protocolo binario
+    static final AttributeKey<Boolean> BINARIO = AttributeKey.valueOf("protocoloBinario");
+
     private IMensajeListener listener;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private EventLoopGroup clientGroup; // Grupo compartido para conexiones cliente
     private final Map<String, Channel> canalesActivos = new ConcurrentHashMap<>();
 
+    // Etapa de despacho: saca la lógica de negocio (JDBC) de los event loops de Netty.
+    // Si es null, los mensajes se entregan directamente en el hilo de I/O.
+    private final DespachadorMensajes despachador;
+
+    // Volcado periódico de las métricas del despachador al log central
+    private ScheduledFuture<?> tareaMetricas;
+
     public NettyTransporteImpl(IMensajeListener listener) {
+        this(listener, crearDespachadorDesdeConfiguracion());
+    }
+
+    public NettyTransporteImpl(IMensajeListener listener, DespachadorMensajes despachador) {
         this.listener = listener;
+        this.despachador = despachador;
+    }
+
+    private static DespachadorMensajes crearDespachadorDesdeConfiguracion() {
+        Configuracion config = Configuracion.getInstance();
+        if (!config.isDespachoHabilitado()) {
+            System.out.println(TAG + "Despacho asíncrono DESHABILITADO: los handlers corren en el event loop.");
+            return null;
+        }
+        return new DespachadorMensajes(
+                config.getDespachoHilos(),
+                config.getDespachoMaxPendientesPorConexion(),
+                config.isDespachoHilosVirtuales());
     }
 
     public void setListener(IMensajeListener listener) {
@@ -53,16 +94,20 @@ public class NettyTransporteImpl implements ITransporteTcp {
         // Lee los primeros 4 bytes para saber el tamaño y espera hasta tener todo el mensaje.
         p.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_SIZE, 0, 4, 0, 4));
 
+        // 1b. SALIDA zero-copy: rangos de archivo (cabecera + FileRegion/sendfile).
+        // Va antes del Prepender porque él mismo escribe el prefijo de longitud.
+        p.addLast(new EncoderTramaArchivo());
+
         // 2. SALIDA: Prepender automático
         // Calcula el tamaño del String y le pega 4 bytes al inicio antes de enviarlo.
         p.addLast(new LengthFieldPrepender(4));
 
-        // 3. Conversión Texto <-> Bytes
-        p.addLast(new StringDecoder());
-        p.addLast(new StringEncoder());
+        // 3. Conversión Bytes <-> (JSON String | TramaBinaria)
+        // El primer byte del frame distingue la envoltura binaria del JSON de clientes antiguos.
+        p.addLast(new CodecTramas());
 
         // 4. Lógica de negocio
-        p.addLast(new P2PInboundHandler(listener, canalesActivos));
+        p.addLast(new P2PInboundHandler(listener, canalesActivos, despachador));
     }
 
     @Override
@@ -82,6 +127,21 @@ public class NettyTransporteImpl implements ITransporteTcp {
 
         b.bind(puerto).sync();
         System.out.println(TAG + "Servidor escuchando en puerto: " + puerto);
+
+        programarMetricasDespacho();
+    }
+
+    /**
+     * Programa en el workerGroup el registro periódico de {@link #obtenerMetricasDespacho()}.
+     * Con el despacho deshabilitado o un intervalo de 0 no se programa nada.
+     */
+    private void programarMetricasDespacho() {
+        int intervalo = Configuracion.getInstance().getDespachoMetricasIntervaloSeg();
+        if (despachador == null || intervalo <= 0) return;
+
+        tareaMetricas = workerGroup.scheduleAtFixedRate(
+                () -> LoggerCentral.info("Netty-Core", "Métricas de despacho: " + obtenerMetricasDespacho()),
+                intervalo, intervalo, TimeUnit.SECONDS);
     }
 
     @Override
@@ -113,6 +173,8 @@ public class NettyTransporteImpl implements ITransporteTcp {
             if (f.isSuccess()) {
                 System.out.println(TAG + "Conectado a " + key);
                 canalesActivos.put(key, f.channel());
+                // Quien inicia la conexión propone el protocolo binario (un nodo antiguo lo ignora)
+                f.channel().writeAndFlush(TramaBinaria.SALUDO_JSON);
             } else {
                 System.err.println(TAG + ROJO + "Error conectando a " + key + ": " + f.cause().getMessage() + RESET);
             }
@@ -139,6 +201,81 @@ public class NettyTransporteImpl implements ITransporteTcp {
         }
     }
 
+    @Override
+    public int difundirMensaje(Collection<String> destinos, String mensaje) {
+        // Las conexiones se agrupan por event loop: una sola tarea por hilo de I/O
+        Map<EventLoop, List<Channel>> porEventLoop = new HashMap<>();
+        Channel cualquiera = null;
+        int total = 0;
+        for (String destino : destinos) {
+            Channel canal = canalesActivos.get(destino);
+            if (canal != null && canal.isActive()) {
+                porEventLoop.computeIfAbsent(canal.eventLoop(), k -> new ArrayList<>()).add(canal);
+                cualquiera = canal;
+                total++;
+            }
+        }
+        if (total == 0) return 0;
+
+        // Se codifica una vez; cada conexión escribe una vista con su propia referencia.
+        // El LengthFieldPrepender solo antepone la longitud, no copia el contenido.
+        ByteBuf contenido = ByteBufUtil.writeUtf8(cualquiera.alloc(), mensaje);
+        try {
+            for (Map.Entry<EventLoop, List<Channel>> entrada : porEventLoop.entrySet()) {
+                List<Channel> canales = entrada.getValue();
+                List<ByteBuf> vistas = new ArrayList<>(canales.size());
+                for (int i = 0; i < canales.size(); i++) {
+                    vistas.add(contenido.retainedDuplicate());
+                }
+                try {
+                    entrada.getKey().execute(() -> {
+                        for (int i = 0; i < canales.size(); i++) {
+                            canales.get(i).write(vistas.get(i));
+                        }
+                        for (Channel canal : canales) {
+                            canal.flush();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // Event loop apagado: las vistas no se escribirán
+                    vistas.forEach(ByteBuf::release);
+                    total -= canales.size();
+                }
+            }
+        } finally {
+            contenido.release();
+        }
+        return total;
+    }
+
+    @Override
+    public boolean soportaBinario(String host, int puerto) {
+        Channel canal = canalesActivos.get(host + ":" + puerto);
+        return canal != null && canal.isActive() && Boolean.TRUE.equals(canal.attr(BINARIO).get());
+    }
+
+    @Override
+    public void enviarTrama(String host, int puerto, TramaBinaria trama) {
+        String key = host + ":" + puerto;
+        Channel canal = canalesActivos.get(key);
+
+        if (canal != null && canal.isActive()) {
+            canal.writeAndFlush(trama);
+        } else {
+            conectarA(host, puerto);
+        }
+    }
+
+    @Override
+    public boolean enviarRangoArchivo(String host, int puerto, TramaArchivo trama) {
+        Channel canal = canalesActivos.get(host + ":" + puerto);
+        if (canal == null || !canal.isActive() || !Boolean.TRUE.equals(canal.attr(BINARIO).get())) {
+            return false;
+        }
+        canal.writeAndFlush(trama);
+        return true;
+    }
+
     @Override
     public void desconectar(String host, int puerto) {
         String key = host + ":" + puerto;
@@ -156,6 +293,11 @@ public class NettyTransporteImpl implements ITransporteTcp {
         // Cerrar todos los canales activos primero
         canalesActivos.values().forEach(Channel::close);
         canalesActivos.clear();
+
+        if (tareaMetricas != null) {
+            tareaMetricas.cancel(false);
+            tareaMetricas = null;
+        }
         
         // Cerrar grupos de eventos
         if (workerGroup != null && !workerGroup.isShutdown()) {
@@ -167,7 +309,28 @@ public class NettyTransporteImpl implements ITransporteTcp {
         if (clientGroup != null && !clientGroup.isShutdown()) {
             clientGroup.shutdownGracefully();
         }
+
+        if (despachador != null) {
+            despachador.detener();
+        }
         
         System.out.println(TAG + "Transporte Netty detenido");
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<String, Object> obtenerMetricasDespacho() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("habilitado", despachador != null);
+        if (despachador != null) {
+            metricas.put("hilosVirtuales", despachador.usaHilosVirtuales());
+            metricas.put("profundidadCola", despachador.getProfundidadCola());
+            metricas.put("profundidadMaxima", despachador.getProfundidadMaximaObservada());
+            metricas.put("conexiones", despachador.getConexionesActivas());
+            metricas.put("tareasEjecutadas", despachador.getTareasEjecutadas());
+            metricas.put("esperaPromedioMs", despachador.getEsperaPromedioMs());
+            metricas.put("esperaMaximaMs", despachador.getEsperaMaximaMs());
+            metricas.put("pausasLectura", despachador.getPausasLectura());
+        }
+        return metricas;
+    }
+}
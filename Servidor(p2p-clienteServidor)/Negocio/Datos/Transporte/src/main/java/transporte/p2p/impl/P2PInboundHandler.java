@@ -3,12 +3,13 @@ package transporte.p2p.impl;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import transporte.p2p.codec.TramaBinaria;
 import transporte.p2p.interfaces.IMensajeListener;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
 
-public class P2PInboundHandler extends SimpleChannelInboundHandler<String> {
+public class P2PInboundHandler extends SimpleChannelInboundHandler<Object> {
 
     // --- COLORES ANSI ---
     private static final String RESET = "\u001B[0m";
@@ -21,10 +22,28 @@ public class P2PInboundHandler extends SimpleChannelInboundHandler<String> {
 
     private final IMensajeListener listener;
     private final Map<String, Channel> canales;
+    private final DespachadorMensajes despachador;
 
     public P2PInboundHandler(IMensajeListener listener, Map<String, Channel> canales) {
+        this(listener, canales, null);
+    }
+
+    public P2PInboundHandler(IMensajeListener listener, Map<String, Channel> canales, DespachadorMensajes despachador) {
         this.listener = listener;
         this.canales = canales;
+        this.despachador = despachador;
+    }
+
+    /**
+     * Entrega un evento al listener. Con despachador, se ejecuta fuera del event loop
+     * en la cola ordenada de la conexión (conexión -> mensajes -> desconexión, en ese orden).
+     */
+    private void entregar(ChannelHandlerContext ctx, String origen, Runnable evento) {
+        if (despachador != null) {
+            despachador.despachar(ctx.channel(), origen, evento);
+        } else {
+            evento.run();
+        }
     }
 
     @Override
@@ -40,22 +59,43 @@ public class P2PInboundHandler extends SimpleChannelInboundHandler<String> {
         canales.put(key, ctx.channel());
 
         if (listener != null) {
-            listener.onNuevaConexion(key);
+            entregar(ctx, key, () -> listener.onNuevaConexion(key));
         }
         super.channelActive(ctx);
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+    protected void channelRead0(ChannelHandlerContext ctx, Object recibido) {
         InetSocketAddress socketAddr = (InetSocketAddress) ctx.channel().remoteAddress();
         String origen = socketAddr.getHostString() + ":" + socketAddr.getPort();
 
+        if (recibido instanceof TramaBinaria) {
+            TramaBinaria trama = (TramaBinaria) recibido;
+            if (trama.esSaludo()) {
+                // El otro extremo aceptó nuestra propuesta: desde ahora le hablamos en binario
+                ctx.channel().attr(NettyTransporteImpl.BINARIO).set(Boolean.TRUE);
+                System.out.println(TAG + VERDE + "Protocolo binario negociado con " + origen + RESET);
+            } else if (listener != null) {
+                entregar(ctx, origen, () -> listener.onTramaRecibida(trama, origen));
+            }
+            return;
+        }
+
+        String msg = (String) recibido;
+        if (msg.equals(TramaBinaria.SALUDO_JSON)) {
+            // Propuesta de protocolo binario: la aceptamos y no llega al router
+            ctx.channel().attr(NettyTransporteImpl.BINARIO).set(Boolean.TRUE);
+            ctx.writeAndFlush(TramaBinaria.saludo());
+            System.out.println(TAG + VERDE + "Protocolo binario aceptado para " + origen + RESET);
+            return;
+        }
+
         // Log de tráfico (truncado si es muy largo para no saturar)
         String msgLog = msg.length() > 100 ? msg.substring(0, 100) + "..." : msg;
         System.out.println(TAG + AMARILLO + "DATA recibida de " + origen + ": " + RESET + msgLog);
 
         if (listener != null) {
-            listener.onMensajeRecibido(msg, origen);
+            entregar(ctx, origen, () -> listener.onMensajeRecibido(msg, origen));
         }
     }
 
@@ -68,8 +108,16 @@ public class P2PInboundHandler extends SimpleChannelInboundHandler<String> {
         canales.remove(key);
 
         // ✅ NOTIFICAR AL LISTENER SOBRE LA DESCONEXIÓN
+        Channel canal = ctx.channel();
         if (listener != null) {
-            listener.onDesconexion(key);
+            entregar(ctx, key, () -> {
+                listener.onDesconexion(key);
+                if (despachador != null) {
+                    despachador.liberar(canal, key);
+                }
+            });
+        } else if (despachador != null) {
+            despachador.liberar(canal, key);
         }
 
         super.channelInactive(ctx);
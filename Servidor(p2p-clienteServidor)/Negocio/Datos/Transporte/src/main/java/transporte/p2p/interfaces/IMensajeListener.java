@@ -1,9 +1,16 @@
 package transporte.p2p.interfaces;
 
+import transporte.p2p.codec.TramaBinaria;
+
 public interface IMensajeListener {
     // Se invoca cuando llega data pura por TCP
     void onMensajeRecibido(String mensaje, String origen);
 
+    // Se invoca cuando llega una trama del protocolo binario (petición o respuesta)
+    default void onTramaRecibida(TramaBinaria trama, String origen) {
+        System.err.println("[IMensajeListener] Trama binaria ignorada de " + origen + ": listener sin soporte binario.");
+    }
+
     // Se invoca cuando se establece una conexión nueva
     void onNuevaConexion(String origen);
 
@@ -1,12 +1,45 @@
 package transporte.p2p.interfaces;
 
+import transporte.p2p.codec.TramaArchivo;
+import transporte.p2p.codec.TramaBinaria;
+
+import java.util.Collection;
+import java.util.Map;
+
 public interface ITransporteTcp {
     void iniciarEscucha(int puerto) throws InterruptedException;
     void conectarA(String host, int puerto);
     void enviarMensaje(String host, int puerto, String mensaje);
 
+    /**
+     * Envía el mismo mensaje JSON a varias conexiones ("host:puerto"). El mensaje se
+     * codifica una sola vez y cada conexión se vacía una vez por lote.
+     * @return Cantidad de conexiones activas a las que se entregó
+     */
+    int difundirMensaje(Collection<String> destinos, String mensaje);
+
+    /**
+     * Indica si la conexión con host:puerto negoció el protocolo binario.
+     * Si es false, el llamador debe enviar JSON con {@link #enviarMensaje}.
+     */
+    boolean soportaBinario(String host, int puerto);
+
+    void enviarTrama(String host, int puerto, TramaBinaria trama);
+
+    /**
+     * Envía un rango de archivo sin copiarlo al heap (FileRegion). Solo es posible si la
+     * conexión negoció el protocolo binario.
+     * @return false si la conexión no existe o no soporta binario (el llamador debe usar JSON)
+     */
+    boolean enviarRangoArchivo(String host, int puerto, TramaArchivo trama);
+
     // NUEVO: Método para cerrar una conexión específica
     void desconectar(String host, int puerto);
 
     void detener();
+
+    /**
+     * Métricas de la etapa de despacho (profundidad de cola, tiempos de espera, pausas por backpressure).
+     */
+    Map<String, Object> obtenerMetricasDespacho();
 }
\ No newline at end of file
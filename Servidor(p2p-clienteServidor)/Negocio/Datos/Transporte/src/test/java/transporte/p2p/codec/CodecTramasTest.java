@@ -0,0 +1,76 @@
+package transporte.p2p.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodecTramasTest {
+
+    @Test
+    void tramaBinariaIdaYVuelta() {
+        EmbeddedChannel canal = new EmbeddedChannel(new CodecTramas());
+        byte[] payload = {1, 2, 3, (byte) 0xFF, 0};
+        TramaBinaria original = new TramaBinaria(TramaBinaria.TIPO_PETICION,
+                TramaBinaria.idAccion("sync_merkle"), 42, payload);
+
+        assertTrue(canal.writeOutbound(original));
+        ByteBuf frame = canal.readOutbound();
+        assertEquals(TramaBinaria.TAMANO_CABECERA + payload.length, frame.readableBytes());
+        assertEquals(TramaBinaria.MAGIA, frame.getByte(0));
+
+        assertTrue(canal.writeInbound(frame));
+        TramaBinaria leida = canal.readInbound();
+        assertEquals(TramaBinaria.VERSION, leida.getVersion());
+        assertEquals(TramaBinaria.TIPO_PETICION, leida.getTipo());
+        assertEquals(original.getAccionId(), leida.getAccionId());
+        assertEquals(42, leida.getCorrelacion());
+        assertArrayEquals(payload, leida.getPayload());
+        assertFalse(canal.finish());
+    }
+
+    @Test
+    void tramaSoloCabeceraTienePayloadVacio() {
+        EmbeddedChannel canal = new EmbeddedChannel(new CodecTramas());
+        canal.writeOutbound(TramaBinaria.saludo());
+        canal.writeInbound((ByteBuf) canal.readOutbound());
+
+        TramaBinaria leida = canal.readInbound();
+        assertTrue(leida.esSaludo());
+        assertEquals(0, leida.getPayload().length);
+    }
+
+    @Test
+    void jsonSeEntregaComoTexto() {
+        EmbeddedChannel canal = new EmbeddedChannel(new CodecTramas());
+        String json = "{\"action\":\"ping\",\"payload\":{\"texto\":\"ñandú\"}}";
+
+        canal.writeOutbound(json);
+        ByteBuf frame = canal.readOutbound();
+        assertEquals(json, frame.toString(StandardCharsets.UTF_8));
+
+        canal.writeInbound(frame);
+        assertEquals(json, canal.readInbound());
+    }
+
+    @Test
+    void tramaBinariaTruncadaSeRechaza() {
+        EmbeddedChannel canal = new EmbeddedChannel(new CodecTramas());
+        ByteBuf truncada = Unpooled.wrappedBuffer(new byte[]{TramaBinaria.MAGIA, TramaBinaria.VERSION, TramaBinaria.TIPO_PETICION});
+
+        assertThrows(CorruptedFrameException.class, () -> canal.writeInbound(truncada));
+        assertNull(canal.readInbound());
+    }
+
+    @Test
+    void idAccionNoDistingueMayusculas() {
+        assertEquals(TramaBinaria.idAccion("sync_merkle"), TramaBinaria.idAccion("SYNC_Merkle"));
+        assertNotEquals(TramaBinaria.idAccion("sync_merkle"), TramaBinaria.idAccion("sync_merkle_hojas"));
+        assertEquals(0, TramaBinaria.idAccion(null));
+    }
+}
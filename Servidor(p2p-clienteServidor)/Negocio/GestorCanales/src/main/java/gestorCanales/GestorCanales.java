@@ -13,6 +13,7 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -75,9 +76,10 @@ public class GestorCanales {
         try {
             List<String> miembroIds = miembroRepositorio.obtenerMiembrosDelCanal(canalId);
             List<String> nombres = new ArrayList<>();
-            
+            Map<String, Usuario> perfiles = usuarioRepositorio.buscarPerfiles(miembroIds);
+
             for (String miembroId : miembroIds) {
-                Usuario usuario = usuarioRepositorio.buscarPorId(miembroId);
+                Usuario usuario = perfiles.get(miembroId);
                 if (usuario != null) {
                     nombres.add(usuario.getNombre());
                 }
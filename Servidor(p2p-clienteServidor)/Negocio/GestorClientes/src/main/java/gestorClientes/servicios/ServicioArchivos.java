@@ -1,6 +1,7 @@
 package gestorClientes.servicios;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
 import dominio.clienteServidor.Archivo;
@@ -8,14 +9,23 @@ import dto.archivos.*;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
+import repositorio.clienteServidor.AlmacenContenido;
 import repositorio.clienteServidor.ArchivoRepositorio;
+import repositorio.clienteServidor.LecturaRangos;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,23 +40,36 @@ public class ServicioArchivos implements IServicioCliente {
     private static final String TAG = "FileService";
     private static final int CHUNK_SIZE = 524288; // 512 KB
     private static final String BUCKET_PATH = "./Bucket/";
+    // Archivos parciales de las subidas en curso (se renombran al Bucket al finalizar)
+    private static final String UPLOADS_PATH = BUCKET_PATH + ".uploads/";
+    // Una subida sin chunks nuevos durante este tiempo se descarta
+    private static final long SUBIDA_INACTIVA_MS = 60 * 60 * 1000L;
+    // Prueba de posesión de checkFileHash: bytes del rango pedido y plazo para responder
+    private static final int DESAFIO_BYTES = 64 * 1024;
+    private static final long DESAFIO_VIGENCIA_MS = 2 * 60 * 1000L;
 
     private IGestorConexionesCliente gestor;
     private final ArchivoRepositorio repoArchivo;
+    private final AlmacenContenido almacen;
     private final Gson gson;
 
     // Cache de sesiones de subida/descarga activas
     private final Map<String, UploadSession> uploadSessions;
     private final Map<String, DownloadSession> downloadSessions;
+    // Desafíos de checkFileHash pendientes de respuesta (challengeId -> desafío)
+    private final Map<String, DesafioContenido> desafios;
+    private final SecureRandom aleatorio = new SecureRandom();
 
     // Referencia al servicio de sincronización P2P (inyectada externamente)
     private ServicioSincronizacionDatos servicioSync;
 
     public ServicioArchivos() {
         this.repoArchivo = new ArchivoRepositorio();
+        this.almacen = AlmacenContenido.getInstance();
         this.gson = new Gson();
         this.uploadSessions = new ConcurrentHashMap<>();
         this.downloadSessions = new ConcurrentHashMap<>();
+        this.desafios = new ConcurrentHashMap<>();
 
         // Crear directorio Bucket si no existe
         crearDirectorioBucket();
@@ -87,6 +110,8 @@ public class ServicioArchivos implements IServicioCliente {
                     return new DTOResponse("startFileUpload", "error", "Nombre de archivo requerido", null);
                 }
 
+                limpiarSubidasAbandonadas();
+
                 // Generar ID único de subida
                 String uploadId = UUID.randomUUID().toString();
 
@@ -109,6 +134,63 @@ public class ServicioArchivos implements IServicioCliente {
             }
         });
 
+        // RUTA: Comprobar si el contenido ya está en el servidor (antes de subirlo), en dos pasos:
+        // 1. Con hash, nombre y tamaño: si el contenido está, se responde un desafío
+        //    (challengeId, offset, length) sobre un rango elegido al azar.
+        // 2. Con challengeId y proof (SHA-256 de ese rango): si coincide, se registra el
+        //    archivo sin transferir ningún chunk. Conocer el hash no basta para obtener
+        //    el contenido: hay que tenerlo.
+        router.registrarAccion("checkFileHash", (datos, idSesion) -> {
+            try {
+                String userId = gestor.obtenerUsuarioDeSesion(idSesion);
+                if (userId == null) {
+                    return new DTOResponse("checkFileHash", "error", "Usuario no autenticado", null);
+                }
+
+                JsonObject payload = datos.getAsJsonObject();
+                if (payload.has("challengeId")) {
+                    return responderDesafio(userId, payload);
+                }
+
+                String hash = payload.has("fileHash") ? payload.get("fileHash").getAsString().toLowerCase() : null;
+                String fileName = payload.has("fileName") ? payload.get("fileName").getAsString() : null;
+                String mimeType = payload.has("mimeType") ? payload.get("mimeType").getAsString() : null;
+                long tamanio = payload.has("size") ? payload.get("size").getAsLong() : -1;
+
+                if (fileName == null || fileName.trim().isEmpty() || !AlmacenContenido.esHashValido(hash)) {
+                    return new DTOResponse("checkFileHash", "error", "Hash y nombre de archivo requeridos", null);
+                }
+
+                List<String> rutas = new ArrayList<>();
+                long tamanioConocido = -1;
+                for (Archivo existente : repoArchivo.buscarPorHash(hash)) {
+                    rutas.add(existente.getRutaRelativa());
+                    tamanioConocido = existente.getTamanio();
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("exists", false);
+                if (tamanioConocido != tamanio || !almacen.disponible(hash, rutas)) {
+                    return new DTOResponse("checkFileHash", "success", "Contenido no disponible", gson.toJsonTree(response));
+                }
+
+                limpiarDesafiosVencidos();
+                int longitud = (int) Math.min(DESAFIO_BYTES, tamanio);
+                long offset = tamanio > longitud ? (long) (aleatorio.nextDouble() * (tamanio - longitud + 1)) : 0;
+                DesafioContenido desafio = new DesafioContenido(userId, hash, fileName, mimeType, tamanio, offset, longitud);
+                desafios.put(desafio.challengeId, desafio);
+
+                response.put("challengeId", desafio.challengeId);
+                response.put("offset", offset);
+                response.put("length", longitud);
+                return new DTOResponse("checkFileHash", "success", "Prueba de posesión requerida", gson.toJsonTree(response));
+
+            } catch (Exception e) {
+                LoggerCentral.error(TAG, "Error en checkFileHash: " + e.getMessage());
+                return new DTOResponse("checkFileHash", "error", "Error comprobando el contenido", null);
+            }
+        });
+
         // RUTA: Iniciar subida para registro (sin autenticación)
         router.registrarAccion("uploadFileForRegistration", (datos, idSesion) -> {
             try {
@@ -118,6 +200,8 @@ public class ServicioArchivos implements IServicioCliente {
                     return new DTOResponse("uploadFileForRegistration", "error", "Nombre de archivo requerido", null);
                 }
 
+                limpiarSubidasAbandonadas();
+
                 String uploadId = UUID.randomUUID().toString();
 
                 // Sesión de subida sin usuario (para registro)
@@ -149,9 +233,13 @@ public class ServicioArchivos implements IServicioCliente {
                                          "error", "Sesión no encontrada", null);
                 }
 
-                // Decodificar y guardar chunk
+                // Decodificar y escribir el chunk en su posición del archivo parcial
                 byte[] chunkData = Base64.getDecoder().decode(dto.getChunkDataBase64());
-                session.addChunk(dto.getChunkNumber(), chunkData);
+                String error = session.escribirChunk(dto.getChunkNumber(), chunkData);
+                if (error != null) {
+                    return new DTOResponse("uploadFileChunk_" + dto.getUploadId() + "_" + dto.getChunkNumber(),
+                                         "error", error, null);
+                }
 
                 LoggerCentral.debug(TAG, "Chunk recibido: " + dto.getChunkNumber() + "/" + session.totalChunks +
                                   " - Upload: " + dto.getUploadId());
@@ -165,6 +253,37 @@ public class ServicioArchivos implements IServicioCliente {
             }
         });
 
+        // RUTA: Estado de una subida (para reanudarla tras una reconexión)
+        router.registrarAccion("getUploadStatus", (datos, idSesion) -> {
+            try {
+                JsonObject payload = datos.getAsJsonObject();
+                String uploadId = payload.has("uploadId") ? payload.get("uploadId").getAsString() : null;
+
+                UploadSession session = uploadId != null ? uploadSessions.get(uploadId) : null;
+                if (session == null) {
+                    return new DTOResponse("getUploadStatus", "error", "Sesión no encontrada", null);
+                }
+                if (!"REGISTRO_TEMP".equals(session.userId) &&
+                        !session.userId.equals(gestor.obtenerUsuarioDeSesion(idSesion))) {
+                    return new DTOResponse("getUploadStatus", "error", "La subida pertenece a otro usuario", null);
+                }
+
+                List<Integer> faltantes = session.chunksFaltantes();
+                LoggerCentral.info(TAG, "Estado de upload " + uploadId + ": faltan " + faltantes.size() +
+                                 "/" + session.totalChunks + " chunks");
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("uploadId", uploadId);
+                response.put("totalChunks", session.totalChunks);
+                response.put("missingChunks", faltantes);
+                return new DTOResponse("getUploadStatus", "success", "Estado de la subida", gson.toJsonTree(response));
+
+            } catch (Exception e) {
+                LoggerCentral.error(TAG, "Error en getUploadStatus: " + e.getMessage());
+                return new DTOResponse("getUploadStatus", "error", "Error consultando la subida", null);
+            }
+        });
+
         // RUTA: Finalizar subida
         router.registrarAccion("endFileUpload", (datos, idSesion) -> {
             try {
@@ -175,53 +294,45 @@ public class ServicioArchivos implements IServicioCliente {
                     return new DTOResponse("endFileUpload", "error", "Sesión no encontrada", null);
                 }
 
-                // Validar que todos los chunks estén completos
-                if (session.chunks.size() != session.totalChunks) {
+                // Validar que todos los chunks estén completos (la sesión se conserva para reanudar)
+                int recibidos = session.chunksRecibidos();
+                if (recibidos != session.totalChunks) {
                     return new DTOResponse("endFileUpload", "error",
-                        "Chunks incompletos: " + session.chunks.size() + "/" + session.totalChunks, null);
+                        "Chunks incompletos: " + recibidos + "/" + session.totalChunks, null);
                 }
 
-                // Ensamblar archivo
-                byte[] fileData = ensamblarArchivo(session);
-
-                // Verificar hash
-                String hashCalculado = calcularHashSHA256(fileData);
-                if (!hashCalculado.equals(dto.getFileHash())) {
+                // Hash calculado de forma incremental al recibir los chunks. Si no coincide,
+                // el contenido recibido no es el del cliente: la subida se descarta entera
+                // (el digest ya está cerrado y no se puede reanudar sobre él)
+                String hashCalculado = session.hashFinal();
+                if (!hashCalculado.equalsIgnoreCase(dto.getFileHash())) {
                     LoggerCentral.warn(TAG, "Hash no coincide - Esperado: " + dto.getFileHash() +
-                                     ", Calculado: " + hashCalculado);
+                                     ", Calculado: " + hashCalculado + ". Upload descartado: " + dto.getUploadId());
+                    uploadSessions.remove(dto.getUploadId());
+                    session.descartar();
+                    return new DTOResponse("endFileUpload", "error", "Hash no coincide: vuelva a subir el archivo", null);
                 }
 
                 // Determinar ruta según tipo de archivo
-                String categoria = determinarCategoria(session.fileName, session.mimeType);
-                String fileId = categoria + "/" + UUID.randomUUID() + "_" + sanitizarNombre(session.fileName);
-
-                // Guardar archivo físicamente en Bucket
-                File archivoFisico = guardarArchivoEnBucket(fileId, fileData);
+                String fileId = nuevoFileId(session.fileName, session.mimeType);
 
-                // Guardar metadatos en BD
-                Archivo archivo = new Archivo(fileId, session.fileName, session.mimeType, fileData.length);
-                archivo.setRutaRelativa(fileId);
-                archivo.setHashSHA256(hashCalculado);
-                archivo.setFechaUltimaActualizacion(Instant.now());
-                boolean guardado = repoArchivo.guardar(archivo);
+                // Llevar el contenido al almacén y enlazarlo en su ruta del Bucket
+                long tamanio = session.tamanio();
+                guardarArchivoEnBucket(fileId, session);
 
                 // Limpiar sesión
                 uploadSessions.remove(dto.getUploadId());
 
-                LoggerCentral.info(TAG, "✅ Archivo guardado: " + fileId + " - Tamaño: " + fileData.length + " bytes");
+                // Guardar metadatos en BD y sincronizar
+                registrarArchivo(fileId, session.fileName, session.mimeType, tamanio, hashCalculado);
 
-                // ✅ ACTIVAR SINCRONIZACIÓN P2P (igual que ServicioChat)
-                if (guardado && servicioSync != null) {
-                    LoggerCentral.info(TAG, "🔄 Activando sincronización P2P para archivo: " + fileId);
-                    servicioSync.onBaseDeDatosCambio(); // Reconstruir Merkle Tree
-                    servicioSync.forzarSincronizacion(); // Sincronizar con peers
-                }
+                LoggerCentral.info(TAG, "✅ Archivo guardado: " + fileId + " - Tamaño: " + tamanio + " bytes");
 
                 // Respuesta
                 Map<String, Object> response = new HashMap<>();
                 response.put("fileId", fileId);
                 response.put("fileName", session.fileName);
-                response.put("size", fileData.length);
+                response.put("size", tamanio);
                 response.put("mimeType", session.mimeType);
                 response.put("hash", hashCalculado);
 
@@ -276,14 +387,15 @@ public class ServicioArchivos implements IServicioCliente {
 
                 LoggerCentral.info(TAG, "✓ Archivo físico existe - Tamaño: " + archivoFisico.length() + " bytes");
 
-                byte[] fileData = Files.readAllBytes(archivoFisico.toPath());
-                int totalChunks = (int) Math.ceil((double) fileData.length / CHUNK_SIZE);
+                // No se carga el archivo: cada chunk se lee por rango al pedirlo
+                long tamanioFisico = archivoFisico.length();
+                int totalChunks = (int) Math.ceil((double) tamanioFisico / CHUNK_SIZE);
 
-                LoggerCentral.info(TAG, "✓ Archivo leído - Se dividirá en " + totalChunks + " chunks");
+                LoggerCentral.info(TAG, "✓ Archivo listo - Se servirá en " + totalChunks + " chunks");
 
                 // Crear sesión de descarga
                 String downloadId = UUID.randomUUID().toString();
-                DownloadSession session = new DownloadSession(downloadId, archivo, fileData, totalChunks);
+                DownloadSession session = new DownloadSession(downloadId, archivo, archivoFisico.toPath(), tamanioFisico, totalChunks);
                 downloadSessions.put(downloadId, session);
 
                 LoggerCentral.info(TAG, "✅ Descarga iniciada exitosamente:");
@@ -317,12 +429,15 @@ public class ServicioArchivos implements IServicioCliente {
                                          "error", "Sesión no encontrada", null);
                 }
 
-                // Extraer chunk solicitado
-                int offset = (dto.getChunkNumber() - 1) * CHUNK_SIZE;
-                int length = Math.min(CHUNK_SIZE, session.fileData.length - offset);
+                // Extraer chunk solicitado (lectura posicional, solo el rango)
+                long offset = (long) (dto.getChunkNumber() - 1) * CHUNK_SIZE;
+                int length = (int) Math.min(CHUNK_SIZE, session.tamanio - offset);
+                if (dto.getChunkNumber() < 1 || length <= 0) {
+                    return new DTOResponse("downloadFileChunk_" + dto.getDownloadId() + "_" + dto.getChunkNumber(),
+                                         "error", "Chunk fuera de rango", null);
+                }
 
-                byte[] chunkData = new byte[length];
-                System.arraycopy(session.fileData, offset, chunkData, 0, length);
+                byte[] chunkData = LecturaRangos.leer(session.ruta, offset, length);
 
                 String chunkBase64 = Base64.getEncoder().encodeToString(chunkData);
 
@@ -361,6 +476,16 @@ public class ServicioArchivos implements IServicioCliente {
                 LoggerCentral.info(TAG, "Directorio Bucket creado: " + BUCKET_PATH);
             }
 
+            // Directorio de subidas en curso: las sesiones viven en memoria, así que los
+            // parciales de una ejecución anterior ya no se pueden reanudar
+            Path uploadsPath = Paths.get(UPLOADS_PATH);
+            Files.createDirectories(uploadsPath);
+            try (DirectoryStream<Path> parciales = Files.newDirectoryStream(uploadsPath, "*.part")) {
+                for (Path parcial : parciales) {
+                    Files.deleteIfExists(parcial);
+                }
+            }
+
             // Crear subdirectorios para categorías
             String[] categorias = {"user_photos", "images", "audio", "documents", "otros"};
             for (String cat : categorias) {
@@ -374,33 +499,119 @@ public class ServicioArchivos implements IServicioCliente {
         }
     }
 
-    private byte[] ensamblarArchivo(UploadSession session) {
-        int totalSize = session.chunks.values().stream().mapToInt(chunk -> chunk.length).sum();
-        byte[] fileData = new byte[totalSize];
+    private File guardarArchivoEnBucket(String fileId, UploadSession session) throws IOException {
+        Path filePath = Paths.get(BUCKET_PATH + fileId);
 
-        int offset = 0;
-        for (int i = 1; i <= session.totalChunks; i++) {
-            byte[] chunk = session.chunks.get(i);
-            if (chunk != null) {
-                System.arraycopy(chunk, 0, fileData, offset, chunk.length);
-                offset += chunk.length;
-            }
+        // El parcial pasa al almacén (o se descarta si el contenido ya estaba) y la
+        // ruta del archivo se enlaza al contenido: nunca es visible a medio escribir
+        session.incorporarEn(almacen);
+        if (!almacen.enlazar(session.hashFinal(), fileId)) {
+            throw new IOException("Contenido no disponible tras la subida: " + session.hashFinal());
         }
 
-        return fileData;
+        LoggerCentral.info(TAG, "Archivo guardado en: " + filePath.toAbsolutePath());
+        return filePath.toFile();
     }
 
-    private File guardarArchivoEnBucket(String fileId, byte[] fileData) throws IOException {
-        Path filePath = Paths.get(BUCKET_PATH + fileId);
+    /**
+     * Guarda los metadatos de un archivo nuevo y lo notifica a la sincronización P2P.
+     */
+    private Archivo registrarArchivo(String fileId, String fileName, String mimeType, long tamanio, String hash) {
+        Archivo archivo = new Archivo(fileId, fileName, mimeType, tamanio);
+        archivo.setRutaRelativa(fileId);
+        archivo.setHashSHA256(hash);
+        archivo.setFechaUltimaActualizacion(Instant.now());
+        boolean guardado = repoArchivo.guardar(archivo);
+
+        // ✅ ACTIVAR SINCRONIZACIÓN P2P (igual que ServicioChat)
+        if (guardado && servicioSync != null) {
+            LoggerCentral.info(TAG, "🔄 Activando sincronización P2P para archivo: " + fileId);
+            servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_ARCHIVO, archivo);
+        }
+        return archivo;
+    }
+
+    /**
+     * Segundo paso de checkFileHash: comprueba el SHA-256 del rango pedido y, si
+     * coincide, registra el archivo enlazado al contenido ya almacenado.
+     */
+    private DTOResponse responderDesafio(String userId, JsonObject payload) throws IOException {
+        String challengeId = payload.get("challengeId").getAsString();
+        String prueba = payload.has("proof") ? payload.get("proof").getAsString().toLowerCase() : "";
+
+        // Un desafío se responde una sola vez, acierte o no
+        DesafioContenido desafio = desafios.remove(challengeId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("exists", false);
+        if (desafio == null || !desafio.userId.equals(userId) ||
+                System.currentTimeMillis() - desafio.creado > DESAFIO_VIGENCIA_MS) {
+            return new DTOResponse("checkFileHash", "error", "Desafío no encontrado o vencido", null);
+        }
+
+        byte[] rango = almacen.leerRango(desafio.hash, desafio.offset, desafio.longitud);
+        if (rango == null || rango.length != desafio.longitud) {
+            return new DTOResponse("checkFileHash", "success", "Contenido no disponible", gson.toJsonTree(response));
+        }
+        if (!MessageDigest.isEqual(sha256Hex(rango).getBytes(StandardCharsets.US_ASCII),
+                prueba.getBytes(StandardCharsets.US_ASCII))) {
+            LoggerCentral.warn(TAG, "Prueba de posesión incorrecta - Usuario: " + userId + " - Hash: " + desafio.hash);
+            return new DTOResponse("checkFileHash", "success", "Prueba de posesión incorrecta", gson.toJsonTree(response));
+        }
 
-        // Crear directorios padres si no existen
-        Files.createDirectories(filePath.getParent());
+        String fileId = nuevoFileId(desafio.fileName, desafio.mimeType);
+        if (!almacen.enlazar(desafio.hash, fileId)) {
+            return new DTOResponse("checkFileHash", "success", "Contenido no disponible", gson.toJsonTree(response));
+        }
+        registrarArchivo(fileId, desafio.fileName, desafio.mimeType, desafio.tamanio, desafio.hash);
 
-        // Escribir archivo
-        Files.write(filePath, fileData);
+        LoggerCentral.info(TAG, "♻️ Contenido ya almacenado, subida omitida: " + fileId + " - Hash: " + desafio.hash);
 
-        LoggerCentral.info(TAG, "Archivo guardado en: " + filePath.toAbsolutePath());
-        return filePath.toFile();
+        response.put("exists", true);
+        response.put("fileId", fileId);
+        response.put("fileName", desafio.fileName);
+        response.put("size", desafio.tamanio);
+        response.put("mimeType", desafio.mimeType);
+        response.put("hash", desafio.hash);
+        return new DTOResponse("checkFileHash", "success", "Archivo guardado", gson.toJsonTree(response));
+    }
+
+    private void limpiarDesafiosVencidos() {
+        long limite = System.currentTimeMillis() - DESAFIO_VIGENCIA_MS;
+        desafios.values().removeIf(desafio -> desafio.creado < limite);
+    }
+
+    private static String sha256Hex(byte[] datos) throws IOException {
+        try {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(datos)) {
+                String h = Integer.toHexString(0xff & b);
+                if (h.length() == 1) hex.append('0');
+                hex.append(h);
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IOException("SHA-256 no disponible", e);
+        }
+    }
+
+    private String nuevoFileId(String fileName, String mimeType) {
+        String categoria = determinarCategoria(fileName, mimeType);
+        return categoria + "/" + UUID.randomUUID() + "_" + sanitizarNombre(fileName);
+    }
+
+    /**
+     * Descarta las subidas sin actividad reciente y sus archivos parciales.
+     */
+    private void limpiarSubidasAbandonadas() {
+        long limite = System.currentTimeMillis() - SUBIDA_INACTIVA_MS;
+        uploadSessions.values().removeIf(session -> {
+            if (session.ultimaActividad >= limite) {
+                return false;
+            }
+            LoggerCentral.warn(TAG, "Descartando upload abandonado: " + session.uploadId + " - Archivo: " + session.fileName);
+            session.descartar();
+            return true;
+        });
     }
 
     private String determinarCategoria(String fileName, String mimeType) {
@@ -425,22 +636,6 @@ public class ServicioArchivos implements IServicioCliente {
                        .substring(0, Math.min(fileName.length(), 100));
     }
 
-    private String calcularHashSHA256(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            StringBuilder hexString = new StringBuilder(2 * hash.length);
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("Error calculando hash", e);
-        }
-    }
-
     @Override
     public void iniciar() {
         LoggerCentral.info(TAG, "Servicio de archivos iniciado");
@@ -448,48 +643,203 @@ public class ServicioArchivos implements IServicioCliente {
 
     @Override
     public void detener() {
+        uploadSessions.values().forEach(UploadSession::descartar);
         uploadSessions.clear();
         downloadSessions.clear();
+        desafios.clear();
         LoggerCentral.info(TAG, "Servicio de archivos detenido");
     }
 
     // ==================== CLASES INTERNAS ====================
 
+    /**
+     * Subida en curso. Cada chunk se escribe en su posición de un archivo parcial al
+     * llegar, así que la memoria usada es la de un chunk y no la del archivo completo.
+     * El SHA-256 avanza sobre el prefijo contiguo recibido: los chunks que llegan
+     * adelantados se incorporan (releyéndolos del disco) cuando se completa el hueco.
+     */
     private static class UploadSession {
         String uploadId;
         String userId;
         String fileName;
         String mimeType;
         int totalChunks;
-        Map<Integer, byte[]> chunks;
         Instant createdAt;
+        volatile long ultimaActividad;
 
-        UploadSession(String uploadId, String userId, String fileName, String mimeType, int totalChunks) {
+        private final Path rutaParcial;
+        private final FileChannel canal;
+        private final BitSet recibidos;
+        private final MessageDigest digest;
+        private int siguienteEnHash = 1;
+        private int tamanioUltimo = 0;
+        private String hash;
+
+        UploadSession(String uploadId, String userId, String fileName, String mimeType, int totalChunks) throws IOException {
             this.uploadId = uploadId;
             this.userId = userId;
             this.fileName = fileName;
             this.mimeType = mimeType;
-            this.totalChunks = totalChunks;
-            this.chunks = new ConcurrentHashMap<>();
+            this.totalChunks = Math.max(0, totalChunks);
             this.createdAt = Instant.now();
+            this.ultimaActividad = System.currentTimeMillis();
+            this.recibidos = new BitSet(this.totalChunks + 1);
+            this.rutaParcial = Paths.get(UPLOADS_PATH + uploadId + ".part");
+            Files.createDirectories(rutaParcial.getParent());
+            this.canal = FileChannel.open(rutaParcial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (Exception e) {
+                canal.close();
+                throw new IOException("SHA-256 no disponible", e);
+            }
+        }
+
+        /**
+         * Escribe un chunk en su posición. Reenviar un chunk ya recibido no tiene efecto.
+         *
+         * @return null si se aceptó, o el motivo del rechazo
+         */
+        synchronized String escribirChunk(int chunkNumber, byte[] data) throws IOException {
+            ultimaActividad = System.currentTimeMillis();
+            if (chunkNumber < 1 || chunkNumber > totalChunks) {
+                return "Chunk fuera de rango";
+            }
+            boolean ultimo = chunkNumber == totalChunks;
+            if (ultimo ? (data.length == 0 || data.length > CHUNK_SIZE) : data.length != CHUNK_SIZE) {
+                return "Tamaño de chunk inválido: " + data.length;
+            }
+            if (recibidos.get(chunkNumber)) {
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long posicion = (long) (chunkNumber - 1) * CHUNK_SIZE;
+            while (buffer.hasRemaining()) {
+                canal.write(buffer, posicion + buffer.position());
+            }
+            recibidos.set(chunkNumber);
+            if (ultimo) {
+                tamanioUltimo = data.length;
+            }
+
+            if (chunkNumber == siguienteEnHash) {
+                digest.update(data);
+                siguienteEnHash++;
+                avanzarHash();
+            }
+            return null;
+        }
+
+        /** Incorpora al hash los chunks adelantados que ya son contiguos. */
+        private void avanzarHash() throws IOException {
+            ByteBuffer buffer = null;
+            while (siguienteEnHash <= totalChunks && recibidos.get(siguienteEnHash)) {
+                int longitud = siguienteEnHash == totalChunks ? tamanioUltimo : CHUNK_SIZE;
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                }
+                buffer.clear().limit(longitud);
+                long posicion = (long) (siguienteEnHash - 1) * CHUNK_SIZE;
+                while (buffer.hasRemaining()) {
+                    if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                        throw new IOException("Archivo parcial truncado en chunk " + siguienteEnHash);
+                    }
+                }
+                buffer.flip();
+                digest.update(buffer);
+                siguienteEnHash++;
+            }
+        }
+
+        synchronized int chunksRecibidos() {
+            return recibidos.cardinality();
+        }
+
+        synchronized List<Integer> chunksFaltantes() {
+            List<Integer> faltantes = new ArrayList<>();
+            for (int i = recibidos.nextClearBit(1); i <= totalChunks; i = recibidos.nextClearBit(i + 1)) {
+                faltantes.add(i);
+            }
+            return faltantes;
+        }
+
+        synchronized long tamanio() {
+            return totalChunks == 0 ? 0 : (long) (totalChunks - 1) * CHUNK_SIZE + tamanioUltimo;
         }
 
-        void addChunk(int chunkNumber, byte[] data) {
-            chunks.put(chunkNumber, data);
+        /** Hash SHA-256 del archivo completo; solo válido con todos los chunks recibidos. */
+        synchronized String hashFinal() {
+            if (hash == null) {
+                byte[] bytes = digest.digest();
+                StringBuilder hexString = new StringBuilder(2 * bytes.length);
+                for (byte b : bytes) {
+                    String hex = Integer.toHexString(0xff & b);
+                    if (hex.length() == 1) hexString.append('0');
+                    hexString.append(hex);
+                }
+                hash = hexString.toString();
+            }
+            return hash;
+        }
+
+        /** Cierra el archivo parcial y lo entrega al almacén como contenido de su hash. */
+        synchronized void incorporarEn(AlmacenContenido almacen) throws IOException {
+            canal.force(false);
+            canal.close();
+            almacen.incorporar(rutaParcial, hashFinal());
+        }
+
+        synchronized void descartar() {
+            try {
+                canal.close();
+                Files.deleteIfExists(rutaParcial);
+            } catch (IOException e) {
+                LoggerCentral.warn(TAG, "No se pudo borrar el parcial de " + uploadId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Desafío de checkFileHash: rango del contenido cuyo SHA-256 debe enviar el cliente.
+     */
+    private static class DesafioContenido {
+        final String challengeId = UUID.randomUUID().toString();
+        final long creado = System.currentTimeMillis();
+        final String userId;
+        final String hash;
+        final String fileName;
+        final String mimeType;
+        final long tamanio;
+        final long offset;
+        final int longitud;
+
+        DesafioContenido(String userId, String hash, String fileName, String mimeType, long tamanio,
+                         long offset, int longitud) {
+            this.userId = userId;
+            this.hash = hash;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.tamanio = tamanio;
+            this.offset = offset;
+            this.longitud = longitud;
         }
     }
 
     private static class DownloadSession {
         String downloadId;
         Archivo archivo;
-        byte[] fileData;
+        Path ruta;
+        long tamanio;
         int totalChunks;
         Instant createdAt;
 
-        DownloadSession(String downloadId, Archivo archivo, byte[] fileData, int totalChunks) {
+        DownloadSession(String downloadId, Archivo archivo, Path ruta, long tamanio, int totalChunks) {
             this.downloadId = downloadId;
             this.archivo = archivo;
-            this.fileData = fileData;
+            this.ruta = ruta;
+            this.tamanio = tamanio;
             this.totalChunks = totalChunks;
             this.createdAt = Instant.now();
         }
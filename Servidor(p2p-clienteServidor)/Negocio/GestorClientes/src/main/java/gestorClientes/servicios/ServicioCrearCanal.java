@@ -10,12 +10,14 @@ import dto.canales.DTOCrearCanal;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.CanalMiembroRepositorio;
 import repositorio.clienteServidor.CanalRepositorio;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -157,17 +159,17 @@ public class ServicioCrearCanal implements IServicioCliente {
 
                 LoggerCentral.info(TAG, VERDE + "✅ Creador agregado como miembro del canal" + RESET);
 
-                // ✅ 1. SIGNAL_UPDATE a clientes CS
+                // ✅ 1. Invalidar la lista de canales del creador (único miembro por ahora)
                 if (servicioNotificacion != null) {
-                    servicioNotificacion.actualizar("NUEVO_CANAL", null);
-                    LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado a clientes CS" + RESET);
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_CANALES,
+                            canalId.toString(), List.of(userId));
                 }
 
                 // ✅ 2. Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, CYAN + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL, canal);
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_MIEMBRO, miembro);
                     LoggerCentral.info(TAG, VERDE + "✅ Sincronización P2P activada" + RESET);
                 } else {
                     LoggerCentral.warn(TAG, AMARILLO + "⚠️ Servicio P2P no disponible, sincronización omitida" + RESET);
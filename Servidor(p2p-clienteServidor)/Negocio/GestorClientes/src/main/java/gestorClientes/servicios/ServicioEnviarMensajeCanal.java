@@ -8,6 +8,7 @@ import dto.comunicacion.DTOResponse;
 import dto.canales.DTOEnviarMensajeCanal;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.MensajeRepositorio;
 
@@ -147,7 +148,7 @@ public class ServicioEnviarMensajeCanal implements IServicioCliente {
                 mensaje.setFechaEnvio(Instant.now());
 
                 // Guardar en BD
-                boolean guardado = repoMensaje.guardar(mensaje);
+                boolean guardado = repoMensaje.guardarAgrupado(mensaje).join();
 
                 if (!guardado) {
                     LoggerCentral.error(TAG, ROJO + "❌ Error al guardar mensaje en BD" + RESET);
@@ -156,26 +157,15 @@ public class ServicioEnviarMensajeCanal implements IServicioCliente {
 
                 LoggerCentral.info(TAG, VERDE + "✅ Mensaje guardado en BD - ID: " + mensaje.getId() + RESET);
 
-                // ✅ 1. SIGNAL_UPDATE a clientes CS
-                if (servicioNotificacion != null) {
-                    Map<String, Object> notificacionData = new HashMap<>();
-                    notificacionData.put("tipo", "NUEVO_MENSAJE_CANAL");
-                    notificacionData.put("canalId", dto.getCanalId());
-                    notificacionData.put("mensajeId", mensaje.getId().toString());
-
-                    servicioNotificacion.actualizar("NUEVO_MENSAJE_CANAL", notificacionData);
-                    LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado a clientes CS" + RESET);
-                }
-
-                // ✅ 2. Activar sincronización P2P
+                // ✅ 1. Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, CYAN + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE, mensaje);
                     LoggerCentral.info(TAG, VERDE + "✅ Sincronización P2P activada" + RESET);
                 }
 
-                // ✅ 3. Enviar notificación push a miembros del canal
+                // ✅ 2. Enviar notificación push a miembros del canal (lleva el mensaje
+                // completo, así que no hace falta invalidar nada más)
                 if (servicioNotificarCanal != null) {
                     LoggerCentral.info(TAG, CYAN + "📲 Enviando notificación push a miembros del canal..." + RESET);
                     servicioNotificarCanal.enviarNotificacionCanal(dto.getCanalId(), mensaje.getId().toString());
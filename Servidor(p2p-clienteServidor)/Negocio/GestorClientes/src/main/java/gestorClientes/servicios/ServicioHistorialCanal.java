@@ -15,8 +15,10 @@ import repositorio.clienteServidor.UsuarioRepositorio;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Servicio del servidor para solicitar historial de mensajes de canal.
@@ -34,6 +36,9 @@ public class ServicioHistorialCanal implements IServicioCliente {
     private static final String ROJO = "\u001B[31m";
     private static final String AZUL = "\u001B[34m";
 
+    private static final int LIMITE_POR_DEFECTO = 50;
+    private static final int LIMITE_MAXIMO = 200;
+
     private IGestorConexionesCliente gestor;
     private final MensajeRepositorio repoMensaje;
     private final CanalMiembroRepositorio repoCanalMiembro;
@@ -83,6 +88,8 @@ public class ServicioHistorialCanal implements IServicioCliente {
                 LoggerCentral.info(TAG, "   → Canal: " + dto.getCanalId());
                 LoggerCentral.info(TAG, "   → Usuario: " + userId);
                 LoggerCentral.info(TAG, "   → Límite: " + dto.getLimite());
+                if (dto.getAntesDe() != null) LoggerCentral.info(TAG, "   → Antes de: " + dto.getAntesDe());
+                if (dto.getDespuesDe() != null) LoggerCentral.info(TAG, "   → Después de: " + dto.getDespuesDe());
 
                 // Validar que el usuario sea miembro del canal
                 boolean esMiembro = repoCanalMiembro.esMiembroDelCanal(dto.getCanalId(), userId);
@@ -91,17 +98,31 @@ public class ServicioHistorialCanal implements IServicioCliente {
                     return new DTOResponse("solicitarHistorialCanal", "error", "No tienes acceso a este canal", null);
                 }
 
-                // Obtener historial de mensajes del canal
-                List<Mensaje> mensajes = repoMensaje.obtenerMensajesPorCanal(
+                // Página del historial por cursor; se pide uno de más para saber si quedan
+                int limite = Math.min(dto.getLimite() > 0 ? dto.getLimite() : LIMITE_POR_DEFECTO, LIMITE_MAXIMO);
+                List<Mensaje> mensajes = repoMensaje.obtenerPaginaCanal(
                     dto.getCanalId(),
-                    dto.getLimite() > 0 ? dto.getLimite() : 50,
-                    dto.getOffset()
+                    dto.getAntesDe(),
+                    dto.getDespuesDe(),
+                    limite + 1
                 );
+                boolean hayMas = mensajes.size() > limite;
+                if (hayMas) {
+                    // Sobra el más alejado del cursor: el más antiguo hacia atrás, el más nuevo hacia delante
+                    mensajes = dto.getDespuesDe() != null ? mensajes.subList(0, limite) : mensajes.subList(1, mensajes.size());
+                }
+
+                // Perfiles de todos los autores de la página de una vez
+                Set<String> autoresIds = new HashSet<>();
+                for (Mensaje mensaje : mensajes) {
+                    if (mensaje.getRemitenteId() != null) autoresIds.add(mensaje.getRemitenteId().toString());
+                }
+                Map<String, Usuario> autores = repoUsuario.buscarPerfiles(autoresIds);
 
                 // Construir lista de DTOs con información completa
                 List<Map<String, Object>> mensajesDTO = new ArrayList<>();
                 for (Mensaje mensaje : mensajes) {
-                    Map<String, Object> mensajeMap = construirMensajeDTO(mensaje);
+                    Map<String, Object> mensajeMap = construirMensajeDTO(mensaje, autores);
                     mensajesDTO.add(mensajeMap);
                 }
 
@@ -112,7 +133,10 @@ public class ServicioHistorialCanal implements IServicioCliente {
                 respuesta.put("mensajes", mensajesDTO);
                 respuesta.put("canalId", dto.getCanalId());
                 respuesta.put("totalRecibidos", mensajesDTO.size());
-                respuesta.put("hayMasMensajes", mensajes.size() >= dto.getLimite());
+                respuesta.put("hayMasMensajes", hayMas);
+                // Se devuelven los cursores para que el cliente distinga una página anterior de un refresco
+                if (dto.getAntesDe() != null) respuesta.put("antesDe", dto.getAntesDe());
+                if (dto.getDespuesDe() != null) respuesta.put("despuesDe", dto.getDespuesDe());
 
                 return new DTOResponse("solicitarHistorialCanal", "success", "Historial obtenido", gson.toJsonTree(respuesta));
 
@@ -128,8 +152,10 @@ public class ServicioHistorialCanal implements IServicioCliente {
 
     /**
      * Construye un DTO completo del mensaje con información del autor.
+     *
+     * @param autores Perfiles ya cargados de los remitentes de la página
      */
-    private Map<String, Object> construirMensajeDTO(Mensaje mensaje) {
+    private Map<String, Object> construirMensajeDTO(Mensaje mensaje, Map<String, Usuario> autores) {
         Map<String, Object> dto = new HashMap<>();
 
         dto.put("messageId", mensaje.getId().toString());
@@ -163,7 +189,7 @@ public class ServicioHistorialCanal implements IServicioCliente {
         Map<String, String> author = new HashMap<>();
         if (mensaje.getRemitenteId() != null) {
             String remitenteIdStr = mensaje.getRemitenteId().toString();
-            Usuario remitente = repoUsuario.buscarPorId(remitenteIdStr);
+            Usuario remitente = autores.get(remitenteIdStr);
             if (remitente != null) {
                 author.put("userId", remitente.getId());
                 author.put("username", remitente.getNombre());
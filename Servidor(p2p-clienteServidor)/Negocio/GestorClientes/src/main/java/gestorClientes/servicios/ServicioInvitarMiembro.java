@@ -172,20 +172,7 @@ public class ServicioInvitarMiembro implements IServicioCliente {
                     LoggerCentral.warn(TAG, ROJO + "⚠️ Servicio de notificación de invitaciones no disponible" + RESET);
                 }
 
-                // 11. ✅ Notificar al usuario invitado (SIGNAL_UPDATE genérico)
-                if (servicioNotificacion != null) {
-                    // Notificar específicamente al usuario invitado sobre la nueva invitación
-                    Map<String, Object> notificacionData = new HashMap<>();
-                    notificacionData.put("invitacionId", invitacion.getId().toString());
-                    notificacionData.put("canalId", canalId.toString());
-                    notificacionData.put("canalNombre", canal.getNombre());
-                    notificacionData.put("invitadorId", adminId);
-
-                    servicioNotificacion.actualizar("NUEVA_INVITACION", notificacionData);
-                    LoggerCentral.info(TAG, ROJO + "✅ SIGNAL_UPDATE enviado para nueva invitación" + RESET);
-                }
-
-                // 12. ✅ Notificar al sistema de cambios para activar P2P
+                // 11. ✅ Notificar al sistema de cambios para activar P2P
                 if (servicioNotificacionCambios != null) {
                     servicioNotificacionCambios.notificarCambio(
                             ServicioNotificacionCambios.TipoEvento.CAMBIO_INVITACION_CANAL,
@@ -196,7 +183,7 @@ public class ServicioInvitarMiembro implements IServicioCliente {
                     LoggerCentral.warn(TAG, ROJO + "⚠️ Notificador de cambios es NULL - La sync P2P podría no activarse" + RESET);
                 }
 
-                // 13. Preparar respuesta
+                // 12. Preparar respuesta
                 Map<String, Object> respuesta = new HashMap<>();
                 respuesta.put("invitacionId", invitacion.getId().toString());
                 respuesta.put("canalId", canalId.toString());
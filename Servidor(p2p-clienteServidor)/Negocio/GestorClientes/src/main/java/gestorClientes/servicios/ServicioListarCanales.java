@@ -5,15 +5,15 @@ import com.google.gson.JsonObject;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
 import dominio.clienteServidor.Canal;
-import dominio.clienteServidor.relaciones.CanalMiembro;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import logger.LoggerCentral;
-import repositorio.clienteServidor.CanalMiembroRepositorio;
 import repositorio.clienteServidor.CanalRepositorio;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Servicio que responde a la petición "listarCanales" del cliente.
@@ -22,13 +22,13 @@ import java.util.stream.Collectors;
 public class ServicioListarCanales implements IServicioCliente {
 
     private static final String TAG = "ServicioListarCanales";
+    // Tope de canales por página cuando el cliente pagina
+    private static final int LIMITE_MAXIMO = 500;
     private final CanalRepositorio canalRepositorio;
-    private final CanalMiembroRepositorio miembroRepositorio;
     private final Gson gson;
 
     public ServicioListarCanales() {
         this.canalRepositorio = new CanalRepositorio();
-        this.miembroRepositorio = new CanalMiembroRepositorio();
         this.gson = new Gson();
     }
 
@@ -61,6 +61,8 @@ public class ServicioListarCanales implements IServicioCliente {
     /**
      * Maneja la petición "listarCanales".
      * Espera que el payload contenga "usuarioId" para filtrar los canales.
+     * Opcionalmente "limite" y "cursor" (ID del último canal recibido) para paginar;
+     * los canales vienen ordenados por ID.
      */
     private DTOResponse handleListarCanales(JsonObject datos, String idSesion) {
         try {
@@ -87,60 +89,21 @@ public class ServicioListarCanales implements IServicioCliente {
 
             LoggerCentral.info(TAG, "📋 Listando canales para usuario: " + userId);
 
-            // Obtener todos los canales y relaciones miembro-canal
-            List<Canal> todosCanales = canalRepositorio.obtenerTodosParaSync();
-            List<CanalMiembro> miembros = miembroRepositorio.obtenerTodosParaSync();
-
-            LoggerCentral.info(TAG, "   Total canales en BD: " + todosCanales.size());
-            LoggerCentral.info(TAG, "   Total relaciones miembro: " + miembros.size());
-
-            // 🔍 DEBUG: Mostrar todas las relaciones
-            LoggerCentral.info(TAG, "   🔍 DEBUG - Relaciones en BD:");
-            for (CanalMiembro cm : miembros) {
-                LoggerCentral.info(TAG, "      Canal: " + cm.getCanalId() + " -> Usuario: " + cm.getUsuarioId());
-            }
-
-            // Conjunto de IDs de canales donde el usuario pertenece (normalizado a minúsculas)
-            Set<String> canalesDelUsuario = miembros.stream()
-                    .filter(cm -> {
-                        String miembroId = cm.getUsuarioId().toString().toLowerCase();
-                        String targetId = userId.toLowerCase();
-                        boolean match = miembroId.equals(targetId);
-                        if (match) {
-                            LoggerCentral.info(TAG, "   ✅ Match encontrado: Canal " + cm.getCanalId());
-                        }
-                        return match;
-                    })
-                    .map(cm -> cm.getCanalId().toString().toLowerCase())
-                    .collect(Collectors.toSet());
-
-            LoggerCentral.info(TAG, "   Usuario pertenece a " + canalesDelUsuario.size() + " canales");
-            
-            // 🔍 DEBUG: Mostrar IDs de canales del usuario
-            if (!canalesDelUsuario.isEmpty()) {
-                LoggerCentral.info(TAG, "   🔍 Canales del usuario:");
-                for (String canalId : canalesDelUsuario) {
-                    LoggerCentral.info(TAG, "      - " + canalId);
-                }
-            }
-
-            // Filtrar canales por pertenencia y convertir al formato esperado
-            List<Map<String, Object>> resultado = new ArrayList<>();
-            for (Canal c : todosCanales) {
-                String canalIdNormalizado = c.getId().toString().toLowerCase();
-                LoggerCentral.info(TAG, "   🔍 Verificando canal: " + c.getNombre() + " (" + canalIdNormalizado + ")");
-                
-                if (canalesDelUsuario.contains(canalIdNormalizado)) {
-                    Map<String, Object> mapa = new HashMap<>();
-                    mapa.put("idCanal", c.getId().toString());
-                    mapa.put("nombreCanal", c.getNombre());
-                    mapa.put("ownerId", c.getCreador() != null ? c.getCreador().getId().toString() : null);
-                    resultado.add(mapa);
-
-                    LoggerCentral.info(TAG, "   ✅ Canal agregado: " + c.getNombre() + " (" + c.getId() + ")");
-                } else {
-                    LoggerCentral.info(TAG, "   ❌ Canal NO coincide: " + c.getNombre());
-                }
+            // Paginación opcional: el cliente pide la siguiente página con el ID del último canal
+            int limite = datos.has("limite") ? Math.min(datos.get("limite").getAsInt(), LIMITE_MAXIMO) : 0;
+            String cursor = datos.has("cursor") && !datos.get("cursor").isJsonNull()
+                    ? datos.get("cursor").getAsString() : null;
+
+            // Solo los canales del usuario, con un JOIN sobre canal_miembros
+            List<Canal> canales = canalRepositorio.obtenerCanalesDeUsuario(userId, cursor, limite);
+
+            List<Map<String, Object>> resultado = new ArrayList<>(canales.size());
+            for (Canal c : canales) {
+                Map<String, Object> mapa = new HashMap<>();
+                mapa.put("idCanal", c.getId().toString());
+                mapa.put("nombreCanal", c.getNombre());
+                mapa.put("ownerId", c.getCreador() != null ? c.getCreador().getId().toString() : null);
+                resultado.add(mapa);
             }
 
             LoggerCentral.info(TAG, "✅ Devolviendo " + resultado.size() + " canales al cliente");
@@ -4,13 +4,11 @@ import com.google.gson.Gson;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
 import dominio.clienteServidor.Usuario;
-import dominio.clienteServidor.relaciones.CanalMiembro;
 import dto.canales.DTOListarMiembros;
 import dto.canales.DTOMiembroCanal;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import logger.LoggerCentral;
-import repositorio.clienteServidor.CanalMiembroRepositorio;
 import repositorio.clienteServidor.UsuarioRepositorio;
 
 import java.util.ArrayList;
@@ -19,7 +17,8 @@ import java.util.UUID;
 
 /**
  * Servicio del servidor para listar los miembros de un canal.
- * Simplemente consulta la BD y retorna la lista de miembros con su información.
+ * Consulta la BD y retorna la lista de miembros con su información, ordenada por ID
+ * de usuario. Admite paginación opcional con "limite" y "cursor" (ID del último miembro).
  */
 public class ServicioListarMiembros implements IServicioCliente {
 
@@ -33,12 +32,13 @@ public class ServicioListarMiembros implements IServicioCliente {
     private static final String ROJO = "\u001B[31m";
     private static final String AZUL = "\u001B[34m";
 
-    private final CanalMiembroRepositorio miembroRepositorio;
+    // Tope de miembros por página cuando el cliente pagina
+    private static final int LIMITE_MAXIMO = 500;
+
     private final UsuarioRepositorio usuarioRepositorio;
     private final Gson gson;
 
     public ServicioListarMiembros() {
-        this.miembroRepositorio = new CanalMiembroRepositorio();
         this.usuarioRepositorio = new UsuarioRepositorio();
         this.gson = new Gson();
         LoggerCentral.info(TAG, AZUL + "Constructor: ServicioListarMiembros creado" + RESET);
@@ -77,39 +77,26 @@ public class ServicioListarMiembros implements IServicioCliente {
                 LoggerCentral.info(TAG, CYAN + "📋 Listando miembros del canal: " + dto.getCanalId() + RESET);
                 LoggerCentral.info(TAG, "   → Solicitante: " + dto.getSolicitanteId());
 
-                UUID canalIdUUID;
                 try {
-                    canalIdUUID = UUID.fromString(dto.getCanalId());
+                    UUID.fromString(dto.getCanalId());
+                    if (dto.getCursor() != null) UUID.fromString(dto.getCursor());
                 } catch (IllegalArgumentException e) {
-                    LoggerCentral.warn(TAG, ROJO + "CanalId inválido: " + dto.getCanalId() + RESET);
+                    LoggerCentral.warn(TAG, ROJO + "CanalId o cursor inválido: " + dto.getCanalId() + RESET);
                     return new DTOResponse("listarMiembros", "error", "CanalId inválido", null);
                 }
 
-                // Obtener todos los miembros del canal
-                List<CanalMiembro> relaciones = miembroRepositorio.obtenerTodosParaSync();
-                List<DTOMiembroCanal> miembros = new ArrayList<>();
-
-                LoggerCentral.info(TAG, "   → Total relaciones en BD: " + relaciones.size());
-
-                // Filtrar por canal y obtener información de cada usuario
-                for (CanalMiembro relacion : relaciones) {
-                    if (relacion.getCanalId().equals(canalIdUUID)) {
-                        Usuario usuario = usuarioRepositorio.buscarPorId(relacion.getUsuarioId());
-
-                        if (usuario != null) {
-                            DTOMiembroCanal miembroDTO = new DTOMiembroCanal(
-                                usuario.getId(),
-                                usuario.getNombre(),
-                                usuario.getEmail(),
-                                usuario.getFoto(),
-                                usuario.getEstado() != null ? usuario.getEstado().name() : "OFFLINE"
-                            );
-                            miembros.add(miembroDTO);
-                            LoggerCentral.info(TAG, "   ✅ Miembro: " + usuario.getNombre() + " (" + usuario.getId() + ")");
-                        } else {
-                            LoggerCentral.warn(TAG, AMARILLO + "   ⚠️ Usuario no encontrado: " + relacion.getUsuarioId() + RESET);
-                        }
-                    }
+                // Miembros con su perfil en una sola consulta (JOIN canal_miembros-usuarios)
+                int limite = dto.getLimite() > 0 ? Math.min(dto.getLimite(), LIMITE_MAXIMO) : 0;
+                List<Usuario> usuarios = usuarioRepositorio.obtenerMiembrosDeCanal(dto.getCanalId(), dto.getCursor(), limite);
+                List<DTOMiembroCanal> miembros = new ArrayList<>(usuarios.size());
+                for (Usuario usuario : usuarios) {
+                    miembros.add(new DTOMiembroCanal(
+                        usuario.getId(),
+                        usuario.getNombre(),
+                        usuario.getEmail(),
+                        usuario.getFoto(),
+                        usuario.getEstado() != null ? usuario.getEstado().name() : "OFFLINE"
+                    ));
                 }
 
                 LoggerCentral.info(TAG, VERDE + "✅ Devolviendo " + miembros.size() + " miembros del canal" + RESET);
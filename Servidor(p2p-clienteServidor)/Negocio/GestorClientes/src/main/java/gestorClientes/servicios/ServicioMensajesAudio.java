@@ -9,6 +9,7 @@ import dto.comunicacion.DTOResponse;
 import dto.mensajeria.DTOEnviarMensajeAudio;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import gestorTranscripcion.FachadaTranscripcion;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.ArchivoRepositorio;
@@ -132,7 +133,7 @@ public class ServicioMensajesAudio implements IServicioCliente {
                 mensaje.setFechaEnvio(Instant.now());
 
                 // Guardar en BD
-                boolean guardado = repoMensaje.guardar(mensaje);
+                boolean guardado = repoMensaje.guardarAgrupado(mensaje).join();
 
                 if (!guardado) {
                     LoggerCentral.error(TAG, ROJO + "❌ Error al guardar mensaje de audio en BD" + RESET);
@@ -141,17 +142,19 @@ public class ServicioMensajesAudio implements IServicioCliente {
 
                 LoggerCentral.info(TAG, VERDE + "✅ Mensaje de audio guardado en BD - ID: " + mensaje.getId() + RESET);
 
-                // ✅ 1. SIGNAL_UPDATE a clientes CS
-                if (servicioNotificacion != null) {
-                    servicioNotificacion.actualizar("NUEVO_MENSAJE", null);
-                    LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado a clientes CS" + RESET);
-                }
+                Map<String, Object> respuestaRemitente = construirRespuestaMensajeAudio(mensaje, archivoAudio);
+
+                // ✅ 1. Push del mensaje de audio solo al destinatario: lo agrega a la conversación
+                // sin volver a pedir el historial
+                DTOResponse push = new DTOResponse("nuevoMensajeDirectoAudio", "success", "Nuevo mensaje de audio",
+                        gson.toJsonTree(respuestaRemitente));
+                gestor.enviarMensajeAUsuario(dto.getDestinatarioId(), gson.toJson(push));
+                LoggerCentral.info(TAG, VERDE + "✅ Push nuevoMensajeDirectoAudio enviado al destinatario" + RESET);
 
                 // ✅ 2. Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, CYAN + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE, mensaje);
                     LoggerCentral.info(TAG, VERDE + "✅ Sincronización P2P activada" + RESET);
                 }
 
@@ -162,9 +165,6 @@ public class ServicioMensajesAudio implements IServicioCliente {
                     LoggerCentral.info(TAG, VERDE + "✅ Sistema de transcripción notificado" + RESET);
                 }
 
-                // Preparar respuesta para el remitente
-                Map<String, Object> respuestaRemitente = construirRespuestaMensajeAudio(mensaje, archivoAudio);
-
                 return new DTOResponse("enviarmensajedirectoaudio", "success", "Mensaje de audio enviado", gson.toJsonTree(respuestaRemitente));
 
             } catch (Exception e) {
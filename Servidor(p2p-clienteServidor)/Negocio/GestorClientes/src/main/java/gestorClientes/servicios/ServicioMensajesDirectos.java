@@ -9,6 +9,7 @@ import dto.mensajeria.DTOEnviarMensaje;
 import dto.mensajeria.DTOSolicitarHistorial;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.MensajeRepositorio;
 
@@ -35,6 +36,10 @@ public class ServicioMensajesDirectos implements IServicioCliente {
     private static final String ROJO = "\u001B[31m";
     private static final String AZUL = "\u001B[34m";
 
+    // Mensajes por página del historial privado
+    private static final int LIMITE_HISTORIAL_POR_DEFECTO = 50;
+    private static final int LIMITE_HISTORIAL_MAXIMO = 200;
+
     private IGestorConexionesCliente gestor;
     private final MensajeRepositorio repoMensaje;
     private final Gson gson;
@@ -119,7 +124,7 @@ public class ServicioMensajesDirectos implements IServicioCliente {
                 mensaje.setFechaEnvio(Instant.now());
 
                 // Guardar en BD
-                boolean guardado = repoMensaje.guardar(mensaje);
+                boolean guardado = repoMensaje.guardarAgrupado(mensaje).join();
 
                 if (!guardado) {
                     LoggerCentral.error(TAG, ROJO + "❌ Error al guardar mensaje en BD" + RESET);
@@ -128,24 +133,22 @@ public class ServicioMensajesDirectos implements IServicioCliente {
 
                 LoggerCentral.info(TAG, VERDE + "✅ Mensaje guardado en BD - ID: " + mensaje.getId() + RESET);
 
-                // ✅ 1. SIGNAL_UPDATE a clientes CS
-                if (servicioNotificacion != null) {
-                    servicioNotificacion.actualizar("NUEVO_MENSAJE", null);
-                    LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado a clientes CS" + RESET);
-                }
+                Map<String, Object> respuestaRemitente = construirRespuestaMensaje(mensaje);
+
+                // ✅ 1. Push del mensaje solo al destinatario: lo agrega a la conversación
+                // sin volver a pedir el historial
+                DTOResponse push = new DTOResponse("nuevoMensajeDirecto", "success", "Nuevo mensaje",
+                        gson.toJsonTree(respuestaRemitente));
+                gestor.enviarMensajeAUsuario(dto.getDestinatarioId(), gson.toJson(push));
+                LoggerCentral.info(TAG, VERDE + "✅ Push nuevoMensajeDirecto enviado al destinatario" + RESET);
 
                 // ✅ 2. Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, CYAN + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE, mensaje);
                     LoggerCentral.info(TAG, VERDE + "✅ Sincronización P2P activada" + RESET);
                 }
 
-                // Preparar respuesta para el remitente
-                Map<String, Object> respuestaRemitente = construirRespuestaMensaje(mensaje);
-
-
                 return new DTOResponse("enviarmensajedirecto", "success", "Mensaje enviado", gson.toJsonTree(respuestaRemitente));
 
             } catch (Exception e) {
@@ -179,11 +182,19 @@ public class ServicioMensajesDirectos implements IServicioCliente {
                 LoggerCentral.info(TAG, "   → Usuario1: " + dto.getRemitenteId());
                 LoggerCentral.info(TAG, "   → Usuario2: " + dto.getDestinatarioId());
 
-                // Obtener historial de BD
-                List<Mensaje> mensajes = repoMensaje.obtenerHistorialEntre(
+                // Página del historial por cursor; se pide uno de más para saber si quedan
+                int limite = Math.min(dto.getLimite() > 0 ? dto.getLimite() : LIMITE_HISTORIAL_POR_DEFECTO, LIMITE_HISTORIAL_MAXIMO);
+                List<Mensaje> mensajes = repoMensaje.obtenerPaginaConversacion(
                     dto.getRemitenteId(),
-                    dto.getDestinatarioId()
+                    dto.getDestinatarioId(),
+                    dto.getAntesDe(),
+                    dto.getDespuesDe(),
+                    limite + 1
                 );
+                boolean hayMas = mensajes.size() > limite;
+                if (hayMas) {
+                    mensajes = dto.getDespuesDe() != null ? mensajes.subList(0, limite) : mensajes.subList(1, mensajes.size());
+                }
 
                 LoggerCentral.info(TAG, VERDE + "✅ Historial obtenido: " + mensajes.size() + " mensajes" + RESET);
 
@@ -192,6 +203,17 @@ public class ServicioMensajesDirectos implements IServicioCliente {
                     .map(this::construirRespuestaMensaje)
                     .toList();
 
+                // Las páginas pedidas con cursor van envueltas, como en el historial de canal
+                if (dto.getAntesDe() != null || dto.getDespuesDe() != null) {
+                    Map<String, Object> pagina = new HashMap<>();
+                    pagina.put("mensajes", historial);
+                    pagina.put("contactoId", userId.equals(dto.getRemitenteId()) ? dto.getDestinatarioId() : dto.getRemitenteId());
+                    pagina.put("hayMasMensajes", hayMas);
+                    if (dto.getAntesDe() != null) pagina.put("antesDe", dto.getAntesDe());
+                    if (dto.getDespuesDe() != null) pagina.put("despuesDe", dto.getDespuesDe());
+                    return new DTOResponse("solicitarhistorialprivado", "success", "Historial obtenido", gson.toJsonTree(pagina));
+                }
+
                 return new DTOResponse("solicitarhistorialprivado", "success", "Historial obtenido", gson.toJsonTree(historial));
 
             } catch (Exception e) {
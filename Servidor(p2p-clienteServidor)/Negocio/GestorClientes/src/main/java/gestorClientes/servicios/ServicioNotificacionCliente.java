@@ -1,17 +1,31 @@
 package gestorClientes.servicios;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import conexion.clientes.interfaces.IGestorConexionesCliente;
 import conexion.clientes.interfaces.IRouterMensajesCliente;
 import gestorClientes.interfaces.IServicioCliente;
+import gestorP2P.servicios.sincronizacion.CoordinadorSincronizacion;
 import logger.LoggerCentral;
 import observador.IObservador;
+import repositorio.clienteServidor.CanalMiembroRepositorio;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Servicio del lado CS (Cliente-Servidor).
  * Su responsabilidad es recibir avisos del sistema (ej. P2P) y
  * notificar a los clientes conectados (Apps/Web) para que se actualicen.
+ *
+ * En lugar de un SIGNAL_UPDATE global se envían invalidaciones (INVALIDATE) con el
+ * recurso, el id afectado y una versión, solo a los usuarios afectados. El cliente
+ * refresca únicamente ese recurso o aplica el delta que viaja en el push.
  */
 public class ServicioNotificacionCliente implements IServicioCliente, IObservador {
 
@@ -23,11 +37,26 @@ public class ServicioNotificacionCliente implements IServicioCliente, IObservado
     private static final String VERDE = "\u001B[32m";
     private static final String AMARILLO = "\u001B[33m";
 
+    // --- RECURSOS INVALIDABLES EN LOS CLIENTES ---
+    public static final String RECURSO_CONTACTOS = "CONTACTOS";
+    public static final String RECURSO_CANALES = "CANALES";
+    public static final String RECURSO_MIEMBROS_CANAL = "MIEMBROS_CANAL";
+    public static final String RECURSO_INVITACIONES = "INVITACIONES";
+    public static final String RECURSO_MENSAJES = "MENSAJES";
+
     private IGestorConexionesCliente gestorClientes;
     private final Gson gson;
+    // Miembros por canal desde CacheMiembrosCanal (sin consultar la BD en cada delta)
+    private final CanalMiembroRepositorio repoMiembros;
+    // Versión creciente de las invalidaciones de este proceso. Viaja junto a "origen":
+    // el cliente compara versiones solo del mismo origen, así que un reinicio o un
+    // failover a otro servidor no dejan invalidaciones descartadas por versión vieja.
+    private final String origen = UUID.randomUUID().toString();
+    private final AtomicLong versiones = new AtomicLong();
 
     public ServicioNotificacionCliente() {
         this.gson = new Gson();
+        this.repoMiembros = new CanalMiembroRepositorio();
         LoggerCentral.info(TAG, VERDE + "✅ ServicioNotificacionCliente creado" + RESET);
     }
 
@@ -44,110 +73,217 @@ public class ServicioNotificacionCliente implements IServicioCliente, IObservado
      * Método que recibe los eventos del núcleo (P2P, DB, etc.)
      * Implementa IObservador.
      *
-     * Envía SIGNAL_UPDATE a todos los clientes para que actualicen todo:
-     * contactos, canales, mensajes, etc.
+     * Solo los cambios reales se traducen en invalidaciones, y solo de los recursos
+     * afectados. Los avisos sin cambios (hashes iguales, sincronización vacía) se ignoran.
      */
     @Override
     public void actualizar(String tipoEvento, Object datos) {
-        LoggerCentral.info(TAG, AZUL + "📥 Evento recibido: " + tipoEvento + " | Datos: " + datos + RESET);
-
-        // ✅ NUEVO: Manejar eventos específicos de sincronización por tipo
-        if (tipoEvento.startsWith("SINCRONIZADO_")) {
-            String tipoSincronizado = tipoEvento.replace("SINCRONIZADO_", "");
-            LoggerCentral.info(TAG, VERDE + "🔄 Tipo sincronizado: " + tipoSincronizado + ". Notificando clientes..." + RESET);
+        LoggerCentral.debug(TAG, "📥 Evento recibido: " + tipoEvento + " | Datos: " + datos);
 
-            // Enviar señal específica según el tipo sincronizado
-            String recursoEspecifico = mapearTipoARecurso(tipoSincronizado);
-            enviarSenalDeActualizacion("SYNC_UPDATE");
+        // Entidades concretas replicadas por deltas: se avisa solo a quien las ve
+        if (CoordinadorSincronizacion.EVENTO_ENTIDADES_REPLICADAS.equals(tipoEvento)
+                && datos instanceof CoordinadorSincronizacion.EntidadesReplicadas) {
+            invalidarReplicadas((CoordinadorSincronizacion.EntidadesReplicadas) datos);
             return;
         }
 
-        // ✅ AJUSTE: Siempre notificar a los clientes cuando termine la sincronización P2P
-        if ("SINCRONIZACION_P2P_TERMINADA".equals(tipoEvento)) {
-            boolean huboCambios = datos instanceof Boolean ? (Boolean) datos : false;
-
-            if (huboCambios) {
-                LoggerCentral.info(TAG, VERDE + "🔄 Sincronización P2P completada CON cambios. Notificando clientes..." + RESET);
-            } else {
-                LoggerCentral.info(TAG, AMARILLO + "🔄 Sincronización P2P completada SIN cambios. Notificando clientes igualmente..." + RESET);
+        // Tipos que guardó una ronda completa de sincronización P2P
+        if (CoordinadorSincronizacion.EVENTO_TIPOS_CAMBIADOS.equals(tipoEvento) && datos instanceof Collection) {
+            Set<String> recursos = new LinkedHashSet<>();
+            for (Object tipo : (Collection<?>) datos) {
+                String recurso = mapearTipoARecurso(String.valueOf(tipo));
+                if (recurso != null) {
+                    recursos.add(recurso);
+                }
             }
-
-            // Siempre enviar señal de actualización específica de P2P
-            enviarSenalDeActualizacion("SYNC_P2P_UPDATE");
+            LoggerCentral.info(TAG, VERDE + "🔄 Cambios sincronizados por P2P: " + recursos + RESET);
+            // No se sabe a quién afectan sin leer cada entidad: se invalida el recurso entero
+            recursos.forEach(recurso -> invalidar(recurso, null, null));
             return;
         }
 
-        // ✅ MEJORADO: Manejar evento de sincronización terminada
-        if ("SINCRONIZACION_TERMINADA".equals(tipoEvento)) {
-            boolean huboCambios = datos instanceof Boolean ? (Boolean) datos : false;
-
-            // SIEMPRE notificar cuando termine la sincronización
-            LoggerCentral.info(TAG, VERDE + "🔄 Sincronización terminada. Notificando clientes... (cambios: " + huboCambios + ")" + RESET);
-            enviarSenalDeActualizacion("SYNC_UPDATE");
+        // SINCRONIZADO_X llega cuando los hashes coinciden y el fin de ronda llega
+        // aunque no haya cambios: los cambios reales vienen en CAMBIOS_SINCRONIZADOS
+        if (tipoEvento.startsWith("SINCRONIZADO_")
+                || "SINCRONIZACION_P2P_TERMINADA".equals(tipoEvento)
+                || "SINCRONIZACION_TERMINADA".equals(tipoEvento)) {
+            LoggerCentral.debug(TAG, "Evento " + tipoEvento + " no requiere notificación a clientes");
             return;
         }
 
-        // Filtramos qué eventos merecen notificar al cliente
-        // Por ejemplo: NUEVO_MENSAJE, NUEVO_USUARIO, etc.
-        if (tipoEvento.startsWith("NUEVO_") || tipoEvento.equals("ACTUALIZACION_ESTADO")) {
-            LoggerCentral.info(TAG, AZUL + "📡 Evento requiere notificación: " + tipoEvento + RESET);
-            enviarSenalDeActualizacion(tipoEvento);
+        // Avisos genéricos que aún no dicen qué cambió: se invalida el recurso más cercano
+        String recurso = mapearEventoARecurso(tipoEvento);
+        if (recurso != null) {
+            LoggerCentral.info(TAG, AZUL + "📡 Evento requiere notificación: " + tipoEvento + " → " + recurso + RESET);
+            invalidar(recurso, null, null);
         } else {
             LoggerCentral.debug(TAG, "Evento " + tipoEvento + " no requiere notificación a clientes");
         }
     }
 
     /**
-     * Envía el PUSH ligero (Signal) a todos los sockets conectados.
-     * El cliente recibe esto y actualiza toda su información: contactos, canales, mensajes.
+     * Invalida un recurso en los clientes afectados.
+     *
+     * @param recurso  Uno de los RECURSO_*
+     * @param id       Entidad concreta (canal, contacto...) o null para todo el recurso
+     * @param usuarios Usuarios a avisar, o null para todos los conectados
      */
-    private void enviarSenalDeActualizacion(String recursoAfectado) {
+    public void invalidar(String recurso, String id, Collection<String> usuarios) {
+        invalidar(recurso, id, usuarios, null);
+    }
+
+    /**
+     * Como {@link #invalidar(String, String, Collection)}, con un delta que el cliente
+     * puede aplicar sin volver a pedir el recurso.
+     *
+     * Payload: { "type": "INVALIDATE", "resource": "CANALES",
+     *            "data": { "id": "...", "origen": "...", "version": 123, "delta": {...} } }
+     */
+    public void invalidar(String recurso, String id, Collection<String> usuarios, JsonElement delta) {
         if (gestorClientes == null) {
             LoggerCentral.warn(TAG, AMARILLO + "⚠️ GestorClientes no disponible. No se puede enviar notificación." + RESET);
             return;
         }
 
         try {
-            // Payload Ligero: { "type": "SIGNAL_UPDATE", "resource": "NUEVO_MENSAJE" }
-            JsonObject signal = new JsonObject();
-            signal.addProperty("type", "SIGNAL_UPDATE");
-            signal.addProperty("resource", recursoAfectado);
-
-            String jsonPush = gson.toJson(signal);
-
-            LoggerCentral.info(TAG, VERDE + "📡 Enviando SIGNAL_UPDATE a todos los clientes: " + recursoAfectado + RESET);
-
-            // Broadcast a todos los clientes conectados
-            gestorClientes.broadcast(jsonPush);
+            JsonObject data = new JsonObject();
+            if (id != null) {
+                data.addProperty("id", id);
+            }
+            data.addProperty("origen", origen);
+            data.addProperty("version", versiones.incrementAndGet());
+            if (delta != null) {
+                data.add("delta", delta);
+            }
 
-            LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado a todos los clientes" + RESET);
+            JsonObject push = new JsonObject();
+            push.addProperty("type", "INVALIDATE");
+            push.addProperty("resource", recurso);
+            push.add("data", data);
+            String jsonPush = gson.toJson(push);
 
+            if (usuarios == null) {
+                gestorClientes.broadcast(jsonPush);
+                LoggerCentral.info(TAG, VERDE + "📡 INVALIDATE " + recurso + (id != null ? ":" + id : "")
+                        + " enviado a todos los clientes" + RESET);
+            } else if (!usuarios.isEmpty()) {
+                int sesiones = gestorClientes.enviarMensajeAUsuarios(usuarios, null, jsonPush);
+                LoggerCentral.info(TAG, VERDE + "📡 INVALIDATE " + recurso + (id != null ? ":" + id : "")
+                        + " enviado a " + sesiones + " sesiones" + RESET);
+            }
         } catch (Exception e) {
             LoggerCentral.error(TAG, "❌ Error enviando push: " + e.getMessage());
-            e.printStackTrace();
         }
     }
 
     /**
-     * ✅ NUEVO: Mapea tipos de sincronización a recursos específicos para los clientes.
-     * Esto permite que los clientes actualicen solo la parte relevante de su UI.
+     * Una invalidación por entidad replicada, con su ID y solo para los usuarios
+     * afectados: miembros del canal, participantes del mensaje directo, invitado e
+     * invitador. Los contactos se avisan a todos, pero solo del usuario cambiado.
+     */
+    private void invalidarReplicadas(CoordinadorSincronizacion.EntidadesReplicadas replicadas) {
+        for (JsonElement elemento : replicadas.getEntidades()) {
+            if (!elemento.isJsonObject()) continue;
+            JsonObject e = elemento.getAsJsonObject();
+            try {
+                switch (replicadas.getTipo()) {
+                    case "MENSAJE": {
+                        String canalId = campo(e, "canalId");
+                        String remitente = campo(e, "remitenteId");
+                        String destinatario = campo(e, "destinatarioUsuarioId");
+                        if (canalId != null) {
+                            invalidar(RECURSO_MENSAJES, canalId, repoMiembros.miembrosDelCanal(canalId));
+                        } else if (remitente != null && destinatario != null) {
+                            // Cada participante identifica la conversación por el otro
+                            invalidar(RECURSO_MENSAJES, remitente, List.of(destinatario));
+                            invalidar(RECURSO_MENSAJES, destinatario, List.of(remitente));
+                        }
+                        break;
+                    }
+                    case "CANAL": {
+                        String canalId = campo(e, "id");
+                        if (canalId != null) {
+                            invalidar(RECURSO_CANALES, canalId, repoMiembros.miembrosDelCanal(canalId));
+                        }
+                        break;
+                    }
+                    case "CANAL_MIEMBRO": {
+                        String canalId = campo(e, "canalId");
+                        String usuarioId = campo(e, "usuarioId");
+                        if (canalId != null) {
+                            invalidar(RECURSO_MIEMBROS_CANAL, canalId, repoMiembros.miembrosDelCanal(canalId));
+                            if (usuarioId != null) {
+                                invalidar(RECURSO_CANALES, canalId, List.of(usuarioId));
+                            }
+                        }
+                        break;
+                    }
+                    case "CANAL_INVITACION": {
+                        Set<String> afectados = new LinkedHashSet<>();
+                        String invitado = campo(e, "invitadoId");
+                        String invitador = campo(e, "invitadorId");
+                        if (invitado != null) afectados.add(invitado);
+                        if (invitador != null) afectados.add(invitador);
+                        invalidar(RECURSO_INVITACIONES, campo(e, "id"), afectados);
+                        break;
+                    }
+                    case "USUARIO": {
+                        String usuarioId = campo(e, "id");
+                        if (usuarioId != null) {
+                            invalidar(RECURSO_CONTACTOS, usuarioId, null);
+                        }
+                        break;
+                    }
+                    default:
+                        // ARCHIVO: los clientes piden los archivos cuando los muestran
+                        return;
+                }
+            } catch (Exception ex) {
+                LoggerCentral.warn(TAG, AMARILLO + "⚠️ Entidad replicada " + replicadas.getTipo()
+                        + " sin datos para invalidar: " + ex.getMessage() + RESET);
+            }
+        }
+    }
+
+    private static String campo(JsonObject objeto, String nombre) {
+        JsonElement valor = objeto.get(nombre);
+        return valor != null && valor.isJsonPrimitive() ? valor.getAsString() : null;
+    }
+
+    /**
+     * Recurso de cliente afectado por un tipo de entidad sincronizado por P2P.
      */
     private String mapearTipoARecurso(String tipoSync) {
         switch (tipoSync) {
             case "USUARIO":
-                return "SYNC_USUARIOS";
+                return RECURSO_CONTACTOS;
             case "CANAL":
-                return "SYNC_CANALES";
+                return RECURSO_CANALES;
             case "MENSAJE":
-                return "SYNC_MENSAJES";
+                return RECURSO_MENSAJES;
             case "CANAL_MIEMBRO":
-                return "SYNC_MIEMBROS";
+                return RECURSO_MIEMBROS_CANAL;
             case "CANAL_INVITACION":
-                return "SYNC_INVITACIONES";
-            case "ARCHIVO":
-                return "SYNC_ARCHIVOS";
+                return RECURSO_INVITACIONES;
+            default:
+                // ARCHIVO: los clientes piden los archivos cuando los muestran
+                return null;
+        }
+    }
+
+    /**
+     * Recurso de cliente para los eventos genéricos del núcleo.
+     */
+    private String mapearEventoARecurso(String tipoEvento) {
+        switch (tipoEvento) {
+            case "NUEVO_MENSAJE":
+                return RECURSO_MENSAJES;
+            case "NUEVO_USUARIO":
+                return RECURSO_CONTACTOS;
+            case "NUEVO_CANAL":
+                return RECURSO_CANALES;
             default:
-                return "SYNC_" + tipoSync;
+                return null;
         }
     }
 
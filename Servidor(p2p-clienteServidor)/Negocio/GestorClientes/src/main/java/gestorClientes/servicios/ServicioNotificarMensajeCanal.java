@@ -12,12 +12,15 @@ import repositorio.clienteServidor.CanalMiembroRepositorio;
 import repositorio.clienteServidor.UsuarioRepositorio;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Servicio del servidor para notificar nuevos mensajes de canal a los miembros.
  * Envía notificaciones push a todos los miembros conectados del canal.
+ *
+ * Los miembros salen de la caché en memoria del repositorio (sin consultar la BD) y
+ * la notificación se serializa una vez y se difunde a todas las sesiones en bloque.
  */
 public class ServicioNotificarMensajeCanal implements IServicioCliente {
 
@@ -71,7 +74,7 @@ public class ServicioNotificarMensajeCanal implements IServicioCliente {
         LoggerCentral.info(TAG, "   → Mensaje: " + mensajeId);
 
         // Obtener todos los miembros del canal
-        List<String> miembrosIds = repoCanalMiembro.obtenerMiembrosDelCanal(canalId);
+        Set<String> miembrosIds = repoCanalMiembro.miembrosDelCanal(canalId);
 
         if (miembrosIds.isEmpty()) {
             LoggerCentral.warn(TAG, AMARILLO + "No hay miembros en el canal: " + canalId + RESET);
@@ -94,22 +97,11 @@ public class ServicioNotificarMensajeCanal implements IServicioCliente {
         // Serializar a JSON
         String mensajeJson = gson.toJson(notificacion);
 
-        // Contador de notificaciones enviadas
-        int notificacionesEnviadas = 0;
-
-        // Enviar notificación a cada miembro
-        for (String miembroId : miembrosIds) {
-            try {
-                // Enviar mensaje al usuario (el gestor busca su sesión activa)
-                gestor.enviarMensajeAUsuario(miembroId, mensajeJson);
-                notificacionesEnviadas++;
-            } catch (Exception e) {
-                LoggerCentral.warn(TAG, "Error enviando notificación a usuario " + miembroId + ": " + e.getMessage());
-            }
-        }
+        // Enviar a las sesiones activas de los miembros (el gestor omite a los desconectados)
+        int notificacionesEnviadas = difundir(miembrosIds, null, mensajeJson);
 
         LoggerCentral.info(TAG, VERDE + "✅ Notificaciones enviadas: " + notificacionesEnviadas +
-                         " de " + miembrosIds.size() + " miembros" + RESET);
+                         " sesiones de " + miembrosIds.size() + " miembros" + RESET);
     }
 
     /**
@@ -133,7 +125,7 @@ public class ServicioNotificarMensajeCanal implements IServicioCliente {
         LoggerCentral.info(TAG, "   → Remitente: " + remitenteId);
 
         // Obtener todos los miembros del canal
-        List<String> miembrosIds = repoCanalMiembro.obtenerMiembrosDelCanal(canalId);
+        Set<String> miembrosIds = repoCanalMiembro.miembrosDelCanal(canalId);
 
         if (miembrosIds.isEmpty()) {
             LoggerCentral.warn(TAG, AMARILLO + "No hay miembros en el canal: " + canalId + RESET);
@@ -161,27 +153,20 @@ public class ServicioNotificarMensajeCanal implements IServicioCliente {
         // Serializar a JSON
         String mensajeJson = gson.toJson(notificacion);
 
-        // Contador de notificaciones enviadas
-        int notificacionesEnviadas = 0;
-
-        // Enviar notificación a cada miembro (excepto al remitente)
-        for (String miembroId : miembrosIds) {
-            // No notificar al remitente del mensaje
-            if (miembroId.equals(remitenteId)) {
-                continue;
-            }
-
-            try {
-                // Enviar mensaje al usuario (el gestor busca su sesión activa)
-                gestor.enviarMensajeAUsuario(miembroId, mensajeJson);
-                notificacionesEnviadas++;
-            } catch (Exception e) {
-                LoggerCentral.warn(TAG, "Error enviando notificación a usuario " + miembroId + ": " + e.getMessage());
-            }
-        }
+        // Enviar a las sesiones activas de los miembros, excepto al remitente
+        int notificacionesEnviadas = difundir(miembrosIds, remitenteId, mensajeJson);
 
         LoggerCentral.info(TAG, VERDE + "✅ Notificaciones enviadas: " + notificacionesEnviadas +
-                         " de " + (miembrosIds.size() - 1) + " miembros" + RESET);
+                         " sesiones de " + (miembrosIds.size() - 1) + " miembros" + RESET);
+    }
+
+    private int difundir(Set<String> miembrosIds, String excluido, String mensajeJson) {
+        try {
+            return gestor.enviarMensajeAUsuarios(miembrosIds, excluido, mensajeJson);
+        } catch (Exception e) {
+            LoggerCentral.warn(TAG, "Error difundiendo notificación de canal: " + e.getMessage());
+            return 0;
+        }
     }
 
     /**
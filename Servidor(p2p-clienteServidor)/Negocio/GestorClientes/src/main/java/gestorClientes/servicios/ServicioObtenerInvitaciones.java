@@ -92,6 +92,13 @@ public class ServicioObtenerInvitaciones implements IServicioCliente {
 
                 LoggerCentral.info(TAG, ROJO + "🔄 Procesando " + invitaciones.size() + " invitaciones..." + RESET);
 
+                // Perfiles de todos los invitadores de una vez
+                Set<String> invitadoresIds = new HashSet<>();
+                for (CanalInvitacion invitacion : invitaciones) {
+                    invitadoresIds.add(invitacion.getInvitadorId().toString());
+                }
+                Map<String, Usuario> invitadores = usuarioRepositorio.buscarPerfiles(invitadoresIds);
+
                 for (CanalInvitacion invitacion : invitaciones) {
                     LoggerCentral.info(TAG, ROJO + "  → Procesando invitación: " + invitacion.getId() + RESET);
 
@@ -104,7 +111,7 @@ public class ServicioObtenerInvitaciones implements IServicioCliente {
                     LoggerCentral.info(TAG, ROJO + "  ✅ Canal encontrado: " + canal.getNombre() + RESET);
 
                     // Obtener información del invitador
-                    Usuario invitador = usuarioRepositorio.buscarPorId(invitacion.getInvitadorId().toString());
+                    Usuario invitador = invitadores.get(invitacion.getInvitadorId().toString());
                     if (invitador == null) {
                         LoggerCentral.warn(TAG, ROJO + "  ⚠️ Invitador no encontrado: " + invitacion.getInvitadorId() + RESET);
                         continue;
@@ -9,6 +9,7 @@ import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioNotificacionCambios;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.CanalInvitacionRepositorio;
 import repositorio.clienteServidor.CanalRepositorio;
@@ -141,22 +142,16 @@ public class ServicioRechazarInvitacion implements IServicioCliente {
 
                 LoggerCentral.info(TAG, ROJO + "✅ Estado de invitación actualizado a RECHAZADA" + RESET);
 
-                // 7. Notificar sobre el rechazo (opcional)
+                // 7. Invalidar las invitaciones solo del usuario que rechazó
                 if (servicioNotificacion != null) {
-                    Map<String, Object> notificacionData = new HashMap<>();
-                    notificacionData.put("invitacionId", invitacionCanal.getId());
-                    notificacionData.put("canalId", canalId.toString());
-                    notificacionData.put("usuarioId", usuarioId.toString());
-
-                    servicioNotificacion.actualizar("INVITACION_RECHAZADA", notificacionData);
-                    LoggerCentral.info(TAG, ROJO + "✅ SIGNAL_UPDATE enviado para invitación rechazada" + RESET);
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_INVITACIONES,
+                            canalId.toString(), List.of(usuarioId.toString()));
                 }
 
                 // 8. Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, ROJO + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_INVITACION, invitacionCanal);
                     LoggerCentral.info(TAG, ROJO + "✅ Sincronización P2P activada" + RESET);
                 } else {
                     LoggerCentral.warn(TAG, ROJO + "⚠️ Servicio P2P no disponible, sincronización omitida" + RESET);
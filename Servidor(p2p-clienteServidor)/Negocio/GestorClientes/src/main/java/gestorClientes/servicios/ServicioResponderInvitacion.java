@@ -10,6 +10,7 @@ import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioNotificacionCambios;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.CanalInvitacionRepositorio;
 import repositorio.clienteServidor.CanalMiembroRepositorio;
@@ -174,18 +175,31 @@ public class ServicioResponderInvitacion implements IServicioCliente {
                     LoggerCentral.info(TAG, ROJO + "✅ Invitación rechazada exitosamente" + RESET);
                 }
 
-                // 7. Notificar cambio a todos los clientes
+                // 7. Notificar solo a los afectados: las invitaciones del usuario y, si
+                // aceptó, sus canales y los miembros del canal (con el alta como delta)
                 if (servicioNotificacion != null) {
-                    servicioNotificacion.actualizar(accepted ? "INVITACION_ACEPTADA" : "INVITACION_RECHAZADA",
-                        Map.of("canalId", canalId.toString(), "usuarioId", usuarioId.toString()));
+                    List<String> usuario = List.of(usuarioId.toString());
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_INVITACIONES,
+                            canalId.toString(), usuario);
+                    if (accepted) {
+                        servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_CANALES,
+                                canalId.toString(), usuario);
+                        servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_MIEMBROS_CANAL,
+                                canalId.toString(), miembroRepositorio.miembrosDelCanal(canalId.toString()),
+                                gson.toJsonTree(Map.of("canalId", canalId.toString(),
+                                        "nuevoMiembroId", usuarioId.toString(), "canalNombre", canal.getNombre())));
+                    }
                 }
 
                 // 8. Sincronizar con P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, ROJO + "🔄 Activando sincronización P2P..." + RESET);
                     try {
-                        servicioSyncP2P.onBaseDeDatosCambio();
-                        servicioSyncP2P.forzarSincronizacion();
+                        servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_INVITACION, invitacionCanal);
+                        if (accepted) {
+                            servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_MIEMBRO,
+                                    new CanalMiembro(canalId, usuarioId));
+                        }
                         LoggerCentral.info(TAG, ROJO + "✅ Sincronización P2P activada exitosamente" + RESET);
                     } catch (Exception e) {
                         LoggerCentral.error(TAG, ROJO + "❌ Error al forzar sincronización P2P: " + e.getMessage() + RESET);
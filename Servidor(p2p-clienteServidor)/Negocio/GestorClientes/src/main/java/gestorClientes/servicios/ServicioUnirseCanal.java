@@ -10,6 +10,7 @@ import dto.canales.DTOUnirseCanal;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.CanalInvitacionRepositorio;
 import repositorio.clienteServidor.CanalMiembroRepositorio;
@@ -170,22 +171,28 @@ public class ServicioUnirseCanal implements IServicioCliente {
                     LoggerCentral.warn(TAG, AMARILLO + "⚠️ No se pudo actualizar el estado de la invitación" + RESET);
                 }
 
-                // 10. ✅ Notificar a todos los miembros del canal sobre el nuevo miembro (SIGNAL_UPDATE)
+                // 10. ✅ Invalidar los miembros del canal solo en sus miembros (con el alta
+                // como delta) y los canales e invitaciones del usuario que se unió
                 if (servicioNotificacion != null) {
                     Map<String, Object> notificacionData = new HashMap<>();
                     notificacionData.put("canalId", canalId.toString());
                     notificacionData.put("nuevoMiembroId", usuarioId.toString());
                     notificacionData.put("canalNombre", canal.getNombre());
 
-                    servicioNotificacion.actualizar("NUEVO_MIEMBRO_CANAL", notificacionData);
-                    LoggerCentral.info(TAG, VERDE + "✅ SIGNAL_UPDATE enviado para nuevo miembro" + RESET);
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_MIEMBROS_CANAL,
+                            canalId.toString(), miembroRepositorio.miembrosDelCanal(canalId.toString()),
+                            gson.toJsonTree(notificacionData));
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_CANALES,
+                            canalId.toString(), List.of(usuarioId.toString()));
+                    servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_INVITACIONES,
+                            canalId.toString(), List.of(usuarioId.toString()));
                 }
 
                 // 11. ✅ Activar sincronización P2P
                 if (servicioSyncP2P != null) {
                     LoggerCentral.info(TAG, CYAN + "🔄 Activando sincronización P2P..." + RESET);
-                    servicioSyncP2P.onBaseDeDatosCambio();
-                    servicioSyncP2P.forzarSincronizacion();
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_MIEMBRO, nuevoMiembro);
+                    servicioSyncP2P.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_CANAL_INVITACION, invitacionCanal);
                     LoggerCentral.info(TAG, VERDE + "✅ Sincronización P2P activada" + RESET);
                 } else {
                     LoggerCentral.warn(TAG, AMARILLO + "⚠️ Servicio P2P no disponible, sincronización omitida" + RESET);
@@ -7,7 +7,9 @@ import conexion.clientes.interfaces.IRouterMensajesCliente;
 import dominio.clienteServidor.Usuario;
 import dto.comunicacion.DTOResponse;
 import gestorClientes.interfaces.IServicioCliente;
+import gestorClientes.servicios.ServicioNotificacionCliente;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 import observador.IObservador;
 import observador.ISujeto;
@@ -28,6 +30,7 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
 
     // Referencia al servicio de sincronización P2P (inyectada externamente)
     private ServicioSincronizacionDatos servicioSync;
+    private ServicioNotificacionCliente servicioNotificacion;
 
     // ✅ NUEVO: Lista de observadores para notificar cambios
     private final List<IObservador> observadores;
@@ -47,6 +50,13 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
         LoggerCentral.info(TAG, "Servicio de sincronización P2P configurado");
     }
 
+    /**
+     * Servicio por el que se avisa a los clientes de los cambios de presencia.
+     */
+    public void setServicioNotificacion(ServicioNotificacionCliente servicioNotificacion) {
+        this.servicioNotificacion = servicioNotificacion;
+    }
+
     @Override
     public String getNombre() {
         return "ServicioAutenticacion";
@@ -117,8 +127,7 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
                 // ✅ ACTIVAR SINCRONIZACIÓN P2P (similar a ServicioArchivos)
                 if (estadoActualizado && servicioSync != null) {
                     LoggerCentral.info(TAG, "🔄 Activando sincronización P2P para cambio de estado: " + email + " -> ONLINE");
-                    servicioSync.onBaseDeDatosCambio(); // Reconstruir Merkle Tree
-                    servicioSync.forzarSincronizacion(); // Sincronizar con peers
+                    servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_USUARIO, usuario);
                 } else if (servicioSync == null) {
                     LoggerCentral.warn(TAG, "⚠️ ServicioSync es NULL, no se puede sincronizar");
                 }
@@ -127,8 +136,8 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
                 notificarObservadores("USUARIO_AUTENTICADO", usuario.getId());
                 notificarObservadores("USUARIO_ONLINE", usuario.getId());
 
-                // ✅ NUEVO: Enviar señal SIGNAL_UPDATE a TODOS los clientes para que actualicen
-                enviarSignalUpdateATodos("USUARIO_ONLINE");
+                // ✅ Avisar a los clientes del cambio de presencia
+                notificarPresencia(usuario.getId(), Usuario.Estado.ONLINE);
 
                 // Construir respuesta con datos del usuario
                 // IMPORTANTE: Usar LinkedHashMap para mantener el orden de los campos
@@ -185,16 +194,15 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
                     // ✅ ACTIVAR SINCRONIZACIÓN P2P (similar a ServicioArchivos)
                     if (estadoActualizado && servicioSync != null) {
                         LoggerCentral.info(TAG, "🔄 Activando sincronización P2P para cambio de estado: " + emailUsuario + " -> OFFLINE");
-                        servicioSync.onBaseDeDatosCambio(); // Reconstruir Merkle Tree
-                        servicioSync.forzarSincronizacion(); // Sincronizar con peers
+                        servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_USUARIO, usuario);
                     }
 
                     // ✅ NOTIFICAR A OBSERVADORES (Para actualizar UI)
                     notificarObservadores("USUARIO_DESCONECTADO", idUsuario);
                     notificarObservadores("USUARIO_OFFLINE", idUsuario);
 
-                    // ✅ NUEVO: Enviar señal SIGNAL_UPDATE a TODOS los clientes
-                    enviarSignalUpdateATodos("USUARIO_OFFLINE");
+                    // ✅ Avisar a los clientes del cambio de presencia
+                    notificarPresencia(idUsuario, Usuario.Estado.OFFLINE);
                 }
 
                 return new DTOResponse("logout", "success", "Sesión cerrada", null);
@@ -230,8 +238,7 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
                     // ✅ ACTIVAR SINCRONIZACIÓN P2P
                     if (estadoActualizado && servicioSync != null) {
                         LoggerCentral.info(TAG, "🔄 Activando sincronización P2P para cambio de estado: " + emailUsuario + " -> OFFLINE");
-                        servicioSync.onBaseDeDatosCambio(); // Reconstruir Merkle Tree
-                        servicioSync.forzarSincronizacion(); // Sincronizar con peers
+                        servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_USUARIO, usuario);
                     } else if (servicioSync == null) {
                         LoggerCentral.warn(TAG, "⚠️ ServicioSync es NULL, no se puede sincronizar");
                     }
@@ -240,8 +247,8 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
                     notificarObservadores("USUARIO_DESCONECTADO", userId);
                     notificarObservadores("USUARIO_OFFLINE", userId);
 
-                    // ✅ NUEVO: Enviar señal SIGNAL_UPDATE a TODOS los clientes
-                    enviarSignalUpdateATodos("USUARIO_OFFLINE");
+                    // ✅ Avisar a los clientes del cambio de presencia
+                    notificarPresencia(userId, Usuario.Estado.OFFLINE);
 
                     return new DTOResponse("logoutUser", "success", "Sesión cerrada exitosamente", null);
                 } else {
@@ -301,34 +308,18 @@ public class ServicioAutenticacion implements IServicioCliente, ISujeto {
     }
 
     /**
-     * ✅ NUEVO: Envía señal SIGNAL_UPDATE a todos los clientes conectados
-     * Esta señal indica a los clientes que deben actualizar todos sus componentes:
-     * - Lista de contactos
-     * - Lista de canales
-     * - Mensajes privados
-     * - Mensajes de canales
-     *
-     * @param resource Recurso que cambió (ej: "USUARIO_ONLINE", "USUARIO_OFFLINE", "NUEVO_MENSAJE")
+     * Avisa a los clientes del cambio de presencia de un usuario. Todos los usuarios
+     * son contactos de todos, así que va a todos los conectados, pero con el nuevo
+     * estado como delta: el cliente actualiza ese contacto sin pedir la lista.
      */
-    private void enviarSignalUpdateATodos(String resource) {
-        try {
-            LoggerCentral.info(TAG, "📡 Enviando SIGNAL_UPDATE a todos los clientes - Resource: " + resource);
-
-            // Construir mensaje de señal
-            Map<String, Object> signalData = new HashMap<>();
-            signalData.put("type", "SIGNAL_UPDATE");
-            signalData.put("resource", resource);
-
-            String mensajeJson = gson.toJson(signalData);
-
-            // Enviar a todos los clientes conectados usando broadcast
-            gestor.broadcast(mensajeJson);
-
-            LoggerCentral.info(TAG, "✅ SIGNAL_UPDATE enviada a todos los clientes conectados");
-
-        } catch (Exception e) {
-            LoggerCentral.error(TAG, "❌ Error enviando SIGNAL_UPDATE: " + e.getMessage());
-            e.printStackTrace();
+    private void notificarPresencia(String usuarioId, Usuario.Estado estado) {
+        if (servicioNotificacion == null) {
+            LoggerCentral.warn(TAG, "⚠️ ServicioNotificacion es NULL, no se avisa el cambio de presencia");
+            return;
         }
+        JsonObject delta = new JsonObject();
+        delta.addProperty("id", usuarioId);
+        delta.addProperty("estado", estado.name());
+        servicioNotificacion.invalidar(ServicioNotificacionCliente.RECURSO_CONTACTOS, usuarioId, null, delta);
     }
 }
@@ -0,0 +1,313 @@
+package gestorLogs;
+
+import dto.logs.DTOLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Almacén de logs en memoria de capacidad fija.
+ *
+ * - Buffer circular: añadir un log es O(1) y el más antiguo se sobrescribe.
+ * - Cada log recibe una secuencia creciente (empieza en 1). El log con secuencia s
+ *   ocupa el hueco (s - 1) % capacidad, así que se localiza sin buscar.
+ * - Índices secundarios por nivel y por source con las secuencias de cada uno: los
+ *   filtros recorren solo los logs que coinciden, no el buffer entero.
+ * - Las consultas se paginan con cursores de secuencia ({@code despuesDe} para traer
+ *   lo nuevo, {@code antesDe} para retroceder), de más reciente a más antiguo.
+ */
+public class AlmacenLogs {
+
+    private final int capacidad;
+    private final DTOLog[] logs;
+    // Secuencia que recibirá el próximo log
+    private long siguiente = 1;
+    // Última secuencia descartada por limpiar()
+    private long vaciadoHasta = 0;
+
+    private final Map<String, IndiceSecuencias> porNivel = new HashMap<>();
+    private final Map<String, IndiceSecuencias> porSource = new HashMap<>();
+    private final Map<String, Integer> conteoPorNivel = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public AlmacenLogs(int capacidad) {
+        this.capacidad = Math.max(1, capacidad);
+        this.logs = new DTOLog[this.capacidad];
+    }
+
+    /**
+     * Añade un log y le asigna su secuencia.
+     */
+    public void agregar(DTOLog log) {
+        lock.writeLock().lock();
+        try {
+            long secuencia = siguiente++;
+            int hueco = hueco(secuencia);
+            DTOLog expulsado = logs[hueco];
+            if (expulsado != null) {
+                conteoPorNivel.merge(clave(expulsado.getLevel()), -1, Integer::sum);
+            }
+
+            log.setSecuencia(secuencia);
+            logs[hueco] = log;
+            String nivel = clave(log.getLevel());
+            conteoPorNivel.merge(nivel, 1, Integer::sum);
+            porNivel.computeIfAbsent(nivel, k -> new IndiceSecuencias(capacidad)).agregar(secuencia);
+            porSource.computeIfAbsent(log.getSource() != null ? log.getSource() : "", k -> new IndiceSecuencias(capacidad))
+                    .agregar(secuencia);
+
+            // De vez en cuando se olvidan los sources sin logs vivos
+            if (secuencia % capacidad == 0) {
+                podarSources();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Consulta paginada, de más reciente a más antiguo.
+     *
+     * @param nivel        Nivel exacto (sin distinguir mayúsculas) o null
+     * @param source       Texto contenido en el source o null
+     * @param texto        Texto contenido en el mensaje (sin distinguir mayúsculas) o null
+     * @param excluirDebug Omite los DEBUG cuando no se filtra por nivel
+     * @param despuesDe    Solo secuencias mayores (0 = sin límite)
+     * @param antesDe      Solo secuencias menores (0 = sin límite)
+     * @param limite       Máximo de logs devueltos
+     * @return Logs en orden cronológico
+     */
+    public List<DTOLog> consultar(String nivel, String source, String texto, boolean excluirDebug,
+                                  long despuesDe, long antesDe, int limite) {
+        lock.readLock().lock();
+        try {
+            long primera = primeraSecuencia();
+            long desde = Math.max(primera, despuesDe + 1);
+            long hasta = antesDe > 0 ? Math.min(siguiente - 1, antesDe - 1) : siguiente - 1;
+            if (limite <= 0 || desde > hasta) {
+                return new ArrayList<>();
+            }
+
+            String textoBusqueda = texto != null ? texto.toLowerCase() : null;
+            List<DTOLog> resultado = new ArrayList<>();
+            Iterator<Long> candidatos = candidatos(nivel, source, desde, hasta);
+            while (candidatos.hasNext() && resultado.size() < limite) {
+                DTOLog log = logs[hueco(candidatos.next())];
+                if (nivel == null && excluirDebug && "DEBUG".equalsIgnoreCase(log.getLevel())) continue;
+                if (textoBusqueda != null && (log.getMessage() == null
+                        || !log.getMessage().toLowerCase().contains(textoBusqueda))) continue;
+                resultado.add(log);
+            }
+            Collections.reverse(resultado);
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Secuencias candidatas en [desde, hasta], de la más reciente a la más antigua,
+     * usando el índice más selectivo disponible.
+     */
+    private Iterator<Long> candidatos(String nivel, String source, long desde, long hasta) {
+        if (nivel != null) {
+            IndiceSecuencias indice = porNivel.get(clave(nivel));
+            if (indice == null) {
+                return Collections.emptyIterator();
+            }
+            if (source == null) {
+                return indice.recorrer(desde, hasta);
+            }
+            List<Long> secuencias = new ArrayList<>();
+            indice.recorrer(desde, hasta).forEachRemaining(s -> {
+                String src = logs[hueco(s)].getSource();
+                if (src != null && src.contains(source)) secuencias.add(s);
+            });
+            return secuencias.iterator();
+        }
+        if (source != null) {
+            List<IndiceSecuencias> coincidentes = new ArrayList<>();
+            for (Map.Entry<String, IndiceSecuencias> e : porSource.entrySet()) {
+                if (e.getKey().contains(source)) {
+                    coincidentes.add(e.getValue());
+                }
+            }
+            if (coincidentes.size() == 1) {
+                return coincidentes.get(0).recorrer(desde, hasta);
+            }
+            // Varios sources contienen el texto: se mezclan sus secuencias
+            List<Long> secuencias = new ArrayList<>();
+            coincidentes.forEach(indice -> indice.recorrer(desde, hasta).forEachRemaining(secuencias::add));
+            secuencias.sort(Collections.reverseOrder());
+            return secuencias.iterator();
+        }
+        return new Iterator<Long>() {
+            long actual = hasta;
+
+            @Override
+            public boolean hasNext() {
+                return actual >= desde;
+            }
+
+            @Override
+            public Long next() {
+                return actual--;
+            }
+        };
+    }
+
+    /** Los {@code cantidad} logs más recientes, en orden cronológico. */
+    public List<DTOLog> recientes(int cantidad) {
+        return consultar(null, null, null, false, 0, 0, cantidad);
+    }
+
+    public List<DTOLog> todos() {
+        return consultar(null, null, null, false, 0, 0, capacidad);
+    }
+
+    public int tamano() {
+        lock.readLock().lock();
+        try {
+            return (int) (siguiente - primeraSecuencia());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Última secuencia asignada (0 si no hay logs). */
+    public long ultimaSecuencia() {
+        lock.readLock().lock();
+        try {
+            return siguiente - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Cantidad de logs vivos de un nivel. */
+    public int contar(String nivel) {
+        lock.readLock().lock();
+        try {
+            return conteoPorNivel.getOrDefault(clave(nivel), 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vacía el almacén. Las secuencias siguen creciendo para no confundir cursores.
+     */
+    public void limpiar() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(logs, null);
+            porNivel.clear();
+            porSource.clear();
+            conteoPorNivel.clear();
+            vaciadoHasta = siguiente - 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long primeraSecuencia() {
+        return Math.max(vaciadoHasta + 1, Math.max(1, siguiente - capacidad));
+    }
+
+    private void podarSources() {
+        long primera = primeraSecuencia();
+        porSource.values().removeIf(indice -> indice.ultima() < primera);
+    }
+
+    private int hueco(long secuencia) {
+        return (int) ((secuencia - 1) % capacidad);
+    }
+
+    private static String clave(String nivel) {
+        return nivel != null ? nivel.toUpperCase() : "";
+    }
+
+    /**
+     * Secuencias crecientes en un buffer circular que crece hasta la capacidad del
+     * almacén. Al llenarse se pisa la más antigua, que ya salió del almacén.
+     */
+    private static class IndiceSecuencias {
+        private final int maximo;
+        private long[] secuencias = new long[16];
+        private int inicio = 0;
+        private int cantidad = 0;
+
+        IndiceSecuencias(int maximo) {
+            this.maximo = maximo;
+        }
+
+        void agregar(long secuencia) {
+            if (cantidad == secuencias.length) {
+                if (secuencias.length < maximo) {
+                    crecer();
+                } else {
+                    inicio = (inicio + 1) % secuencias.length;
+                    cantidad--;
+                }
+            }
+            secuencias[(inicio + cantidad) % secuencias.length] = secuencia;
+            cantidad++;
+        }
+
+        private void crecer() {
+            long[] nuevo = new long[Math.min(maximo, secuencias.length * 2)];
+            for (int i = 0; i < cantidad; i++) {
+                nuevo[i] = secuencias[(inicio + i) % secuencias.length];
+            }
+            secuencias = nuevo;
+            inicio = 0;
+        }
+
+        long ultima() {
+            return cantidad == 0 ? 0 : secuencias[(inicio + cantidad - 1) % secuencias.length];
+        }
+
+        /**
+         * Recorre las secuencias en [desde, hasta], de la más reciente a la más antigua.
+         * Solo es válido mientras se mantenga el lock de lectura del almacén.
+         */
+        Iterator<Long> recorrer(long desde, long hasta) {
+            // Búsqueda binaria de la última posición <= hasta
+            int bajo = 0, alto = cantidad - 1, pos = -1;
+            while (bajo <= alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (obtener(medio) <= hasta) {
+                    pos = medio;
+                    bajo = medio + 1;
+                } else {
+                    alto = medio - 1;
+                }
+            }
+            final int ultima = pos;
+            return new Iterator<Long>() {
+                int i = ultima;
+
+                @Override
+                public boolean hasNext() {
+                    return i >= 0 && obtener(i) >= desde;
+                }
+
+                @Override
+                public Long next() {
+                    return obtener(i--);
+                }
+            };
+        }
+
+        private long obtener(int i) {
+            return secuencias[(inicio + i) % secuencias.length];
+        }
+    }
+}
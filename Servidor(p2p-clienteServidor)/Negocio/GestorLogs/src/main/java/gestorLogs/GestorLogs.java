@@ -5,13 +5,15 @@ import logger.LoggerCentral;
 import observador.IObservador;
 import observador.ISujeto;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Gestor de Logs - Capa de Negocio
@@ -21,8 +23,10 @@ import java.util.List;
 public class GestorLogs implements ISujeto {
 
     private static final String TAG = "GestorLogs";
-    private final List<IObservador> observadores;
-    private final List<DTOLog> logsEnMemoria;
+    // Tamaño del bloque leído hacia atrás desde el final del archivo
+    private static final int BLOQUE_LECTURA = 8192;
+    private final CopyOnWriteArrayList<IObservador> observadores;
+    private final AlmacenLogs almacen;
     private final int maxLogsEnMemoria;
     private final String rutaArchivoLogs;
 
@@ -31,8 +35,8 @@ public class GestorLogs implements ISujeto {
     }
 
     public GestorLogs(int maxLogsEnMemoria, String rutaArchivoLogs) {
-        this.observadores = new ArrayList<>();
-        this.logsEnMemoria = Collections.synchronizedList(new ArrayList<>());
+        this.observadores = new CopyOnWriteArrayList<>();
+        this.almacen = new AlmacenLogs(maxLogsEnMemoria);
         this.maxLogsEnMemoria = maxLogsEnMemoria;
         this.rutaArchivoLogs = rutaArchivoLogs;
 
@@ -62,40 +66,57 @@ public class GestorLogs implements ISujeto {
     }
 
     /**
-     * Agrega un log a la memoria limitada
+     * Agrega un log a la memoria limitada (el más antiguo se sobrescribe)
      */
     private void agregarLogEnMemoria(DTOLog log) {
-        synchronized (logsEnMemoria) {
-            logsEnMemoria.add(log);
-            // Limitar tamaño en memoria
-            if (logsEnMemoria.size() > maxLogsEnMemoria) {
-                logsEnMemoria.remove(0);
-            }
-        }
+        almacen.agregar(log);
     }
 
     /**
      * Obtiene los logs recientes de memoria
      */
     public List<DTOLog> obtenerLogsRecientes(int cantidad) {
-        synchronized (logsEnMemoria) {
-            int size = logsEnMemoria.size();
-            int fromIndex = Math.max(0, size - cantidad);
-            return new ArrayList<>(logsEnMemoria.subList(fromIndex, size));
-        }
+        return almacen.recientes(cantidad);
     }
 
     /**
      * Obtiene todos los logs en memoria
      */
     public List<DTOLog> obtenerTodosLosLogsEnMemoria() {
-        synchronized (logsEnMemoria) {
-            return new ArrayList<>(logsEnMemoria);
-        }
+        return almacen.todos();
+    }
+
+    /**
+     * Consulta paginada por secuencia. Devuelve como mucho {@code limite} logs en orden
+     * cronológico, empezando por los más recientes que cumplan los filtros.
+     *
+     * @param nivel        Nivel exacto o null
+     * @param source       Texto contenido en el source o null
+     * @param texto        Texto contenido en el mensaje o null
+     * @param excluirDebug Omite los DEBUG cuando no se filtra por nivel
+     * @param despuesDe    Solo logs con secuencia mayor (0 = sin límite)
+     * @param antesDe      Solo logs con secuencia menor (0 = sin límite)
+     */
+    public List<DTOLog> consultar(String nivel, String source, String texto, boolean excluirDebug,
+                                  long despuesDe, long antesDe, int limite) {
+        return almacen.consultar(nivel, source, texto, excluirDebug, despuesDe, antesDe, limite);
     }
 
     /**
-     * Lee los logs del archivo físico
+     * Secuencia del último log recibido (0 si aún no hay logs)
+     */
+    public long obtenerUltimaSecuencia() {
+        return almacen.ultimaSecuencia();
+    }
+
+    public int contarLogsEnMemoria() {
+        return almacen.tamano();
+    }
+
+    /**
+     * Lee las últimas {@code maxLineas} entradas del archivo físico, en orden cronológico.
+     * El archivo se recorre hacia atrás por bloques, así que el coste depende de las
+     * líneas pedidas y no del tamaño del archivo.
      */
     public List<DTOLog> leerLogsDesdeArchivo(int maxLineas) throws IOException {
         List<DTOLog> logs = new ArrayList<>();
@@ -106,23 +127,56 @@ public class GestorLogs implements ISujeto {
             return logs;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(archivo))) {
-            String linea;
-            int contador = 0;
-
-            while ((linea = reader.readLine()) != null && contador < maxLineas) {
-                DTOLog log = parsearLineaLog(linea);
-                if (log != null) {
-                    logs.add(log);
-                    contador++;
+        try (RandomAccessFile raf = new RandomAccessFile(archivo, "r")) {
+            byte[] bloque = new byte[BLOQUE_LECTURA];
+            // Bytes de la línea en curso, acumulados al revés
+            ByteArrayOutputStream linea = new ByteArrayOutputStream();
+            long posicion = raf.length();
+
+            while (posicion > 0 && logs.size() < maxLineas) {
+                int leer = (int) Math.min(BLOQUE_LECTURA, posicion);
+                posicion -= leer;
+                raf.seek(posicion);
+                raf.readFully(bloque, 0, leer);
+
+                for (int i = leer - 1; i >= 0 && logs.size() < maxLineas; i--) {
+                    if (bloque[i] == '\n') {
+                        agregarLineaInvertida(linea, logs);
+                    } else {
+                        linea.write(bloque[i]);
+                    }
                 }
             }
+            if (posicion == 0 && logs.size() < maxLineas) {
+                agregarLineaInvertida(linea, logs);
+            }
         }
 
+        Collections.reverse(logs);
         LoggerCentral.info(TAG, "Logs leídos desde archivo: " + logs.size());
         return logs;
     }
 
+    /**
+     * Decodifica una línea cuyos bytes se acumularon al revés y la agrega si es un log.
+     */
+    private void agregarLineaInvertida(ByteArrayOutputStream invertida, List<DTOLog> logs) {
+        if (invertida.size() == 0) {
+            return;
+        }
+        byte[] bytes = invertida.toByteArray();
+        invertida.reset();
+        for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+        DTOLog log = parsearLineaLog(new String(bytes, StandardCharsets.UTF_8).stripTrailing());
+        if (log != null) {
+            logs.add(log);
+        }
+    }
+
     /**
      * Parsea una línea del archivo de logs
      */
@@ -165,87 +219,58 @@ public class GestorLogs implements ISujeto {
      * Filtra logs por nivel
      */
     public List<DTOLog> filtrarPorNivel(String nivel) {
-        synchronized (logsEnMemoria) {
-            return logsEnMemoria.stream()
-                    .filter(log -> log.getLevel().equalsIgnoreCase(nivel))
-                    .toList();
-        }
+        return almacen.consultar(nivel, null, null, false, 0, 0, maxLogsEnMemoria);
     }
 
     /**
      * Filtra logs por source/tag
      */
     public List<DTOLog> filtrarPorSource(String source) {
-        synchronized (logsEnMemoria) {
-            return logsEnMemoria.stream()
-                    .filter(log -> log.getSource().contains(source))
-                    .toList();
-        }
+        return almacen.consultar(null, source, null, false, 0, 0, maxLogsEnMemoria);
     }
 
     /**
      * Busca logs que contengan un texto específico
      */
     public List<DTOLog> buscarPorTexto(String texto) {
-        synchronized (logsEnMemoria) {
-            String textoBusqueda = texto.toLowerCase();
-            return logsEnMemoria.stream()
-                    .filter(log -> log.getMessage().toLowerCase().contains(textoBusqueda))
-                    .toList();
-        }
+        return almacen.consultar(null, null, texto, false, 0, 0, maxLogsEnMemoria);
     }
 
     /**
      * Limpia los logs en memoria
      */
     public void limpiarLogsEnMemoria() {
-        synchronized (logsEnMemoria) {
-            logsEnMemoria.clear();
-        }
+        almacen.limpiar();
         LoggerCentral.info(TAG, "Logs en memoria limpiados");
     }
 
     /**
-     * Obtiene estadísticas de logs
+     * Obtiene estadísticas de logs (contadores mantenidos por el almacén)
      */
     public EstadisticasLogs obtenerEstadisticas() {
-        synchronized (logsEnMemoria) {
-            int total = logsEnMemoria.size();
-            long info = logsEnMemoria.stream().filter(l -> "INFO".equals(l.getLevel())).count();
-            long warning = logsEnMemoria.stream().filter(l -> "WARNING".equals(l.getLevel())).count();
-            long error = logsEnMemoria.stream().filter(l -> "ERROR".equals(l.getLevel())).count();
-            long debug = logsEnMemoria.stream().filter(l -> "DEBUG".equals(l.getLevel())).count();
-
-            return new EstadisticasLogs(total, (int)info, (int)warning, (int)error, (int)debug);
-        }
+        return new EstadisticasLogs(almacen.tamano(), almacen.contar("INFO"), almacen.contar("WARNING"),
+                almacen.contar("ERROR"), almacen.contar("DEBUG"));
     }
 
     // --- IMPLEMENTACIÓN DE ISujeto ---
 
     @Override
     public void registrarObservador(IObservador observador) {
-        synchronized (observadores) {
-            if (!observadores.contains(observador)) {
-                observadores.add(observador);
-                LoggerCentral.info(TAG, "Observador registrado para logs");
-            }
+        if (observadores.addIfAbsent(observador)) {
+            LoggerCentral.info(TAG, "Observador registrado para logs");
         }
     }
 
     @Override
     public void removerObservador(IObservador observador) {
-        synchronized (observadores) {
-            observadores.remove(observador);
-            LoggerCentral.info(TAG, "Observador removido de logs");
-        }
+        observadores.remove(observador);
+        LoggerCentral.info(TAG, "Observador removido de logs");
     }
 
     @Override
     public void notificarObservadores(String tipoDeDato, Object datos) {
-        synchronized (observadores) {
-            for (IObservador obs : observadores) {
-                obs.actualizar(tipoDeDato, datos);
-            }
+        for (IObservador obs : observadores) {
+            obs.actualizar(tipoDeDato, datos);
         }
     }
 
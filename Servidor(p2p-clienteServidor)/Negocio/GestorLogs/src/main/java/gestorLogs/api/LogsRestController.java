@@ -7,11 +7,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.io.IOException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -29,7 +34,20 @@ public class LogsRestController {
     private static final String TAG = "LogsRestController";
     private final GestorLogs gestorLogs;
 
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // Logs por evento SSE cuando el cliente no indica otro tamaño de lote
+    private static final int LOTE_POR_DEFECTO = 50;
+    private static final int LOTE_MAXIMO = 500;
+
+    private final List<SuscripcionLogs> suscripciones = new CopyOnWriteArrayList<>();
+    // Cada suscripción escribe en su propio hilo; este solo vigila envíos bloqueados y
+    // completa los emitters que hay que cerrar (nunca hace un send)
+    private final ScheduledExecutorService vigilante = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LogsSSE-Vigilante");
+        t.setDaemon(true);
+        return t;
+    });
+    // Descartes de suscripciones ya cerradas
+    private final AtomicLong descartadosCerradas = new AtomicLong();
 
     public LogsRestController(GestorLogs gestorLogs) {
         this.gestorLogs = gestorLogs;
@@ -40,61 +58,115 @@ public class LogsRestController {
             @Override
             public void actualizar(String tipoDeDato, Object datos) {
                 if ("NUEVO_LOG".equals(tipoDeDato) && datos instanceof DTOLog) {
-                    DTOLog log = (DTOLog) datos;
-                    // Transmit all logs, filtering is done in Frontend
-                    notificarEmitters(log);
+                    notificarSuscripciones((DTOLog) datos);
                 }
             }
         });
+        vigilante.scheduleWithFixedDelay(this::cerrarEnviosVencidos, 1, 1, TimeUnit.SECONDS);
     }
 
-    private void notificarEmitters(DTOLog log) {
-        List<SseEmitter> deadEmitters = new ArrayList<>();
-        emitters.forEach(emitter -> {
-            try {
-                emitter.send(SseEmitter.event().name("log").data(log));
-            } catch (IOException e) {
-                deadEmitters.add(emitter);
+    /**
+     * Encola el log en cada suscripción; el envío lo hace el hilo escritor de cada una.
+     */
+    private void notificarSuscripciones(DTOLog log) {
+        for (SuscripcionLogs suscripcion : suscripciones) {
+            if (suscripcion.estaCerrada()) {
+                quitar(suscripcion);
+            } else {
+                suscripcion.publicar(log);
             }
-        });
-        emitters.removeAll(deadEmitters);
+        }
+    }
+
+    /**
+     * Cierra la suscripción y completa su emitter desde el hilo vigilante (complete()
+     * libera un send bloqueado del hilo escritor).
+     */
+    private void quitar(SuscripcionLogs suscripcion) {
+        suscripcion.cerrar();
+        if (suscripciones.remove(suscripcion)) {
+            descartadosCerradas.addAndGet(suscripcion.getDescartados());
+            vigilante.execute(() -> {
+                try {
+                    suscripcion.getEmitter().complete();
+                } catch (Exception ignored) {
+                    // Ya estaba completado
+                }
+            });
+        }
     }
 
     /**
-     * GET /api/logs/stream
-     * Stream de logs en tiempo real (SSE)
+     * Plazo de escritura por suscriptor: el cliente que no acepta un envío en
+     * {@link SuscripcionLogs#PLAZO_ENVIO_MS} se desconecta.
+     */
+    private void cerrarEnviosVencidos() {
+        long ahora = System.currentTimeMillis();
+        for (SuscripcionLogs suscripcion : suscripciones) {
+            if (suscripcion.estaCerrada() || suscripcion.envioVencido(ahora)) {
+                quitar(suscripcion);
+            }
+        }
+    }
+
+    /**
+     * GET /api/logs/stream?niveles=ERROR,WARNING&source=Gestor&excluirDebug=true&lote=50
+     * Stream de logs en tiempo real (SSE), filtrado en el servidor.
+     * Cada evento "logs" lleva un lote de logs (JSON array); con lote=1 se envía un
+     * evento "log" por log. Si el cliente no consume a tiempo se descartan logs y se
+     * le informa con un evento "descartados".
      */
     @GetMapping("/stream")
-    public SseEmitter streamLogs() {
+    public SseEmitter streamLogs(
+            @RequestParam(required = false) String niveles,
+            @RequestParam(required = false) String source,
+            @RequestParam(defaultValue = "false") boolean excluirDebug,
+            @RequestParam(defaultValue = "" + LOTE_POR_DEFECTO) int lote) {
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE); // Timeout infinito (o muy largo)
+        SuscripcionLogs suscripcion = new SuscripcionLogs(emitter, parsearNiveles(niveles),
+                source != null && !source.isBlank() ? source : null, excluirDebug, Math.min(lote, LOTE_MAXIMO));
 
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError((e) -> emitters.remove(emitter));
+        emitter.onCompletion(() -> quitar(suscripcion));
+        emitter.onTimeout(() -> quitar(suscripcion));
+        emitter.onError((e) -> quitar(suscripcion));
 
-        emitters.add(emitter);
-
-        // Enviar un evento inicial de conexión
+        // Enviar un evento inicial de conexión antes de que empiecen los lotes
         try {
             emitter.send(SseEmitter.event().name("connected").data("Conexión SSE establecida"));
         } catch (IOException e) {
-            emitters.remove(emitter);
+            return emitter;
         }
+        suscripciones.add(suscripcion);
 
-        LoggerCentral.debug(TAG, "Nueva conexión SSE establecida. Total clientes: " + emitters.size());
+        LoggerCentral.debug(TAG, "Nueva conexión SSE establecida. Total clientes: " + suscripciones.size());
         return emitter;
     }
 
+    private static Set<String> parsearNiveles(String niveles) {
+        if (niveles == null || niveles.isBlank()) {
+            return Set.of();
+        }
+        return Arrays.stream(niveles.split(","))
+                .map(String::trim)
+                .filter(n -> !n.isEmpty())
+                .map(String::toUpperCase)
+                .collect(Collectors.toSet());
+    }
+
     /**
-     * GET /api/logs
-     * Obtiene todos los logs en memoria (Excluyendo DEBUG)
+     * GET /api/logs?despuesDe=120&antesDe=0&limite=500
+     * Obtiene los logs en memoria (Excluyendo DEBUG).
+     * Paginación por secuencia: despuesDe trae solo lo nuevo desde la última consulta y
+     * antesDe retrocede a partir del log más antiguo ya recibido. Sin parámetros
+     * devuelve todo el buffer.
      */
     @GetMapping
-    public ResponseEntity<List<DTOLog>> obtenerTodosLosLogs() {
+    public ResponseEntity<List<DTOLog>> obtenerTodosLosLogs(
+            @RequestParam(defaultValue = "0") long despuesDe,
+            @RequestParam(defaultValue = "0") long antesDe,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int limite) {
         try {
-            List<DTOLog> logs = gestorLogs.obtenerTodosLosLogsEnMemoria().stream()
-                    .filter(log -> !"DEBUG".equalsIgnoreCase(log.getLevel()))
-                    .collect(Collectors.toList());
+            List<DTOLog> logs = gestorLogs.consultar(null, null, null, true, despuesDe, antesDe, limite);
 
             LoggerCentral.debug(TAG, "GET /api/logs - " + logs.size() + " logs retornados");
             return ResponseEntity.ok(logs);
@@ -112,9 +184,7 @@ public class LogsRestController {
     public ResponseEntity<List<DTOLog>> obtenerLogsRecientes(
             @RequestParam(defaultValue = "100") int cantidad) {
         try {
-            List<DTOLog> logs = gestorLogs.obtenerLogsRecientes(cantidad).stream()
-                    .filter(log -> !"DEBUG".equalsIgnoreCase(log.getLevel()))
-                    .collect(Collectors.toList());
+            List<DTOLog> logs = gestorLogs.consultar(null, null, null, true, 0, 0, cantidad);
 
             LoggerCentral.debug(TAG, "GET /api/logs/recent - " + logs.size() + " logs retornados");
             return ResponseEntity.ok(logs);
@@ -155,9 +225,7 @@ public class LogsRestController {
             if (source == null || source.trim().isEmpty()) {
                 return ResponseEntity.badRequest().build();
             }
-            List<DTOLog> logs = gestorLogs.filtrarPorSource(source).stream()
-                    .filter(log -> !"DEBUG".equalsIgnoreCase(log.getLevel()))
-                    .collect(Collectors.toList());
+            List<DTOLog> logs = gestorLogs.consultar(null, source, null, true, 0, 0, Integer.MAX_VALUE);
 
             LoggerCentral.debug(TAG, "GET /api/logs/filter/source?source=" + source + " - " + logs.size() + " logs");
             return ResponseEntity.ok(logs);
@@ -178,9 +246,7 @@ public class LogsRestController {
             if (texto == null || texto.trim().isEmpty()) {
                 return ResponseEntity.badRequest().build();
             }
-            List<DTOLog> logs = gestorLogs.buscarPorTexto(texto).stream()
-                    .filter(log -> !"DEBUG".equalsIgnoreCase(log.getLevel()))
-                    .collect(Collectors.toList());
+            List<DTOLog> logs = gestorLogs.consultar(null, null, texto, true, 0, 0, Integer.MAX_VALUE);
 
             LoggerCentral.debug(TAG, "GET /api/logs/search?texto=" + texto + " - " + logs.size() + " logs");
             return ResponseEntity.ok(logs);
@@ -240,7 +306,14 @@ public class LogsRestController {
         Map<String, String> response = new HashMap<>();
         response.put("status", "UP");
         response.put("service", "Logs API");
-        response.put("logsEnMemoria", String.valueOf(gestorLogs.obtenerTodosLosLogsEnMemoria().size()));
+        long descartadosSse = descartadosCerradas.get();
+        for (SuscripcionLogs suscripcion : suscripciones) {
+            descartadosSse += suscripcion.getDescartados();
+        }
+        response.put("clientesSse", String.valueOf(suscripciones.size()));
+        response.put("descartadosSse", String.valueOf(descartadosSse));
+        response.put("ultimaSecuencia", String.valueOf(gestorLogs.obtenerUltimaSecuencia()));
+        response.put("logsEnMemoria", String.valueOf(gestorLogs.contarLogsEnMemoria()));
         return ResponseEntity.ok(response);
     }
 }
@@ -0,0 +1,195 @@
+package gestorLogs.api;
+
+import dto.logs.DTOLog;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Un cliente conectado a /api/logs/stream.
+ *
+ * Los logs se filtran en el servidor y se encolan en una cola acotada propia; un
+ * hilo escritor propio de la suscripción la vacía en lotes (varios logs por evento
+ * SSE), así un cliente lento solo bloquea su propio envío. Publicar nunca bloquea al
+ * hilo que generó el log:
+ * - Con la cola por encima de {@link #UMBRAL_MUESTREO} solo entran los WARNING/ERROR
+ *   y uno de cada {@link #MUESTREO} del resto.
+ * - Con la cola llena el log se descarta y se cuenta.
+ * - Si el cliente lleva {@link #PLAZO_LENTO_MS} sin vaciar una cola llena, se desconecta.
+ * - Si un envío lleva más de {@link #PLAZO_ENVIO_MS} bloqueado, el controlador cierra
+ *   la conexión (ver {@link #envioVencido}).
+ */
+class SuscripcionLogs {
+
+    static final int CAPACIDAD_COLA = 2000;
+    // Espera antes de enviar, para juntar varios logs en el mismo evento
+    static final long INTERVALO_LOTE_MS = 100;
+    private static final int UMBRAL_MUESTREO = CAPACIDAD_COLA * 3 / 4;
+    private static final int MUESTREO = 10;
+    private static final long PLAZO_LENTO_MS = 30_000;
+    static final long PLAZO_ENVIO_MS = 10_000;
+    private static final AtomicLong SUSCRIPCIONES = new AtomicLong();
+
+    private final SseEmitter emitter;
+    private final Set<String> niveles;
+    private final String source;
+    private final boolean excluirDebug;
+    private final int lote;
+
+    private final ArrayBlockingQueue<DTOLog> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+    private final AtomicBoolean programada = new AtomicBoolean(false);
+    private final AtomicBoolean cerrada = new AtomicBoolean(false);
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong muestreo = new AtomicLong();
+    // Descartes aún no comunicados al cliente
+    private final AtomicLong descartadosPendientes = new AtomicLong();
+    private volatile long llenaDesde = 0;
+    // Inicio del send en curso (0 = ninguno)
+    private volatile long enviandoDesde = 0;
+    private final ScheduledExecutorService escritor;
+
+    /**
+     * @param niveles      Niveles aceptados (en mayúsculas) o vacío para todos
+     * @param source       Texto contenido en el source o null
+     * @param excluirDebug Omite los DEBUG
+     * @param lote         Máximo de logs por evento; con 1 se envía un evento "log" por log
+     */
+    SuscripcionLogs(SseEmitter emitter, Set<String> niveles, String source, boolean excluirDebug, int lote) {
+        this.emitter = emitter;
+        this.niveles = niveles;
+        this.source = source;
+        this.excluirDebug = excluirDebug;
+        this.lote = Math.max(1, lote);
+        this.escritor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LogsSSE-" + SUSCRIPCIONES.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    long getDescartados() {
+        return descartados.get();
+    }
+
+    boolean estaCerrada() {
+        return cerrada.get();
+    }
+
+    boolean acepta(DTOLog log) {
+        String nivel = log.getLevel() != null ? log.getLevel().toUpperCase() : "";
+        if (excluirDebug && "DEBUG".equals(nivel)) return false;
+        if (!niveles.isEmpty() && !niveles.contains(nivel)) return false;
+        return source == null || (log.getSource() != null && log.getSource().contains(source));
+    }
+
+    /**
+     * Encola el log si pasa los filtros y programa el envío. No bloquea.
+     */
+    void publicar(DTOLog log) {
+        if (cerrada.get() || !acepta(log)) return;
+
+        if (cola.size() >= UMBRAL_MUESTREO && !esPrioritario(log)
+                && muestreo.incrementAndGet() % MUESTREO != 0) {
+            descartar();
+            return;
+        }
+        if (!cola.offer(log)) {
+            descartar();
+            long ahora = System.currentTimeMillis();
+            if (llenaDesde == 0) {
+                llenaDesde = ahora;
+            } else if (ahora - llenaDesde > PLAZO_LENTO_MS) {
+                // El cliente no consume: el controlador libera su conexión
+                cerrar();
+                return;
+            }
+        } else {
+            llenaDesde = 0;
+        }
+
+        if (programada.compareAndSet(false, true)) {
+            escritor.schedule(this::vaciar, INTERVALO_LOTE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Envía lo encolado en lotes. Se ejecuta en el hilo escritor de la suscripción.
+     */
+    private void vaciar() {
+        List<DTOLog> pendientes = new ArrayList<>(lote);
+        try {
+            while (!cerrada.get() && cola.drainTo(pendientes, lote) > 0) {
+                enviarDescartes();
+                if (lote == 1) {
+                    enviar(SseEmitter.event().name("log").data(pendientes.get(0)));
+                } else {
+                    enviar(SseEmitter.event().name("logs").data(pendientes));
+                }
+                pendientes.clear();
+            }
+        } catch (Exception e) {
+            cerrar();
+            return;
+        }
+
+        programada.set(false);
+        // Un log pudo entrar entre el último drainTo y el reset de la marca
+        if (!cola.isEmpty() && !cerrada.get() && programada.compareAndSet(false, true)) {
+            escritor.schedule(this::vaciar, INTERVALO_LOTE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void enviarDescartes() throws Exception {
+        long pendientes = descartadosPendientes.getAndSet(0);
+        if (pendientes > 0) {
+            enviar(SseEmitter.event().name("descartados")
+                    .data(Map.of("descartados", pendientes, "total", descartados.get())));
+        }
+    }
+
+    private void enviar(SseEmitter.SseEventBuilder evento) throws Exception {
+        enviandoDesde = System.currentTimeMillis();
+        try {
+            emitter.send(evento);
+        } finally {
+            enviandoDesde = 0;
+        }
+    }
+
+    /**
+     * @return true si hay un envío bloqueado desde hace más de {@link #PLAZO_ENVIO_MS}
+     */
+    boolean envioVencido(long ahora) {
+        long desde = enviandoDesde;
+        return desde != 0 && ahora - desde > PLAZO_ENVIO_MS;
+    }
+
+    private void descartar() {
+        descartados.incrementAndGet();
+        descartadosPendientes.incrementAndGet();
+    }
+
+    void cerrar() {
+        cerrada.set(true);
+        cola.clear();
+        // Sin interrumpir: un send bloqueado termina cuando el controlador completa el emitter
+        escritor.shutdown();
+    }
+
+    private static boolean esPrioritario(DTOLog log) {
+        return "ERROR".equalsIgnoreCase(log.getLevel()) || "WARNING".equalsIgnoreCase(log.getLevel());
+    }
+}
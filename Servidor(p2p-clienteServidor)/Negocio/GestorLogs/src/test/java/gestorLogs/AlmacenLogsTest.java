@@ -0,0 +1,105 @@
+package gestorLogs;
+
+import dto.logs.DTOLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlmacenLogsTest {
+
+    @Test
+    void asignaSecuenciasYSobrescribeLosMasAntiguos() {
+        AlmacenLogs almacen = new AlmacenLogs(4);
+        for (int i = 1; i <= 6; i++) {
+            almacen.agregar(new DTOLog("INFO", "Red", "mensaje " + i));
+        }
+
+        assertEquals(4, almacen.tamano());
+        assertEquals(6, almacen.ultimaSecuencia());
+        assertEquals(List.of(3L, 4L, 5L, 6L), secuencias(almacen.todos()));
+        assertEquals(List.of(5L, 6L), secuencias(almacen.recientes(2)));
+    }
+
+    @Test
+    void filtroPorNivelUsaSuIndiceYPagina() {
+        AlmacenLogs almacen = new AlmacenLogs(100);
+        for (int i = 1; i <= 20; i++) {
+            almacen.agregar(new DTOLog(i % 4 == 0 ? "ERROR" : "INFO", "Red", "mensaje " + i));
+        }
+
+        // Página más reciente y, con el cursor antesDe, la anterior
+        List<DTOLog> pagina = almacen.consultar("error", null, null, false, 0, 0, 2);
+        assertEquals(List.of(16L, 20L), secuencias(pagina));
+        List<DTOLog> anterior = almacen.consultar("ERROR", null, null, false, 0, pagina.get(0).getSecuencia(), 2);
+        assertEquals(List.of(8L, 12L), secuencias(anterior));
+
+        // Solo lo nuevo desde un cursor
+        assertEquals(List.of(20L), secuencias(almacen.consultar("ERROR", null, null, false, 16, 0, 10)));
+        assertTrue(almacen.consultar("WARN", null, null, false, 0, 0, 10).isEmpty());
+    }
+
+    @Test
+    void filtroPorSourceMezclaVariosSourcesEnOrden() {
+        AlmacenLogs almacen = new AlmacenLogs(100);
+        almacen.agregar(new DTOLog("INFO", "Red-A", "1"));
+        almacen.agregar(new DTOLog("INFO", "Disco", "2"));
+        almacen.agregar(new DTOLog("INFO", "Red-B", "3"));
+        almacen.agregar(new DTOLog("INFO", "Red-A", "4"));
+        almacen.agregar(new DTOLog("WARN", "Red-B", "5"));
+
+        assertEquals(List.of(1L, 3L, 4L, 5L), secuencias(almacen.consultar(null, "Red", null, false, 0, 0, 10)));
+        assertEquals(List.of(2L), secuencias(almacen.consultar(null, "Disco", null, false, 0, 0, 10)));
+        // Nivel y source combinados
+        assertEquals(List.of(5L), secuencias(almacen.consultar("WARN", "Red", null, false, 0, 0, 10)));
+    }
+
+    @Test
+    void filtrosDeTextoYDebug() {
+        AlmacenLogs almacen = new AlmacenLogs(10);
+        almacen.agregar(new DTOLog("DEBUG", "Red", "Conexión abierta"));
+        almacen.agregar(new DTOLog("INFO", "Red", "conexión cerrada"));
+        almacen.agregar(new DTOLog("INFO", "Red", "sincronización"));
+
+        assertEquals(List.of(2L, 3L), secuencias(almacen.consultar(null, null, null, true, 0, 0, 10)));
+        assertEquals(List.of(1L, 2L), secuencias(almacen.consultar(null, null, "CONEXIÓN", false, 0, 0, 10)));
+        // Filtrando por nivel DEBUG no se excluye nada
+        assertEquals(List.of(1L), secuencias(almacen.consultar("DEBUG", null, null, true, 0, 0, 10)));
+    }
+
+    @Test
+    void indicesOlvidanLosLogsSobrescritos() {
+        AlmacenLogs almacen = new AlmacenLogs(3);
+        almacen.agregar(new DTOLog("ERROR", "Viejo", "1"));
+        for (int i = 0; i < 5; i++) {
+            almacen.agregar(new DTOLog("INFO", "Nuevo", "x"));
+        }
+
+        assertEquals(0, almacen.contar("ERROR"));
+        assertEquals(3, almacen.contar("info"));
+        assertTrue(almacen.consultar("ERROR", null, null, false, 0, 0, 10).isEmpty());
+        assertTrue(almacen.consultar(null, "Viejo", null, false, 0, 0, 10).isEmpty());
+    }
+
+    @Test
+    void limpiarConservaLasSecuencias() {
+        AlmacenLogs almacen = new AlmacenLogs(10);
+        almacen.agregar(new DTOLog("INFO", "Red", "1"));
+        almacen.agregar(new DTOLog("ERROR", "Red", "2"));
+
+        almacen.limpiar();
+        assertEquals(0, almacen.tamano());
+        assertEquals(0, almacen.contar("ERROR"));
+        assertTrue(almacen.todos().isEmpty());
+
+        almacen.agregar(new DTOLog("INFO", "Red", "3"));
+        assertEquals(List.of(3L), secuencias(almacen.todos()));
+        assertEquals(List.of(3L), secuencias(almacen.consultar(null, null, null, false, 1, 0, 10)));
+    }
+
+    private static List<Long> secuencias(List<DTOLog> logs) {
+        return logs.stream().map(DTOLog::getSecuencia).collect(Collectors.toList());
+    }
+}
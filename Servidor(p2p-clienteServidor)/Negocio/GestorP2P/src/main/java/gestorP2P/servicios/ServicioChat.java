@@ -9,6 +9,7 @@ import dto.comunicacion.DTORequest;
 import dto.comunicacion.DTOResponse;
 import dto.p2p.DTOPeerDetails;
 import gestorP2P.interfaces.IServicioP2P;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import gestorP2P.utils.GsonUtil;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.MensajeRepositorio;
@@ -74,7 +75,7 @@ public class ServicioChat implements IServicioP2P {
 
                 // Activar sincronización automática si está disponible
                 if (guardado && servicioSync != null) {
-                    servicioSync.sincronizarMensajes();
+                    servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE);
                 }
 
                 String logMsg = String.format("%sMensaje de %s:%s %s", CYAN, usuario, RESET, texto);
@@ -112,7 +113,7 @@ public class ServicioChat implements IServicioP2P {
 
         // Activar sincronización automática si está disponible
         if (guardado && servicioSync != null) {
-            servicioSync.sincronizarMensajes();
+            servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE, m);
         }
 
         // Preparar JSON con todos los datos necesarios
@@ -148,7 +149,7 @@ public class ServicioChat implements IServicioP2P {
 
         // Activar sincronización automática si está disponible
         if (guardado && servicioSync != null) {
-            servicioSync.sincronizarMensajes();
+            servicioSync.notificarCambioLocal(Fase1ConstruccionArboles.TIPO_MENSAJE, m);
         }
 
         // Preparar JSON
@@ -10,11 +10,17 @@ import dominio.merkletree.IMerkleEntity;
 import dto.comunicacion.DTOResponse;
 import gestorP2P.interfaces.IServicioP2P;
 import gestorP2P.servicios.sincronizacion.CoordinadorSincronizacion;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
+import gestorP2P.servicios.sincronizacion.Fase3SolicitudIDs;
+import gestorP2P.servicios.sincronizacion.Fase4DeteccionFaltantes;
+import gestorP2P.servicios.sincronizacion.Fase5ComparacionContenido;
+import gestorP2P.servicios.sincronizacion.ReplicadorDeltas;
 import gestorP2P.utils.GsonUtil;
 import logger.LoggerCentral;
 import observador.IObservador;
 import observador.ISujeto;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -39,6 +45,10 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
     private static final String AZUL = "\u001B[34m";
     private static final String CYAN = "\u001B[36m";
     private static final String ROJO = "\u001B[31m";
+    private static final String AMARILLO = "\u001B[33m";
+
+    // Límite de IDs atendidos por petición de lote, independiente de la configuración del peer
+    private static final int MAX_IDS_POR_LOTE = 1000;
 
     private IGestorConexiones gestor;
     private final Gson gson;
@@ -46,6 +56,9 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
     // Coordinador que maneja toda la lógica de sincronización
     private CoordinadorSincronizacion coordinador;
 
+    // Difusión inmediata de escrituras locales a los peers
+    private ReplicadorDeltas replicador;
+
     // Servicios auxiliares
     private ServicioNotificacionCambios notificador;
     private ServicioTransferenciaArchivos servicioTransferenciaArchivos;
@@ -112,6 +125,7 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
 
         // ✅ NUEVO: Configurar este servicio como padre para que el coordinador pueda notificar a TODOS los observadores
         coordinador.setServicioPadre(this);
+        this.replicador = new ReplicadorDeltas(gestor, gson, coordinador);
 
         // Configurar servicios si ya están disponibles
         if (notificador != null || servicioNotificacionCliente != null) {
@@ -140,20 +154,27 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
             return new DTOResponse("sync_check_all", "success", "Hashes Locales", hashes);
         });
 
-        // 2. GET IDs - Enviar lista de IDs para un tipo
-        router.registrarAccion("sync_get_ids", (datos, origen) -> {
-            String tipo = datos.getAsString();
-            LoggerCentral.debug(TAG, "sync_get_ids para: " + tipo + " desde: " + origen);
-
-            JsonArray ids = coordinador.getFase3().obtenerIDsLocales(tipo);
+        // 2. MERKLE NODOS - Hashes hijos de los nodos pedidos (descenso por subárboles)
+        router.registrarAccion(Fase3SolicitudIDs.ACCION_NODOS, (datos, origen) -> {
+            JsonObject result = coordinador.getFase3().responderNodos(datos.getAsJsonObject());
+            return new DTOResponse(Fase3SolicitudIDs.ACCION_NODOS, "success", "Nodos", result);
+        });
 
-            JsonObject result = new JsonObject();
-            result.addProperty("tipo", tipo);
-            result.add("ids", ids);
-            return new DTOResponse("sync_get_ids", "success", "IDs", result);
+        // 2b. MERKLE HOJAS - Pares (id, hash) de las cubetas pedidas
+        router.registrarAccion(Fase3SolicitudIDs.ACCION_HOJAS, (datos, origen) -> {
+            JsonObject result = coordinador.getFase3().responderHojas(datos.getAsJsonObject());
+            return new DTOResponse(Fase3SolicitudIDs.ACCION_HOJAS, "success", "Hojas", result);
         });
 
-        // 3. GET ENTITY - Enviar una entidad específica
+        // 3. GET ENTITIES - Enviar un lote de entidades faltantes
+        router.registrarAccion(Fase4DeteccionFaltantes.ACCION_LOTE, (datos, origen) ->
+            responderLoteEntidades(Fase4DeteccionFaltantes.ACCION_LOTE, datos.getAsJsonObject(), origen));
+
+        // 3b. COMPARE ENTITIES - Enviar un lote de entidades para comparación
+        router.registrarAccion(Fase5ComparacionContenido.ACCION_LOTE, (datos, origen) ->
+            responderLoteEntidades(Fase5ComparacionContenido.ACCION_LOTE, datos.getAsJsonObject(), origen));
+
+        // 3c. GET ENTITY - Enviar una entidad específica
         router.registrarAccion("sync_get_entity", (datos, origen) -> {
             JsonObject req = datos.getAsJsonObject();
             String tipo = req.get("tipo").getAsString();
@@ -172,7 +193,7 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
             return new DTOResponse("sync_get_entity", "error", "Not found", null);
         });
 
-        // 4. COMPARE ENTITY - Enviar entidad para comparación
+        // 3d. COMPARE ENTITY - Enviar entidad para comparación
         router.registrarAccion("sync_compare_entity", (datos, origen) -> {
             JsonObject req = datos.getAsJsonObject();
             String tipo = req.get("tipo").getAsString();
@@ -190,88 +211,113 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
 
             return new DTOResponse("sync_compare_entity", "error", "Not found", null);
         });
+
+        // 4. AVISO DE CAMBIOS - Un peer tiene datos nuevos: se agenda una ronda (sin respuesta)
+        router.registrarAccion(CoordinadorSincronizacion.ACCION_AVISO, (datos, origen) -> {
+            coordinador.procesarAvisoCambios(datos.getAsJsonObject(), origen);
+            return null;
+        });
+
+        // 5. DELTA - Escrituras difundidas por su origen: se aplican y se confirma con ACK
+        router.registrarAccion(ReplicadorDeltas.ACCION_DELTA, (datos, origen) -> {
+            JsonObject ack = replicador.recibir(datos.getAsJsonObject(), origen);
+            return new DTOResponse(ReplicadorDeltas.ACCION_DELTA, "success", "ACK", ack);
+        });
+
+        // 5b. PEDIR DELTAS - Tramo del log local que un peer no recibió
+        router.registrarAccion(ReplicadorDeltas.ACCION_PEDIR, (datos, origen) -> {
+            JsonObject tramo = replicador.responderPedido(datos.getAsJsonObject());
+            if (tramo == null) {
+                return new DTOResponse(ReplicadorDeltas.ACCION_PEDIR, "error", "Origen desconocido", null);
+            }
+            return new DTOResponse(ReplicadorDeltas.ACCION_PEDIR, "success", "Tramo", tramo);
+        });
     }
 
     /**
      * Registra los manejadores de respuestas P2P.
      */
     private void registrarManejadoresRespuesta(IRouterMensajes router) {
-        // Respuesta a sync_check_all
-        router.registrarManejadorRespuesta("sync_check_all", (resp) -> {
+        // Respuesta a sync_check_all: el descenso continúa solo con el peer que respondió
+        router.registrarManejadorRespuestaConOrigen("sync_check_all", (resp, origen) -> {
             if (resp.fueExitoso() && resp.getData() != null) {
-                LoggerCentral.info(TAG, CYAN + "✓ Respuesta sync_check_all recibida" + RESET);
-                coordinador.procesarDiferencias(resp.getData().getAsJsonObject());
+                LoggerCentral.info(TAG, CYAN + "✓ Respuesta sync_check_all recibida de " + origen + RESET);
+                coordinador.procesarDiferencias(resp.getData().getAsJsonObject(), origen);
             }
         });
 
-        // Respuesta a sync_get_ids
-        router.registrarManejadorRespuesta("sync_get_ids", (resp) -> {
-            if (resp.fueExitoso()) {
-                JsonObject res = resp.getData().getAsJsonObject();
-                String tipo = res.get("tipo").getAsString();
-                JsonArray ids = res.get("ids").getAsJsonArray();
+        // Respuestas del descenso por subárboles Merkle
+        router.registrarManejadorRespuestaConOrigen(Fase3SolicitudIDs.ACCION_NODOS, (resp, origen) -> {
+            if (resp.fueExitoso() && resp.getData() != null) {
+                coordinador.procesarNodosMerkle(resp.getData().getAsJsonObject(), origen);
+            }
+        });
 
-                LoggerCentral.info(TAG, CYAN + String.format("✓ IDs recibidos: %d de %s", ids.size(), tipo) + RESET);
-                coordinador.procesarIDsRecibidos(tipo, ids);
+        router.registrarManejadorRespuestaConOrigen(Fase3SolicitudIDs.ACCION_HOJAS, (resp, origen) -> {
+            if (resp.fueExitoso() && resp.getData() != null) {
+                coordinador.procesarHojasMerkle(resp.getData().getAsJsonObject(), origen);
             }
         });
 
-        // Respuesta a sync_get_entity
-        router.registrarManejadorRespuesta("sync_get_entity", (resp) -> {
-            if (resp.fueExitoso()) {
+        // Respuestas a los lotes de Fase 4 y Fase 5: cada una libera un hueco para el siguiente lote
+        router.registrarManejadorRespuestaConOrigen(Fase4DeteccionFaltantes.ACCION_LOTE, (resp, origen) -> {
+            if (resp.getData() != null) {
                 JsonObject env = resp.getData().getAsJsonObject();
-                String tipo = env.get("tipo").getAsString();
-                JsonElement data = env.get("data");
-
-                LoggerCentral.info(TAG, VERDE + "✓ Entidad recibida: " + tipo + RESET);
-                coordinador.procesarEntidadRecibida(tipo, data);
+                coordinador.procesarLoteFaltantes(env.get("tipo").getAsString(), env.getAsJsonArray("entidades"), origen);
             }
         });
 
-        // ✅ MEJORADO: Respuesta a sync_compare_entity con deduplicación
-        router.registrarManejadorRespuesta("sync_compare_entity", (resp) -> {
-            if (resp.fueExitoso()) {
+        router.registrarManejadorRespuestaConOrigen(Fase5ComparacionContenido.ACCION_LOTE, (resp, origen) -> {
+            if (resp.getData() != null) {
                 JsonObject env = resp.getData().getAsJsonObject();
-                String tipo = env.get("tipo").getAsString();
-                JsonElement data = env.get("data");
-
-                // ✅ NUEVO: Extraer el ID de la entidad para deduplicación
-                String id = extraerIdDeEntidad(tipo, data);
+                coordinador.procesarLoteComparacion(env.get("tipo").getAsString(), env.getAsJsonArray("entidades"), origen);
+            }
+        });
 
-                // ✅ NUEVO: Verificar si ya procesamos esta respuesta
-                if (coordinador.getFase5().yaFueProcesado(tipo, id)) {
-                    LoggerCentral.debug(TAG, "⏩ Respuesta duplicada ignorada: " + tipo + " ID: " + id);
-                    return;
-                }
+        // Replicación de deltas: ACKs y tramos pedidos por huecos
+        router.registrarManejadorRespuestaConOrigen(ReplicadorDeltas.ACCION_DELTA, (resp, origen) -> {
+            if (resp.fueExitoso() && resp.getData() != null) {
+                replicador.procesarConfirmacion(resp.getData().getAsJsonObject(), origen);
+            }
+        });
 
-                LoggerCentral.info(TAG, CYAN + "✓ Comparación de contenido para: " + tipo + RESET);
-                coordinador.procesarComparacion(tipo, data);
+        router.registrarManejadorRespuestaConOrigen(ReplicadorDeltas.ACCION_PEDIR, (resp, origen) -> {
+            if (resp.fueExitoso() && resp.getData() != null) {
+                replicador.recibirTramo(resp.getData().getAsJsonObject(), origen);
             }
         });
     }
 
     /**
-     * ✅ NUEVO: Extrae el ID de una entidad desde JSON.
+     * Responde una petición de lote con las entidades encontradas: {tipo, entidades: [...]}.
+     * Los IDs que no existen localmente simplemente no aparecen en la respuesta.
      */
-    private String extraerIdDeEntidad(String tipo, JsonElement data) {
-        try {
-            JsonObject obj = data.getAsJsonObject();
-
-            // Diferentes campos según el tipo de entidad
-            if (obj.has("id")) {
-                return obj.get("id").getAsString();
-            } else if (obj.has("idUsuario")) {
-                return obj.get("idUsuario").getAsString();
-            } else if (obj.has("idCanal")) {
-                return obj.get("idCanal").getAsString();
+    private DTOResponse responderLoteEntidades(String accion, JsonObject req, String origen) {
+        String tipo = req.get("tipo").getAsString();
+        JsonArray idsPedidos = req.getAsJsonArray("ids");
+
+        List<String> ids = new ArrayList<>();
+        for (JsonElement el : idsPedidos) {
+            if (ids.size() == MAX_IDS_POR_LOTE) {
+                LoggerCentral.warn(TAG, AMARILLO + String.format("%s de %s: lote de %d IDs recortado a %d",
+                    accion, origen, idsPedidos.size(), MAX_IDS_POR_LOTE) + RESET);
+                break;
             }
+            ids.add(el.getAsString());
+        }
 
-            // Si no tiene ID, usar un hash del contenido
-            return Integer.toString(data.hashCode());
-        } catch (Exception e) {
-            LoggerCentral.warn(TAG, "No se pudo extraer ID, usando hashCode");
-            return Integer.toString(data.hashCode());
+        JsonArray entidades = new JsonArray();
+        for (IMerkleEntity entidad : coordinador.getFase1().buscarEntidades(tipo, ids)) {
+            entidades.add(gson.toJsonTree(entidad));
         }
+
+        LoggerCentral.debug(TAG, String.format("%s: %s %d/%d encontradas para %s",
+            accion, tipo, entidades.size(), ids.size(), origen));
+
+        JsonObject env = new JsonObject();
+        env.addProperty("tipo", tipo);
+        env.add("entidades", entidades);
+        return new DTOResponse(accion, "success", "Lote", env);
     }
 
     @Override
@@ -281,11 +327,11 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
         LoggerCentral.info(TAG, VERDE + "✓ Servicio iniciado correctamente" + RESET);
     }
 
-    // API pública para disparar sincronización, notificando inicio a observadores
+    /**
+     * API pública: pide una ronda de sincronización. Las peticiones seguidas se
+     * agrupan y, si hay una ronda en curso, se encolan para cuando termine.
+     */
     public void iniciarSincronizacionConNotificacion() {
-        LoggerCentral.info(TAG, AZUL + "=== Solicitud de sincronización con notificación ===" + RESET);
-        // Notificar a la UI y otros observadores que se inicia la sincronización
-        notificarObservadores("SINCRONIZACION_P2P_INICIADA", null);
         if (coordinador != null) {
             coordinador.iniciarSincronizacion();
         }
@@ -295,6 +341,10 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
     public void detener() {
         LoggerCentral.info(TAG, ROJO + "Deteniendo servicio de sincronización..." + RESET);
         
+        if (replicador != null) {
+            replicador.detener();
+        }
+
         // Detener el coordinador y sus timeouts
         if (coordinador != null) {
             coordinador.detener();
@@ -304,97 +354,58 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
     }
 
     /**
-     * API Pública: Fuerza una sincronización manual.
+     * API Pública: Fuerza una sincronización manual, sin esperar la ventana de agrupación.
      */
     public void forzarSincronizacion() {
         if (coordinador == null) {
             LoggerCentral.error(TAG, ROJO + "Coordinador no inicializado" + RESET);
             return;
         }
-        LoggerCentral.warn(TAG, "Forzando sincronización manual...");
-        // ✅ Usar siempre el flujo con notificación para que la UI reciba SINCRONIZACION_P2P_INICIADA
-        iniciarSincronizacionConNotificacion();
+        coordinador.forzarSincronizacion();
     }
 
     /**
-     * API Pública: Sincroniza mensajes (llamado por ServicioChat).
+     * API Pública: Registra un cambio local persistido de un tipo de entidad
+     * (ver constantes TIPO_* de {@link Fase1ConstruccionArboles}). El árbol Merkle
+     * ya se actualizó al guardar; aquí solo se agenda el aviso a los peers.
      */
-    public void sincronizarMensajes() {
-        if (coordinador == null) {
-            LoggerCentral.debug(TAG, "Coordinador no disponible. Sincronización diferida.");
-            return;
-        }
-        LoggerCentral.info(TAG, VERDE + "📨 Activando sincronización por nuevo mensaje..." + RESET);
-        coordinador.marcarCambios();
-        // ✅ Usar también el flujo con notificación
-        iniciarSincronizacionConNotificacion();
+    public void notificarCambioLocal(String tipo) {
+        notificarCambioLocal(tipo, null);
     }
 
     /**
-     * API Pública: Reconstruye árboles Merkle cuando cambia la BD.
+     * API Pública: Registra la escritura local de una entidad ya persistida y la
+     * difunde de inmediato a los peers. Sin identidad de nodo todavía, se recurre
+     * al aviso de cambios del tipo.
      */
-    public void onBaseDeDatosCambio() {
+    public void notificarCambioLocal(String tipo, IMerkleEntity entidad) {
         if (coordinador == null) {
+            LoggerCentral.debug(TAG, "Coordinador no disponible. Cambio de " + tipo + " sin avisar.");
             return;
         }
-        LoggerCentral.info(TAG, AZUL + "BD cambió. Reconstruyendo árboles..." + RESET);
-        new Thread(() -> coordinador.reconstruirArboles()).start();
+        if (entidad == null || replicador == null || !replicador.publicar(tipo, entidad.getId())) {
+            coordinador.registrarCambioLocal(tipo);
+        }
     }
 
     @Override
     public void actualizar(String tipo, Object datos) {
-        // ✅ EVENTO 1: Nuevo peer conectado → Iniciar sincronización completa (Cold Sync)
-        if ("PEER_CONECTADO".equals(tipo)) {
-            LoggerCentral.info(TAG, VERDE + "=== Peer conectado: " + datos + " ===" + RESET);
-            if (coordinador != null) {
-                // ✅ Usar flujo con notificación para que la UI vea el inicio
-                iniciarSincronizacionConNotificacion();
-            }
-            return;
-        }
-
-        // ✅ EVENTO 2: Usuario creado → Reconstruir árboles y sincronizar (Hot Sync)
-        if ("USUARIO_CREADO".equals(tipo)) {
-            LoggerCentral.info(TAG, AZUL + "👤 Usuario creado. Activando sincronización..." + RESET);
-            if (coordinador != null) {
-                coordinador.marcarCambios();
-                coordinador.reconstruirArboles();
-                iniciarSincronizacionConNotificacion();
-            }
-            return;
-        }
-
-        // ✅ EVENTO 3: Usuario actualizado → Reconstruir árboles y sincronizar (Hot Sync)
-        if ("USUARIO_ACTUALIZADO".equals(tipo)) {
-            LoggerCentral.info(TAG, AZUL + "👤 Usuario actualizado. Activando sincronización..." + RESET);
-            if (coordinador != null) {
-                coordinador.marcarCambios();
-                coordinador.reconstruirArboles();
-                iniciarSincronizacionConNotificacion();
-            }
+        if (coordinador == null) {
             return;
         }
 
-        // ✅ EVENTO 4: Cambio en base de datos genérico → Reconstruir árboles
-        if ("BD_CAMBIO".equals(tipo) || "NUEVO_MENSAJE".equals(tipo) || "NUEVO_CANAL".equals(tipo)) {
-            LoggerCentral.info(TAG, CYAN + "💾 Cambio detectado: " + tipo + ". Reconstruyendo árboles..." + RESET);
-            if (coordinador != null) {
-                coordinador.marcarCambios();
-                coordinador.reconstruirArboles();
-                // Opcional: si quieres que estos cambios también disparen sync inmediata con indicador:
-                iniciarSincronizacionConNotificacion();
-            }
+        // ✅ EVENTO 1: Nuevo peer conectado → Ronda completa (Cold Sync)
+        if ("PEER_CONECTADO".equals(tipo)) {
+            LoggerCentral.info(TAG, VERDE + "=== Peer conectado: " + datos + " ===" + RESET);
+            coordinador.iniciarSincronizacion();
             return;
         }
 
-        // ✅ EVENTO 5: Cambio en invitación de canal
-        if ("CAMBIO_INVITACION_CANAL".equals(tipo)) {
-            LoggerCentral.info(TAG, AZUL + "✉️ Cambio en invitación de canal. Activando sincronización..." + RESET);
-            if (coordinador != null) {
-                coordinador.marcarCambios();
-                coordinador.reconstruirArboles();
-                iniciarSincronizacionConNotificacion();
-            }
+        // ✅ EVENTO 2: Cambios locales → Aviso agrupado a los peers (Hot Sync)
+        String tipoEntidad = tipoEntidadDeEvento(tipo);
+        if (tipoEntidad != null) {
+            LoggerCentral.debug(TAG, "Cambio local " + tipo + " → " + tipoEntidad);
+            coordinador.registrarCambioLocal(tipoEntidad);
             return;
         }
 
@@ -402,6 +413,26 @@ public class ServicioSincronizacionDatos implements IServicioP2P, IObservador, I
         LoggerCentral.debug(TAG, "Evento no manejado: " + tipo);
     }
 
+    /**
+     * Tipo de entidad Merkle afectado por un evento de cambio local, o null si el
+     * evento no implica cambios a sincronizar.
+     */
+    private static String tipoEntidadDeEvento(String evento) {
+        switch (evento) {
+            case "USUARIO_CREADO":
+            case "USUARIO_ACTUALIZADO":
+                return Fase1ConstruccionArboles.TIPO_USUARIO;
+            case "NUEVO_MENSAJE":
+                return Fase1ConstruccionArboles.TIPO_MENSAJE;
+            case "NUEVO_CANAL":
+                return Fase1ConstruccionArboles.TIPO_CANAL;
+            case "CAMBIO_INVITACION_CANAL":
+                return Fase1ConstruccionArboles.TIPO_CANAL_INVITACION;
+            default:
+                return null;
+        }
+    }
+
     // ===== PATRÓN OBSERVADOR =====
 
     @Override
@@ -7,17 +7,24 @@ import conexion.p2p.interfaces.IRouterMensajes;
 import dominio.clienteServidor.Archivo;
 import dto.comunicacion.DTORequest;
 import dto.comunicacion.DTOResponse;
+import dto.p2p.DTOPeerDetails;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import gestorP2P.interfaces.IServicioP2P;
+import gestorP2P.servicios.transferencia.DescargaEnjambre;
 import gestorP2P.utils.GsonUtil;
 import logger.LoggerCentral;
+import repositorio.clienteServidor.AlmacenContenido;
 import repositorio.clienteServidor.ArchivoRepositorio;
+import repositorio.clienteServidor.LecturaRangos;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.DirectoryStream;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -27,15 +34,31 @@ import java.util.concurrent.*;
  *
  * Flujo:
  * 1. Detecta archivos con metadatos en BD pero sin archivo físico en Bucket/
- * 2. Solicita el archivo a peers disponibles
- * 3. Descarga por chunks con verificación de integridad
- * 4. Guarda en Bucket/ local
+ * 2. Pregunta a los peers qué chunks tienen de cada archivo (una petición por archivo)
+ * 3. Descarga en enjambre: reparte los chunks entre los peers que los tienen, con una
+ *    ventana por peer, y reasigna los de un peer que se estanca ({@link DescargaEnjambre})
+ * 4. Escribe cada chunk directamente en disco y verifica el hash al terminar
+ *
+ * Mientras descarga, el nodo también sirve a otros peers los chunks que ya recibió.
+ *
+ * El contenido se identifica por su hash: si ya está en el almacén local (otro
+ * archivo con el mismo contenido) solo se enlaza, y cada contenido se descarga una vez.
  */
 public class ServicioTransferenciaArchivos implements IServicioP2P {
 
     private static final String TAG = "TransferenciaArchivos";
     private static final String BUCKET_PATH = "./Bucket/";
     private static final int CHUNK_SIZE = 524288; // 512 KB (igual que ServicioArchivos)
+    // Archivos parciales de las descargas en curso (pasan al almacén de contenido al terminar)
+    private static final String DESCARGAS_PATH = BUCKET_PATH + ".descargas/";
+
+    // Descarga en enjambre
+    private static final int MAX_DESCARGAS_ACTIVAS = 4;     // Archivos descargándose a la vez
+    private static final int VENTANA_POR_PEER = 8;          // Chunks en vuelo máximos por peer y archivo
+    private static final long PLAZO_CHUNK_MS = 10_000;      // Sin respuesta en este plazo, el chunk se reasigna
+    private static final long ESPERA_FUENTES_MS = 5_000;    // Espera de respuestas al descubrimiento
+    private static final int MAX_DESCUBRIMIENTOS = 3;       // Intentos sin fuentes antes de abandonar
+    private static final long INTERVALO_REVISION_MS = 1_000;
 
     // Colores ANSI
     private static final String RESET = "\u001B[0m";
@@ -49,22 +72,32 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
     private ServicioNotificacionCambios notificador; // ✅ NUEVO: Para notificar progreso de descargas
     private final Gson gson;
     private final ArchivoRepositorio repoArchivo;
+    private final AlmacenContenido almacen;
 
-    // Executor para descargas en paralelo
-    private final ExecutorService executorDescargas;
+    // Revisión periódica de descargas (estancamientos, fuentes) y cierre de las completas
+    private final ScheduledExecutorService planificador;
 
-    // Cache de descargas en progreso (evita descargar el mismo archivo 2 veces)
+    // Descargas en cola o en curso (evita descargar el mismo archivo 2 veces)
     private final Set<String> descargasEnProgreso;
 
-    // Cache temporal de chunks recibidos durante una descarga
-    private final Map<String, DescargaEnProgreso> cacheDescargas;
+    // Archivos a la espera de un hueco entre las descargas activas
+    private final Queue<Archivo> colaDescargas;
+
+    // Descargas activas por fileId
+    private final Map<String, DescargaEnjambre> descargasActivas;
 
     public ServicioTransferenciaArchivos() {
         this.gson = GsonUtil.crearGson();
         this.repoArchivo = new ArchivoRepositorio();
-        this.executorDescargas = Executors.newFixedThreadPool(3); // Max 3 descargas simultáneas
+        this.almacen = AlmacenContenido.getInstance();
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TransferenciaArchivos");
+            t.setDaemon(true);
+            return t;
+        });
         this.descargasEnProgreso = ConcurrentHashMap.newKeySet();
-        this.cacheDescargas = new ConcurrentHashMap<>();
+        this.colaDescargas = new ConcurrentLinkedQueue<>();
+        this.descargasActivas = new ConcurrentHashMap<>();
         crearDirectorioBucket();
     }
 
@@ -99,10 +132,17 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
                     return new DTOResponse("p2p_file_metadata_request", "not_found", "Archivo no encontrado", null);
                 }
 
-                // Verificar que el archivo físico exista
+                // Chunks que este nodo puede servir: todos, o los ya recibidos si lo está descargando
+                int totalChunks = calcularTotalChunks(archivo.getTamanio());
+                List<int[]> rangos;
                 File archivoFisico = new File(BUCKET_PATH + archivo.getRutaRelativa());
-                if (!archivoFisico.exists()) {
-                    LoggerCentral.warn(TAG, "Metadato existe pero archivo físico NO: " + fileId);
+                DescargaEnjambre enCurso = descargasActivas.get(fileId);
+                if (archivoFisico.exists()) {
+                    rangos = Collections.singletonList(new int[]{1, totalChunks});
+                } else if (enCurso != null && enCurso.chunksRecibidos() > 0) {
+                    rangos = enCurso.rangosRecibidos();
+                } else {
+                    LoggerCentral.debug(TAG, "Metadato existe pero archivo físico NO: " + fileId);
                     return new DTOResponse("p2p_file_metadata_request", "not_available", "Archivo físico no disponible", null);
                 }
 
@@ -113,7 +153,15 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
                 metadata.addProperty("tamanio", archivo.getTamanio());
                 metadata.addProperty("mimeType", archivo.getMimeType());
                 metadata.addProperty("hashSHA256", archivo.getHashSHA256());
-                metadata.addProperty("totalChunks", calcularTotalChunks(archivo.getTamanio()));
+                metadata.addProperty("totalChunks", totalChunks);
+                JsonArray rangosJson = new JsonArray();
+                for (int[] rango : rangos) {
+                    JsonArray par = new JsonArray();
+                    par.add(rango[0]);
+                    par.add(rango[1]);
+                    rangosJson.add(par);
+                }
+                metadata.add("rangos", rangosJson);
 
                 LoggerCentral.debug(TAG, VERDE + "✓ Archivo disponible: " + fileId + RESET);
                 return new DTOResponse("p2p_file_metadata_request", "success", "Archivo disponible", metadata);
@@ -138,25 +186,38 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
                     return new DTOResponse("p2p_file_chunk_request", "not_found", "Archivo no encontrado", null);
                 }
 
-                // Leer archivo físico
+                // Archivo físico, o el parcial si el chunk ya llegó a una descarga en curso
                 File archivoFisico = new File(BUCKET_PATH + archivo.getRutaRelativa());
-                if (!archivoFisico.exists()) {
-                    return new DTOResponse("p2p_file_chunk_request", "not_available", "Archivo físico no disponible", null);
+                byte[] chunkData;
+                if (archivoFisico.exists()) {
+                    // Solo se toca el rango pedido, nunca el archivo completo
+                    long tamanio = archivoFisico.length();
+                    long offset = (long) (chunkNumber - 1) * CHUNK_SIZE;
+                    int length = (int) Math.min(CHUNK_SIZE, tamanio - offset);
+
+                    if (chunkNumber < 1 || offset >= tamanio || length <= 0) {
+                        return new DTOResponse("p2p_file_chunk_request", "invalid_chunk", "Chunk fuera de rango", null);
+                    }
+
+                    // Peer con protocolo binario: zero-copy (FileRegion/sendfile), sin Base64
+                    DTOPeerDetails destino = new DTOPeerDetails(origen, null, 0, null, null);
+                    if (gestor.enviarRangoArchivo(destino, "p2p_file_chunk_request", fileId, archivoFisico, offset, length)) {
+                        LoggerCentral.debug(TAG, VERDE + "✓ Enviando chunk " + chunkNumber + " (" + length + " bytes, zero-copy)" + RESET);
+                        return null;
+                    }
+
+                    // Peer antiguo (JSON): lectura posicional del rango + Base64
+                    chunkData = LecturaRangos.leer(archivoFisico.toPath(), offset, length);
+                } else {
+                    // Del parcial se lee bajo el monitor de la descarga y nunca con zero-copy:
+                    // la lectura diferida de sendfile podría cruzarse con finalizarDescarga,
+                    // que cierra el parcial y lo mueve a Bucket/
+                    DescargaEnjambre enCurso = descargasActivas.get(fileId);
+                    chunkData = enCurso != null ? enCurso.leerChunk(chunkNumber) : null;
+                    if (chunkData == null) {
+                        return new DTOResponse("p2p_file_chunk_request", "not_available", "Archivo físico no disponible", null);
+                    }
                 }
-
-                byte[] fileData = Files.readAllBytes(archivoFisico.toPath());
-
-                // Extraer chunk solicitado
-                int offset = (chunkNumber - 1) * CHUNK_SIZE;
-                int length = Math.min(CHUNK_SIZE, fileData.length - offset);
-
-                if (offset >= fileData.length || length <= 0) {
-                    return new DTOResponse("p2p_file_chunk_request", "invalid_chunk", "Chunk fuera de rango", null);
-                }
-
-                byte[] chunkData = new byte[length];
-                System.arraycopy(fileData, offset, chunkData, 0, length);
-
                 String chunkBase64 = Base64.getEncoder().encodeToString(chunkData);
 
                 JsonObject response = new JsonObject();
@@ -164,7 +225,7 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
                 response.addProperty("chunkNumber", chunkNumber);
                 response.addProperty("chunkDataBase64", chunkBase64);
 
-                LoggerCentral.debug(TAG, VERDE + "✓ Enviando chunk " + chunkNumber + " (" + length + " bytes)" + RESET);
+                LoggerCentral.debug(TAG, VERDE + "✓ Enviando chunk " + chunkNumber + " (" + chunkData.length + " bytes)" + RESET);
                 return new DTOResponse("p2p_file_chunk_request", "success", "Chunk enviado", response);
 
             } catch (Exception e) {
@@ -173,32 +234,41 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
             }
         });
 
-        // MANEJADOR DE RESPUESTA: Metadatos recibidos
-        router.registrarManejadorRespuesta("p2p_file_metadata_request", (resp) -> {
+        // MANEJADOR DE RESPUESTA: Metadatos recibidos (el peer que responde es una fuente)
+        router.registrarManejadorRespuestaConOrigen("p2p_file_metadata_request", (resp, origen) -> {
             if (resp.fueExitoso() && resp.getData() != null) {
-                JsonObject metadata = resp.getData().getAsJsonObject();
-                String fileId = metadata.get("fileId").getAsString();
-                int totalChunks = metadata.get("totalChunks").getAsInt();
-
-                LoggerCentral.info(TAG, CYAN + "✓ Metadata recibida para: " + fileId + " (" + totalChunks + " chunks)" + RESET);
-
-                // Iniciar descarga de chunks
-                iniciarDescargaChunks(fileId, metadata);
+                agregarFuente(resp.getData().getAsJsonObject(), origen);
             } else {
-                LoggerCentral.warn(TAG, AMARILLO + "Archivo no disponible en peer: " + resp.getStatus() + RESET);
+                LoggerCentral.debug(TAG, "Archivo no disponible en peer " + origen + ": " + resp.getStatus());
             }
         });
 
-        // MANEJADOR DE RESPUESTA: Chunk recibido
-        router.registrarManejadorRespuesta("p2p_file_chunk_request", (resp) -> {
+        // MANEJADOR DE RESPUESTA: Chunk recibido (peers JSON, Base64)
+        router.registrarManejadorRespuestaConOrigen("p2p_file_chunk_request", (resp, origen) -> {
             if (resp.fueExitoso() && resp.getData() != null) {
                 JsonObject chunkData = resp.getData().getAsJsonObject();
-                procesarChunkRecibido(chunkData);
+                procesarChunkRecibido(
+                        chunkData.get("fileId").getAsString(),
+                        chunkData.get("chunkNumber").getAsInt(),
+                        Base64.getDecoder().decode(chunkData.get("chunkDataBase64").getAsString()),
+                        origen);
             } else {
-                LoggerCentral.error(TAG, ROJO + "Error al recibir chunk: " + resp.getStatus() + RESET);
+                // El chunk sigue asignado al peer: se reasigna al vencer su plazo
+                LoggerCentral.warn(TAG, AMARILLO + "Peer " + origen + " no pudo servir un chunk: " + resp.getStatus() + RESET);
             }
         });
 
+        // MANEJADOR DE DATOS: Chunk recibido como bytes crudos (peers con protocolo binario)
+        router.registrarManejadorDatos("p2p_file_chunk_request", (bloque, origen) -> {
+            byte[] chunkBytes = new byte[bloque.getLongitud()];
+            bloque.getDatos().get(chunkBytes);
+            int chunkNumber = (int) (bloque.getOffset() / CHUNK_SIZE) + 1;
+            procesarChunkRecibido(bloque.getClave(), chunkNumber, chunkBytes, origen);
+        });
+
+        planificador.scheduleWithFixedDelay(this::revisarDescargas,
+                INTERVALO_REVISION_MS, INTERVALO_REVISION_MS, TimeUnit.MILLISECONDS);
+
         LoggerCentral.info(TAG, VERDE + "ServicioTransferenciaArchivos inicializado" + RESET);
     }
 
@@ -209,8 +279,9 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
     public void verificarYDescargarArchivosFaltantes() {
         LoggerCentral.info(TAG, AZUL + "🔍 Verificando archivos faltantes en Bucket/..." + RESET);
 
-        // Obtener todos los archivos de la BD
+        // Obtener todos los archivos de la BD, agrupados por contenido
         List<Archivo> todosLosArchivos = repoArchivo.obtenerTodosParaSync();
+        Map<String, List<String>> rutasPorHash = new HashMap<>();
         List<Archivo> archivosFaltantes = new ArrayList<>();
 
         for (Archivo archivo : todosLosArchivos) {
@@ -218,6 +289,8 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
             if (!archivoFisico.exists()) {
                 archivosFaltantes.add(archivo);
                 LoggerCentral.warn(TAG, AMARILLO + "⚠ Archivo faltante: " + archivo.getFileId() + RESET);
+            } else if (archivo.getHashSHA256() != null) {
+                rutasPorHash.computeIfAbsent(archivo.getHashSHA256(), h -> new ArrayList<>()).add(archivo.getRutaRelativa());
             }
         }
 
@@ -226,171 +299,263 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
             return;
         }
 
-        LoggerCentral.info(TAG, CYAN + "📥 Descargando " + archivosFaltantes.size() + " archivos faltantes..." + RESET);
-
-        // Descargar archivos en paralelo
+        // Contenido ya presente en este nodo: se enlaza sin descargar
+        List<Archivo> porDescargar = new ArrayList<>();
+        Set<String> hashesPedidos = new HashSet<>();
         for (Archivo archivo : archivosFaltantes) {
-            if (!descargasEnProgreso.contains(archivo.getFileId())) {
-                descargasEnProgreso.add(archivo.getFileId());
-                executorDescargas.submit(() -> descargarArchivo(archivo));
+            String hash = archivo.getHashSHA256();
+            if (enlazarContenidoLocal(archivo, rutasPorHash.get(hash))) {
+                continue;
+            }
+            // Un mismo contenido se descarga una sola vez para todos sus archivos
+            if (!AlmacenContenido.esHashValido(hash) || hashesPedidos.add(hash)) {
+                porDescargar.add(archivo);
+            }
+        }
+
+        if (porDescargar.isEmpty()) {
+            LoggerCentral.info(TAG, VERDE + "✓ Archivos faltantes enlazados desde el almacén local" + RESET);
+            return;
+        }
+
+        LoggerCentral.info(TAG, CYAN + "📥 Descargando " + porDescargar.size() + " archivos faltantes..." + RESET);
+
+        // Encolar; se descargan hasta MAX_DESCARGAS_ACTIVAS a la vez
+        for (Archivo archivo : porDescargar) {
+            if (descargasEnProgreso.add(archivo.getFileId())) {
+                colaDescargas.add(archivo);
             }
         }
+        planificador.execute(this::iniciarDescargasPendientes);
     }
 
     /**
-     * Descarga un archivo completo de un peer.
+     * Enlaza el archivo al contenido de su hash si este nodo ya lo tiene.
      */
-    private void descargarArchivo(Archivo archivo) {
+    private boolean enlazarContenidoLocal(Archivo archivo, List<String> rutasConocidas) {
+        String hash = archivo.getHashSHA256();
+        if (!almacen.disponible(hash, rutasConocidas)) {
+            return false;
+        }
         try {
-            LoggerCentral.info(TAG, CYAN + "📥 Iniciando descarga: " + archivo.getNombreArchivo() + RESET);
-
-            // Solicitar metadatos para confirmar disponibilidad
-            DTORequest req = new DTORequest("p2p_file_metadata_request", gson.toJsonTree(archivo.getFileId()));
-            String jsonReq = gson.toJson(req);
-            gestor.broadcast(jsonReq);
+            if (almacen.enlazar(hash, archivo.getRutaRelativa())) {
+                LoggerCentral.info(TAG, VERDE + "♻️ Contenido local reutilizado para: " + archivo.getFileId() + RESET);
+                return true;
+            }
+        } catch (IOException e) {
+            LoggerCentral.warn(TAG, "No se pudo enlazar " + archivo.getFileId() + ": " + e.getMessage());
+        }
+        return false;
+    }
 
-            // La descarga continuará en el manejador de respuesta
+    // ==================== DESCARGA EN ENJAMBRE ====================
 
-        } catch (Exception e) {
-            LoggerCentral.error(TAG, "Error al descargar archivo: " + e.getMessage());
-            descargasEnProgreso.remove(archivo.getFileId());
+    /**
+     * Activa descargas de la cola mientras haya hueco. Solo desde el planificador.
+     */
+    private void iniciarDescargasPendientes() {
+        while (descargasActivas.size() < MAX_DESCARGAS_ACTIVAS) {
+            Archivo archivo = colaDescargas.poll();
+            if (archivo == null) {
+                return;
+            }
+            try {
+                LoggerCentral.info(TAG, CYAN + "📥 Iniciando descarga: " + archivo.getNombreArchivo() + RESET);
+                DescargaEnjambre descarga = new DescargaEnjambre(archivo.getFileId(), archivo.getNombreArchivo(),
+                        archivo.getTamanio(), archivo.getHashSHA256(), CHUNK_SIZE, VENTANA_POR_PEER,
+                        Paths.get(DESCARGAS_PATH + UUID.randomUUID() + ".part"));
+                if (descarga.getTotalChunks() == 0) {
+                    finalizarDescarga(descarga);
+                    continue;
+                }
+                descargasActivas.put(archivo.getFileId(), descarga);
+                descubrirFuentes(descarga);
+            } catch (Exception e) {
+                LoggerCentral.error(TAG, "Error iniciando descarga de " + archivo.getFileId() + ": " + e.getMessage());
+                descargasEnProgreso.remove(archivo.getFileId());
+            }
         }
     }
 
     /**
-     * Inicia la descarga secuencial de chunks.
+     * Pregunta a todos los peers qué chunks tienen del archivo. Es la única
+     * petición por difusión: los chunks se piden a cada fuente por separado.
      */
-    private void iniciarDescargaChunks(String fileId, JsonObject metadata) {
-        try {
-            int totalChunks = metadata.get("totalChunks").getAsInt();
-            String nombreArchivo = metadata.get("nombreArchivo").getAsString();
-            String hashEsperado = metadata.get("hashSHA256").getAsString();
+    private void descubrirFuentes(DescargaEnjambre descarga) {
+        descarga.marcarDescubrimiento();
+        gestor.broadcastPeticion(new DTORequest("p2p_file_metadata_request", gson.toJsonTree(descarga.getFileId())));
+    }
 
-            // Crear sesión de descarga
-            DescargaEnProgreso descarga = new DescargaEnProgreso(fileId, nombreArchivo, totalChunks, hashEsperado, metadata);
-            cacheDescargas.put(fileId, descarga);
+    /**
+     * Registra al peer que respondió al descubrimiento como fuente de la descarga.
+     */
+    private void agregarFuente(JsonObject metadata, String origen) {
+        String fileId = metadata.get("fileId").getAsString();
+        DescargaEnjambre descarga = descargasActivas.get(fileId);
+        if (descarga == null) {
+            return;
+        }
 
-            LoggerCentral.info(TAG, CYAN + "⬇ Descargando " + nombreArchivo + " (" + totalChunks + " chunks)" + RESET);
+        // Un peer con otro contenido para el mismo fileId no sirve como fuente
+        String hashPeer = metadata.has("hashSHA256") && !metadata.get("hashSHA256").isJsonNull()
+                ? metadata.get("hashSHA256").getAsString() : null;
+        if (descarga.getHashEsperado() != null && hashPeer != null && !descarga.getHashEsperado().equals(hashPeer)) {
+            LoggerCentral.warn(TAG, AMARILLO + "Peer " + origen + " tiene otro contenido para " + fileId + RESET);
+            return;
+        }
 
-            // Solicitar chunks secuencialmente
-            for (int i = 1; i <= totalChunks; i++) {
-                solicitarChunk(fileId, i);
+        // Peers sin rangos en la respuesta tienen el archivo completo
+        List<int[]> rangos = new ArrayList<>();
+        if (metadata.has("rangos")) {
+            for (JsonElement rango : metadata.getAsJsonArray("rangos")) {
+                JsonArray par = rango.getAsJsonArray();
+                rangos.add(new int[]{par.get(0).getAsInt(), par.get(1).getAsInt()});
             }
-
-        } catch (Exception e) {
-            LoggerCentral.error(TAG, "Error iniciando descarga de chunks: " + e.getMessage());
-            cacheDescargas.remove(fileId);
-            descargasEnProgreso.remove(fileId);
+        } else {
+            rangos.add(new int[]{1, descarga.getTotalChunks()});
         }
+        descarga.agregarFuente(origen, rangos);
+
+        LoggerCentral.info(TAG, CYAN + "✓ Fuente " + origen + " para " + descarga.getNombreArchivo() +
+                " (" + descarga.cantidadFuentes() + " fuentes)" + RESET);
+        despachar(descarga);
     }
 
     /**
-     * Solicita un chunk específico de un archivo.
+     * Envía a cada fuente los chunks que caben en su ventana.
      */
-    private void solicitarChunk(String fileId, int chunkNumber) {
-        try {
+    private void despachar(DescargaEnjambre descarga) {
+        for (DescargaEnjambre.Peticion peticion : descarga.asignar()) {
             JsonObject req = new JsonObject();
-            req.addProperty("fileId", fileId);
-            req.addProperty("chunkNumber", chunkNumber);
-
-            DTORequest dtoReq = new DTORequest("p2p_file_chunk_request", req);
-            String jsonReq = gson.toJson(dtoReq);
-            gestor.broadcast(jsonReq);
-
-            LoggerCentral.debug(TAG, "Solicitando chunk " + chunkNumber + " de " + fileId);
-
-        } catch (Exception e) {
-            LoggerCentral.error(TAG, "Error solicitando chunk: " + e.getMessage());
+            req.addProperty("fileId", descarga.getFileId());
+            req.addProperty("chunkNumber", peticion.getChunkNumber());
+            gestor.enviarPeticion(new DTOPeerDetails(peticion.getPeerId(), null, 0, null, null),
+                    new DTORequest("p2p_file_chunk_request", req));
+            LoggerCentral.debug(TAG, "Solicitando chunk " + peticion.getChunkNumber() + " de " +
+                    descarga.getFileId() + " a " + peticion.getPeerId());
         }
     }
 
     /**
-     * Procesa un chunk recibido y ensambla el archivo si está completo.
+     * Escribe un chunk recibido en disco, pide los siguientes y cierra la descarga al completarse.
      */
-    private void procesarChunkRecibido(JsonObject chunkData) {
+    private void procesarChunkRecibido(String fileId, int chunkNumber, byte[] chunkBytes, String origen) {
         try {
-            String fileId = chunkData.get("fileId").getAsString();
-            int chunkNumber = chunkData.get("chunkNumber").getAsInt();
-            String chunkBase64 = chunkData.get("chunkDataBase64").getAsString();
-
-            DescargaEnProgreso descarga = cacheDescargas.get(fileId);
+            DescargaEnjambre descarga = descargasActivas.get(fileId);
             if (descarga == null) {
-                LoggerCentral.warn(TAG, "Chunk recibido para descarga no existente: " + fileId);
+                LoggerCentral.debug(TAG, "Chunk recibido para descarga no existente: " + fileId);
                 return;
             }
 
-            // Decodificar y guardar chunk
-            byte[] chunkBytes = Base64.getDecoder().decode(chunkBase64);
-            descarga.chunks.put(chunkNumber, chunkBytes);
+            if (!descarga.registrarChunk(origen, chunkNumber, chunkBytes)) {
+                // Duplicado (p. ej. de un peer que se había dado por estancado)
+                despachar(descarga);
+                return;
+            }
 
-            LoggerCentral.debug(TAG, VERDE + "✓ Chunk " + chunkNumber + "/" + descarga.totalChunks + " recibido" + RESET);
+            int recibidos = descarga.chunksRecibidos();
+            double progreso = (double) recibidos / descarga.getTotalChunks() * 100;
+            mostrarBarraProgreso(descarga.getNombreArchivo(), recibidos, descarga.getTotalChunks(), progreso);
+            notificarProgreso(descarga, recibidos, progreso);
 
-            // Verificar si la descarga está completa
-            if (descarga.chunks.size() == descarga.totalChunks) {
-                LoggerCentral.info(TAG, CYAN + "✓ Todos los chunks recibidos. Ensamblando archivo..." + RESET);
-                ensamblarYGuardarArchivo(descarga);
+            if (descarga.completa()) {
+                if (descargasActivas.remove(fileId, descarga)) {
+                    LoggerCentral.info(TAG, CYAN + "✓ Todos los chunks recibidos. Verificando archivo..." + RESET);
+                    planificador.execute(() -> finalizarDescarga(descarga));
+                }
+            } else {
+                despachar(descarga);
             }
 
-            // ==================== NUEVO: Mostrar barra de progreso ====================
-            double progreso = (double) descarga.chunks.size() / descarga.totalChunks * 100;
-            mostrarBarraProgreso(descarga.nombreArchivo, descarga.chunks.size(), descarga.totalChunks, progreso);
-            notificarProgreso(descarga, descarga.chunks.size(), progreso);
-
         } catch (Exception e) {
             LoggerCentral.error(TAG, "Error procesando chunk: " + e.getMessage());
         }
     }
 
     /**
-     * Ensambla todos los chunks y guarda el archivo en Bucket/.
+     * Revisión periódica: reasigna chunks estancados, vuelve a buscar fuentes cuando
+     * no queda ninguna y abandona las descargas sin fuentes tras varios intentos.
      */
-    private void ensamblarYGuardarArchivo(DescargaEnProgreso descarga) {
+    private void revisarDescargas() {
         try {
-            // Calcular tamaño total
-            int totalSize = descarga.chunks.values().stream().mapToInt(chunk -> chunk.length).sum();
-            byte[] fileData = new byte[totalSize];
-
-            // Ensamblar chunks en orden
-            int offset = 0;
-            for (int i = 1; i <= descarga.totalChunks; i++) {
-                byte[] chunk = descarga.chunks.get(i);
-                if (chunk != null) {
-                    System.arraycopy(chunk, 0, fileData, offset, chunk.length);
-                    offset += chunk.length;
+            long ahora = System.currentTimeMillis();
+            for (DescargaEnjambre descarga : descargasActivas.values()) {
+                int liberados = descarga.revisarEstancados(PLAZO_CHUNK_MS);
+                if (liberados > 0) {
+                    LoggerCentral.warn(TAG, AMARILLO + "⚠ " + liberados + " chunks de " + descarga.getNombreArchivo() +
+                            " sin respuesta, reasignando" + RESET);
                 }
+
+                if (descarga.cantidadFuentes() == 0 && ahora - descarga.getUltimoDescubrimiento() >= ESPERA_FUENTES_MS) {
+                    if (descarga.getDescubrimientos() >= MAX_DESCUBRIMIENTOS) {
+                        LoggerCentral.warn(TAG, AMARILLO + "⚠ Ningún peer tiene " + descarga.getNombreArchivo() +
+                                ", se reintentará en la próxima sincronización" + RESET);
+                        abandonarDescarga(descarga);
+                        continue;
+                    }
+                    descubrirFuentes(descarga);
+                }
+                despachar(descarga);
             }
+            iniciarDescargasPendientes();
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, "Error revisando descargas: " + e.getMessage());
+        }
+    }
 
-            // Verificar hash
-            String hashCalculado = calcularHashSHA256(fileData);
-            if (!hashCalculado.equals(descarga.hashEsperado)) {
-                LoggerCentral.error(TAG, ROJO + "❌ Hash no coincide para: " + descarga.nombreArchivo + RESET);
-                LoggerCentral.error(TAG, "Esperado: " + descarga.hashEsperado);
+    private void abandonarDescarga(DescargaEnjambre descarga) {
+        descargasActivas.remove(descarga.getFileId(), descarga);
+        descarga.descartar();
+        descargasEnProgreso.remove(descarga.getFileId());
+    }
+
+    /**
+     * Verifica el hash del archivo descargado y lo guarda en Bucket/. Solo desde el planificador.
+     */
+    private void finalizarDescarga(DescargaEnjambre descarga) {
+        try {
+            String hashCalculado = descarga.cerrarYCalcularHash();
+            if (descarga.getHashEsperado() != null && !hashCalculado.equalsIgnoreCase(descarga.getHashEsperado())) {
+                LoggerCentral.error(TAG, ROJO + "❌ Hash no coincide para: " + descarga.getNombreArchivo() + RESET);
+                LoggerCentral.error(TAG, "Esperado: " + descarga.getHashEsperado());
                 LoggerCentral.error(TAG, "Calculado: " + hashCalculado);
+                descarga.descartar();
                 return;
             }
 
-            // Guardar archivo en Bucket/
-            Archivo archivo = repoArchivo.buscarPorFileId(descarga.fileId);
+            Archivo archivo = repoArchivo.buscarPorFileId(descarga.getFileId());
             if (archivo == null) {
-                LoggerCentral.error(TAG, "Metadato no encontrado para: " + descarga.fileId);
+                LoggerCentral.error(TAG, "Metadato no encontrado para: " + descarga.getFileId());
+                descarga.descartar();
                 return;
             }
 
             Path filePath = Paths.get(BUCKET_PATH + archivo.getRutaRelativa());
-            Files.createDirectories(filePath.getParent());
-            Files.write(filePath, fileData);
+            if (AlmacenContenido.esHashValido(hashCalculado)) {
+                // El contenido pasa al almacén y se enlaza en todos los archivos que lo usan
+                almacen.incorporar(descarga.getRutaParcial(), hashCalculado);
+                for (Archivo mismoContenido : repoArchivo.buscarPorHash(hashCalculado)) {
+                    almacen.enlazar(hashCalculado, mismoContenido.getRutaRelativa());
+                }
+                almacen.enlazar(hashCalculado, archivo.getRutaRelativa());
+            } else {
+                Files.createDirectories(filePath.getParent());
+                Files.move(descarga.getRutaParcial(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            }
 
-            LoggerCentral.info(TAG, VERDE + "✅ Archivo descargado y guardado: " + descarga.nombreArchivo + RESET);
+            double segundos = Math.max(1e-3, (System.currentTimeMillis() - descarga.getInicio()) / 1000.0);
+            LoggerCentral.info(TAG, VERDE + "✅ Archivo descargado y guardado: " + descarga.getNombreArchivo() + RESET);
             LoggerCentral.info(TAG, "   Ruta: " + filePath.toAbsolutePath());
-            LoggerCentral.info(TAG, "   Tamaño: " + fileData.length + " bytes");
-
-            // Limpiar cache
-            cacheDescargas.remove(descarga.fileId);
-            descargasEnProgreso.remove(descarga.fileId);
+            LoggerCentral.info(TAG, "   Tamaño: " + descarga.getTamanio() + " bytes en " + String.format("%.1f", segundos) +
+                    " s (" + formatearVelocidad(descarga.getTamanio() / segundos) + ")");
+            LoggerCentral.info(TAG, "   Chunks por fuente: " + descarga.chunksAportados());
 
         } catch (Exception e) {
-            LoggerCentral.error(TAG, "Error ensamblando archivo: " + e.getMessage());
-            e.printStackTrace();
+            LoggerCentral.error(TAG, "Error guardando archivo descargado: " + e.getMessage());
+            descarga.descartar();
+        } finally {
+            descargasEnProgreso.remove(descarga.getFileId());
+            iniciarDescargasPendientes();
         }
     }
 
@@ -434,7 +599,7 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
     /**
      * ✅ NUEVO: Notifica el progreso de descarga a los clientes conectados.
      */
-    private void notificarProgreso(DescargaEnProgreso descarga, int chunksRecibidos, double progreso) {
+    private void notificarProgreso(DescargaEnjambre descarga, int chunksRecibidos, double progreso) {
         if (notificador == null) {
             return;
         }
@@ -442,15 +607,15 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
         try {
             // Crear objeto de progreso para enviar a clientes
             JsonObject progresoData = new JsonObject();
-            progresoData.addProperty("fileId", descarga.fileId);
-            progresoData.addProperty("nombreArchivo", descarga.nombreArchivo);
+            progresoData.addProperty("fileId", descarga.getFileId());
+            progresoData.addProperty("nombreArchivo", descarga.getNombreArchivo());
             progresoData.addProperty("chunksRecibidos", chunksRecibidos);
-            progresoData.addProperty("totalChunks", descarga.totalChunks);
+            progresoData.addProperty("totalChunks", descarga.getTotalChunks());
             progresoData.addProperty("progreso", Math.round(progreso * 10) / 10.0); // 1 decimal
             progresoData.addProperty("estado", "descargando");
 
             // Calcular velocidad y tiempo estimado
-            long tiempoTranscurrido = System.currentTimeMillis() - descarga.inicioDescarga;
+            long tiempoTranscurrido = System.currentTimeMillis() - descarga.getInicio();
             if (tiempoTranscurrido > 0) {
                 long bytesDescargados = (long) chunksRecibidos * CHUNK_SIZE;
                 double velocidadBps = (bytesDescargados * 1000.0) / tiempoTranscurrido;
@@ -465,8 +630,7 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
 
             // Notificar solo cada 10% de progreso para evitar spam
             int progresoInt = (int) progreso;
-            if (progresoInt % 10 == 0 && progresoInt != descarga.ultimoProgresoNotificado) {
-                descarga.ultimoProgresoNotificado = progresoInt;
+            if (progresoInt % 10 == 0 && descarga.marcarProgresoNotificado(progresoInt)) {
                 notificador.notificarCambio(
                         ServicioNotificacionCambios.TipoEvento.PROGRESO_DESCARGA,
                         progresoData
@@ -518,6 +682,15 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
                 Files.createDirectories(bucketPath);
             }
 
+            // Las descargas no sobreviven a un reinicio: se borran los parciales anteriores
+            Path descargasPath = Paths.get(DESCARGAS_PATH);
+            Files.createDirectories(descargasPath);
+            try (DirectoryStream<Path> parciales = Files.newDirectoryStream(descargasPath, "*.part")) {
+                for (Path parcial : parciales) {
+                    Files.deleteIfExists(parcial);
+                }
+            }
+
             String[] categorias = {"user_photos", "images", "audio", "documents", "otros"};
             for (String cat : categorias) {
                 Path catPath = Paths.get(BUCKET_PATH + cat);
@@ -534,22 +707,6 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
         return (int) Math.ceil((double) tamanio / CHUNK_SIZE);
     }
 
-    private String calcularHashSHA256(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            StringBuilder hexString = new StringBuilder(2 * hash.length);
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("Error calculando hash", e);
-        }
-    }
-
     @Override
     public void iniciar() {
         LoggerCentral.info(TAG, "Servicio de transferencia de archivos P2P iniciado");
@@ -557,39 +714,18 @@ public class ServicioTransferenciaArchivos implements IServicioP2P {
 
     @Override
     public void detener() {
-        executorDescargas.shutdown();
+        planificador.shutdown();
         try {
-            if (!executorDescargas.awaitTermination(10, TimeUnit.SECONDS)) {
-                executorDescargas.shutdownNow();
+            if (!planificador.awaitTermination(10, TimeUnit.SECONDS)) {
+                planificador.shutdownNow();
             }
         } catch (InterruptedException e) {
-            executorDescargas.shutdownNow();
+            planificador.shutdownNow();
         }
+        descargasActivas.values().forEach(DescargaEnjambre::descartar);
+        descargasActivas.clear();
+        colaDescargas.clear();
+        descargasEnProgreso.clear();
         LoggerCentral.info(TAG, "Servicio de transferencia de archivos P2P detenido");
     }
-
-    // ==================== CLASE INTERNA ====================
-
-    private static class DescargaEnProgreso {
-        String fileId;
-        String nombreArchivo;
-        int totalChunks;
-        String hashEsperado;
-        JsonObject metadata;
-        Map<Integer, byte[]> chunks;
-        long inicioDescarga;
-        int ultimoProgresoNotificado; // ✅ NUEVO: Para evitar spam de notificaciones
-
-        DescargaEnProgreso(String fileId, String nombreArchivo, int totalChunks, String hashEsperado, JsonObject metadata) {
-            this.fileId = fileId;
-            this.nombreArchivo = nombreArchivo;
-            this.totalChunks = totalChunks;
-            this.hashEsperado = hashEsperado;
-            this.metadata = metadata;
-            this.chunks = new ConcurrentHashMap<>();
-            this.inicioDescarga = System.currentTimeMillis();
-            this.ultimoProgresoNotificado = -1; // ✅ NUEVO: Inicializar en -1
-        }
-    }
 }
-
@@ -0,0 +1,141 @@
+package gestorP2P.servicios.sincronizacion;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import conexion.p2p.interfaces.IGestorConexiones;
+import dto.comunicacion.DTORequest;
+import dto.p2p.DTOPeerDetails;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Control de flujo de las peticiones por lotes de las Fases 4 y 5.
+ *
+ * Reparte los IDs a pedir en lotes de tamaño fijo y los envía al peer manteniendo
+ * como máximo {@code maxEnVuelo} lotes sin respuesta por (peer, tipo). Cada respuesta
+ * libera un hueco y dispara el siguiente lote, de modo que ni el peer ni la red
+ * reciben miles de peticiones de golpe.
+ *
+ * Formato de la petición: {tipo, ids: [...]}.
+ */
+public class ControlLotes {
+
+    private final IGestorConexiones gestor;
+    private final String accion;
+    private final int tamanoLote;
+    private final int maxEnVuelo;
+
+    // Envíos en curso: "peer|tipo" -> estado
+    private final Map<String, Envio> envios = new ConcurrentHashMap<>();
+
+    public ControlLotes(IGestorConexiones gestor, String accion, int tamanoLote, int maxEnVuelo) {
+        this.gestor = gestor;
+        this.accion = accion;
+        this.tamanoLote = Math.max(1, tamanoLote);
+        this.maxEnVuelo = Math.max(1, maxEnVuelo);
+    }
+
+    /**
+     * Reparte los IDs en lotes y envía los primeros. Reemplaza cualquier envío
+     * previo del mismo tipo con ese peer.
+     *
+     * @return Cantidad de lotes que se pedirán
+     */
+    public int iniciar(String tipo, List<String> ids, String peerId) {
+        Envio envio = new Envio(tipo, peerId);
+        for (int desde = 0; desde < ids.size(); desde += tamanoLote) {
+            envio.porEnviar.add(new ArrayList<>(ids.subList(desde, Math.min(ids.size(), desde + tamanoLote))));
+        }
+        envio.total = envio.porEnviar.size();
+        if (envio.total == 0) {
+            return 0;
+        }
+        envios.put(clave(peerId, tipo), envio);
+        enviarDisponibles(envio);
+        return envio.total;
+    }
+
+    /**
+     * Registra la respuesta a un lote y envía el siguiente si queda alguno.
+     *
+     * @return true si era la última respuesta pendiente del envío
+     */
+    public boolean confirmar(String tipo, String peerId) {
+        Envio envio = envios.get(clave(peerId, tipo));
+        if (envio == null) {
+            return false;
+        }
+        boolean terminado;
+        synchronized (envio) {
+            envio.enVuelo = Math.max(0, envio.enVuelo - 1);
+            envio.respondidos++;
+            terminado = envio.respondidos >= envio.total;
+        }
+        if (terminado) {
+            envios.remove(clave(peerId, tipo), envio);
+            return true;
+        }
+        enviarDisponibles(envio);
+        return false;
+    }
+
+    /** Indica si quedan lotes por enviar o por responder para el tipo y peer. */
+    public boolean hayEnCurso(String tipo, String peerId) {
+        return envios.containsKey(clave(peerId, tipo));
+    }
+
+    /** Descarta todos los envíos en curso (las respuestas tardías se ignoran). */
+    public void cancelarTodo() {
+        envios.clear();
+    }
+
+    public int getTamanoLote() {
+        return tamanoLote;
+    }
+
+    private void enviarDisponibles(Envio envio) {
+        List<List<String>> aEnviar = new ArrayList<>();
+        synchronized (envio) {
+            while (envio.enVuelo < maxEnVuelo && !envio.porEnviar.isEmpty()) {
+                aEnviar.add(envio.porEnviar.poll());
+                envio.enVuelo++;
+            }
+        }
+
+        DTOPeerDetails destino = new DTOPeerDetails(envio.peerId, null, 0, null, null);
+        for (List<String> lote : aEnviar) {
+            JsonArray ids = new JsonArray();
+            lote.forEach(ids::add);
+            JsonObject payload = new JsonObject();
+            payload.addProperty("tipo", envio.tipo);
+            payload.add("ids", ids);
+            gestor.enviarPeticion(destino, new DTORequest(accion, payload));
+        }
+    }
+
+    private static String clave(String peerId, String tipo) {
+        return peerId + "|" + tipo;
+    }
+
+    /**
+     * Estado del envío por lotes de un tipo a un peer.
+     */
+    private static class Envio {
+        final String tipo;
+        final String peerId;
+        final Deque<List<String>> porEnviar = new ArrayDeque<>();
+        int total;
+        int enVuelo;
+        int respondidos;
+
+        Envio(String tipo, String peerId) {
+            this.tipo = tipo;
+            this.peerId = peerId;
+        }
+    }
+}
@@ -2,21 +2,26 @@ package gestorP2P.servicios.sincronizacion;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import conexion.p2p.interfaces.IGestorConexiones;
 import dto.comunicacion.DTORequest;
+import dto.p2p.DTOPeerDetails;
 import gestorP2P.servicios.ServicioNotificacionCambios;
 import gestorP2P.servicios.ServicioTransferenciaArchivos;
 import logger.LoggerCentral;
 import observador.IObservador;
-import repositorio.p2p.PeerRepositorio;
 
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Coordinador de Sincronización
@@ -24,10 +29,14 @@ import java.util.concurrent.TimeUnit;
  * Orquesta las 6 fases de sincronización de manera secuencial:
  * 1. Construcción de Árboles Merkle
  * 2. Comparación de Hashes
- * 3. Solicitud de IDs
+ * 3. Solicitud de IDs (descenso por subárboles Merkle)
  * 4. Detección de Faltantes
  * 5. Comparación de Contenido
  * 6. Transferencia de Archivos
+ *
+ * Una ronda pregunta los hashes raíz a todos los peers conectados y termina cuando
+ * el flujo con cada uno de ellos acaba (o vence el timeout). Cuándo se lanzan las
+ * rondas lo decide el {@link PlanificadorSincronizacion}.
  */
 public class CoordinadorSincronizacion {
 
@@ -39,8 +48,15 @@ public class CoordinadorSincronizacion {
     private static final String CYAN = "\u001B[36m";
     private static final String RESET = "\u001B[0m";
 
+    public static final String ACCION_AVISO = "sync_aviso_cambios";
+
+    // Evento para ServicioNotificacionCliente; los datos son los tipos que cambiaron
+    public static final String EVENTO_TIPOS_CAMBIADOS = "CAMBIOS_SINCRONIZADOS";
+    // Evento para ServicioNotificacionCliente; los datos son un EntidadesReplicadas
+    public static final String EVENTO_ENTIDADES_REPLICADAS = "ENTIDADES_REPLICADAS";
+
+    // Rondas de verificación seguidas tras traer cambios
     private static final int MAX_REINTENTOS = 3;
-    private static final long INTERVALO_MIN_MS = 2000;
     
     // Timeouts para operaciones P2P
     private static final long TIMEOUT_SYNC_MS = 30000;  // 30 segundos timeout global de sincronización
@@ -57,21 +73,28 @@ public class CoordinadorSincronizacion {
     // Dependencias
     private final IGestorConexiones gestor;
     private final Gson gson;
-    private final PeerRepositorio repoPeer;
+    private final PlanificadorSincronizacion planificador;
 
     // ✅ NUEVO: Referencia al servicio padre para notificar a TODOS los observadores
     private observador.ISujeto servicioPadre;
 
     // Control de estado
-    private volatile boolean sincronizacionEnProgreso = false;
+    private final AtomicBoolean rondaEnCurso = new AtomicBoolean(false);
     private volatile int contadorReintentos = 0;
-    private volatile long ultimaSincronizacion = 0;
     private volatile boolean huboCambiosEnEsteCiclo = false;
+    // Tipos con entidades guardadas en la ronda actual
+    private final Set<String> tiposCambiadosEnCiclo = ConcurrentHashMap.newKeySet();
+
+    // Peers cuyo flujo de la ronda actual aún no terminó
+    private final Set<String> peersEnRonda = ConcurrentHashMap.newKeySet();
 
     // Servicios externos
     private ServicioNotificacionCambios notificador;
     private IObservador servicioNotificacionCliente;
     
+    // Tipos con diferencias que aún falta descender, por peer
+    private final Map<String, Deque<String>> tiposPendientesPorPeer = new ConcurrentHashMap<>();
+
     // Timeout scheduler
     private final ScheduledExecutorService timeoutScheduler;
     private ScheduledFuture<?> timeoutActual;
@@ -79,7 +102,6 @@ public class CoordinadorSincronizacion {
     public CoordinadorSincronizacion(IGestorConexiones gestor, Gson gson) {
         this.gestor = gestor;
         this.gson = gson;
-        this.repoPeer = new PeerRepositorio();
         this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "SyncTimeout-Scheduler");
             t.setDaemon(true);
@@ -90,10 +112,12 @@ public class CoordinadorSincronizacion {
         this.fase1 = new Fase1ConstruccionArboles();
         this.fase2 = new Fase2ComparacionHashes(fase1);
         this.fase3 = new Fase3SolicitudIDs(fase1, gestor, gson);
-        this.fase4 = new Fase4DeteccionFaltantes(fase3, gestor, gson);
+        this.fase4 = new Fase4DeteccionFaltantes(gestor);
         this.fase5 = new Fase5ComparacionContenido(gestor, gson);
         this.fase6 = new Fase6TransferenciaArchivos();
 
+        this.planificador = new PlanificadorSincronizacion(this::iniciarRonda, this::avisarCambios);
+
         LoggerCentral.info(TAG, VERDE + "✓ Coordinador de sincronización inicializado" + RESET);
     }
 
@@ -126,107 +150,114 @@ public class CoordinadorSincronizacion {
     }
 
     /**
-     * Reconstruye todos los árboles Merkle.
+     * Garantiza que los árboles Merkle estén cargados. Los árboles se mantienen
+     * incrementalmente con cada escritura, por lo que esta llamada es barata.
      */
     public void reconstruirArboles() {
-        fase1.reconstruirTodosLosArboles();
+        fase1.asegurarArboles();
+    }
+
+    /**
+     * Registra un cambio local de un tipo de entidad. Los cambios se agrupan y se
+     * avisan a los peers para que los pidan en su propia ronda.
+     */
+    public void registrarCambioLocal(String tipo) {
+        planificador.registrarCambio(tipo);
     }
 
     /**
-     * Inicia el proceso de sincronización general.
+     * Pide una ronda de sincronización. Si hay una en curso, queda encolada.
      */
     public void iniciarSincronizacion() {
-        // Validaciones previas
-        if (sincronizacionEnProgreso) {
-            LoggerCentral.warn(TAG, AMARILLO + "⚠ Sincronización ya en progreso" + RESET);
-            return;
-        }
+        planificador.solicitarRonda();
+    }
 
-        long tiempoActual = System.currentTimeMillis();
-        long tiempoTranscurrido = tiempoActual - ultimaSincronizacion;
-        if (tiempoTranscurrido < INTERVALO_MIN_MS) {
-            LoggerCentral.warn(TAG, AMARILLO + "⚠ Esperando intervalo mínimo: " +
-                    (INTERVALO_MIN_MS - tiempoTranscurrido) + "ms" + RESET);
-            return;
+    /**
+     * Lanza una ronda: compara los hashes raíz con todos los peers conectados.
+     * Se ejecuta en el hilo del planificador.
+     *
+     * @return false si no se inició (ronda en curso o sin peers)
+     */
+    private boolean iniciarRonda() {
+        if (!rondaEnCurso.compareAndSet(false, true)) {
+            LoggerCentral.warn(TAG, AMARILLO + "⚠ Sincronización ya en progreso" + RESET);
+            return false;
         }
 
-        if (contadorReintentos >= MAX_REINTENTOS) {
-            LoggerCentral.error(TAG, ROJO + "⚠ Límite de reintentos alcanzado (" + MAX_REINTENTOS + ")" + RESET);
-            contadorReintentos = 0;
-            sincronizacionEnProgreso = false;
-            return;
+        peersEnRonda.clear();
+        for (DTOPeerDetails peer : gestor.obtenerDetallesPeers()) {
+            if (peer.getIp() != null) {
+                peersEnRonda.add(peer.getId());
+            }
         }
-
-        List<PeerRepositorio.PeerInfo> peersOnline = repoPeer.listarPeersOnline();
-        if (peersOnline.isEmpty()) {
-            LoggerCentral.warn(TAG, AMARILLO + "⚠ No hay peers online" + RESET);
-            sincronizacionEnProgreso = false;
-            return;
+        if (peersEnRonda.isEmpty()) {
+            LoggerCentral.debug(TAG, "No hay peers conectados");
+            rondaEnCurso.set(false);
+            return false;
         }
 
-        // Iniciar sincronización
-        sincronizacionEnProgreso = true;
         contadorReintentos++;
-        ultimaSincronizacion = tiempoActual;
-
         LoggerCentral.info(TAG, AZUL + "=== INICIANDO SINCRONIZACIÓN ===" + RESET);
-        LoggerCentral.info(TAG, String.format("Peers online: %d | Intento: %d/%d",
-                peersOnline.size(), contadorReintentos, MAX_REINTENTOS));
+        LoggerCentral.info(TAG, String.format("Peers conectados: %d | Ronda: %d/%d",
+                peersEnRonda.size(), contadorReintentos, MAX_REINTENTOS));
 
-        new Thread(this::ejecutarSincronizacion).start();
-    }
+        if (servicioPadre != null) {
+            servicioPadre.notificarObservadores("SINCRONIZACION_P2P_INICIADA", null);
+        }
 
-    /**
-     * Ejecuta el proceso de sincronización.
-     */
-    private void ejecutarSincronizacion() {
         try {
-            // Cancelar timeout anterior si existe
             cancelarTimeout();
-            
-            // Iniciar timeout para esta sincronización
             iniciarTimeout();
 
             // Fase 1: Reconstruir árboles
-            LoggerCentral.info(TAG, CYAN + "▶ FASE 1: Construyendo árboles Merkle" + RESET);
-            fase1.reconstruirTodosLosArboles();
-
-            // Enviar solicitud de comparación de hashes
-            DTORequest req = new DTORequest("sync_check_all", null);
-            String jsonReq = gson.toJson(req);
+            LoggerCentral.info(TAG, CYAN + "▶ FASE 1: Verificando árboles Merkle" + RESET);
+            fase1.asegurarArboles();
 
             LoggerCentral.info(TAG, VERDE + "📤 Enviando sync_check_all" + RESET);
-            gestor.broadcast(jsonReq);
-
-            // Liberar lock rápidamente
-            liberarLockConRetraso(100);
+            gestor.broadcastPeticion(new DTORequest("sync_check_all", null));
+            return true;
 
         } catch (Exception e) {
             LoggerCentral.error(TAG, ROJO + "Error en sincronización: " + e.getMessage() + RESET);
             cancelarTimeout();
-            sincronizacionEnProgreso = false;
+            peersEnRonda.clear();
+            rondaEnCurso.set(false);
+            return false;
         }
     }
-    
+
+    /**
+     * Avisa a los peers de los tipos con cambios locales (sync_aviso_cambios).
+     */
+    private void avisarCambios(Set<String> tipos) {
+        JsonArray lista = new JsonArray();
+        tipos.forEach(lista::add);
+        JsonObject payload = new JsonObject();
+        payload.add("tipos", lista);
+        LoggerCentral.info(TAG, AZUL + "📢 Avisando cambios a peers: " + tipos + RESET);
+        gestor.broadcastPeticion(new DTORequest(ACCION_AVISO, payload));
+    }
+
+    /**
+     * Un peer avisó de cambios: se agrupa con otros avisos en una sola ronda.
+     */
+    public void procesarAvisoCambios(JsonObject aviso, String peerId) {
+        LoggerCentral.info(TAG, CYAN + "📥 Aviso de cambios de " + peerId + ": " + aviso.get("tipos") + RESET);
+        contadorReintentos = 0;
+        planificador.solicitarRonda();
+    }
+
     /**
      * Inicia un timeout para la sincronización actual.
      * Si no se completa en TIMEOUT_SYNC_MS, se cancela automáticamente.
      */
     private void iniciarTimeout() {
         timeoutActual = timeoutScheduler.schedule(() -> {
-            if (sincronizacionEnProgreso) {
-                LoggerCentral.warn(TAG, ROJO + "⏱ TIMEOUT: Sincronización excedió " + (TIMEOUT_SYNC_MS / 1000) + " segundos" + RESET);
-                
-                // Forzar finalización
-                sincronizacionEnProgreso = false;
-                contadorReintentos = 0;
-                
-                // Notificar que terminó (aunque por timeout)
-                if (servicioPadre != null) {
-                    servicioPadre.notificarObservadores("SINCRONIZACION_P2P_TERMINADA", false);
-                }
-                
-                LoggerCentral.info(TAG, AMARILLO + "Sincronización cancelada por timeout. Reintentará en el próximo ciclo." + RESET);
+            if (rondaEnCurso.get()) {
+                LoggerCentral.warn(TAG, ROJO + "⏱ TIMEOUT: Sincronización excedió " + (TIMEOUT_SYNC_MS / 1000) + " segundos"
+                        + " (sin terminar: " + peersEnRonda + ")" + RESET);
+                finalizarRonda();
+                LoggerCentral.info(TAG, AMARILLO + "Sincronización cerrada por timeout. Reintentará en el próximo ciclo." + RESET);
             }
         }, TIMEOUT_SYNC_MS, TimeUnit.MILLISECONDS);
         
@@ -244,89 +275,185 @@ public class CoordinadorSincronizacion {
     }
 
     /**
-     * Procesa las diferencias detectadas tras comparar hashes (Fase 2).
+     * Procesa las diferencias detectadas tras comparar hashes con un peer (Fase 2).
      */
-    public void procesarDiferencias(JsonObject hashesRemotos) {
-        LoggerCentral.info(TAG, CYAN + "▶ FASE 2: Comparando hashes" + RESET);
+    public void procesarDiferencias(JsonObject hashesRemotos, String peerId) {
+        if (!peersEnRonda.contains(peerId)) {
+            LoggerCentral.debug(TAG, "Hashes de " + peerId + " fuera de ronda, se ignoran");
+            return;
+        }
+        LoggerCentral.info(TAG, CYAN + "▶ FASE 2: Comparando hashes con " + peerId + RESET);
 
         Fase2ComparacionHashes.ResultadoComparacion resultado = fase2.compararHashes(hashesRemotos);
 
         if (resultado.todoSincronizado()) {
-            LoggerCentral.info(TAG, VERDE + "✔ SISTEMA TOTALMENTE SINCRONIZADO" + RESET);
-            finalizarSincronizacionExitosa();
+            LoggerCentral.info(TAG, VERDE + "✔ Sincronizado con " + peerId + RESET);
+            terminarFlujoPeer(peerId);
             return;
         }
 
-        // Hay diferencias, procesar el primer tipo
-        String primerTipo = resultado.getPrimerTipoConDiferencia();
-        LoggerCentral.info(TAG, CYAN + "▶ FASE 3: Solicitando IDs para " + primerTipo + RESET);
-        fase3.solicitarIDs(primerTipo);
+        // Se desciende tipo por tipo (en orden de dependencias) hasta dar con uno que traer
+        tiposPendientesPorPeer.put(peerId, new ArrayDeque<>(resultado.getTiposConDiferencias()));
+        descenderSiguienteTipo(peerId);
+    }
+
+    /**
+     * Inicia el descenso Merkle (Fase 3) del siguiente tipo con diferencias para el peer.
+     */
+    private void descenderSiguienteTipo(String peerId) {
+        Deque<String> pendientes = tiposPendientesPorPeer.get(peerId);
+        String tipo = pendientes != null ? pendientes.poll() : null;
+
+        if (tipo == null) {
+            tiposPendientesPorPeer.remove(peerId);
+            // Lo que queda distinto son datos que solo tenemos nosotros: el peer los pedirá en su ciclo
+            LoggerCentral.info(TAG, VERDE + "✔ Nada más que traer de " + peerId + RESET);
+            terminarFlujoPeer(peerId);
+            return;
+        }
+
+        LoggerCentral.info(TAG, CYAN + "▶ FASE 3: Descendiendo árbol de " + tipo + RESET);
+        fase3.iniciarDescenso(tipo, peerId);
+    }
+
+    /**
+     * Procesa una respuesta sync_merkle_nodos (Fase 3).
+     */
+    public void procesarNodosMerkle(JsonObject data, String peerId) {
+        procesarResultadoDescenso(fase3.procesarNodos(data, peerId));
     }
 
     /**
-     * Procesa los IDs recibidos (Fase 4).
+     * Procesa una respuesta sync_merkle_hojas (Fase 3).
      */
-    public void procesarIDsRecibidos(String tipo, JsonArray idsRemotos) {
-        LoggerCentral.info(TAG, CYAN + "▶ FASE 4: Detectando entidades faltantes de " + tipo + RESET);
+    public void procesarHojasMerkle(JsonObject data, String peerId) {
+        procesarResultadoDescenso(fase3.procesarHojas(data, peerId));
+    }
 
-        Fase4DeteccionFaltantes.ResultadoDeteccion resultado = fase4.detectarYSolicitarFaltantes(tipo, idsRemotos);
+    /**
+     * Con el descenso terminado, pide las entidades faltantes (Fase 4) y
+     * compara las que difieren (Fase 5).
+     */
+    private void procesarResultadoDescenso(Fase3SolicitudIDs.ResultadoDescenso resultado) {
+        if (resultado == null) {
+            return; // El descenso sigue en curso
+        }
+
+        String tipo = resultado.getTipo();
+        String peerId = resultado.getPeerId();
+
+        if (resultado.sinDiferenciasLocales()) {
+            descenderSiguienteTipo(peerId);
+            return;
+        }
 
-        if (resultado.hayFaltantes()) {
-            LoggerCentral.info(TAG, AMARILLO + String.format("⬇ Solicitadas %d entidades faltantes",
-                    resultado.getCantidadFaltantes()) + RESET);
-            // ✅ NUEVO: Marcar que hubo cambios porque hay entidades faltantes
+        if (!resultado.getIdsFaltantes().isEmpty()) {
+            LoggerCentral.info(TAG, CYAN + "▶ FASE 4: Solicitando entidades faltantes de " + tipo + RESET);
+            int solicitadas = fase4.solicitarFaltantes(tipo, resultado.getIdsFaltantes(), peerId);
+            LoggerCentral.info(TAG, AMARILLO + String.format("⬇ Solicitadas %d entidades faltantes", solicitadas) + RESET);
             huboCambiosEnEsteCiclo = true;
-            // Las entidades se solicitaron en fase4, esperamos que lleguen
-        } else if (resultado.todosLosIDsCoinciden()) {
-            // Tenemos todos los IDs pero los hashes difieren - comparar contenido
+        }
+
+        if (!resultado.getIdsDistintos().isEmpty()) {
             LoggerCentral.info(TAG, CYAN + "▶ FASE 5: Comparando contenido de " + tipo + RESET);
-            // ✅ NUEVO: Marcar que hubo actividad de sincronización (diferencias detectadas)
             huboCambiosEnEsteCiclo = true;
-            fase5.iniciarComparaciones(tipo, idsRemotos);
-        } else {
-            // No hay diferencias reales, continuar
-            iniciarSincronizacion();
+            fase5.iniciarComparaciones(tipo, resultado.getIdsDistintos(), peerId);
         }
     }
 
     /**
-     * Procesa una entidad recibida y guarda cambios.
+     * Procesa un lote de entidades faltantes recibido (respuesta de Fase 4).
      */
-    public void procesarEntidadRecibida(String tipo, JsonElement data) {
-        guardarEntidad(tipo, data);
-        huboCambiosEnEsteCiclo = true;
+    public void procesarLoteFaltantes(String tipo, JsonArray entidades, String peerId) {
+        aplicarLote(tipo, entidades);
+        if (fase4.confirmarLote(tipo, peerId)) {
+            LoggerCentral.info(TAG, VERDE + "✓ Entidades faltantes de " + tipo + " recibidas" + RESET);
+            verificarFinDeLotes(tipo, peerId);
+        }
+    }
 
-        // Reiniciar sincronización para verificar siguiente tipo
-        iniciarSincronizacion();
+    /**
+     * Procesa un lote de entidades para comparación de contenido (respuesta de Fase 5).
+     */
+    public void procesarLoteComparacion(String tipo, JsonArray entidades, String peerId) {
+        aplicarLote(tipo, entidades);
+        if (fase5.confirmarLote(tipo, peerId)) {
+            LoggerCentral.info(TAG, VERDE + "✓ Comparaciones completadas para " + tipo + RESET);
+            verificarFinDeLotes(tipo, peerId);
+        }
     }
 
     /**
-     * Procesa una comparación de contenido (Fase 5).
+     * Aplica entidades recibidas por replicación de deltas, fuera de cualquier ronda.
+     *
+     * @return Cantidad de entidades guardadas
      */
-    public void procesarComparacion(String tipo, JsonElement dataRemota) {
-        boolean huboCambios = fase5.compararYResolver(tipo, dataRemota);
+    public int aplicarDeltas(String tipo, JsonArray entidades) {
+        try {
+            int guardadas = fase5.resolverLote(tipo, entidades);
+            if (guardadas > 0) {
+                notificarCambios();
+                notificarEntidadesReplicadas(tipo, entidades);
+            }
+            return guardadas;
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, ROJO + "Error aplicando deltas de " + tipo + ": " + e.getMessage() + RESET);
+            return 0;
+        }
+    }
 
-        if (huboCambios) {
-            huboCambiosEnEsteCiclo = true;
+    /**
+     * Resuelve y guarda un lote en una sola transacción.
+     */
+    private void aplicarLote(String tipo, JsonArray entidades) {
+        try {
+            int guardadas = fase5.resolverLote(tipo, entidades);
+            if (guardadas > 0) {
+                huboCambiosEnEsteCiclo = true;
+                tiposCambiadosEnCiclo.add(tipo);
+            }
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, ROJO + "Error guardando lote de " + tipo + ": " + e.getMessage() + RESET);
         }
+    }
 
-        // Verificar si terminaron todas las comparaciones
-        if (fase5.decrementarComparacion()) {
-            LoggerCentral.info(TAG, VERDE + "✓ Comparaciones completadas para " + tipo + RESET);
-            fase5.resetearComparaciones();
-            iniciarSincronizacion();
+    /**
+     * Cuando ya no quedan lotes de Fase 4 ni de Fase 5 para el tipo, se pasa al
+     * siguiente tipo con diferencias (en orden de dependencias) con ese peer.
+     */
+    private void verificarFinDeLotes(String tipo, String peerId) {
+        if (fase4.hayLotesEnCurso(tipo, peerId) || fase5.hayLotesEnCurso(tipo, peerId)) {
+            return;
         }
+        descenderSiguienteTipo(peerId);
     }
 
     /**
-     * Finaliza el proceso de sincronización exitosamente.
+     * Marca terminado el flujo con un peer; con el último se cierra la ronda.
      */
-    private void finalizarSincronizacionExitosa() {
-        // Cancelar timeout ya que terminó exitosamente
+    private void terminarFlujoPeer(String peerId) {
+        if (peersEnRonda.remove(peerId) && peersEnRonda.isEmpty()) {
+            finalizarRonda();
+        }
+    }
+
+    /**
+     * Cierra la ronda (todos los peers terminaron o venció el timeout). Si se
+     * trajeron cambios se pide una ronda más para verificar la convergencia,
+     * hasta MAX_REINTENTOS seguidas.
+     */
+    private void finalizarRonda() {
+        if (!rondaEnCurso.compareAndSet(true, false)) {
+            return;
+        }
         cancelarTimeout();
-        
-        contadorReintentos = 0;
-        sincronizacionEnProgreso = false;
+        peersEnRonda.clear();
+        tiposPendientesPorPeer.clear();
+
+        boolean verificar = huboCambiosEnEsteCiclo && contadorReintentos < MAX_REINTENTOS;
+        if (!verificar) {
+            contadorReintentos = 0;
+        }
 
         // Fase 6: Transferir archivos físicos
         if (fase6.estaConfigurado()) {
@@ -334,16 +461,24 @@ public class CoordinadorSincronizacion {
             fase6.verificarYDescargarFaltantes();
         }
 
+        boolean huboCambios = huboCambiosEnEsteCiclo;
+        huboCambiosEnEsteCiclo = false;
+        Set<String> tiposCambiados = new HashSet<>(tiposCambiadosEnCiclo);
+        tiposCambiadosEnCiclo.removeAll(tiposCambiados);
+
         // Notificar cambios si hubo
-        if (huboCambiosEnEsteCiclo) {
+        if (huboCambios) {
             notificarCambios();
-            huboCambiosEnEsteCiclo = false;
+        }
+        if (!tiposCambiados.isEmpty()) {
+            notificarTiposCambiados(tiposCambiados);
         }
 
         // Notificar finalización
-        notificarFinalizacion();
+        notificarFinalizacion(huboCambios);
 
         LoggerCentral.info(TAG, VERDE + "=== SINCRONIZACIÓN COMPLETADA ===" + RESET);
+        planificador.rondaTerminada(verificar);
     }
 
     /**
@@ -359,70 +494,61 @@ public class CoordinadorSincronizacion {
     }
 
     /**
-     * ✅ MEJORADO: Notifica finalización de sincronización a TODOS los observadores.
-     * Esto incluye PanelUsuarios, ServicioNotificacionCliente, etc.
+     * Avisa a los clientes CS solo de los tipos que cambiaron, para que invaliden
+     * esos recursos y no todo.
      */
-    private void notificarFinalizacion() {
-        LoggerCentral.info(TAG, AZUL + "📡 Notificando finalización de sincronización..." + RESET);
-
-        // ✅ NUEVO: Notificar a TODOS los observadores del servicio padre
-        if (servicioPadre != null) {
-            try {
-                LoggerCentral.info(TAG, VERDE + "📢 Notificando a TODOS los observadores (incluyendo UI)..." + RESET);
-                servicioPadre.notificarObservadores("SINCRONIZACION_P2P_TERMINADA", huboCambiosEnEsteCiclo);
-            } catch (Exception e) {
-                LoggerCentral.error(TAG, "Error notificando a observadores: " + e.getMessage());
-            }
-        }
-
-        // Mantener compatibilidad con el observador individual (por si acaso)
+    private void notificarTiposCambiados(Set<String> tipos) {
         if (servicioNotificacionCliente != null) {
             try {
-                servicioNotificacionCliente.actualizar("SINCRONIZACION_P2P_TERMINADA", huboCambiosEnEsteCiclo);
+                servicioNotificacionCliente.actualizar(EVENTO_TIPOS_CAMBIADOS, tipos);
             } catch (Exception e) {
-                LoggerCentral.error(TAG, "Error notificando: " + e.getMessage());
+                LoggerCentral.error(TAG, "Error notificando tipos cambiados: " + e.getMessage());
             }
         }
     }
 
     /**
-     * Guarda una entidad genérica.
+     * Avisa a los clientes CS de las entidades concretas de un delta, para que las
+     * invalidaciones lleguen solo a quienes las ven (miembros del canal, participantes
+     * del mensaje directo...) y con el ID afectado.
      */
-    private void guardarEntidad(String tipo, JsonElement data) {
-        try {
-            boolean guardado = fase5.compararYResolver(tipo, data);
-
-            if (guardado) {
-                LoggerCentral.info(TAG, VERDE + "✓ " + tipo + " guardado" + RESET);
+    private void notificarEntidadesReplicadas(String tipo, JsonArray entidades) {
+        if (servicioNotificacionCliente != null) {
+            try {
+                servicioNotificacionCliente.actualizar(EVENTO_ENTIDADES_REPLICADAS, new EntidadesReplicadas(tipo, entidades));
+            } catch (Exception e) {
+                LoggerCentral.error(TAG, "Error notificando entidades replicadas: " + e.getMessage());
             }
-        } catch (Exception e) {
-            LoggerCentral.error(TAG, ROJO + "Error guardando " + tipo + ": " + e.getMessage() + RESET);
         }
     }
 
     /**
-     * Libera el lock de sincronización después de un retraso.
+     * ✅ MEJORADO: Notifica finalización de sincronización a TODOS los observadores.
+     * Esto incluye PanelUsuarios, ServicioNotificacionCliente, etc.
+     * A los clientes CS se les avisa por separado con {@link #notificarTiposCambiados}.
      */
-    private void liberarLockConRetraso(long delayMs) {
-        new Thread(() -> {
+    private void notificarFinalizacion(boolean huboCambios) {
+        LoggerCentral.info(TAG, AZUL + "📡 Notificando finalización de sincronización..." + RESET);
+
+        // ✅ NUEVO: Notificar a TODOS los observadores del servicio padre
+        if (servicioPadre != null) {
             try {
-                Thread.sleep(delayMs);
-                sincronizacionEnProgreso = false;
-                LoggerCentral.debug(TAG, "Lock de sincronización liberado");
+                LoggerCentral.info(TAG, VERDE + "📢 Notificando a TODOS los observadores (incluyendo UI)..." + RESET);
+                servicioPadre.notificarObservadores("SINCRONIZACION_P2P_TERMINADA", huboCambios);
             } catch (Exception e) {
-                LoggerCentral.error(TAG, "Error liberando lock: " + e.getMessage());
+                LoggerCentral.error(TAG, "Error notificando a observadores: " + e.getMessage());
             }
-        }).start();
+        }
     }
 
     /**
-     * Fuerza una sincronización ignorando restricciones.
+     * Fuerza una sincronización sin esperar la ventana de agrupación.
+     * Si hay una ronda en curso, la nueva se lanza al terminar.
      */
     public void forzarSincronizacion() {
         LoggerCentral.warn(TAG, "Forzando sincronización manual...");
-        huboCambiosEnEsteCiclo = false;
         contadorReintentos = 0;
-        iniciarSincronizacion();
+        planificador.solicitarRondaInmediata();
     }
 
     /**
@@ -463,8 +589,9 @@ public class CoordinadorSincronizacion {
     public void detener() {
         LoggerCentral.info(TAG, "Deteniendo coordinador de sincronización...");
         
+        planificador.detener();
         cancelarTimeout();
-        sincronizacionEnProgreso = false;
+        rondaEnCurso.set(false);
         
         if (timeoutScheduler != null && !timeoutScheduler.isShutdown()) {
             timeoutScheduler.shutdown();
@@ -480,4 +607,22 @@ public class CoordinadorSincronizacion {
         
         LoggerCentral.info(TAG, "✓ Coordinador detenido");
     }
+
+    /**
+     * Datos de {@link #EVENTO_ENTIDADES_REPLICADAS}: tipo de entidad y entidades del delta
+     * aplicado (en el mismo JSON con que viajan entre peers).
+     */
+    public static final class EntidadesReplicadas {
+        private final String tipo;
+        private final JsonArray entidades;
+
+        public EntidadesReplicadas(String tipo, JsonArray entidades) {
+            this.tipo = tipo;
+            this.entidades = entidades;
+        }
+
+        public String getTipo() { return tipo; }
+
+        public JsonArray getEntidades() { return entidades; }
+    }
 }
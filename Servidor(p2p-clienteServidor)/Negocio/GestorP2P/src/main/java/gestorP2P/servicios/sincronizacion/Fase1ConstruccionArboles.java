@@ -2,19 +2,22 @@ package gestorP2P.servicios.sincronizacion;
 
 import com.google.gson.JsonObject;
 import dominio.merkletree.IMerkleEntity;
-import dominio.merkletree.MerkleTree;
+import dominio.merkletree.IndiceMerkle;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Fase 1: Construcción de Árboles Merkle
  *
  * Responsabilidad: Construir y mantener los árboles Merkle para cada tipo de entidad.
  * Genera hashes raíz para comparación con otros peers.
+ *
+ * Los árboles son incrementales ({@link IndiceMerkle}): los repositorios los actualizan
+ * en cada escritura y sus hojas se persisten, así que no se reconstruyen en cada ronda.
  */
 public class Fase1ConstruccionArboles {
 
@@ -37,8 +40,8 @@ public class Fase1ConstruccionArboles {
             TIPO_ARCHIVO
     };
 
-    // Mapa de árboles por tipo (MerkleTree no es genérico)
-    private final Map<String, MerkleTree> arbolesMerkle;
+    // Índices Merkle incrementales (mantenidos por los repositorios en cada escritura)
+    private final IndiceMerkleRepositorio indiceRepo;
 
     // Repositorios
     private final UsuarioRepositorio usuarioRepo;
@@ -50,7 +53,7 @@ public class Fase1ConstruccionArboles {
 
 
     public Fase1ConstruccionArboles() {
-        this.arbolesMerkle = new ConcurrentHashMap<>();
+        this.indiceRepo = IndiceMerkleRepositorio.getInstance();
 
         this.usuarioRepo = new UsuarioRepositorio();
         this.canalRepo = new CanalRepositorio();
@@ -60,40 +63,66 @@ public class Fase1ConstruccionArboles {
         this.repoArchivo = new ArchivoRepositorio();
     }
 
-    /** Reconstruye todos los árboles Merkle desde la base de datos. */
+    /**
+     * Garantiza que los árboles de todos los tipos estén en memoria.
+     * Los árboles se mantienen solos con cada escritura, así que esto solo hace
+     * trabajo la primera vez (o si un tipo quedó invalidado): carga las hojas
+     * persistidas y, si no cuadran con la tabla, reconstruye ese tipo.
+     */
+    public void asegurarArboles() {
+        for (String tipo : ORDEN_SYNC) {
+            if (!indiceRepo.estaCargado(tipo)) {
+                asegurarArbol(tipo);
+            }
+        }
+    }
+
+    /** Reconstruye desde cero (rehasheando) todos los árboles Merkle. */
     public void reconstruirTodosLosArboles() {
         LoggerCentral.info(TAG, "Construyendo árboles Merkle...");
 
-        arbolesMerkle.clear();
-
         for (String tipo : ORDEN_SYNC) {
-            List<? extends IMerkleEntity> entidades = obtenerEntidadesPorTipo(tipo);
-            if (entidades == null) {
-                continue;
-            }
-            MerkleTree arbol = new MerkleTree(entidades);
-            arbolesMerkle.put(tipo, arbol);
-
-            String hash = arbol.getRootHash();
-            String hashCorto = hash.length() > 8 ? hash.substring(0, 8) : hash;
-            LoggerCentral.debug(TAG, String.format("  - %s: %d entidades, hash: %s",
-                    tipo, entidades.size(), hashCorto));
+            reconstruirArbol(tipo);
         }
 
         LoggerCentral.info(TAG, "Árboles Merkle construidos exitosamente.");
     }
 
-    /** Reconstruye el árbol Merkle para un tipo específico. */
+    /** Reconstruye desde cero el árbol Merkle de un tipo específico. */
     public void reconstruirArbol(String tipo) {
-        List<? extends IMerkleEntity> entidades = obtenerEntidadesPorTipo(tipo);
-        MerkleTree arbol = new MerkleTree(entidades);
-        arbolesMerkle.put(tipo, arbol);
+        IndiceMerkle indice = indiceRepo.reconstruir(tipo, () -> obtenerEntidadesPorTipo(tipo));
+        logArbol(tipo, indice);
+    }
 
-        String hash = arbol.getRootHash();
-        String hashCorto = hash.length() > 8 ? hash.substring(0, 8) : hash;
+    private IndiceMerkle asegurarArbol(String tipo) {
+        if (indiceRepo.cargar(tipo, ids -> buscarEntidades(tipo, ids))) {
+            IndiceMerkle indice = indiceRepo.obtenerIndice(tipo);
+            LoggerCentral.debug(TAG, "  - " + tipo + ": cargado desde hojas persistidas");
+            logArbol(tipo, indice);
+            return indice;
+        }
+        LoggerCentral.info(TAG, "Reconstruyendo árbol de " + tipo + " (hojas persistidas incompletas)...");
+        IndiceMerkle indice = indiceRepo.reconstruir(tipo, () -> obtenerEntidadesPorTipo(tipo));
+        logArbol(tipo, indice);
+        return indice;
+    }
 
+    private void logArbol(String tipo, IndiceMerkle indice) {
+        String hash = indice.getRootHash();
+        String hashCorto = hash.length() > 8 ? hash.substring(0, 8) : hash;
         LoggerCentral.debug(TAG, String.format("  - %s: %d entidades, hash: %s",
-                tipo, entidades.size(), hashCorto));
+                tipo, indice.getCantidad(), hashCorto));
+    }
+
+    /** Índice Merkle de un tipo (lo carga si hace falta). */
+    public IndiceMerkle obtenerIndice(String tipo) {
+        IndiceMerkle indice = indiceRepo.obtenerIndice(tipo);
+        return indice != null ? indice : asegurarArbol(tipo);
+    }
+
+    /** Hojas persistidas (id, hash) de una cubeta del árbol de un tipo. */
+    public List<String[]> obtenerHojasDeCubeta(String tipo, int cubeta) {
+        return indiceRepo.obtenerHojasDeCubeta(tipo, cubeta);
     }
 
     /** Obtiene todos los hashes raíz en formato JSON. */
@@ -101,10 +130,7 @@ public class Fase1ConstruccionArboles {
         JsonObject hashes = new JsonObject();
 
         for (String tipo : ORDEN_SYNC) {
-            MerkleTree arbol = arbolesMerkle.get(tipo);
-            if (arbol != null) {
-                hashes.addProperty(tipo, arbol.getRootHash());
-            }
+            hashes.addProperty(tipo, obtenerIndice(tipo).getRootHash());
         }
 
         return hashes;
@@ -112,8 +138,7 @@ public class Fase1ConstruccionArboles {
 
     /** Obtiene el hash raíz de un tipo específico. */
     public String obtenerHashPorTipo(String tipo) {
-        MerkleTree arbol = arbolesMerkle.get(tipo);
-        return arbol != null ? arbol.getRootHash() : "";
+        return obtenerIndice(tipo).getRootHash();
     }
 
     /** Obtiene la lista de entidades para un tipo dado. */
@@ -137,12 +162,35 @@ public class Fase1ConstruccionArboles {
         }
     }
 
-    /** Busca una entidad específica por tipo e ID. */
+    /** Busca una entidad específica por tipo e ID (lectura por clave primaria). */
     public IMerkleEntity buscarEntidad(String tipo, String id) {
-        return obtenerEntidadesPorTipo(tipo).stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        List<? extends IMerkleEntity> encontradas = buscarEntidades(tipo, List.of(id));
+        return encontradas.isEmpty() ? null : encontradas.get(0);
+    }
+
+    /**
+     * Busca varias entidades de un tipo por ID. Cada repositorio resuelve el lote con
+     * {@code WHERE id IN (...)} sobre la clave primaria, sin leer la tabla completa.
+     */
+    public List<? extends IMerkleEntity> buscarEntidades(String tipo, Collection<String> ids) {
+        List<String> lista = new ArrayList<>(ids);
+        switch (tipo) {
+            case TIPO_USUARIO:
+                return usuarioRepo.buscarPorIds(lista);
+            case TIPO_CANAL:
+                return canalRepo.buscarPorIds(lista);
+            case TIPO_CANAL_MIEMBRO:
+                return canalMiembroRepo.buscarPorIds(lista);
+            case TIPO_CANAL_INVITACION:
+                return canalInvitacionRepo.buscarPorIds(lista);
+            case TIPO_MENSAJE:
+                return mensajeRepo.buscarPorIds(lista);
+            case TIPO_ARCHIVO:
+                return repoArchivo.buscarPorIds(lista);
+            default:
+                LoggerCentral.error(TAG, "Tipo desconocido: " + tipo);
+                return List.of();
+        }
     }
 
     public static String[] getOrdenSync() {
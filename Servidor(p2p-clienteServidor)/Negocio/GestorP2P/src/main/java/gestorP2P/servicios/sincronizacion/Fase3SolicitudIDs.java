@@ -3,85 +3,360 @@ package gestorP2P.servicios.sincronizacion;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import conexion.p2p.interfaces.IGestorConexiones;
-import dominio.merkletree.IMerkleEntity;
+import dominio.merkletree.IndiceMerkle;
 import dto.comunicacion.DTORequest;
+import dto.p2p.DTOPeerDetails;
 import logger.LoggerCentral;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Fase 3: Solicitud de IDs
  *
- * Responsabilidad: Solicitar y procesar listas de IDs de entidades remotas.
- * Prepara la información para detectar entidades faltantes.
+ * Responsabilidad: Localizar las entidades que difieren con un peer SIN pedirle la
+ * lista completa de IDs. Se desciende por el árbol Merkle incremental nivel a nivel:
+ *
+ * 1. sync_merkle_nodos: se piden los hashes hijos de los nodos que difieren.
+ * 2. Solo se baja por los hijos cuyo hash no coincide con el local.
+ * 3. sync_merkle_hojas: en las cubetas distintas se piden los pares (id, hash).
+ *
+ * El tráfico y el trabajo son proporcionales a la divergencia, no al tamaño de la tabla.
+ *
+ * Cada descenso lleva un ID que viaja en sus peticiones y vuelve en las respuestas:
+ * las respuestas tardías de un descenso ya reemplazado o vencido se descartan.
  */
 public class Fase3SolicitudIDs {
 
     private static final String TAG = "Fase3-IDs";
     private static final String CYAN = "\u001B[36m";
     private static final String VERDE = "\u001B[32m";
+    private static final String AMARILLO = "\u001B[33m";
     private static final String RESET = "\u001B[0m";
 
+    public static final String ACCION_NODOS = "sync_merkle_nodos";
+    public static final String ACCION_HOJAS = "sync_merkle_hojas";
+
+    // Máximo de nodos/cubetas por petición para acotar el tamaño de cada trama
+    private static final int MAX_NODOS_POR_PETICION = 64;
+    private static final int MAX_CUBETAS_POR_PETICION = 32;
+
+    // Sin respuestas durante este tiempo el descenso se da por perdido
+    private static final long TIMEOUT_DESCENSO_MS = 10000;
+
     private final Fase1ConstruccionArboles fase1;
     private final IGestorConexiones gestor;
     private final Gson gson;
 
+    // Descensos en curso: "peer|tipo" -> estado
+    private final Map<String, Descenso> descensos = new ConcurrentHashMap<>();
+    private final AtomicLong secuenciaDescensos = new AtomicLong();
+
     public Fase3SolicitudIDs(Fase1ConstruccionArboles fase1, IGestorConexiones gestor, Gson gson) {
         this.fase1 = fase1;
         this.gestor = gestor;
         this.gson = gson;
     }
 
+    // =========================================================================
+    // LADO SOLICITANTE
+    // =========================================================================
+
     /**
-     * Solicita los IDs de un tipo específico a los peers remotos.
+     * Inicia el descenso por el árbol de un tipo contra un peer concreto.
+     * Reemplaza cualquier descenso previo del mismo tipo con ese peer.
      */
-    public void solicitarIDs(String tipo) {
-        LoggerCentral.info(TAG, CYAN + "Solicitando IDs para tipo: " + tipo + RESET);
+    public void iniciarDescenso(String tipo, String peerId) {
+        LoggerCentral.info(TAG, CYAN + "Descendiendo árbol " + tipo + " con " + peerId + RESET);
+        expirarDescensos();
 
-        DTORequest req = new DTORequest("sync_get_ids", gson.toJsonTree(tipo));
-        String jsonReq = gson.toJson(req);
+        Descenso descenso = new Descenso(secuenciaDescensos.incrementAndGet(), tipo, peerId);
+        descensos.put(clave(peerId, tipo), descenso);
 
-        LoggerCentral.debug(TAG, "Request JSON: " + jsonReq);
-        gestor.broadcast(jsonReq);
+        List<Integer> raiz = new ArrayList<>();
+        raiz.add(0);
+        solicitarNodos(descenso, 0, raiz);
+    }
 
-        LoggerCentral.info(TAG, VERDE + "✓ Solicitud de IDs enviada para: " + tipo + RESET);
+    /**
+     * Procesa una respuesta sync_merkle_nodos.
+     *
+     * @return El resultado si el descenso terminó, o null si sigue en curso.
+     */
+    public ResultadoDescenso procesarNodos(JsonObject data, String peerId) {
+        String tipo = data.get("tipo").getAsString();
+        int nivel = data.get("nivel").getAsInt();
+        Descenso descenso = descensoDe(data, tipo, peerId);
+        if (descenso == null) {
+            LoggerCentral.debug(TAG, "Respuesta de nodos sin descenso activo: " + tipo + " de " + peerId);
+            return null;
+        }
+
+        IndiceMerkle indice = fase1.obtenerIndice(tipo);
+        JsonObject nodos = data.getAsJsonObject("nodos");
+        List<Integer> distintos = new ArrayList<>();
+
+        for (Map.Entry<String, JsonElement> nodo : nodos.entrySet()) {
+            int indiceNodo = Integer.parseInt(nodo.getKey());
+            JsonArray hijosRemotos = nodo.getValue().getAsJsonArray();
+            String[] hijosLocales = indice.getHashesHijos(nivel, indiceNodo);
+            for (int i = 0; i < IndiceMerkle.ARIDAD; i++) {
+                if (!hijosLocales[i].equals(hijosRemotos.get(i).getAsString())) {
+                    distintos.add(indiceNodo * IndiceMerkle.ARIDAD + i);
+                }
+            }
+        }
+
+        if (!distintos.isEmpty()) {
+            if (nivel + 1 < IndiceMerkle.NIVELES) {
+                solicitarNodos(descenso, nivel + 1, distintos);
+            } else {
+                LoggerCentral.info(TAG, CYAN + String.format("%s: %d cubetas distintas con %s",
+                        tipo, distintos.size(), peerId) + RESET);
+                solicitarHojas(descenso, distintos);
+            }
+        }
+        return completar(descenso);
     }
 
     /**
-     * Obtiene los IDs locales para un tipo dado.
+     * Procesa una respuesta sync_merkle_hojas comparando hoja a hoja.
+     *
+     * @return El resultado si el descenso terminó, o null si sigue en curso.
      */
-    public JsonArray obtenerIDsLocales(String tipo) {
-        List<? extends IMerkleEntity> entidades = fase1.obtenerEntidadesPorTipo(tipo);
-        JsonArray ids = new JsonArray();
+    public ResultadoDescenso procesarHojas(JsonObject data, String peerId) {
+        String tipo = data.get("tipo").getAsString();
+        Descenso descenso = descensoDe(data, tipo, peerId);
+        if (descenso == null) {
+            LoggerCentral.debug(TAG, "Respuesta de hojas sin descenso activo: " + tipo + " de " + peerId);
+            return null;
+        }
 
-        entidades.forEach(e -> ids.add(e.getId()));
+        JsonObject cubetas = data.getAsJsonObject("cubetas");
+        for (Map.Entry<String, JsonElement> cubeta : cubetas.entrySet()) {
+            Map<String, String> locales = new HashMap<>();
+            for (String[] hoja : fase1.obtenerHojasDeCubeta(tipo, Integer.parseInt(cubeta.getKey()))) {
+                locales.put(hoja[0], hoja[1]);
+            }
+            for (JsonElement el : cubeta.getValue().getAsJsonArray()) {
+                JsonArray hoja = el.getAsJsonArray();
+                String id = hoja.get(0).getAsString();
+                String hashLocal = locales.get(id);
+                if (hashLocal == null) {
+                    descenso.faltantes.add(id);
+                } else if (!hashLocal.equals(hoja.get(1).getAsString())) {
+                    descenso.distintos.add(id);
+                }
+                // Las hojas que solo tenemos nosotros las pedirá el otro peer en su propio ciclo
+            }
+        }
+        return completar(descenso);
+    }
 
-        LoggerCentral.debug(TAG, String.format("IDs locales de %s: %d elementos", tipo, ids.size()));
+    private void solicitarNodos(Descenso descenso, int nivel, List<Integer> indices) {
+        for (int desde = 0; desde < indices.size(); desde += MAX_NODOS_POR_PETICION) {
+            List<Integer> lote = indices.subList(desde, Math.min(indices.size(), desde + MAX_NODOS_POR_PETICION));
+            JsonObject payload = new JsonObject();
+            payload.addProperty("descenso", descenso.id);
+            payload.addProperty("tipo", descenso.tipo);
+            payload.addProperty("nivel", nivel);
+            payload.add("indices", gson.toJsonTree(lote));
+            enviar(descenso, ACCION_NODOS, payload);
+        }
+    }
 
-        return ids;
+    private void solicitarHojas(Descenso descenso, List<Integer> cubetas) {
+        for (int desde = 0; desde < cubetas.size(); desde += MAX_CUBETAS_POR_PETICION) {
+            List<Integer> lote = cubetas.subList(desde, Math.min(cubetas.size(), desde + MAX_CUBETAS_POR_PETICION));
+            JsonObject payload = new JsonObject();
+            payload.addProperty("descenso", descenso.id);
+            payload.addProperty("tipo", descenso.tipo);
+            payload.add("cubetas", gson.toJsonTree(lote));
+            enviar(descenso, ACCION_HOJAS, payload);
+        }
+    }
+
+    private void enviar(Descenso descenso, String accion, JsonObject payload) {
+        descenso.pendientes.incrementAndGet();
+        descenso.peticiones.incrementAndGet();
+        DTOPeerDetails destino = new DTOPeerDetails(descenso.peerId, null, 0, null, null);
+        gestor.enviarPeticion(destino, new DTORequest(accion, payload));
+    }
+
+    /** Descuenta la respuesta procesada; si no quedan peticiones en vuelo, cierra el descenso. */
+    private ResultadoDescenso completar(Descenso descenso) {
+        if (descenso.pendientes.decrementAndGet() > 0) {
+            return null;
+        }
+        descensos.remove(clave(descenso.peerId, descenso.tipo), descenso);
+
+        LoggerCentral.info(TAG, VERDE + String.format("✓ Descenso %s con %s: %d faltantes, %d distintas (%d peticiones)",
+                descenso.tipo, descenso.peerId, descenso.faltantes.size(), descenso.distintos.size(),
+                descenso.peticiones.get()) + RESET);
+        return new ResultadoDescenso(descenso.tipo, descenso.peerId,
+                new ArrayList<>(descenso.faltantes), new ArrayList<>(descenso.distintos));
     }
 
     /**
-     * Convierte IDs locales a lista de strings para comparación.
+     * Descenso al que pertenece una respuesta, o null si ya no está activo: otro
+     * descenso lo reemplazó (el ID no coincide) o venció sin respuestas.
      */
-    public List<String> obtenerListaIDsLocales(String tipo) {
-        List<? extends IMerkleEntity> entidades = fase1.obtenerEntidadesPorTipo(tipo);
-        return entidades.stream()
-            .map(IMerkleEntity::getId)
-            .collect(Collectors.toList());
+    private Descenso descensoDe(JsonObject data, String tipo, String peerId) {
+        String clave = clave(peerId, tipo);
+        Descenso descenso = descensos.get(clave);
+        if (descenso == null) return null;
+
+        JsonElement id = data.get("descenso");
+        if (id == null || id.isJsonNull() || id.getAsLong() != descenso.id) {
+            LoggerCentral.debug(TAG, "Respuesta descartada de un descenso anterior: " + tipo + " de " + peerId);
+            return null;
+        }
+        if (descenso.vencido(System.currentTimeMillis())) {
+            descensos.remove(clave, descenso);
+            LoggerCentral.warn(TAG, AMARILLO + "Descenso " + tipo + " con " + peerId + " vencido" + RESET);
+            return null;
+        }
+        descenso.ultimaActividad = System.currentTimeMillis();
+        return descenso;
+    }
+
+    /** Quita los descensos que llevan más de {@link #TIMEOUT_DESCENSO_MS} sin respuestas. */
+    private void expirarDescensos() {
+        long ahora = System.currentTimeMillis();
+        descensos.entrySet().removeIf(e -> {
+            if (!e.getValue().vencido(ahora)) return false;
+            LoggerCentral.warn(TAG, AMARILLO + "Descenso " + e.getValue().tipo + " con " + e.getValue().peerId
+                    + " vencido con " + e.getValue().pendientes.get() + " respuestas pendientes" + RESET);
+            return true;
+        });
+    }
+
+    private static String clave(String peerId, String tipo) {
+        return peerId + "|" + tipo;
+    }
+
+    // =========================================================================
+    // LADO QUE RESPONDE
+    // =========================================================================
+
+    /** Responde sync_merkle_nodos con los hashes hijos de cada nodo pedido. */
+    public JsonObject responderNodos(JsonObject req) {
+        String tipo = req.get("tipo").getAsString();
+        int nivel = req.get("nivel").getAsInt();
+        IndiceMerkle indice = fase1.obtenerIndice(tipo);
+
+        JsonObject nodos = new JsonObject();
+        if (nivel >= 0 && nivel < IndiceMerkle.NIVELES) {
+            int ancho = (int) Math.pow(IndiceMerkle.ARIDAD, nivel);
+            for (JsonElement el : req.getAsJsonArray("indices")) {
+                int i = el.getAsInt();
+                if (i < 0 || i >= ancho) continue;
+                nodos.add(String.valueOf(i), gson.toJsonTree(indice.getHashesHijos(nivel, i)));
+            }
+        } else {
+            LoggerCentral.warn(TAG, AMARILLO + "Nivel inválido solicitado: " + nivel + RESET);
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("descenso", req.get("descenso"));
+        result.addProperty("tipo", tipo);
+        result.addProperty("nivel", nivel);
+        result.add("nodos", nodos);
+        return result;
+    }
+
+    /** Responde sync_merkle_hojas con los pares (id, hash) de cada cubeta pedida. */
+    public JsonObject responderHojas(JsonObject req) {
+        String tipo = req.get("tipo").getAsString();
+
+        JsonObject cubetas = new JsonObject();
+        for (JsonElement el : req.getAsJsonArray("cubetas")) {
+            int cubeta = el.getAsInt();
+            if (cubeta < 0 || cubeta >= IndiceMerkle.CUBETAS) continue;
+            JsonArray hojas = new JsonArray();
+            for (String[] hoja : fase1.obtenerHojasDeCubeta(tipo, cubeta)) {
+                JsonArray par = new JsonArray();
+                par.add(hoja[0]);
+                par.add(hoja[1]);
+                hojas.add(par);
+            }
+            cubetas.add(String.valueOf(cubeta), hojas);
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("descenso", req.get("descenso"));
+        result.addProperty("tipo", tipo);
+        result.add("cubetas", cubetas);
+        return result;
     }
 
     /**
-     * Convierte JsonArray de IDs remotos a lista de strings.
+     * Estado de un descenso con un peer.
      */
-    public List<String> convertirIDsRemotos(JsonArray idsRemotos) {
-        List<String> lista = new java.util.ArrayList<>();
-        for (JsonElement el : idsRemotos) {
-            lista.add(el.getAsString());
+    private static class Descenso {
+        final long id;
+        final String tipo;
+        final String peerId;
+        final AtomicInteger pendientes = new AtomicInteger();
+        final AtomicInteger peticiones = new AtomicInteger();
+        final Set<String> faltantes = ConcurrentHashMap.newKeySet();
+        final Set<String> distintos = ConcurrentHashMap.newKeySet();
+        volatile long ultimaActividad = System.currentTimeMillis();
+
+        Descenso(long id, String tipo, String peerId) {
+            this.id = id;
+            this.tipo = tipo;
+            this.peerId = peerId;
+        }
+
+        boolean vencido(long ahora) {
+            return ahora - ultimaActividad > TIMEOUT_DESCENSO_MS;
         }
-        return lista;
     }
-}
 
+    /**
+     * Resultado de un descenso: entidades que el peer tiene y nosotros no, y
+     * entidades que ambos tenemos con contenido distinto.
+     */
+    public static class ResultadoDescenso {
+        private final String tipo;
+        private final String peerId;
+        private final List<String> idsFaltantes;
+        private final List<String> idsDistintos;
+
+        public ResultadoDescenso(String tipo, String peerId, List<String> idsFaltantes, List<String> idsDistintos) {
+            this.tipo = tipo;
+            this.peerId = peerId;
+            this.idsFaltantes = idsFaltantes;
+            this.idsDistintos = idsDistintos;
+        }
+
+        public String getTipo() {
+            return tipo;
+        }
+
+        public String getPeerId() {
+            return peerId;
+        }
+
+        public List<String> getIdsFaltantes() {
+            return idsFaltantes;
+        }
+
+        public List<String> getIdsDistintos() {
+            return idsDistintos;
+        }
+
+        public boolean sinDiferenciasLocales() {
+            return idsFaltantes.isEmpty() && idsDistintos.isEmpty();
+        }
+    }
+}
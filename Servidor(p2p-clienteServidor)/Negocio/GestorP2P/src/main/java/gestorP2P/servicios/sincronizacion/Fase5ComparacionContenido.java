@@ -3,7 +3,7 @@ package gestorP2P.servicios.sincronizacion;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import configuracion.Configuracion;
 import conexion.p2p.interfaces.IGestorConexiones;
 import dominio.clienteServidor.Archivo;
 import dominio.clienteServidor.Canal;
@@ -12,17 +12,18 @@ import dominio.clienteServidor.Usuario;
 import dominio.clienteServidor.relaciones.CanalInvitacion;
 import dominio.clienteServidor.relaciones.CanalMiembro;
 import dominio.merkletree.IMerkleEntity;
-import dto.comunicacion.DTORequest;
 import logger.LoggerCentral;
 import repositorio.clienteServidor.*;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
-// ✅ NUEVO: Imports para deduplicación
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Fase 5: Comparación de Contenido
@@ -42,8 +43,9 @@ import java.util.Set;
  * NOTA: La estrategia "más reciente gana" es apropiada para datos que se modifican.
  * Si necesitas inmutabilidad (ej: logs de auditoría), cambiar a "más antiguo gana".
  *
- * ✅ MEJORADO: Ahora con deduplicación de respuestas para evitar procesar múltiples
- * respuestas del mismo ID desde diferentes peers.
+ * Las entidades se piden al peer en lotes (sync_compare_entities) y cada lote recibido
+ * se resuelve completo: primero se decide qué versiones remotas ganan y luego se
+ * guardan todas en una única transacción.
  */
 public class Fase5ComparacionContenido {
 
@@ -55,8 +57,10 @@ public class Fase5ComparacionContenido {
     private static final String AZUL = "\u001B[34m";
     private static final String RESET = "\u001B[0m";
 
-    private final IGestorConexiones gestor;
+    public static final String ACCION_LOTE = "sync_compare_entities";
+
     private final Gson gson;
+    private final ControlLotes lotes;
 
     private final UsuarioRepositorio repoUsuario;
     private final CanalRepositorio repoCanal;
@@ -65,16 +69,11 @@ public class Fase5ComparacionContenido {
     private final ArchivoRepositorio repoArchivo;
     private final CanalInvitacionRepositorio repoInvitacion; // ✅ NUEVO REPOSITORIO
 
-    // Control de comparaciones pendientes
-    private final AtomicInteger comparacionesPendientes = new AtomicInteger(0);
-    private volatile String tipoEnComparacion = null;
-
-    // ✅ NUEVO: Deduplicación de respuestas
-    private final Set<String> idsYaProcesados = ConcurrentHashMap.newKeySet();
-
     public Fase5ComparacionContenido(IGestorConexiones gestor, Gson gson) {
-        this.gestor = gestor;
         this.gson = gson;
+        Configuracion config = Configuracion.getInstance();
+        this.lotes = new ControlLotes(gestor, ACCION_LOTE,
+                config.getSyncLoteTamano(), config.getSyncLoteMaxEnVuelo());
         this.repoUsuario = new UsuarioRepositorio();
         this.repoCanal = new CanalRepositorio();
         this.repoMiembro = new CanalMiembroRepositorio();
@@ -84,114 +83,147 @@ public class Fase5ComparacionContenido {
     }
 
     /**
-     * Inicia la comparación de contenido para todas las entidades de un tipo.
+     * Inicia la comparación de contenido de las entidades de un tipo que difieren con un peer.
      */
-    public void iniciarComparaciones(String tipo, JsonArray idsRemotos) {
-        int cantidad = idsRemotos.size();
-        comparacionesPendientes.set(cantidad);
-        tipoEnComparacion = tipo;
-
-        // ✅ NUEVO: Limpiar IDs procesados de la ronda anterior
-        idsYaProcesados.clear();
-
-        LoggerCentral.info(TAG, CYAN + String.format("🔍 Iniciando %d comparaciones de contenido para %s",
-            cantidad, tipo) + RESET);
-
-        for (JsonElement el : idsRemotos) {
-            String idRemoto = el.getAsString();
-            solicitarParaComparacion(tipo, idRemoto);
-        }
+    public void iniciarComparaciones(String tipo, List<String> ids, String peerId) {
+        int cantidadLotes = lotes.iniciar(tipo, ids, peerId);
+        LoggerCentral.info(TAG, CYAN + String.format("🔍 Iniciando %d comparaciones de contenido para %s con %s (%d lotes)",
+            ids.size(), tipo, peerId, cantidadLotes) + RESET);
     }
 
     /**
-     * Solicita una entidad específica para comparación de contenido.
+     * Registra la respuesta a un lote y pide el siguiente.
+     *
+     * @return true si ya llegaron todos los lotes del tipo
      */
-    private void solicitarParaComparacion(String tipo, String id) {
-        LoggerCentral.info(TAG, AZUL + String.format("Solicitando %s ID: %s para comparación", tipo, id) + RESET);
-
-        JsonObject payload = new JsonObject();
-        payload.addProperty("tipo", tipo);
-        payload.addProperty("id", id);
-        payload.addProperty("compararContenido", true);
-
-        DTORequest req = new DTORequest("sync_compare_entity", payload);
-        String jsonReq = gson.toJson(req);
-
-        gestor.broadcast(jsonReq);
+    public boolean confirmarLote(String tipo, String peerId) {
+        return lotes.confirmar(tipo, peerId);
     }
 
-    /**
-     * ✅ MEJORADO: Verifica si ya se procesó este ID en esta ronda de comparaciones.
-     * Esto evita procesar múltiples respuestas del mismo ID desde diferentes peers.
-     */
-    public boolean yaFueProcesado(String tipo, String id) {
-        String clave = tipo + ":" + id;
-        return !idsYaProcesados.add(clave); // add() retorna false si ya existía
+    public boolean hayLotesEnCurso(String tipo, String peerId) {
+        return lotes.hayEnCurso(tipo, peerId);
     }
 
     /**
-     * Compara una entidad remota con la local y resuelve conflictos.
+     * Compara un lote de entidades remotas con las locales y guarda en una única
+     * transacción las versiones remotas que ganan. Sirve tanto para las entidades
+     * faltantes (Fase 4) como para las que difieren (Fase 5).
      *
-     * @return true si hubo cambios, false si no
+     * @return Cantidad de entidades guardadas
      */
-    public boolean compararYResolver(String tipo, JsonElement dataRemota) {
-        boolean huboCambios = false;
+    public int resolverLote(String tipo, JsonArray entidadesRemotas) {
+        if (entidadesRemotas == null || entidadesRemotas.size() == 0) {
+            return 0;
+        }
 
         try {
-            LoggerCentral.info(TAG, AZUL + "=== Comparando " + tipo + " ===" + RESET);
+            LoggerCentral.info(TAG, AZUL + String.format("=== Comparando lote de %d %s ===", entidadesRemotas.size(), tipo) + RESET);
 
             switch (tipo) {
                 case "USUARIO":
-                    Usuario usuarioRemoto = gson.fromJson(dataRemota, Usuario.class);
-                    huboCambios = compararUsuario(usuarioRemoto);
-                    break;
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, Usuario.class, repoUsuario::buscarPorIds, this::compararUsuario),
+                        repoUsuario::guardarLote, repoUsuario::guardar);
 
                 case "CANAL":
-                    Canal canalRemoto = gson.fromJson(dataRemota, Canal.class);
-                    huboCambios = compararCanal(canalRemoto);
-                    break;
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, Canal.class, repoCanal::buscarPorIds, this::compararCanal),
+                        repoCanal::guardarLote, repoCanal::guardar);
 
                 case "CANAL_MIEMBRO":  // ✅ CORREGIDO: era "MIEMBRO", ahora coincide con Fase1
-                    CanalMiembro miembroRemoto = gson.fromJson(dataRemota, CanalMiembro.class);
-                    huboCambios = compararMiembro(miembroRemoto);
-                    break;
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, CanalMiembro.class, repoMiembro::buscarPorIds, this::compararMiembro),
+                        repoMiembro::guardarLote, repoMiembro::guardar);
 
                 case "MENSAJE":
-                    Mensaje mensajeRemoto = gson.fromJson(dataRemota, Mensaje.class);
-                    huboCambios = compararMensaje(mensajeRemoto);
-                    break;
+                    // Por la escritura agrupada de la sincronización (separada de los envíos de chat en vivo).
+                    // Ya reintenta fila a fila los lotes revertidos, así que aquí no hay segundo reintento
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, Mensaje.class, repoMensaje::buscarPorIds, this::compararMensaje),
+                        repoMensaje::guardarAgrupados, null);
 
                 case "ARCHIVO":
-                    Archivo archivoRemoto = gson.fromJson(dataRemota, Archivo.class);
-                    huboCambios = compararArchivo(archivoRemoto);
-                    break;
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, Archivo.class, repoArchivo::buscarPorIds, this::compararArchivo),
+                        repoArchivo::guardarLote, repoArchivo::guardar);
 
                 case "CANAL_INVITACION":
-                    CanalInvitacion invitacionRemota = gson.fromJson(dataRemota, CanalInvitacion.class);
-                    huboCambios = compararInvitacion(invitacionRemota);
-                    break;
+                    return guardarGanadores(tipo, seleccionarGanadores(entidadesRemotas, CanalInvitacion.class, repoInvitacion::buscarPorIds, this::compararInvitacion),
+                        repoInvitacion::guardarLote, repoInvitacion::guardarOActualizar);
 
                 default:
                     LoggerCentral.warn(TAG, AMARILLO + "Tipo no soportado para comparación: " + tipo + RESET);
             }
 
         } catch (Exception e) {
-            LoggerCentral.error(TAG, ROJO + "Error comparando " + tipo + ": " + e.getMessage() + RESET);
+            LoggerCentral.error(TAG, ROJO + "Error comparando lote de " + tipo + ": " + e.getMessage() + RESET);
             e.printStackTrace();
         }
 
-        return huboCambios;
+        return 0;
+    }
+
+    /**
+     * Deserializa el lote, lee las versiones locales con una sola consulta por clave
+     * primaria y se queda con las entidades remotas que deben guardarse.
+     */
+    private <T extends IMerkleEntity> List<T> seleccionarGanadores(JsonArray entidadesRemotas, Class<T> clase,
+                                                                  Function<List<String>, List<T>> buscarLocales,
+                                                                  BiPredicate<T, T> remotoGana) {
+        List<T> remotos = new ArrayList<>(entidadesRemotas.size());
+        List<String> ids = new ArrayList<>(entidadesRemotas.size());
+        for (JsonElement el : entidadesRemotas) {
+            T remoto = gson.fromJson(el, clase);
+            remotos.add(remoto);
+            ids.add(remoto.getId());
+        }
+
+        Map<String, T> locales = new HashMap<>();
+        for (T local : buscarLocales.apply(ids)) {
+            locales.put(local.getId(), local);
+        }
+
+        List<T> ganadores = new ArrayList<>();
+        for (T remoto : remotos) {
+            if (remotoGana.test(locales.get(remoto.getId()), remoto)) {
+                ganadores.add(remoto);
+            }
+        }
+        return ganadores;
+    }
+
+    /**
+     * Guarda los ganadores en una única transacción. Si el lote se revierte (p. ej. una
+     * fila cuyo canal o usuario aún no existe), se reintenta fila a fila para que una
+     * sola entidad no bloquee al resto; las que fallen se traerán en la siguiente ronda.
+     *
+     * @param guardarUno Reintento por entidad, o null si guardarLote ya aísla las filas que fallan
+     */
+    private <T> int guardarGanadores(String tipo, List<T> ganadores,
+                                     Function<List<T>, Integer> guardarLote, Predicate<T> guardarUno) {
+        if (ganadores.isEmpty()) {
+            LoggerCentral.debug(TAG, VERDE + "  ✓ Sin cambios que aplicar para " + tipo + RESET);
+            return 0;
+        }
+
+        int guardados = guardarLote.apply(ganadores);
+        if (guardados == 0 && guardarUno != null) {
+            LoggerCentral.warn(TAG, AMARILLO + "  ⚠ Lote de " + tipo + " revertido. Reintentando entidad por entidad..." + RESET);
+            for (T entidad : ganadores) {
+                if (guardarUno.test(entidad)) {
+                    guardados++;
+                }
+            }
+        }
+
+        LoggerCentral.info(TAG, VERDE + String.format("  ✓ %d/%d %s guardados", guardados, ganadores.size(), tipo) + RESET);
+        return guardados;
     }
 
     /**
      * Compara dos usuarios campo por campo.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararUsuario(Usuario remoto) {
-        Usuario local = repoUsuario.buscarPorId(remoto.getId());
+    private boolean compararUsuario(Usuario local, Usuario remoto) {
 
         if (local == null) {
-            LoggerCentral.warn(TAG, AMARILLO + "Usuario no existe localmente. Guardando..." + RESET);
-            repoUsuario.guardar(remoto);
+            LoggerCentral.debug(TAG, AMARILLO + "Usuario no existe localmente. Guardando..." + RESET);
             return true;
         }
 
@@ -231,7 +263,6 @@ public class Fase5ComparacionContenido {
             return resolverConflictoTemporal(
                 local.getFechaCreacion(),
                 remoto.getFechaCreacion(),
-                () -> repoUsuario.guardar(remoto),
                 "Usuario"
             );
         }
@@ -242,18 +273,13 @@ public class Fase5ComparacionContenido {
 
     /**
      * Compara canales campo por campo.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararCanal(Canal remoto) {
-        // Buscar en la lista de entidades
-        List<? extends IMerkleEntity> canales = repoCanal.obtenerTodosParaSync();
-        Canal local = (Canal) canales.stream()
-            .filter(c -> c.getId().equals(remoto.getId()))
-            .findFirst()
-            .orElse(null);
+    private boolean compararCanal(Canal local, Canal remoto) {
 
         if (local == null) {
-            LoggerCentral.warn(TAG, AMARILLO + "Canal no existe localmente. Guardando..." + RESET);
-            repoCanal.guardar(remoto);
+            LoggerCentral.debug(TAG, AMARILLO + "Canal no existe localmente. Guardando..." + RESET);
             return true;
         }
 
@@ -272,7 +298,6 @@ public class Fase5ComparacionContenido {
             return resolverConflictoTemporal(
                 local.getFechaCreacion(),
                 remoto.getFechaCreacion(),
-                () -> repoCanal.guardar(remoto),
                 "Canal"
             );
         }
@@ -283,18 +308,13 @@ public class Fase5ComparacionContenido {
 
     /**
      * Compara miembros campo por campo.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararMiembro(CanalMiembro remoto) {
-        // Buscar en la lista de entidades
-        List<? extends IMerkleEntity> miembros = repoMiembro.obtenerTodosParaSync();
-        CanalMiembro local = (CanalMiembro) miembros.stream()
-            .filter(m -> m.getId().equals(remoto.getId()))
-            .findFirst()
-            .orElse(null);
+    private boolean compararMiembro(CanalMiembro local, CanalMiembro remoto) {
 
         if (local == null) {
-            LoggerCentral.warn(TAG, AMARILLO + "Miembro no existe localmente. Guardando..." + RESET);
-            repoMiembro.guardar(remoto);
+            LoggerCentral.debug(TAG, AMARILLO + "Miembro no existe localmente. Guardando..." + RESET);
             return true;
         }
 
@@ -314,7 +334,6 @@ public class Fase5ComparacionContenido {
         // Si hay diferencias, simplemente guardar el remoto (ya que no hay timestamp)
         if (hayDiferencias) {
             LoggerCentral.warn(TAG, ROJO + "  ⚠ Actualizando con versión remota..." + RESET);
-            repoMiembro.guardar(remoto);
             return true;
         }
 
@@ -324,18 +343,13 @@ public class Fase5ComparacionContenido {
 
     /**
      * Compara mensajes campo por campo.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararMensaje(Mensaje remoto) {
-        // Buscar en la lista de entidades
-        List<? extends IMerkleEntity> mensajes = repoMensaje.obtenerTodosParaSync();
-        Mensaje local = (Mensaje) mensajes.stream()
-            .filter(m -> m.getId().equals(remoto.getId()))
-            .findFirst()
-            .orElse(null);
+    private boolean compararMensaje(Mensaje local, Mensaje remoto) {
 
         if (local == null) {
-            LoggerCentral.warn(TAG, AMARILLO + "Mensaje no existe localmente. Guardando..." + RESET);
-            repoMensaje.guardar(remoto);
+            LoggerCentral.debug(TAG, AMARILLO + "Mensaje no existe localmente. Guardando..." + RESET);
             return true;
         }
 
@@ -358,7 +372,6 @@ public class Fase5ComparacionContenido {
             return resolverConflictoTemporal(
                 local.getFechaEnvio(),
                 remoto.getFechaEnvio(),
-                () -> repoMensaje.guardar(remoto),
                 "Mensaje"
             );
         }
@@ -369,14 +382,14 @@ public class Fase5ComparacionContenido {
 
     /**
      * Compara archivos campo por campo.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararArchivo(Archivo remoto) {
+    private boolean compararArchivo(Archivo local, Archivo remoto) {
         try {
-            Archivo local = repoArchivo.buscarPorId(java.util.UUID.fromString(remoto.getId()));
 
             if (local == null) {
-                LoggerCentral.warn(TAG, AMARILLO + "Archivo no existe localmente. Guardando..." + RESET);
-                repoArchivo.guardar(remoto);
+                LoggerCentral.debug(TAG, AMARILLO + "Archivo no existe localmente. Guardando..." + RESET);
                 return true;
             }
 
@@ -408,7 +421,6 @@ public class Fase5ComparacionContenido {
             // Si hay diferencias, guardar el remoto
             if (hayDiferencias) {
                 LoggerCentral.warn(TAG, ROJO + "  ⚠ Actualizando con versión remota..." + RESET);
-                repoArchivo.guardar(remoto);
                 return true;
             }
 
@@ -422,14 +434,14 @@ public class Fase5ComparacionContenido {
 
     /**
      * ✅ MEJORADO: Compara dos invitaciones de canal.
-     * Ahora compara todos los campos y usa guardarOActualizar para sincronización completa.
+     * Ahora compara todos los campos; el guardado por lotes actualiza la invitación completa.
+     *
+     * @return true si la versión remota debe guardarse
      */
-    private boolean compararInvitacion(CanalInvitacion remoto) {
-        CanalInvitacion local = repoInvitacion.obtenerPorId(remoto.getIdUUID());
+    private boolean compararInvitacion(CanalInvitacion local, CanalInvitacion remoto) {
 
         if (local == null) {
-            LoggerCentral.warn(TAG, AMARILLO + "Invitación no existe localmente. Guardando..." + RESET);
-            repoInvitacion.guardarOActualizar(remoto);
+            LoggerCentral.debug(TAG, AMARILLO + "Invitación no existe localmente. Guardando..." + RESET);
             return true;
         }
 
@@ -466,7 +478,6 @@ public class Fase5ComparacionContenido {
             return resolverConflictoTemporal(
                 local.getFechaCreacion(),
                 remoto.getFechaCreacion(),
-                () -> repoInvitacion.guardarOActualizar(remoto),
                 "CanalInvitacion"
             );
         }
@@ -480,17 +491,14 @@ public class Fase5ComparacionContenido {
      * Resuelve conflicto basándose en timestamps.
      * ✅ REGLA CORRECTA: La versión MÁS RECIENTE gana (última modificación del usuario).
      */
-    private boolean resolverConflictoTemporal(Instant fechaLocal, Instant fechaRemota,
-                                              Runnable guardarRemoto, String tipoEntidad) {
+    private boolean resolverConflictoTemporal(Instant fechaLocal, Instant fechaRemota, String tipoEntidad) {
         LoggerCentral.info(TAG, AZUL + "  Comparando timestamps:" + RESET);
         LoggerCentral.info(TAG, "    Local:  " + fechaLocal);
         LoggerCentral.info(TAG, "    Remoto: " + fechaRemota);
 
         if (fechaRemota.isAfter(fechaLocal)) {
             // ✅ CORRECTO: Remoto es MÁS RECIENTE → Actualizar
-            LoggerCentral.warn(TAG, ROJO + "  ⚠ Versión REMOTA es más reciente. Actualizando..." + RESET);
-            guardarRemoto.run();
-            LoggerCentral.info(TAG, VERDE + "  ✓ " + tipoEntidad + " actualizado" + RESET);
+            LoggerCentral.warn(TAG, ROJO + "  ⚠ Versión REMOTA de " + tipoEntidad + " es más reciente. Se actualizará." + RESET);
             return true;
         } else if (fechaRemota.isBefore(fechaLocal)) {
             // ✅ CORRECTO: Local es MÁS RECIENTE → Mantener local
@@ -502,41 +510,4 @@ public class Fase5ComparacionContenido {
             return false;
         }
     }
-
-    /**
-     * ✅ MEJORADO: Decrementa el contador de comparaciones pendientes de forma thread-safe.
-     *
-     * @return true si ya no hay comparaciones pendientes
-     */
-    public boolean decrementarComparacion() {
-        int restantes = comparacionesPendientes.decrementAndGet();
-
-        // ✅ NUEVO: Evitar que el contador baje de cero
-        if (restantes < 0) {
-            LoggerCentral.warn(TAG, AMARILLO + "⚠️ Contador de comparaciones fue negativo, ajustando a 0" + RESET);
-            comparacionesPendientes.set(0);
-            return true;
-        }
-
-        LoggerCentral.info(TAG, CYAN + "Comparaciones restantes: " + restantes + RESET);
-        return restantes <= 0;
-    }
-
-    /**
-     * Resetea el contador de comparaciones.
-     */
-    public void resetearComparaciones() {
-        comparacionesPendientes.set(0);
-        tipoEnComparacion = null;
-        // ✅ NUEVO: También limpiar IDs procesados
-        idsYaProcesados.clear();
-    }
-
-    public int getComparacionesPendientes() {
-        return comparacionesPendientes.get();
-    }
-
-    public String getTipoEnComparacion() {
-        return tipoEnComparacion;
-    }
 }
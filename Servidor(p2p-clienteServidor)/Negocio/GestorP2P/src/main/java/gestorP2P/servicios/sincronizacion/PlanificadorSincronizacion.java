@@ -0,0 +1,188 @@
+package gestorP2P.servicios.sincronizacion;
+
+import configuracion.Configuracion;
+import logger.LoggerCentral;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Planificador de Sincronización
+ *
+ * Decide CUÁNDO se sincroniza, en lugar de lanzar una ronda completa por cada escritura:
+ *
+ * 1. Los cambios locales se agrupan por tipo de entidad y, tras {@code sync.debounce.ms}
+ *    sin cambios nuevos (o como mucho {@code sync.debounce.max.ms}), se avisa a los peers
+ *    con los tipos modificados para que ellos pidan los datos.
+ * 2. Las peticiones de ronda (avisos de peers, conexiones, sincronización manual) se
+ *    agrupan igual y, si llegan durante una ronda, quedan encoladas para cuando termine.
+ * 3. Cada {@code sync.antientropia.segundos} se lanza una ronda completa de anti-entropía.
+ *
+ * Todo el estado se toca únicamente desde el hilo del planificador, sin locks.
+ */
+public class PlanificadorSincronizacion {
+
+    private static final String TAG = "PlanificadorSync";
+    private static final String AMARILLO = "\u001B[33m";
+    private static final String CYAN = "\u001B[36m";
+    private static final String RESET = "\u001B[0m";
+
+    private final ScheduledExecutorService executor;
+    private final BooleanSupplier iniciarRonda;
+    private final Consumer<Set<String>> avisarCambios;
+    private final long debounceMs;
+    private final long debounceMaxMs;
+
+    // Cambios locales pendientes de avisar
+    private final Set<String> tiposCambiados = new LinkedHashSet<>();
+    private long primerCambio;
+    private ScheduledFuture<?> avisoProgramado;
+
+    // Rondas
+    private ScheduledFuture<?> rondaProgramada;
+    private boolean rondaEnCurso = false;
+    private boolean rondaEncolada = false;
+
+    /**
+     * @param iniciarRonda  Lanza una ronda; devuelve false si no se pudo iniciar (p. ej. sin peers)
+     * @param avisarCambios Envía a los peers los tipos con cambios locales
+     */
+    public PlanificadorSincronizacion(BooleanSupplier iniciarRonda, Consumer<Set<String>> avisarCambios) {
+        Configuracion config = Configuracion.getInstance();
+        this.iniciarRonda = iniciarRonda;
+        this.avisarCambios = avisarCambios;
+        this.debounceMs = Math.max(0, config.getSyncDebounceMs());
+        this.debounceMaxMs = Math.max(debounceMs, config.getSyncDebounceMaxMs());
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Sync-Planificador");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long antientropia = config.getSyncAntientropiaSegundos();
+        if (antientropia > 0) {
+            executor.scheduleWithFixedDelay(this::antientropia, antientropia, antientropia, TimeUnit.SECONDS);
+        }
+        LoggerCentral.info(TAG, CYAN + String.format("Debounce %d-%d ms | anti-entropía cada %s",
+                debounceMs, debounceMaxMs, antientropia > 0 ? antientropia + " s" : "(desactivada)") + RESET);
+    }
+
+    /**
+     * Registra un cambio local de un tipo de entidad. Los cambios se agrupan y se
+     * avisan a los peers en un único mensaje.
+     */
+    public void registrarCambio(String tipo) {
+        ejecutar(() -> {
+            long ahora = System.currentTimeMillis();
+            if (tiposCambiados.isEmpty()) {
+                primerCambio = ahora;
+            }
+            tiposCambiados.add(tipo);
+
+            if (avisoProgramado != null) {
+                avisoProgramado.cancel(false);
+            }
+            long espera = Math.max(0, Math.min(debounceMs, primerCambio + debounceMaxMs - ahora));
+            avisoProgramado = executor.schedule(this::avisar, espera, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Pide una ronda de sincronización tras la ventana de agrupación. Varias
+     * peticiones seguidas producen una sola ronda.
+     */
+    public void solicitarRonda() {
+        ejecutar(() -> programarRonda(debounceMs));
+    }
+
+    /**
+     * Pide una ronda de sincronización sin esperar la ventana de agrupación.
+     */
+    public void solicitarRondaInmediata() {
+        ejecutar(() -> programarRonda(0));
+    }
+
+    /**
+     * Lo llama el coordinador al cerrar una ronda. Si llegaron peticiones durante
+     * la ronda, o el coordinador pide repetirla, se programa la siguiente.
+     */
+    public void rondaTerminada(boolean repetir) {
+        ejecutar(() -> {
+            rondaEnCurso = false;
+            if (rondaEncolada || repetir) {
+                rondaEncolada = false;
+                programarRonda(debounceMs);
+            }
+        });
+    }
+
+    /**
+     * Detiene el planificador. Los cambios aún no avisados se descartan: la
+     * anti-entropía de los peers los recogerá.
+     */
+    public void detener() {
+        executor.shutdownNow();
+    }
+
+    private void avisar() {
+        avisoProgramado = null;
+        if (tiposCambiados.isEmpty()) {
+            return;
+        }
+        Set<String> tipos = new LinkedHashSet<>(tiposCambiados);
+        tiposCambiados.clear();
+        LoggerCentral.debug(TAG, "Avisando cambios locales: " + tipos);
+        try {
+            avisarCambios.accept(tipos);
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, "Error avisando cambios: " + e.getMessage());
+        }
+    }
+
+    private void antientropia() {
+        LoggerCentral.debug(TAG, "Ronda de anti-entropía");
+        programarRonda(0);
+    }
+
+    private void programarRonda(long espera) {
+        if (rondaEnCurso) {
+            rondaEncolada = true;
+            return;
+        }
+        if (rondaProgramada != null && !rondaProgramada.isDone()) {
+            if (espera > 0 || rondaProgramada.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                return;
+            }
+            rondaProgramada.cancel(false);
+        }
+        rondaProgramada = executor.schedule(this::lanzarRonda, espera, TimeUnit.MILLISECONDS);
+    }
+
+    private void lanzarRonda() {
+        rondaProgramada = null;
+        if (rondaEnCurso) {
+            rondaEncolada = true;
+            return;
+        }
+        try {
+            rondaEnCurso = iniciarRonda.getAsBoolean();
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, "Error iniciando ronda: " + e.getMessage());
+            rondaEnCurso = false;
+        }
+    }
+
+    private void ejecutar(Runnable tarea) {
+        try {
+            executor.execute(tarea);
+        } catch (Exception e) {
+            LoggerCentral.warn(TAG, AMARILLO + "Planificador detenido, petición ignorada" + RESET);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package gestorP2P.servicios.sincronizacion;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import configuracion.Configuracion;
+import conexion.p2p.interfaces.IGestorConexiones;
+import dominio.merkletree.IMerkleEntity;
+import dominio.p2p.Peer;
+import dto.comunicacion.DTORequest;
+import dto.p2p.DTOPeerDetails;
+import logger.LoggerCentral;
+import repositorio.p2p.PeerRepositorio;
+import repositorio.p2p.ReplicacionLogRepositorio;
+import repositorio.p2p.ReplicacionLogRepositorio.Entrada;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicación por deltas
+ *
+ * Difunde cada escritura local a los peers conectados en cuanto ocurre, sin esperar
+ * a una ronda de sincronización. Cada nodo numera sus escrituras con una secuencia
+ * propia (log por origen) y los receptores:
+ *
+ * 1. Aplican las entradas en orden de secuencia y confirman con un ACK acumulativo.
+ * 2. Descartan duplicados y guardan aparte las que llegan adelantadas.
+ * 3. Ante un hueco piden al origen el tramo que falta (sync_delta_pedir).
+ *
+ * El emisor reenvía el tramo sin confirmar a los peers cuyo ACK no avanza. El
+ * descenso Merkle sigue siendo la vía de reparación: cubre el historial anterior al
+ * primer contacto con un origen y las entradas ya podadas del log.
+ */
+public class ReplicadorDeltas {
+
+    private static final String TAG = "ReplicadorDeltas";
+    private static final String VERDE = "\u001B[32m";
+    private static final String AMARILLO = "\u001B[33m";
+    private static final String CYAN = "\u001B[36m";
+    private static final String RESET = "\u001B[0m";
+
+    public static final String ACCION_DELTA = "sync_delta";
+    public static final String ACCION_PEDIR = "sync_delta_pedir";
+
+    private static final int MAX_ENTRADAS_POR_ENVIO = 200;
+    private static final int MAX_ADELANTADAS_POR_ORIGEN = 1000;
+
+    private final IGestorConexiones gestor;
+    private final Gson gson;
+    private final CoordinadorSincronizacion coordinador;
+    private final ReplicacionLogRepositorio log;
+    private final ScheduledExecutorService executor;
+    private final long intervaloReintentoMs;
+    private final long retencion;
+
+    private volatile String origenLocal;
+
+    // Lado emisor: última secuencia confirmada por cada peer y la vista en la revisión anterior
+    private final Map<String, Long> confirmadas = new ConcurrentHashMap<>();
+    private final Map<String, Long> confirmadasRevisionAnterior = new HashMap<>();
+    // Secuencia hasta la que ya se podó el log local (solo la toca el hilo del executor)
+    private long podadaHasta = 0;
+
+    // Lado receptor: estado de cada origen remoto
+    private final Map<String, EstadoOrigen> origenes = new ConcurrentHashMap<>();
+
+    public ReplicadorDeltas(IGestorConexiones gestor, Gson gson, CoordinadorSincronizacion coordinador) {
+        Configuracion config = Configuracion.getInstance();
+        this.gestor = gestor;
+        this.gson = gson;
+        this.coordinador = coordinador;
+        this.log = ReplicacionLogRepositorio.getInstance();
+        this.intervaloReintentoMs = Math.max(100, config.getSyncDeltaReintentoMs());
+        this.retencion = Math.max(MAX_ENTRADAS_POR_ENVIO, config.getSyncDeltaRetencion());
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Sync-Deltas");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::revisar, intervaloReintentoMs, intervaloReintentoMs, TimeUnit.MILLISECONDS);
+    }
+
+    // =========================================================================
+    // LADO EMISOR
+    // =========================================================================
+
+    /**
+     * Registra una escritura local en el log y la difunde a los peers conectados.
+     *
+     * @return false si aún no se conoce la identidad del nodo (el llamador debe
+     *         recurrir al aviso de cambios)
+     */
+    public boolean publicar(String tipo, String entidadId) {
+        String origen = obtenerOrigenLocal();
+        if (origen == null || entidadId == null) {
+            return false;
+        }
+        executor.execute(() -> {
+            long secuencia = log.agregar(origen, tipo, entidadId);
+            if (secuencia < 0) {
+                coordinador.registrarCambioLocal(tipo);
+                return;
+            }
+            LoggerCentral.debug(TAG, String.format("Delta %s#%d %s/%s", origen, secuencia, tipo, entidadId));
+            List<Entrada> entradas = new ArrayList<>();
+            entradas.add(new Entrada(origen, secuencia, tipo, entidadId));
+            gestor.broadcastPeticion(new DTORequest(ACCION_DELTA, construirEnvio(origen, entradas)));
+        });
+        return true;
+    }
+
+    /**
+     * Registra el ACK acumulativo de un peer (respuesta a sync_delta).
+     */
+    public void procesarConfirmacion(JsonObject ack, String peerId) {
+        if (!ack.get("origen").getAsString().equals(origenLocal)) {
+            return;
+        }
+        confirmadas.merge(peerId, ack.get("confirmada").getAsLong(), Math::max);
+    }
+
+    /**
+     * Responde sync_delta_pedir con el tramo pedido del log local.
+     * Incluye la primera secuencia disponible para que el peer detecte tramos podados.
+     */
+    public JsonObject responderPedido(JsonObject pedido) {
+        String origen = pedido.get("origen").getAsString();
+        if (!origen.equals(origenLocal)) {
+            return null;
+        }
+        long despuesDe = pedido.get("desde").getAsLong();
+        long hasta = pedido.get("hasta").getAsLong();
+        int limite = (int) Math.max(0, Math.min(MAX_ENTRADAS_POR_ENVIO, hasta - despuesDe - 1));
+
+        JsonObject respuesta = construirEnvio(origen, log.leerDesde(origen, despuesDe, limite));
+        respuesta.addProperty("primera", log.primeraSecuencia(origen));
+        return respuesta;
+    }
+
+    /**
+     * Formato: {origen, entradas: [{secuencia, tipo, entidad}]}. Se envía el estado
+     * actual de cada entidad; si ya no existe, la entrada viaja sin entidad.
+     */
+    private JsonObject construirEnvio(String origen, List<Entrada> entradas) {
+        Map<String, Set<String>> idsPorTipo = new LinkedHashMap<>();
+        for (Entrada e : entradas) {
+            idsPorTipo.computeIfAbsent(e.getTipo(), t -> new HashSet<>()).add(e.getEntidadId());
+        }
+        Map<String, IMerkleEntity> entidades = new HashMap<>();
+        idsPorTipo.forEach((tipo, ids) -> {
+            for (IMerkleEntity entidad : coordinador.getFase1().buscarEntidades(tipo, ids)) {
+                entidades.put(tipo + "|" + entidad.getId(), entidad);
+            }
+        });
+
+        JsonArray lista = new JsonArray();
+        for (Entrada e : entradas) {
+            JsonObject item = new JsonObject();
+            item.addProperty("secuencia", e.getSecuencia());
+            item.addProperty("tipo", e.getTipo());
+            IMerkleEntity entidad = entidades.get(e.getTipo() + "|" + e.getEntidadId());
+            if (entidad != null) {
+                item.add("entidad", gson.toJsonTree(entidad));
+            }
+            lista.add(item);
+        }
+
+        JsonObject envio = new JsonObject();
+        envio.addProperty("origen", origen);
+        envio.add("entradas", lista);
+        return envio;
+    }
+
+    // =========================================================================
+    // LADO RECEPTOR
+    // =========================================================================
+
+    /**
+     * Procesa un sync_delta recibido.
+     *
+     * @return ACK acumulativo {origen, confirmada}
+     */
+    public JsonObject recibir(JsonObject envio, String peerId) {
+        String origen = envio.get("origen").getAsString();
+        long confirmada = procesarEntradas(origen, envio.getAsJsonArray("entradas"), peerId, 0);
+
+        JsonObject ack = new JsonObject();
+        ack.addProperty("origen", origen);
+        ack.addProperty("confirmada", confirmada);
+        return ack;
+    }
+
+    /**
+     * Procesa la respuesta a un sync_delta_pedir.
+     */
+    public void recibirTramo(JsonObject tramo, String peerId) {
+        procesarEntradas(tramo.get("origen").getAsString(), tramo.getAsJsonArray("entradas"),
+                peerId, tramo.get("primera").getAsLong());
+    }
+
+    /**
+     * Aplica en orden las entradas contiguas y pide el tramo que falte.
+     *
+     * @param primeraDisponible Primera secuencia que aún conserva el origen (0 si se desconoce)
+     * @return Última secuencia aplicada sin huecos
+     */
+    private long procesarEntradas(String origen, JsonArray entradas, String peerId, long primeraDisponible) {
+        if (origen.equals(origenLocal)) {
+            return 0;
+        }
+        EstadoOrigen estado = origenes.computeIfAbsent(origen, o -> new EstadoOrigen(log.obtenerProgreso(o)));
+        boolean reparar = false;
+        List<JsonObject> aplicables = new ArrayList<>();
+        long confirmada;
+
+        synchronized (estado) {
+            estado.peerId = peerId;
+            for (JsonElement el : entradas) {
+                JsonObject entrada = el.getAsJsonObject();
+                long secuencia = entrada.get("secuencia").getAsLong();
+                if (estado.aplicada < 0) {
+                    // Primer contacto: el historial previo lo trae la sincronización Merkle
+                    estado.aplicada = secuencia - 1;
+                    reparar = true;
+                }
+                if (secuencia > estado.aplicada && estado.adelantadas.size() < MAX_ADELANTADAS_POR_ORIGEN) {
+                    estado.adelantadas.put(secuencia, entrada);
+                }
+            }
+            if (primeraDisponible > estado.aplicada + 1) {
+                // El origen ya podó ese tramo
+                LoggerCentral.warn(TAG, AMARILLO + String.format("Tramo %d-%d de %s ya no existe; se repara por Merkle",
+                        estado.aplicada + 1, primeraDisponible - 1, origen) + RESET);
+                estado.aplicada = primeraDisponible - 1;
+                estado.adelantadas.headMap(primeraDisponible).clear();
+                reparar = true;
+            }
+
+            while (!estado.adelantadas.isEmpty() && estado.adelantadas.firstKey() == estado.aplicada + 1) {
+                aplicables.add(estado.adelantadas.pollFirstEntry().getValue());
+                estado.aplicada++;
+            }
+            // Aplicar con el lock del origen mantiene el orden de sus escrituras
+            if (!aplicables.isEmpty()) {
+                aplicar(aplicables);
+                log.guardarProgreso(origen, estado.aplicada);
+            }
+            if (!estado.adelantadas.isEmpty()) {
+                pedirHueco(origen, estado, false);
+            }
+            confirmada = estado.aplicada;
+        }
+
+        if (reparar) {
+            coordinador.iniciarSincronizacion();
+        }
+        return confirmada;
+    }
+
+    /**
+     * Aplica las entradas agrupando las consecutivas del mismo tipo en un solo lote.
+     */
+    private void aplicar(List<JsonObject> entradas) {
+        String tipoActual = null;
+        JsonArray lote = new JsonArray();
+        for (JsonObject entrada : entradas) {
+            String tipo = entrada.get("tipo").getAsString();
+            if (!tipo.equals(tipoActual) && lote.size() > 0) {
+                coordinador.aplicarDeltas(tipoActual, lote);
+                lote = new JsonArray();
+            }
+            tipoActual = tipo;
+            if (entrada.has("entidad")) {
+                lote.add(entrada.get("entidad"));
+            }
+        }
+        if (lote.size() > 0) {
+            coordinador.aplicarDeltas(tipoActual, lote);
+        }
+        LoggerCentral.debug(TAG, CYAN + "Aplicados " + entradas.size() + " deltas" + RESET);
+    }
+
+    /**
+     * Pide al peer las entradas entre la última aplicada y la primera adelantada.
+     * Se invoca con el lock del origen tomado.
+     */
+    private void pedirHueco(String origen, EstadoOrigen estado, boolean insistir) {
+        long ahora = System.currentTimeMillis();
+        if (!insistir && ahora - estado.ultimoPedido < intervaloReintentoMs) {
+            return;
+        }
+        estado.ultimoPedido = ahora;
+
+        JsonObject pedido = new JsonObject();
+        pedido.addProperty("origen", origen);
+        pedido.addProperty("desde", estado.aplicada);
+        pedido.addProperty("hasta", estado.adelantadas.firstKey());
+        LoggerCentral.info(TAG, AMARILLO + String.format("Hueco en deltas de %s: %d-%d, pidiendo a %s",
+                origen, estado.aplicada + 1, estado.adelantadas.firstKey() - 1, estado.peerId) + RESET);
+        gestor.enviarPeticion(new DTOPeerDetails(estado.peerId, null, 0, null, null),
+                new DTORequest(ACCION_PEDIR, pedido));
+    }
+
+    // =========================================================================
+    // REVISIÓN PERIÓDICA
+    // =========================================================================
+
+    /**
+     * Reenvía el tramo sin confirmar a los peers cuyo ACK no avanzó desde la revisión
+     * anterior, poda lo que ya no hace falta y vuelve a pedir los huecos que siguen abiertos.
+     */
+    private void revisar() {
+        try {
+            reenviarSinConfirmar();
+            podarLog();
+            for (Map.Entry<String, EstadoOrigen> e : origenes.entrySet()) {
+                EstadoOrigen estado = e.getValue();
+                synchronized (estado) {
+                    if (!estado.adelantadas.isEmpty()
+                            && System.currentTimeMillis() - estado.ultimoPedido >= intervaloReintentoMs) {
+                        pedirHueco(e.getKey(), estado, true);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LoggerCentral.error(TAG, "Error en revisión de deltas: " + e.getMessage());
+        }
+    }
+
+    private void reenviarSinConfirmar() {
+        String origen = origenLocal;
+        if (origen == null || confirmadas.isEmpty()) {
+            return;
+        }
+        Set<String> conectados = new HashSet<>();
+        for (DTOPeerDetails peer : gestor.obtenerDetallesPeers()) {
+            conectados.add(peer.getId());
+        }
+        confirmadas.keySet().retainAll(conectados);
+        confirmadasRevisionAnterior.keySet().retainAll(conectados);
+
+        long ultima = log.ultimaSecuencia(origen);
+        for (Map.Entry<String, Long> e : confirmadas.entrySet()) {
+            String peerId = e.getKey();
+            long confirmada = e.getValue();
+            Long anterior = confirmadasRevisionAnterior.put(peerId, confirmada);
+            if (confirmada >= ultima || anterior == null || anterior != confirmada) {
+                continue;
+            }
+            List<Entrada> tramo = log.leerDesde(origen, confirmada, MAX_ENTRADAS_POR_ENVIO);
+            if (tramo.isEmpty()) {
+                continue;
+            }
+            LoggerCentral.info(TAG, AMARILLO + String.format("Reenviando %d deltas sin confirmar a %s (desde %d)",
+                    tramo.size(), peerId, confirmada + 1) + RESET);
+            gestor.enviarPeticion(new DTOPeerDetails(peerId, null, 0, null, null),
+                    new DTORequest(ACCION_DELTA, construirEnvio(origen, tramo)));
+        }
+    }
+
+    /**
+     * Poda el log local hasta donde lo permiten la retención (para peers desconectados
+     * o nuevos) y el ACK acumulativo más bajo de los peers conectados. Solo borra
+     * cuando ese límite avanza.
+     */
+    private void podarLog() {
+        // Hasta la primera escritura publicada no hay origen local (ni log que crezca)
+        String origen = origenLocal;
+        if (origen == null) {
+            return;
+        }
+        long limite = log.ultimaSecuencia(origen) - retencion;
+        for (long confirmada : confirmadas.values()) {
+            limite = Math.min(limite, confirmada);
+        }
+        if (limite <= podadaHasta) {
+            return;
+        }
+        int borradas = log.podarHasta(origen, limite);
+        if (borradas >= 0) {
+            podadaHasta = limite;
+            if (borradas > 0) {
+                LoggerCentral.debug(TAG, String.format("Log de deltas podado hasta %d (%d entradas)", limite, borradas));
+            }
+        }
+    }
+
+    // =========================================================================
+    // IDENTIDAD Y CICLO DE VIDA
+    // =========================================================================
+
+    /**
+     * El origen es el UUID del peer local, registrado por ServicioGestionRed al arrancar.
+     */
+    private String obtenerOrigenLocal() {
+        if (origenLocal == null) {
+            Configuracion config = Configuracion.getInstance();
+            Peer local = new PeerRepositorio().obtenerPorSocketInfo(config.getPeerHost() + ":" + config.getPeerPuerto());
+            if (local == null || local.getId() == null) {
+                return null;
+            }
+            origenLocal = local.getId().toString();
+            LoggerCentral.info(TAG, VERDE + "✓ Origen de deltas: " + origenLocal + RESET);
+        }
+        return origenLocal;
+    }
+
+    public void detener() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Estado de recepción de un origen remoto.
+     */
+    private static class EstadoOrigen {
+        long aplicada;
+        long ultimoPedido;
+        String peerId;
+        final TreeMap<Long, JsonObject> adelantadas = new TreeMap<>();
+
+        EstadoOrigen(long aplicada) {
+            this.aplicada = aplicada;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package gestorP2P.servicios.transferencia;
+
+import logger.LoggerCentral;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Descarga de un archivo desde varios peers a la vez (enjambre).
+ *
+ * - Cada peer que responde al descubrimiento indica qué chunks tiene ({@link #agregarFuente}).
+ * - Los chunks se reparten entre los peers que los tienen, con una ventana de chunks
+ *   en vuelo por peer: crece con cada chunk recibido y se reduce a la mitad cuando el
+ *   peer se estanca. Un chunk sin respuesta dentro del plazo vuelve a repartirse, y un
+ *   peer que se estanca varias veces seguidas deja de usarse.
+ * - Cada chunk se escribe directamente en su posición del archivo parcial.
+ *
+ * Los chunks llegan desde varios hilos de red: el estado se protege con el monitor
+ * de la descarga. El envío de las peticiones queda a cargo del llamador.
+ *
+ * Los chunks ya recibidos se sirven a otros peers con {@link #leerChunk}, que lee del
+ * canal abierto bajo el mismo monitor que el cierre: una vez cerrada la descarga nadie
+ * lee del parcial, así que moverlo a Bucket/ no se cruza con ninguna lectura.
+ */
+public class DescargaEnjambre {
+
+    private static final String TAG = "DescargaEnjambre";
+    private static final String AMARILLO = "\u001B[33m";
+    private static final String RESET = "\u001B[0m";
+
+    // Estancamientos seguidos tras los que un peer deja de usarse
+    private static final int MAX_ESTANCAMIENTOS = 3;
+    private static final int VENTANA_INICIAL = 2;
+
+    private final String fileId;
+    private final String nombreArchivo;
+    private final String hashEsperado;
+    private final long tamanio;
+    private final int tamanoChunk;
+    private final int totalChunks;
+    private final int ventanaMaxima;
+    private final Path rutaParcial;
+    private final FileChannel canal;
+
+    private final BitSet recibidos = new BitSet();
+    // Chunks recibidos o asignados a algún peer
+    private final BitSet ocupados = new BitSet();
+    private final Map<String, Fuente> fuentes = new LinkedHashMap<>();
+
+    private final long inicio = System.currentTimeMillis();
+    private long ultimoDescubrimiento;
+    private int descubrimientos;
+    private int ultimoProgresoNotificado = -1;
+    private boolean cerrada = false;
+
+    public DescargaEnjambre(String fileId, String nombreArchivo, long tamanio, String hashEsperado,
+                            int tamanoChunk, int ventanaMaxima, Path rutaParcial) throws IOException {
+        this.fileId = fileId;
+        this.nombreArchivo = nombreArchivo;
+        this.tamanio = Math.max(0, tamanio);
+        this.hashEsperado = hashEsperado;
+        this.tamanoChunk = tamanoChunk;
+        this.totalChunks = (int) ((this.tamanio + tamanoChunk - 1) / tamanoChunk);
+        this.ventanaMaxima = Math.max(1, ventanaMaxima);
+        this.rutaParcial = rutaParcial;
+        Files.createDirectories(rutaParcial.getParent());
+        this.canal = FileChannel.open(rutaParcial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // --- FUENTES ---
+
+    /**
+     * Añade (o actualiza) un peer que tiene los chunks de los rangos indicados.
+     *
+     * @param rangos Pares [desde, hasta] inclusivos, numerados desde 1
+     */
+    public synchronized void agregarFuente(String peerId, List<int[]> rangos) {
+        Fuente fuente = fuentes.computeIfAbsent(peerId, Fuente::new);
+        for (int[] rango : rangos) {
+            int desde = Math.max(1, rango[0]);
+            int hasta = Math.min(totalChunks, rango[1]);
+            if (desde <= hasta) {
+                fuente.chunks.set(desde, hasta + 1);
+            }
+        }
+    }
+
+    public synchronized int cantidadFuentes() {
+        return fuentes.size();
+    }
+
+    public synchronized void marcarDescubrimiento() {
+        ultimoDescubrimiento = System.currentTimeMillis();
+        descubrimientos++;
+    }
+
+    public synchronized long getUltimoDescubrimiento() {
+        return ultimoDescubrimiento;
+    }
+
+    public synchronized int getDescubrimientos() {
+        return descubrimientos;
+    }
+
+    // --- REPARTO ---
+
+    /**
+     * Asigna chunks libres a los peers con hueco en su ventana, por turnos para
+     * repartir la carga. Las peticiones devueltas ya cuentan como en vuelo.
+     */
+    public synchronized List<Peticion> asignar() {
+        List<Peticion> peticiones = new ArrayList<>();
+        if (cerrada) return peticiones;
+
+        long ahora = System.currentTimeMillis();
+        boolean asignado = true;
+        while (asignado) {
+            asignado = false;
+            for (Fuente fuente : fuentes.values()) {
+                if (fuente.enVuelo.size() >= fuente.ventana) continue;
+                int chunk = siguienteLibre(fuente);
+                if (chunk < 0) continue;
+                ocupados.set(chunk);
+                fuente.enVuelo.put(chunk, ahora);
+                peticiones.add(new Peticion(fuente.peerId, chunk));
+                asignado = true;
+            }
+        }
+        return peticiones;
+    }
+
+    private int siguienteLibre(Fuente fuente) {
+        for (int i = ocupados.nextClearBit(1); i <= totalChunks; i = ocupados.nextClearBit(i + 1)) {
+            if (fuente.chunks.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Libera los chunks sin respuesta dentro del plazo para que otro peer los sirva.
+     *
+     * @return Cantidad de chunks liberados
+     */
+    public synchronized int revisarEstancados(long plazoMs) {
+        long limite = System.currentTimeMillis() - plazoMs;
+        int liberados = 0;
+        Iterator<Fuente> it = fuentes.values().iterator();
+        while (it.hasNext()) {
+            Fuente fuente = it.next();
+            List<Integer> vencidos = new ArrayList<>();
+            for (Map.Entry<Integer, Long> e : fuente.enVuelo.entrySet()) {
+                if (e.getValue() < limite) {
+                    vencidos.add(e.getKey());
+                }
+            }
+            if (vencidos.isEmpty()) continue;
+
+            for (int chunk : vencidos) {
+                fuente.enVuelo.remove(chunk);
+                liberar(chunk);
+            }
+            liberados += vencidos.size();
+            fuente.estancamientos++;
+            fuente.ventana = Math.max(1, fuente.ventana / 2);
+
+            if (fuente.estancamientos >= MAX_ESTANCAMIENTOS) {
+                fuente.enVuelo.keySet().forEach(this::liberar);
+                liberados += fuente.enVuelo.size();
+                it.remove();
+                LoggerCentral.warn(TAG, AMARILLO + "Peer " + fuente.peerId + " descartado como fuente de " +
+                        nombreArchivo + " (sin respuesta)" + RESET);
+            }
+        }
+        return liberados;
+    }
+
+    private void liberar(int chunk) {
+        if (!recibidos.get(chunk)) {
+            ocupados.clear(chunk);
+        }
+    }
+
+    // --- RECEPCIÓN ---
+
+    /**
+     * Escribe un chunk en su posición del archivo parcial.
+     *
+     * @return true si el chunk era nuevo; false si era un duplicado o no es válido
+     */
+    public synchronized boolean registrarChunk(String peerId, int chunkNumber, byte[] datos) throws IOException {
+        Fuente fuente = peerId != null ? fuentes.get(peerId) : null;
+        if (fuente != null && fuente.enVuelo.remove(chunkNumber) != null) {
+            fuente.ventana = Math.min(ventanaMaxima, fuente.ventana + 1);
+            fuente.estancamientos = 0;
+        }
+        if (cerrada || chunkNumber < 1 || chunkNumber > totalChunks || recibidos.get(chunkNumber)) {
+            return false;
+        }
+        long posicion = (long) (chunkNumber - 1) * tamanoChunk;
+        if (datos.length != Math.min(tamanoChunk, tamanio - posicion)) {
+            LoggerCentral.warn(TAG, "Chunk " + chunkNumber + " de " + nombreArchivo + " con tamaño inválido: " + datos.length);
+            liberar(chunkNumber);
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(datos);
+        while (buffer.hasRemaining()) {
+            canal.write(buffer, posicion + buffer.position());
+        }
+        recibidos.set(chunkNumber);
+        ocupados.set(chunkNumber);
+        if (fuente != null) {
+            fuente.aportados++;
+        }
+        // Si también estaba asignado a otro peer, su hueco queda libre
+        for (Fuente otra : fuentes.values()) {
+            otra.enVuelo.remove(chunkNumber);
+        }
+        return true;
+    }
+
+    /**
+     * Lee un chunk ya recibido del archivo parcial, para servirlo a otros peers.
+     *
+     * @return Bytes del chunk, o null si aún no llegó o la descarga ya se cerró
+     */
+    public synchronized byte[] leerChunk(int chunkNumber) throws IOException {
+        if (cerrada || chunkNumber < 1 || chunkNumber > totalChunks || !recibidos.get(chunkNumber)) {
+            return null;
+        }
+        long posicion = (long) (chunkNumber - 1) * tamanoChunk;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(tamanoChunk, tamanio - posicion));
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                throw new IOException("Parcial de " + nombreArchivo + " más corto de lo esperado");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Rangos [desde, hasta] de chunks ya recibidos, para servirlos a otros peers.
+     */
+    public synchronized List<int[]> rangosRecibidos() {
+        List<int[]> rangos = new ArrayList<>();
+        for (int desde = recibidos.nextSetBit(1); desde >= 0; ) {
+            int hasta = recibidos.nextClearBit(desde) - 1;
+            rangos.add(new int[]{desde, hasta});
+            desde = recibidos.nextSetBit(hasta + 1);
+        }
+        return rangos;
+    }
+
+    public synchronized int chunksRecibidos() {
+        return recibidos.cardinality();
+    }
+
+    public synchronized boolean completa() {
+        return recibidos.cardinality() == totalChunks;
+    }
+
+    /**
+     * Chunks aportados por cada peer que sigue como fuente (para el resumen de la descarga).
+     */
+    public synchronized Map<String, Integer> chunksAportados() {
+        Map<String, Integer> resumen = new LinkedHashMap<>();
+        fuentes.values().forEach(f -> resumen.put(f.peerId, f.aportados));
+        return resumen;
+    }
+
+    // --- CIERRE ---
+
+    /**
+     * Cierra el archivo parcial y calcula su SHA-256 leyéndolo por bloques.
+     */
+    public synchronized String cerrarYCalcularHash() throws IOException {
+        cerrada = true;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 no disponible", e);
+        }
+        canal.force(false);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long posicion = 0;
+        while (posicion < tamanio) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            if (leidos < 0) break;
+            buffer.flip();
+            digest.update(buffer);
+            posicion += leidos;
+        }
+        canal.close();
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            String h = Integer.toHexString(0xff & b);
+            if (h.length() == 1) hex.append('0');
+            hex.append(h);
+        }
+        return hex.toString();
+    }
+
+    public synchronized void descartar() {
+        cerrada = true;
+        try {
+            canal.close();
+            Files.deleteIfExists(rutaParcial);
+        } catch (IOException e) {
+            LoggerCentral.warn(TAG, "No se pudo borrar el parcial de " + nombreArchivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registra el porcentaje notificado.
+     *
+     * @return false si ese porcentaje ya se había notificado
+     */
+    public synchronized boolean marcarProgresoNotificado(int progreso) {
+        if (progreso == ultimoProgresoNotificado) return false;
+        ultimoProgresoNotificado = progreso;
+        return true;
+    }
+
+    // --- GETTERS ---
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public String getNombreArchivo() {
+        return nombreArchivo;
+    }
+
+    public String getHashEsperado() {
+        return hashEsperado;
+    }
+
+    public long getTamanio() {
+        return tamanio;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public Path getRutaParcial() {
+        return rutaParcial;
+    }
+
+    public long getInicio() {
+        return inicio;
+    }
+
+    /**
+     * Petición de un chunk a un peer.
+     */
+    public static class Peticion {
+        private final String peerId;
+        private final int chunkNumber;
+
+        Peticion(String peerId, int chunkNumber) {
+            this.peerId = peerId;
+            this.chunkNumber = chunkNumber;
+        }
+
+        public String getPeerId() {
+            return peerId;
+        }
+
+        public int getChunkNumber() {
+            return chunkNumber;
+        }
+    }
+
+    /**
+     * Peer que sirve chunks de la descarga.
+     */
+    private static class Fuente {
+        final String peerId;
+        final BitSet chunks = new BitSet();
+        // Chunk -> momento en que se pidió
+        final Map<Integer, Long> enVuelo = new HashMap<>();
+        int ventana = VENTANA_INICIAL;
+        int estancamientos;
+        int aportados;
+
+        Fuente(String peerId) {
+            this.peerId = peerId;
+        }
+    }
+}
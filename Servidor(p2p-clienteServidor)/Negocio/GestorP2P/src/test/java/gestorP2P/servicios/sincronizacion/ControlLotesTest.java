@@ -0,0 +1,127 @@
+package gestorP2P.servicios.sincronizacion;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import conexion.p2p.interfaces.IGestorConexiones;
+import dto.comunicacion.DTORequest;
+import dto.p2p.DTOPeerDetails;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlLotesTest {
+
+    private static final String ACCION = "sync_pedir_entidades";
+
+    private final List<Enviado> enviados = new ArrayList<>();
+    private final ControlLotes control = new ControlLotes(gestorQueRegistra(), ACCION, 3, 2);
+
+    @Test
+    void respetaLaVentanaDeLotesEnVuelo() {
+        assertEquals(4, control.iniciar("MENSAJE", ids(10), "peer-1"));
+        assertTrue(control.hayEnCurso("MENSAJE", "peer-1"));
+        assertEquals(2, enviados.size());
+
+        assertFalse(control.confirmar("MENSAJE", "peer-1"));
+        assertEquals(3, enviados.size());
+        assertFalse(control.confirmar("MENSAJE", "peer-1"));
+        assertEquals(4, enviados.size());
+
+        // Ya no quedan lotes por enviar: las respuestas solo cierran el envío
+        assertFalse(control.confirmar("MENSAJE", "peer-1"));
+        assertEquals(4, enviados.size());
+        assertTrue(control.confirmar("MENSAJE", "peer-1"));
+        assertFalse(control.hayEnCurso("MENSAJE", "peer-1"));
+    }
+
+    @Test
+    void reparteLosIdsEnOrdenYSinRepetir() {
+        control.iniciar("CANAL", ids(10), "peer-1");
+        for (int i = 0; i < 4; i++) {
+            control.confirmar("CANAL", "peer-1");
+        }
+
+        assertEquals(List.of(3, 3, 3, 1), enviados.stream().map(e -> e.ids.size()).collect(Collectors.toList()));
+        List<String> todos = new ArrayList<>();
+        enviados.forEach(e -> todos.addAll(e.ids));
+        assertEquals(ids(10), todos);
+
+        Enviado primero = enviados.get(0);
+        assertEquals("peer-1", primero.peerId);
+        assertEquals(ACCION, primero.accion);
+        assertEquals("CANAL", primero.tipo);
+    }
+
+    @Test
+    void sinIdsNoHayEnvio() {
+        assertEquals(0, control.iniciar("USUARIO", List.of(), "peer-1"));
+        assertFalse(control.hayEnCurso("USUARIO", "peer-1"));
+        assertTrue(enviados.isEmpty());
+    }
+
+    @Test
+    void cadaPeerYTipoTieneSuPropiaVentana() {
+        control.iniciar("MENSAJE", ids(9), "peer-1");
+        control.iniciar("CANAL", ids(9), "peer-1");
+        control.iniciar("MENSAJE", ids(9), "peer-2");
+        assertEquals(6, enviados.size());
+
+        control.confirmar("MENSAJE", "peer-2");
+        Enviado ultimo = enviados.get(enviados.size() - 1);
+        assertEquals("peer-2", ultimo.peerId);
+        assertEquals("MENSAJE", ultimo.tipo);
+        assertEquals(7, enviados.size());
+    }
+
+    @Test
+    void respuestasTardiasSeIgnoran() {
+        control.iniciar("MENSAJE", ids(10), "peer-1");
+        control.cancelarTodo();
+
+        assertFalse(control.hayEnCurso("MENSAJE", "peer-1"));
+        assertFalse(control.confirmar("MENSAJE", "peer-1"));
+        assertFalse(control.confirmar("CANAL", "peer-desconocido"));
+        assertEquals(2, enviados.size());
+    }
+
+    private static List<String> ids(int cantidad) {
+        List<String> ids = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            ids.add("id-" + i);
+        }
+        return ids;
+    }
+
+    /** Gestor de conexiones que solo registra las peticiones enviadas. */
+    private IGestorConexiones gestorQueRegistra() {
+        return (IGestorConexiones) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{IGestorConexiones.class}, (proxy, metodo, args) -> {
+                    if (metodo.getName().equals("enviarPeticion")) {
+                        enviados.add(new Enviado((DTOPeerDetails) args[0], (DTORequest) args[1]));
+                    }
+                    return null;
+                });
+    }
+
+    private static class Enviado {
+        final String peerId;
+        final String accion;
+        final String tipo;
+        final List<String> ids = new ArrayList<>();
+
+        Enviado(DTOPeerDetails peer, DTORequest peticion) {
+            JsonObject payload = peticion.getPayload().getAsJsonObject();
+            this.peerId = peer.getId();
+            this.accion = peticion.getAction();
+            this.tipo = payload.get("tipo").getAsString();
+            for (JsonElement id : payload.getAsJsonArray("ids")) {
+                ids.add(id.getAsString());
+            }
+        }
+    }
+}
@@ -74,6 +74,8 @@ public class ServicioCliente implements IServicioClienteControl {
         LoggerCentral.info(TAG, "Registrando ServicioNotificacionCliente...");
         this.servicioNotificacion = new ServicioNotificacionCliente();
         fachada.registrarServicio(servicioNotificacion);
+        // Los cambios de presencia se avisan como invalidación de contactos
+        this.servicioAuth.setServicioNotificacion(servicioNotificacion);
 
         // 3. Listar Contactos (Todos los usuarios del sistema)
         LoggerCentral.info(TAG, "Registrando ServicioListarContactos...");
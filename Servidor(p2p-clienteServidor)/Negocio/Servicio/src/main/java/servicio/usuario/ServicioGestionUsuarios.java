@@ -5,6 +5,7 @@ import dto.usuario.DTOCrearUsuario;
 import dto.vista.DTOUsuarioVista;
 import gestorUsuarios.GestorUsuarios;
 import gestorP2P.servicios.ServicioSincronizacionDatos;
+import gestorP2P.servicios.sincronizacion.Fase1ConstruccionArboles;
 import logger.LoggerCentral;
 
 import java.util.List;
@@ -50,7 +51,7 @@ public class ServicioGestionUsuarios {
             LoggerCentral.info(TAG, "✓ Usuario creado exitosamente con ID: " + resultado.getId());
 
             // 2. Sincronizar con la red P2P
-            sincronizarConRed("Usuario creado: " + resultado.getNombre());
+            sincronizarConRed(Fase1ConstruccionArboles.TIPO_USUARIO, "Usuario creado: " + resultado.getNombre());
 
             return resultado;
         } catch (Exception e) {
@@ -74,7 +75,7 @@ public class ServicioGestionUsuarios {
             LoggerCentral.info(TAG, "✓ Usuario actualizado exitosamente");
 
             // 2. Sincronizar con la red P2P
-            sincronizarConRed("Usuario actualizado: " + resultado.getId());
+            sincronizarConRed(Fase1ConstruccionArboles.TIPO_USUARIO, "Usuario actualizado: " + resultado.getId());
 
             return resultado;
         } catch (Exception e) {
@@ -146,7 +147,7 @@ public class ServicioGestionUsuarios {
 
             if (actualizado) {
                 // 2. Sincronizar con la red P2P
-                sincronizarConRed("Estado de usuario cambiado: " + id + " -> " + estado);
+                sincronizarConRed(Fase1ConstruccionArboles.TIPO_USUARIO, "Estado de usuario cambiado: " + id + " -> " + estado);
             }
 
             return actualizado;
@@ -179,7 +180,7 @@ public class ServicioGestionUsuarios {
             if (resultado) {
                 LoggerCentral.info(TAG, "✓ Archivo registrado exitosamente");
                 // Sincronizar con la red P2P
-                sincronizarConRed("Archivo registrado: " + fileId);
+                sincronizarConRed(Fase1ConstruccionArboles.TIPO_ARCHIVO, "Archivo registrado: " + fileId);
             }
 
             return resultado;
@@ -191,13 +192,14 @@ public class ServicioGestionUsuarios {
 
     /**
      * Método privado para sincronizar cambios con la red P2P
+     * @param tipo Tipo de entidad modificada (constantes TIPO_* de Fase1ConstruccionArboles)
      * @param descripcion Descripción del cambio realizado
      */
-    private void sincronizarConRed(String descripcion) {
+    private void sincronizarConRed(String tipo, String descripcion) {
         if (servicioSincronizacion != null) {
             LoggerCentral.info(TAG, "🔄 Iniciando sincronización P2P: " + descripcion);
             try {
-                servicioSincronizacion.forzarSincronizacion();
+                servicioSincronizacion.notificarCambioLocal(tipo);
                 LoggerCentral.info(TAG, "✓ Sincronización P2P activada exitosamente");
             } catch (Exception e) {
                 LoggerCentral.error(TAG, "⚠️ Error al sincronizar con red P2P: " + e.getMessage());
@@ -0,0 +1,177 @@
+package dominio.merkletree;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Árbol Merkle incremental de forma fija.
+ *
+ * A diferencia de {@link MerkleTree} (que se reconstruye ordenando y rehasheando todas
+ * las entidades), este índice reparte las hojas en {@link #CUBETAS} cubetas según el
+ * SHA-256 de su ID y mantiene encima un árbol de aridad {@link #ARIDAD} con
+ * {@link #NIVELES} niveles. Así:
+ * - La posición de una hoja no depende de las demás: insertar no desplaza nada.
+ * - Cada cubeta guarda la suma (mod 2^256) de los hashes de sus hojas, que se actualiza
+ *   en O(1) al insertar, modificar o eliminar una hoja.
+ * - Solo se recalculan los {@link #NIVELES} nodos del camino hasta la raíz.
+ *
+ * Todos los nodos calculan la misma raíz para el mismo conjunto de hojas, sin importar
+ * el orden en que se aplicaron los cambios.
+ */
+public class IndiceMerkle {
+
+    public static final int ARIDAD = 16;
+    public static final int NIVELES = 3;
+    public static final int CUBETAS = 4096; // ARIDAD ^ NIVELES
+    public static final String HASH_VACIO = "EMPTY";
+
+    private static final BigInteger MODULO = BigInteger.ONE.shiftLeft(256);
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+
+    private final BigInteger[] sumas = new BigInteger[CUBETAS];
+    private final int[] cantidades = new int[CUBETAS];
+
+    // niveles[0] = raíz, niveles[NIVELES] = hashes de cubeta. "" = subárbol vacío.
+    private final String[][] niveles = new String[NIVELES + 1][];
+    private long total;
+
+    public IndiceMerkle() {
+        Arrays.fill(sumas, BigInteger.ZERO);
+        int ancho = 1;
+        for (int n = 0; n <= NIVELES; n++) {
+            niveles[n] = new String[ancho];
+            Arrays.fill(niveles[n], "");
+            ancho *= ARIDAD;
+        }
+    }
+
+    // --- HASHING ---
+
+    /** Hash de hoja: mismo criterio que {@link MerkleNode} (SHA-256 hex de los datos). */
+    public static String hashHoja(IMerkleEntity entidad) {
+        return sha256Hex(entidad.getDatosParaHash());
+    }
+
+    /** Cubeta a la que pertenece un ID (primeros 12 bits del SHA-256 del ID). */
+    public static int cubetaDe(String id) {
+        byte[] h = DIGEST.get().digest(id.getBytes(StandardCharsets.UTF_8));
+        return ((h[0] & 0xff) << 4) | ((h[1] & 0xff) >>> 4);
+    }
+
+    public static String sha256Hex(String entrada) {
+        byte[] hash = DIGEST.get().digest(entrada.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    // --- ACTUALIZACIÓN ---
+
+    /**
+     * Aplica el cambio de una hoja y recalcula su camino hasta la raíz.
+     *
+     * @param hashAnterior Hash previo de la hoja, o null si es nueva.
+     * @param hashNuevo    Hash nuevo de la hoja, o null si se eliminó.
+     */
+    public synchronized void aplicar(String id, String hashAnterior, String hashNuevo) {
+        int cubeta = cubetaDe(id);
+        acumular(cubeta, hashAnterior, hashNuevo);
+        recalcularCamino(cubeta);
+    }
+
+    /**
+     * Añade una hoja ya hasheada sin recalcular el árbol. Pensado para la carga masiva
+     * desde la tabla de hojas; al terminar se debe invocar {@link #recalcularTodo()}.
+     */
+    public synchronized void cargarHoja(int cubeta, String hash) {
+        acumular(cubeta, null, hash);
+    }
+
+    public synchronized void recalcularTodo() {
+        for (int c = 0; c < CUBETAS; c++) {
+            niveles[NIVELES][c] = hashCubeta(c);
+        }
+        for (int n = NIVELES - 1; n >= 0; n--) {
+            for (int i = 0; i < niveles[n].length; i++) {
+                niveles[n][i] = hashNodo(n, i);
+            }
+        }
+    }
+
+    private void acumular(int cubeta, String hashAnterior, String hashNuevo) {
+        if (hashAnterior != null) {
+            sumas[cubeta] = sumas[cubeta].subtract(new BigInteger(hashAnterior, 16)).mod(MODULO);
+            cantidades[cubeta]--;
+            total--;
+        }
+        if (hashNuevo != null) {
+            sumas[cubeta] = sumas[cubeta].add(new BigInteger(hashNuevo, 16)).mod(MODULO);
+            cantidades[cubeta]++;
+            total++;
+        }
+    }
+
+    private void recalcularCamino(int cubeta) {
+        niveles[NIVELES][cubeta] = hashCubeta(cubeta);
+        int indice = cubeta;
+        for (int n = NIVELES - 1; n >= 0; n--) {
+            indice /= ARIDAD;
+            niveles[n][indice] = hashNodo(n, indice);
+        }
+    }
+
+    private String hashCubeta(int cubeta) {
+        if (cantidades[cubeta] == 0) return "";
+        return sha256Hex(sumas[cubeta].toString(16) + ":" + cantidades[cubeta]);
+    }
+
+    private String hashNodo(int nivel, int indice) {
+        String[] hijos = niveles[nivel + 1];
+        int desde = indice * ARIDAD;
+        StringBuilder sb = new StringBuilder(ARIDAD * 64);
+        for (int i = desde; i < desde + ARIDAD; i++) {
+            sb.append(hijos[i]);
+        }
+        return sb.length() == 0 ? "" : sha256Hex(sb.toString());
+    }
+
+    // --- CONSULTA ---
+
+    public synchronized String getRootHash() {
+        return total == 0 ? HASH_VACIO : niveles[0][0];
+    }
+
+    /** Hash de un nodo concreto ("" si su subárbol está vacío). */
+    public synchronized String getHash(int nivel, int indice) {
+        return niveles[nivel][indice];
+    }
+
+    /** Hashes de los {@link #ARIDAD} hijos de un nodo interno. */
+    public synchronized String[] getHashesHijos(int nivel, int indice) {
+        if (nivel < 0 || nivel >= NIVELES) {
+            throw new IllegalArgumentException("Nivel sin hijos: " + nivel);
+        }
+        return Arrays.copyOfRange(niveles[nivel + 1], indice * ARIDAD, (indice + 1) * ARIDAD);
+    }
+
+    public synchronized int getCantidadCubeta(int cubeta) {
+        return cantidades[cubeta];
+    }
+
+    public synchronized long getCantidad() {
+        return total;
+    }
+}
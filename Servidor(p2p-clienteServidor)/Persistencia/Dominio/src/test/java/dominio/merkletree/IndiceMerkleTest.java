@@ -0,0 +1,151 @@
+package dominio.merkletree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceMerkleTest {
+
+    @Test
+    void indiceVacioDevuelveHashVacio() {
+        IndiceMerkle indice = new IndiceMerkle();
+        assertEquals(IndiceMerkle.HASH_VACIO, indice.getRootHash());
+        assertEquals(0, indice.getCantidad());
+    }
+
+    @Test
+    void cubetaEsEstableYEstaEnRango() {
+        for (int i = 0; i < 1000; i++) {
+            String id = "id-" + i;
+            int cubeta = IndiceMerkle.cubetaDe(id);
+            assertTrue(cubeta >= 0 && cubeta < IndiceMerkle.CUBETAS, "Cubeta fuera de rango: " + cubeta);
+            assertEquals(cubeta, IndiceMerkle.cubetaDe(id));
+        }
+    }
+
+    @Test
+    void hashHojaEsSha256DeLosDatos() {
+        Entidad entidad = new Entidad("u-1", "u-1|ana|ana@correo");
+        String hash = IndiceMerkle.hashHoja(entidad);
+
+        assertEquals(64, hash.length());
+        assertEquals(IndiceMerkle.sha256Hex("u-1|ana|ana@correo"), hash);
+        // SHA-256("abc"), vector de prueba del estándar
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", IndiceMerkle.sha256Hex("abc"));
+    }
+
+    @Test
+    void raizNoDependeDelOrdenDeInsercion() {
+        List<String> ids = ids(300);
+        IndiceMerkle enOrden = new IndiceMerkle();
+        ids.forEach(id -> enOrden.aplicar(id, null, hash(id, 1)));
+
+        List<String> mezclados = new ArrayList<>(ids);
+        Collections.shuffle(mezclados, new Random(7));
+        IndiceMerkle desordenado = new IndiceMerkle();
+        mezclados.forEach(id -> desordenado.aplicar(id, null, hash(id, 1)));
+
+        assertEquals(enOrden.getRootHash(), desordenado.getRootHash());
+        assertEquals(300, desordenado.getCantidad());
+    }
+
+    @Test
+    void cambiarUnaHojaSoloAfectaASuCubeta() {
+        List<String> ids = ids(200);
+        IndiceMerkle indice = new IndiceMerkle();
+        ids.forEach(id -> indice.aplicar(id, null, hash(id, 1)));
+
+        String modificado = ids.get(0);
+        int cubeta = IndiceMerkle.cubetaDe(modificado);
+        int otra = (cubeta + 1) % IndiceMerkle.CUBETAS;
+        String raizAntes = indice.getRootHash();
+        String cubetaAntes = indice.getHash(IndiceMerkle.NIVELES, cubeta);
+        String otraAntes = indice.getHash(IndiceMerkle.NIVELES, otra);
+        int cantidadAntes = indice.getCantidadCubeta(cubeta);
+
+        indice.aplicar(modificado, hash(modificado, 1), hash(modificado, 2));
+
+        assertNotEquals(raizAntes, indice.getRootHash());
+        assertNotEquals(cubetaAntes, indice.getHash(IndiceMerkle.NIVELES, cubeta));
+        assertEquals(otraAntes, indice.getHash(IndiceMerkle.NIVELES, otra));
+        assertEquals(cantidadAntes, indice.getCantidadCubeta(cubeta));
+        assertEquals(200, indice.getCantidad());
+    }
+
+    @Test
+    void eliminarDeshaceLaInsercion() {
+        List<String> ids = ids(50);
+        IndiceMerkle indice = new IndiceMerkle();
+        ids.forEach(id -> indice.aplicar(id, null, hash(id, 1)));
+        String raiz = indice.getRootHash();
+
+        indice.aplicar("nuevo", null, hash("nuevo", 1));
+        assertNotEquals(raiz, indice.getRootHash());
+        indice.aplicar("nuevo", hash("nuevo", 1), null);
+        assertEquals(raiz, indice.getRootHash());
+
+        ids.forEach(id -> indice.aplicar(id, hash(id, 1), null));
+        assertEquals(IndiceMerkle.HASH_VACIO, indice.getRootHash());
+        assertEquals("", indice.getHash(IndiceMerkle.NIVELES, IndiceMerkle.cubetaDe(ids.get(0))));
+    }
+
+    @Test
+    void cargaMasivaCoincideConLaIncremental() {
+        List<String> ids = ids(500);
+        IndiceMerkle incremental = new IndiceMerkle();
+        ids.forEach(id -> incremental.aplicar(id, null, hash(id, 3)));
+
+        IndiceMerkle cargado = new IndiceMerkle();
+        ids.forEach(id -> cargado.cargarHoja(IndiceMerkle.cubetaDe(id), hash(id, 3)));
+        cargado.recalcularTodo();
+
+        assertEquals(incremental.getRootHash(), cargado.getRootHash());
+        assertEquals(incremental.getCantidad(), cargado.getCantidad());
+    }
+
+    @Test
+    void hijosDeUnNodoComponenSuHash() {
+        IndiceMerkle indice = new IndiceMerkle();
+        ids(100).forEach(id -> indice.aplicar(id, null, hash(id, 1)));
+
+        String[] hijos = indice.getHashesHijos(0, 0);
+        assertEquals(IndiceMerkle.ARIDAD, hijos.length);
+        assertEquals(IndiceMerkle.sha256Hex(String.join("", hijos)), indice.getRootHash());
+
+        assertThrows(IllegalArgumentException.class, () -> indice.getHashesHijos(IndiceMerkle.NIVELES, 0));
+        assertThrows(IllegalArgumentException.class, () -> indice.getHashesHijos(-1, 0));
+    }
+
+    private static List<String> ids(int cantidad) {
+        List<String> ids = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            ids.add("entidad-" + i);
+        }
+        return ids;
+    }
+
+    private static String hash(String id, int version) {
+        return IndiceMerkle.sha256Hex(id + "|v" + version);
+    }
+
+    private static class Entidad implements IMerkleEntity {
+        private final String id;
+        private final String datos;
+
+        Entidad(String id, String datos) {
+            this.id = id;
+            this.datos = datos;
+        }
+
+        @Override
+        public String getId() { return id; }
+
+        @Override
+        public String getDatosParaHash() { return datos; }
+    }
+}
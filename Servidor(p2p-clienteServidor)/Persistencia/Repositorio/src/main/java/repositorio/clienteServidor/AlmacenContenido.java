@@ -0,0 +1,171 @@
+package repositorio.clienteServidor;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * Almacén de contenido direccionado por SHA-256 dentro del Bucket.
+ *
+ * Cada contenido distinto se guarda una sola vez en {@code Bucket/.blobs/<aa>/<hash>}.
+ * Las rutas de siempre ({@code Bucket/<ruta_relativa>}) son enlaces duros a ese blob,
+ * así que el resto del código sigue leyendo los archivos por su ruta sin cambios y
+ * el disco solo guarda una copia. Si el sistema de archivos no admite enlaces duros
+ * se copia el contenido.
+ *
+ * Las referencias son las filas de {@code archivos} con ese hash
+ * ({@link ArchivoRepositorio#contarPorHash}). Al borrar una fila se quita su enlace
+ * y, sin referencias, también el blob.
+ */
+public class AlmacenContenido {
+
+    public static final String BUCKET_PATH = "./Bucket/";
+    private static final String BLOBS_PATH = BUCKET_PATH + ".blobs/";
+    private static final Pattern HASH_VALIDO = Pattern.compile("[0-9a-f]{64}");
+
+    private static AlmacenContenido instance;
+
+    private AlmacenContenido() {
+    }
+
+    public static synchronized AlmacenContenido getInstance() {
+        if (instance == null) {
+            instance = new AlmacenContenido();
+        }
+        return instance;
+    }
+
+    /**
+     * Indica si el contenido está en el almacén. Si no, busca una copia anterior al
+     * almacén entre las rutas indicadas (filas con el mismo hash) y la incorpora.
+     */
+    public boolean disponible(String hash, Collection<String> rutasConocidas) {
+        if (!esHashValido(hash)) return false;
+        Path blob = rutaBlob(hash);
+        if (Files.exists(blob)) return true;
+
+        if (rutasConocidas != null) {
+            for (String ruta : rutasConocidas) {
+                Path existente = Paths.get(BUCKET_PATH + ruta);
+                if (!Files.isRegularFile(existente)) continue;
+                try {
+                    Files.createDirectories(blob.getParent());
+                    enlazarOCopiar(blob, existente);
+                    System.out.println("[AlmacenContenido] Contenido existente incorporado: " + hash);
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("[AlmacenContenido] Error incorporando " + ruta + ": " + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Incorpora un archivo completo como contenido del hash. Si el contenido ya
+     * existía, el archivo se descarta: solo queda una copia.
+     *
+     * @param origen Archivo temporal (p. ej. el parcial de una subida); deja de existir
+     */
+    public void incorporar(Path origen, String hash) throws IOException {
+        validar(hash);
+        Path blob = rutaBlob(hash);
+        if (Files.exists(blob)) {
+            Files.deleteIfExists(origen);
+            System.out.println("[AlmacenContenido] Contenido duplicado descartado: " + hash);
+            return;
+        }
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(origen, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(origen, blob, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Hace visible el contenido del hash en {@code Bucket/<rutaRelativa>}.
+     *
+     * @return false si el contenido no está en el almacén
+     */
+    public boolean enlazar(String hash, String rutaRelativa) throws IOException {
+        if (!esHashValido(hash)) return false;
+        Path blob = rutaBlob(hash);
+        if (!Files.exists(blob)) return false;
+
+        Path destino = Paths.get(BUCKET_PATH + rutaRelativa);
+        if (Files.exists(destino)) return true;
+        Files.createDirectories(destino.getParent());
+        try {
+            enlazarOCopiar(destino, blob);
+        } catch (FileAlreadyExistsException e) {
+            // Otro hilo lo enlazó primero
+        }
+        return true;
+    }
+
+    /**
+     * Lee un rango del contenido del hash (p. ej. para comprobar que un cliente lo tiene).
+     *
+     * @return Bytes del rango, o null si el contenido no está en el almacén
+     */
+    public byte[] leerRango(String hash, long offset, int longitud) throws IOException {
+        if (!esHashValido(hash)) return null;
+        Path blob = rutaBlob(hash);
+        if (!Files.exists(blob)) return null;
+        return LecturaRangos.leer(blob, offset, longitud);
+    }
+
+    /**
+     * Quita el enlace {@code Bucket/<rutaRelativa>} de una fila borrada y el blob del
+     * hash si ya no lo referencia ninguna fila.
+     */
+    public void liberar(String hash, String rutaRelativa, long referenciasRestantes) {
+        if (rutaRelativa != null) {
+            try {
+                Files.deleteIfExists(Paths.get(BUCKET_PATH + rutaRelativa));
+            } catch (IOException e) {
+                System.err.println("[AlmacenContenido] Error eliminando " + rutaRelativa + ": " + e.getMessage());
+            }
+        }
+        if (referenciasRestantes > 0 || !esHashValido(hash)) return;
+        try {
+            if (Files.deleteIfExists(rutaBlob(hash))) {
+                System.out.println("[AlmacenContenido] Contenido sin referencias eliminado: " + hash);
+            }
+        } catch (IOException e) {
+            System.err.println("[AlmacenContenido] Error eliminando contenido " + hash + ": " + e.getMessage());
+        }
+    }
+
+    public static boolean esHashValido(String hash) {
+        return hash != null && HASH_VALIDO.matcher(hash).matches();
+    }
+
+    private Path rutaBlob(String hash) {
+        return Paths.get(BLOBS_PATH + hash.substring(0, 2) + "/" + hash);
+    }
+
+    private void enlazarOCopiar(Path enlace, Path existente) throws IOException {
+        try {
+            Files.createLink(enlace, existente);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            // Sin enlaces duros (p. ej. otro volumen): se copia el contenido
+            Files.copy(existente, enlace);
+        }
+    }
+
+    private void validar(String hash) throws IOException {
+        if (!esHashValido(hash)) {
+            throw new IOException("Hash SHA-256 inválido: " + hash);
+        }
+    }
+}
@@ -12,10 +12,17 @@ import java.util.UUID;
 
 public class ArchivoRepositorio implements ISujeto {
     private final MySQLManager mysql;
+    private final IndiceMerkleRepositorio indiceMerkle;
     private final List<IObservador> observadores;
 
+    private static final String SQL_GUARDAR = "INSERT INTO archivos (id, file_id, nombre_archivo, ruta_relativa, mime_type, tamanio, hash_sha256, fecha_creacion, fecha_actualizacion) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE nombre_archivo=VALUES(nombre_archivo), ruta_relativa=VALUES(ruta_relativa), " +
+            "mime_type=VALUES(mime_type), tamanio=VALUES(tamanio), hash_sha256=VALUES(hash_sha256), fecha_actualizacion=VALUES(fecha_actualizacion)";
+
     public ArchivoRepositorio() {
         this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
         this.observadores = new ArrayList<>();
     }
 
@@ -48,40 +55,14 @@ public class ArchivoRepositorio implements ISujeto {
      * Guarda o actualiza un archivo en la BD
      */
     public boolean guardar(Archivo archivo) {
-        String sql = "INSERT INTO archivos (id, file_id, nombre_archivo, ruta_relativa, mime_type, tamanio, hash_sha256, fecha_creacion, fecha_actualizacion) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE nombre_archivo=VALUES(nombre_archivo), ruta_relativa=VALUES(ruta_relativa), " +
-                "mime_type=VALUES(mime_type), tamanio=VALUES(tamanio), hash_sha256=VALUES(hash_sha256), fecha_actualizacion=VALUES(fecha_actualizacion)";
-
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, archivo.getId().toString());
-            ps.setString(2, archivo.getFileId());
-            ps.setString(3, archivo.getNombreArchivo());
-            ps.setString(4, archivo.getRutaRelativa());
-            ps.setString(5, archivo.getMimeType());
-            ps.setLong(6, archivo.getTamanio());
-            ps.setString(7, archivo.getHashSHA256());
-            ps.setTimestamp(8, Timestamp.from(archivo.getFechaCreacion()));
-            ps.setTimestamp(9, Timestamp.from(archivo.getFechaUltimaActualizacion()));
-
-            boolean exitoso = ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            boolean exitoso = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_ARCHIVO,
+                    c -> EscrituraPorLotes.ejecutarUno(c, SQL_GUARDAR, archivo, this::asignarParametros),
+                    c -> List.of(archivo));
 
             if (exitoso) {
                 System.out.println("[RepoArchivo] ✓ Archivo guardado: " + archivo.getFileId());
-
-                // ✅ NUEVO: Notificar a observadores cuando se guarda un archivo
-                String tipoArchivo = determinarTipoArchivo(archivo.getMimeType());
-                notificarObservadores("ARCHIVO_PERSISTIDO", archivo);
-
-                // Notificación específica por tipo
-                if (tipoArchivo.equals("audio")) {
-                    notificarObservadores("AUDIO_PERSISTIDO", archivo);
-                    System.out.println("[RepoArchivo] 🔔 Audio persistido - notificando a observadores");
-                } else if (tipoArchivo.equals("texto")) {
-                    notificarObservadores("TEXTO_PERSISTIDO", archivo);
-                    System.out.println("[RepoArchivo] 🔔 Texto persistido - notificando a observadores");
-                }
+                notificarPersistido(archivo);
             }
 
             return exitoso;
@@ -91,6 +72,55 @@ public class ArchivoRepositorio implements ISujeto {
         }
     }
 
+    /**
+     * Guarda un lote de archivos en una única transacción (sincronización P2P).
+     * Los observadores se notifican solo si el lote se confirmó.
+     * @return Cantidad de archivos guardados, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<Archivo> archivos) {
+        if (archivos == null || archivos.isEmpty()) return 0;
+        try (Connection conn = mysql.getConnection()) {
+            indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_ARCHIVO,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, archivos, this::asignarParametros),
+                    c -> archivos);
+        } catch (SQLException e) {
+            System.err.println("[RepoArchivo] Error guardando lote de " + archivos.size() + " archivos: " + e.getMessage());
+            return 0;
+        }
+        System.out.println("[RepoArchivo] ✓ Lote de " + archivos.size() + " archivos guardado");
+        for (Archivo archivo : archivos) {
+            notificarPersistido(archivo);
+        }
+        return archivos.size();
+    }
+
+    private void asignarParametros(PreparedStatement ps, Archivo archivo) throws SQLException {
+        ps.setString(1, archivo.getId().toString());
+        ps.setString(2, archivo.getFileId());
+        ps.setString(3, archivo.getNombreArchivo());
+        ps.setString(4, archivo.getRutaRelativa());
+        ps.setString(5, archivo.getMimeType());
+        ps.setLong(6, archivo.getTamanio());
+        ps.setString(7, archivo.getHashSHA256());
+        ps.setTimestamp(8, Timestamp.from(archivo.getFechaCreacion()));
+        ps.setTimestamp(9, Timestamp.from(archivo.getFechaUltimaActualizacion()));
+    }
+
+    private void notificarPersistido(Archivo archivo) {
+        // ✅ NUEVO: Notificar a observadores cuando se guarda un archivo
+        String tipoArchivo = determinarTipoArchivo(archivo.getMimeType());
+        notificarObservadores("ARCHIVO_PERSISTIDO", archivo);
+
+        // Notificación específica por tipo
+        if (tipoArchivo.equals("audio")) {
+            notificarObservadores("AUDIO_PERSISTIDO", archivo);
+            System.out.println("[RepoArchivo] 🔔 Audio persistido - notificando a observadores");
+        } else if (tipoArchivo.equals("texto")) {
+            notificarObservadores("TEXTO_PERSISTIDO", archivo);
+            System.out.println("[RepoArchivo] 🔔 Texto persistido - notificando a observadores");
+        }
+    }
+
     /**
      * ✅ NUEVO: Actualiza un archivo existente y actualiza su timestamp automáticamente.
      */
@@ -99,18 +129,21 @@ public class ArchivoRepositorio implements ISujeto {
         archivo.setFechaUltimaActualizacion(java.time.Instant.now());
 
         String sql = "UPDATE archivos SET nombre_archivo=?, ruta_relativa=?, mime_type=?, tamanio=?, hash_sha256=?, fecha_actualizacion=? WHERE id=?";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, archivo.getNombreArchivo());
-            ps.setString(2, archivo.getRutaRelativa());
-            ps.setString(3, archivo.getMimeType());
-            ps.setLong(4, archivo.getTamanio());
-            ps.setString(5, archivo.getHashSHA256());
-            ps.setTimestamp(6, Timestamp.from(archivo.getFechaUltimaActualizacion()));
-            ps.setString(7, archivo.getId().toString());
-
-            int affected = ps.executeUpdate();
-            if (affected > 0) {
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_ARCHIVO, c -> {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, archivo.getNombreArchivo());
+                    ps.setString(2, archivo.getRutaRelativa());
+                    ps.setString(3, archivo.getMimeType());
+                    ps.setLong(4, archivo.getTamanio());
+                    ps.setString(5, archivo.getHashSHA256());
+                    ps.setTimestamp(6, Timestamp.from(archivo.getFechaUltimaActualizacion()));
+                    ps.setString(7, archivo.getId().toString());
+                    return ps.executeUpdate() > 0;
+                }
+                // file_id no lo toca el UPDATE: se relee la fila (en la transacción) para hashearla completa
+            }, c -> ConsultaPorIds.buscar(c, "SELECT * FROM archivos", "id", List.of(archivo.getId()), this::mapear));
+            if (ok) {
                 System.out.println("[RepoArchivo] ✓ Archivo actualizado con timestamp: " + archivo.getId());
 
                 // ✅ NUEVO: Notificar cuando se actualiza un archivo
@@ -121,7 +154,7 @@ public class ArchivoRepositorio implements ISujeto {
                     notificarObservadores("AUDIO_ACTUALIZADO", archivo);
                 }
             }
-            return affected > 0;
+            return ok;
         } catch (SQLException e) {
             System.err.println("[RepoArchivo] Error actualizando: " + e.getMessage());
             return false;
@@ -183,6 +216,58 @@ public class ArchivoRepositorio implements ISujeto {
         return null;
     }
 
+    /**
+     * Busca varios archivos por clave primaria (sincronización P2P).
+     * Los IDs que no existen se omiten.
+     */
+    public List<Archivo> buscarPorIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            return ConsultaPorIds.buscar(conn, "SELECT * FROM archivos", "id", ids, this::mapear);
+        } catch (SQLException e) {
+            System.err.println("[RepoArchivo] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Archivos con el contenido indicado (mismo SHA-256).
+     */
+    public List<Archivo> buscarPorHash(String hash) {
+        List<Archivo> lista = new ArrayList<>();
+        String sql = "SELECT * FROM archivos WHERE hash_sha256 = ?";
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lista.add(mapear(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[RepoArchivo] Error buscando por hash: " + e.getMessage());
+        }
+        return lista;
+    }
+
+    /**
+     * Referencias al contenido indicado: cuántas filas lo usan.
+     * Ante un error se devuelve -1 para no liberar contenido en uso.
+     */
+    public long contarPorHash(String hash) {
+        String sql = "SELECT COUNT(*) FROM archivos WHERE hash_sha256 = ?";
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.err.println("[RepoArchivo] Error contando referencias: " + e.getMessage());
+            return -1;
+        }
+    }
+
     /**
      * Verifica si un archivo existe por fileId
      */
@@ -231,11 +316,21 @@ public class ArchivoRepositorio implements ISujeto {
      * Elimina un archivo por fileId
      */
     public boolean eliminar(String fileId) {
+        Archivo existente = buscarPorFileId(fileId);
         String sql = "DELETE FROM archivos WHERE file_id = ?";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, fileId);
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.eliminar(conn, IndiceMerkleRepositorio.TIPO_ARCHIVO, c -> {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, fileId);
+                    return ps.executeUpdate() > 0;
+                }
+            }, existente != null ? List.of(existente.getId()) : List.of());
+            if (ok && existente != null) {
+                // Se quita su enlace en el Bucket y, si era la última referencia, el blob
+                String hash = existente.getHashSHA256();
+                AlmacenContenido.getInstance().liberar(hash, existente.getRutaRelativa(), hash != null ? contarPorHash(hash) : -1);
+            }
+            return ok;
         } catch (SQLException e) {
             System.err.println("[RepoArchivo] Error eliminando: " + e.getMessage());
             return false;
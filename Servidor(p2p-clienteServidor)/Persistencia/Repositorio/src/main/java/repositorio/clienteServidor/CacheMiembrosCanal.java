@@ -0,0 +1,79 @@
+package repositorio.clienteServidor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Miembros de cada canal en memoria (canalId -> ids de usuario).
+ *
+ * Un canal se carga de la BD la primera vez que se consulta; desde entonces lo
+ * mantiene al día {@link CanalMiembroRepositorio}, por donde pasan todas las altas
+ * (unirse, invitaciones aceptadas y la sincronización P2P). Así notificar un mensaje
+ * a un canal no consulta la BD.
+ */
+public class CacheMiembrosCanal {
+
+    private static CacheMiembrosCanal instance;
+
+    private final ConcurrentHashMap<String, Set<String>> miembrosPorCanal = new ConcurrentHashMap<>();
+    // Altas de canales aún no cargados; una carga que se cruza con una alta no se guarda
+    private final AtomicLong altasSinCargar = new AtomicLong();
+
+    private CacheMiembrosCanal() {
+    }
+
+    public static synchronized CacheMiembrosCanal getInstance() {
+        if (instance == null) {
+            instance = new CacheMiembrosCanal();
+        }
+        return instance;
+    }
+
+    /**
+     * Miembros del canal (vista de solo lectura). Si el canal no está en memoria se
+     * carga con {@code cargador}, fuera de cualquier lock. Si el cargador devuelve null
+     * (error de BD) no se guarda nada y se reintenta en la próxima consulta.
+     */
+    public Set<String> obtener(String canalId, Function<String, Set<String>> cargador) {
+        Set<String> miembros = miembrosPorCanal.get(canalId);
+        if (miembros == null) {
+            long antes = altasSinCargar.get();
+            Set<String> leidos = cargador.apply(canalId);
+            if (leidos == null) {
+                return Collections.emptySet();
+            }
+            Set<String> cargados = ConcurrentHashMap.newKeySet();
+            cargados.addAll(leidos);
+            if (altasSinCargar.get() != antes) {
+                // Una alta pudo quedar fuera de la consulta: se vuelve a cargar la próxima vez
+                return Collections.unmodifiableSet(cargados);
+            }
+            Set<String> previos = miembrosPorCanal.putIfAbsent(canalId, cargados);
+            miembros = previos != null ? previos : cargados;
+        }
+        return Collections.unmodifiableSet(miembros);
+    }
+
+    /**
+     * @return null si el canal no está en memoria
+     */
+    public Boolean esMiembro(String canalId, String usuarioId) {
+        Set<String> miembros = miembrosPorCanal.get(canalId);
+        return miembros != null ? miembros.contains(usuarioId) : null;
+    }
+
+    /**
+     * Registra una alta ya confirmada en la BD.
+     */
+    public void agregar(String canalId, String usuarioId) {
+        Set<String> miembros = miembrosPorCanal.get(canalId);
+        if (miembros != null) {
+            miembros.add(usuarioId);
+        } else {
+            altasSinCargar.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package repositorio.clienteServidor;
+
+import dominio.clienteServidor.Usuario;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Perfiles de usuario en memoria (id -> usuario), LRU acotado por tamaño y con
+ * caducidad por entrada.
+ *
+ * Lo llena {@link UsuarioRepositorio} al leer de la BD y lo invalida en cada
+ * escritura (guardar, lotes de la sincronización P2P y cambios de estado), así los
+ * historiales y listados no consultan la BD una vez por autor. La caducidad cubre
+ * cambios hechos en la BD por fuera del repositorio.
+ *
+ * Se entregan copias: quien modifique el usuario devuelto no altera la caché.
+ */
+public class CachePerfilesUsuario {
+
+    static final int CAPACIDAD = 10_000;
+    static final long TTL_MS = 5 * 60_000;
+
+    private static CachePerfilesUsuario instance;
+
+    private final Map<String, Entrada> perfiles = new LinkedHashMap<String, Entrada>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> mayor) {
+            return size() > CAPACIDAD;
+        }
+    };
+    // Invalidaciones hechas; una carga que se cruza con una invalidación no se guarda
+    private long invalidaciones = 0;
+
+    private CachePerfilesUsuario() {
+    }
+
+    public static synchronized CachePerfilesUsuario getInstance() {
+        if (instance == null) {
+            instance = new CachePerfilesUsuario();
+        }
+        return instance;
+    }
+
+    /**
+     * @return Copia del perfil o null si no está en memoria o caducó
+     */
+    public synchronized Usuario obtener(String id) {
+        Entrada entrada = perfiles.get(id);
+        if (entrada == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() > entrada.caducaEn) {
+            perfiles.remove(id);
+            return null;
+        }
+        return copiar(entrada.usuario);
+    }
+
+    /**
+     * Marca a tomar antes de leer de la BD y pasar luego a {@link #guardar}.
+     */
+    public synchronized long marca() {
+        return invalidaciones;
+    }
+
+    /**
+     * Guarda un perfil recién leído de la BD, salvo que alguna invalidación se haya
+     * cruzado con la lectura (el dato podría ser anterior a la escritura).
+     */
+    public synchronized void guardar(Usuario usuario, long marca) {
+        if (usuario == null || marca != invalidaciones) {
+            return;
+        }
+        perfiles.put(usuario.getId(), new Entrada(copiar(usuario), System.currentTimeMillis() + TTL_MS));
+    }
+
+    public synchronized void invalidar(String id) {
+        invalidaciones++;
+        perfiles.remove(id);
+    }
+
+    public synchronized void invalidarTodos(Iterable<Usuario> usuarios) {
+        invalidaciones++;
+        for (Usuario u : usuarios) {
+            perfiles.remove(u.getId());
+        }
+    }
+
+    private static Usuario copiar(Usuario u) {
+        return new Usuario(UUID.fromString(u.getId()), u.getNombre(), u.getEmail(), u.getFoto(), u.getPeerPadre(),
+                u.getContrasena(), u.getIp(), u.getEstado(), u.getFechaCreacion());
+    }
+
+    private static class Entrada {
+        final Usuario usuario;
+        final long caducaEn;
+
+        Entrada(Usuario usuario, long caducaEn) {
+            this.usuario = usuario;
+            this.caducaEn = caducaEn;
+        }
+    }
+}
@@ -14,9 +14,22 @@ import java.util.UUID;
 public class CanalInvitacionRepositorio {
 
     private final MySQLManager mysql;
+    private final IndiceMerkleRepositorio indiceMerkle;
+
+    private static final String SQL_SELECT = "SELECT id, canal_id, invitador_id, invitado_id, fecha_creacion, estado FROM canal_invitaciones";
+
+    private static final String SQL_GUARDAR = "INSERT INTO canal_invitaciones (id, canal_id, invitador_id, invitado_id, fecha_creacion, estado) " +
+                 "VALUES (?, ?, ?, ?, ?, ?) " +
+                 "ON DUPLICATE KEY UPDATE " +
+                 "canal_id = VALUES(canal_id), " +
+                 "invitador_id = VALUES(invitador_id), " +
+                 "invitado_id = VALUES(invitado_id), " +
+                 "fecha_creacion = VALUES(fecha_creacion), " +
+                 "estado = VALUES(estado)";
 
     public CanalInvitacionRepositorio() {
         this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
     }
 
     /**
@@ -30,19 +43,7 @@ public class CanalInvitacionRepositorio {
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                // Validar timestamp para evitar NullPointerException
-                Timestamp ts = rs.getTimestamp("fecha_creacion");
-                Instant fechaCreacion = ts != null ? ts.toInstant() : Instant.now();
-                
-                CanalInvitacion invitacion = new CanalInvitacion(
-                    UUID.fromString(rs.getString("id")),
-                    UUID.fromString(rs.getString("canal_id")),
-                    UUID.fromString(rs.getString("invitador_id")),
-                    UUID.fromString(rs.getString("invitado_id")),
-                    fechaCreacion,
-                    rs.getString("estado")
-                );
-                lista.add(invitacion);
+                lista.add(mapear(rs));
             }
         } catch (SQLException e) {
             System.err.println("[CanalInvitacionRepo] Error al obtener todos: " + e.getMessage());
@@ -56,23 +57,10 @@ public class CanalInvitacionRepositorio {
      * ✅ MEJORADO: Usa INSERT ... ON DUPLICATE KEY UPDATE para sincronización P2P
      */
     public boolean guardar(CanalInvitacion invitacion) {
-        String sql = "INSERT INTO canal_invitaciones (id, canal_id, invitador_id, invitado_id, fecha_creacion, estado) " +
-                     "VALUES (?, ?, ?, ?, ?, ?) " +
-                     "ON DUPLICATE KEY UPDATE " +
-                     "canal_id = VALUES(canal_id), " +
-                     "invitador_id = VALUES(invitador_id), " +
-                     "invitado_id = VALUES(invitado_id), " +
-                     "fecha_creacion = VALUES(fecha_creacion), " +
-                     "estado = VALUES(estado)";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, invitacion.getId().toString());
-            ps.setString(2, invitacion.getCanalId().toString());
-            ps.setString(3, invitacion.getInvitadorId().toString());
-            ps.setString(4, invitacion.getInvitadoId().toString());
-            ps.setTimestamp(5, Timestamp.from(invitacion.getFechaCreacion()));
-            ps.setString(6, invitacion.getEstado());
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_INVITACION,
+                    c -> EscrituraPorLotes.ejecutarUno(c, SQL_GUARDAR, invitacion, this::asignarParametros),
+                    c -> List.of(invitacion));
         } catch (SQLException e) {
             System.err.println("[CanalInvitacionRepo] Error al guardar: " + e.getMessage());
             e.printStackTrace();
@@ -80,6 +68,33 @@ public class CanalInvitacionRepositorio {
         }
     }
 
+    /**
+     * Guarda un lote de invitaciones en una única transacción (sincronización P2P).
+     * Como el UPSERT actualiza todos los campos, equivale a guardarOActualizar por cada una.
+     * @return Cantidad de invitaciones guardadas, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<CanalInvitacion> invitaciones) {
+        if (invitaciones == null || invitaciones.isEmpty()) return 0;
+        try (Connection conn = mysql.getConnection()) {
+            indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_INVITACION,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, invitaciones, this::asignarParametros),
+                    c -> invitaciones);
+        } catch (SQLException e) {
+            System.err.println("[CanalInvitacionRepo] Error al guardar lote de " + invitaciones.size() + " invitaciones: " + e.getMessage());
+            return 0;
+        }
+        return invitaciones.size();
+    }
+
+    private void asignarParametros(PreparedStatement ps, CanalInvitacion invitacion) throws SQLException {
+        ps.setString(1, invitacion.getId().toString());
+        ps.setString(2, invitacion.getCanalId().toString());
+        ps.setString(3, invitacion.getInvitadorId().toString());
+        ps.setString(4, invitacion.getInvitadoId().toString());
+        ps.setTimestamp(5, Timestamp.from(invitacion.getFechaCreacion()));
+        ps.setString(6, invitacion.getEstado());
+    }
+
     /**
      * ✅ NUEVO: Guarda o actualiza una invitación completa (para sincronización P2P).
      * Este método asegura que todos los campos se sincronicen correctamente.
@@ -95,15 +110,18 @@ public class CanalInvitacionRepositorio {
             String sql = "UPDATE canal_invitaciones SET " +
                         "canal_id = ?, invitador_id = ?, invitado_id = ?, " +
                         "fecha_creacion = ?, estado = ? WHERE id = ?";
-            try (Connection conn = mysql.getConnection();
-                 PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, invitacion.getCanalId().toString());
-                ps.setString(2, invitacion.getInvitadorId().toString());
-                ps.setString(3, invitacion.getInvitadoId().toString());
-                ps.setTimestamp(4, Timestamp.from(invitacion.getFechaCreacion()));
-                ps.setString(5, invitacion.getEstado());
-                ps.setString(6, invitacion.getId().toString());
-                return ps.executeUpdate() > 0;
+            try (Connection conn = mysql.getConnection()) {
+                return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_INVITACION, c -> {
+                    try (PreparedStatement ps = c.prepareStatement(sql)) {
+                        ps.setString(1, invitacion.getCanalId().toString());
+                        ps.setString(2, invitacion.getInvitadorId().toString());
+                        ps.setString(3, invitacion.getInvitadoId().toString());
+                        ps.setTimestamp(4, Timestamp.from(invitacion.getFechaCreacion()));
+                        ps.setString(5, invitacion.getEstado());
+                        ps.setString(6, invitacion.getId().toString());
+                        return ps.executeUpdate() > 0;
+                    }
+                }, c -> List.of(invitacion));
             } catch (SQLException e) {
                 System.err.println("[CanalInvitacionRepo] Error al actualizar: " + e.getMessage());
                 e.printStackTrace();
@@ -123,18 +141,7 @@ public class CanalInvitacionRepositorio {
             ps.setString(1, id.toString());
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    // Validar timestamp para evitar NullPointerException
-                    Timestamp ts = rs.getTimestamp("fecha_creacion");
-                    Instant fechaCreacion = ts != null ? ts.toInstant() : Instant.now();
-                    
-                    return new CanalInvitacion(
-                        UUID.fromString(rs.getString("id")),
-                        UUID.fromString(rs.getString("canal_id")),
-                        UUID.fromString(rs.getString("invitador_id")),
-                        UUID.fromString(rs.getString("invitado_id")),
-                        fechaCreacion,
-                        rs.getString("estado")
-                    );
+                    return mapear(rs);
                 }
             }
         } catch (SQLException e) {
@@ -240,12 +247,15 @@ public class CanalInvitacionRepositorio {
      */
     public boolean actualizarEstado(UUID invitacionId, String nuevoEstado) {
         String sql = "UPDATE canal_invitaciones SET estado = ?, fecha_creacion = ? WHERE id = ?";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, nuevoEstado);
-            ps.setTimestamp(2, Timestamp.from(Instant.now()));
-            ps.setString(3, invitacionId.toString());
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_INVITACION, c -> {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, nuevoEstado);
+                    ps.setTimestamp(2, Timestamp.from(Instant.now()));
+                    ps.setString(3, invitacionId.toString());
+                    return ps.executeUpdate() > 0;
+                }
+            }, c -> ConsultaPorIds.buscar(c, SQL_SELECT, "id", List.of(invitacionId.toString()), this::mapear));
         } catch (SQLException e) {
             System.err.println("[CanalInvitacionRepo] Error al actualizar estado: " + e.getMessage());
             e.printStackTrace();
@@ -253,4 +263,32 @@ public class CanalInvitacionRepositorio {
         }
     }
 
+    /**
+     * Busca varios invitaciones por clave primaria (sincronización P2P).
+     * Los IDs que no existen se omiten.
+     */
+    public List<CanalInvitacion> buscarPorIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            return ConsultaPorIds.buscar(conn, SQL_SELECT, "id", ids, this::mapear);
+        } catch (SQLException e) {
+            System.err.println("[CanalInvitacionRepo] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private CanalInvitacion mapear(ResultSet rs) throws SQLException {
+        // Validar timestamp para evitar NullPointerException
+        Timestamp ts = rs.getTimestamp("fecha_creacion");
+        Instant fechaCreacion = ts != null ? ts.toInstant() : Instant.now();
+
+        return new CanalInvitacion(
+            UUID.fromString(rs.getString("id")),
+            UUID.fromString(rs.getString("canal_id")),
+            UUID.fromString(rs.getString("invitador_id")),
+            UUID.fromString(rs.getString("invitado_id")),
+            fechaCreacion,
+            rs.getString("estado")
+        );
+    }
 }
@@ -4,12 +4,27 @@ import dominio.clienteServidor.relaciones.CanalMiembro;
 import repositorio.comunicacion.MySQLManager;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class CanalMiembroRepositorio {
     private final MySQLManager mysql;
-    public CanalMiembroRepositorio() { this.mysql = MySQLManager.getInstance(); }
+    private final IndiceMerkleRepositorio indiceMerkle;
+    private final CacheMiembrosCanal cache;
+
+    // Sin IGNORE: una FK rota debe fallar (y revertir el lote), no quedar en un warning.
+    // Un duplicado no es error y no cambia nada
+    private static final String SQL_GUARDAR = "INSERT INTO canal_miembros (canal_id, usuario_id) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE usuario_id = usuario_id";
+
+    public CanalMiembroRepositorio() {
+        this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
+        this.cache = CacheMiembrosCanal.getInstance();
+    }
 
     public List<CanalMiembro> obtenerTodosParaSync() {
         List<CanalMiembro> lista = new ArrayList<>();
@@ -30,22 +45,103 @@ public class CanalMiembroRepositorio {
     }
 
     public boolean guardar(CanalMiembro cm) {
-        String sql = "INSERT IGNORE INTO canal_miembros (canal_id, usuario_id) VALUES (?, ?)";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, cm.getCanalId().toString());
-            ps.setString(2, cm.getUsuarioId().toString());
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_MIEMBRO,
+                    c -> EscrituraPorLotes.ejecutarUno(c, SQL_GUARDAR, cm, this::asignarParametros),
+                    c -> List.of(cm));
+            if (ok) {
+                cache.agregar(cm.getCanalId().toString(), cm.getUsuarioId().toString());
+            }
+            return ok;
         } catch (SQLException e) {
             System.err.println("[RepoMiembro] Error (Falta Canal o Usuario): " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Guarda un lote de membresías en una única transacción (sincronización P2P).
+     * Si alguna fila viola una FK falla el lote entero. Las filas se releen en la misma
+     * transacción: solo las que existen reciben hoja Merkle y entrada en la caché.
+     * @return Cantidad de membresías guardadas, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<CanalMiembro> miembros) {
+        if (miembros == null || miembros.isEmpty()) return 0;
+        Set<String> unicos = new LinkedHashSet<>();
+        for (CanalMiembro cm : miembros) {
+            unicos.add(cm.getId());
+        }
+        List<CanalMiembro> persistidos = new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL_MIEMBRO,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, miembros, this::asignarParametros),
+                    c -> {
+                        persistidos.addAll(buscarPorIds(c, new ArrayList<>(unicos)));
+                        return persistidos;
+                    });
+            if (!ok) return 0;
+        } catch (SQLException e) {
+            System.err.println("[RepoMiembro] Error guardando lote de " + miembros.size() + " miembros: " + e.getMessage());
+            return 0;
+        }
+        for (CanalMiembro cm : persistidos) {
+            cache.agregar(cm.getCanalId().toString(), cm.getUsuarioId().toString());
+        }
+        return persistidos.size();
+    }
+
+    private void asignarParametros(PreparedStatement ps, CanalMiembro cm) throws SQLException {
+        ps.setString(1, cm.getCanalId().toString());
+        ps.setString(2, cm.getUsuarioId().toString());
+    }
+
+    /**
+     * Busca varias membresías por su ID compuesto "canalId_usuarioId" (sincronización P2P).
+     * Los IDs que no existen o están mal formados se omiten.
+     */
+    public List<CanalMiembro> buscarPorIds(List<String> ids) {
+        List<String> validos = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids) {
+                if (id != null && id.indexOf('_') > 0) validos.add(id);
+            }
+        }
+        if (validos.isEmpty()) return new ArrayList<>();
+
+        try (Connection conn = mysql.getConnection()) {
+            return buscarPorIds(conn, validos);
+        } catch (SQLException e) {
+            System.err.println("[RepoMiembro] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private List<CanalMiembro> buscarPorIds(Connection conn, List<String> ids) throws SQLException {
+        return ConsultaPorIds.buscar(conn, "SELECT canal_id, usuario_id FROM canal_miembros",
+                "(canal_id, usuario_id)", "(?, ?)", 2, ids,
+                (ps, pos, id) -> {
+                    int separador = id.indexOf('_');
+                    ps.setString(pos, id.substring(0, separador));
+                    ps.setString(pos + 1, id.substring(separador + 1));
+                },
+                rs -> new CanalMiembro(
+                        UUID.fromString(rs.getString("canal_id")),
+                        UUID.fromString(rs.getString("usuario_id"))
+                ));
+    }
+
     /**
      * ✅ NUEVO: Verifica si un usuario es miembro de un canal.
      */
     public boolean esMiembroDelCanal(String canalId, String usuarioId) {
+        try {
+            Boolean enCache = cache.esMiembro(UUID.fromString(canalId).toString(), UUID.fromString(usuarioId).toString());
+            if (enCache != null) return enCache;
+        } catch (IllegalArgumentException e) {
+            System.err.println("[RepoMiembro] Error convirtiendo IDs a UUID: " + e.getMessage());
+            return false;
+        }
+
         String sql = "SELECT COUNT(*) FROM canal_miembros WHERE canal_id = ? AND usuario_id = ?";
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -69,11 +165,31 @@ public class CanalMiembroRepositorio {
      * ✅ NUEVO: Obtiene todos los usuarios miembros de un canal.
      */
     public List<String> obtenerMiembrosDelCanal(String canalId) {
-        List<String> miembros = new ArrayList<>();
+        return new ArrayList<>(miembrosDelCanal(canalId));
+    }
+
+    /**
+     * Miembros del canal desde la caché en memoria (vista de solo lectura, sin copiar).
+     * Solo consulta la BD la primera vez que se pide el canal.
+     */
+    public Set<String> miembrosDelCanal(String canalId) {
+        try {
+            return cache.obtener(UUID.fromString(canalId).toString(), this::cargarMiembrosDelCanal);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[RepoMiembro] Error convirtiendo canal ID a UUID: " + e.getMessage());
+            return Set.of();
+        }
+    }
+
+    /**
+     * @return null si falla la consulta (no se guarda en caché)
+     */
+    private Set<String> cargarMiembrosDelCanal(String canalId) {
+        Set<String> miembros = new HashSet<>();
         String sql = "SELECT usuario_id FROM canal_miembros WHERE canal_id = ?";
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, UUID.fromString(canalId).toString());
+            ps.setString(1, canalId);
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
@@ -82,8 +198,7 @@ public class CanalMiembroRepositorio {
             }
         } catch (SQLException e) {
             System.err.println("[RepoMiembro] Error obteniendo miembros: " + e.getMessage());
-        } catch (IllegalArgumentException e) {
-            System.err.println("[RepoMiembro] Error convirtiendo canal ID a UUID: " + e.getMessage());
+            return null;
         }
         return miembros;
     }
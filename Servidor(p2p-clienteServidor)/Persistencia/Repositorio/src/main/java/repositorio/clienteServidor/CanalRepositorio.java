@@ -12,8 +12,15 @@ import java.util.UUID;
 
 public class CanalRepositorio {
     private final MySQLManager mysql;
+    private final IndiceMerkleRepositorio indiceMerkle;
 
-    public CanalRepositorio() { this.mysql = MySQLManager.getInstance(); }
+    private static final String SQL_GUARDAR = "INSERT INTO canales (id, peer_padre, creador_id, nombre, tipo, fecha_creacion) VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE nombre=VALUES(nombre), tipo=VALUES(tipo), fecha_creacion=VALUES(fecha_creacion)";
+
+    public CanalRepositorio() {
+        this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
+    }
 
     public List<Canal> obtenerTodosParaSync() {
         List<Canal> lista = new ArrayList<>();
@@ -22,27 +29,7 @@ public class CanalRepositorio {
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                Canal c = new Canal();
-                c.setId(UUID.fromString(rs.getString("id")));
-                c.setNombre(rs.getString("nombre"));
-                c.setPeerPadre(rs.getString("peer_padre") != null ? UUID.fromString(rs.getString("peer_padre")) : null);
-
-                // Para Merkle solo necesitamos el ID del creador en el objeto, no el objeto completo
-                Usuario creador = new Usuario();
-                creador.setId(UUID.fromString(rs.getString("creador_id")));
-                c.setCreador(creador);
-
-                String tipoStr = rs.getString("tipo");
-                if (tipoStr != null) {
-                    try { c.setTipo(Canal.Tipo.valueOf(tipoStr)); } 
-                    catch (IllegalArgumentException e) { 
-                        System.err.println("[RepoCanal] Tipo de canal invalido: " + tipoStr); 
-                    }
-                }
-                // Validar timestamp para evitar NullPointerException
-                Timestamp fechaCreacion = rs.getTimestamp("fecha_creacion");
-                c.setFechaCreacion(fechaCreacion != null ? fechaCreacion.toInstant() : Instant.now());
-                lista.add(c);
+                lista.add(mapear(rs));
             }
         } catch (SQLException e) { 
             System.err.println("[RepoCanal] Error obteniendo canales para sync: " + e.getMessage()); 
@@ -51,23 +38,42 @@ public class CanalRepositorio {
     }
 
     public boolean guardar(Canal c) {
-        String sql = "INSERT INTO canales (id, peer_padre, creador_id, nombre, tipo, fecha_creacion) VALUES (?, ?, ?, ?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE nombre=VALUES(nombre), tipo=VALUES(tipo), fecha_creacion=VALUES(fecha_creacion)";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, c.getId().toString());
-            ps.setString(2, c.getPeerPadre() != null ? c.getPeerPadre().toString() : null);
-            ps.setString(3, c.getCreador().getId().toString());
-            ps.setString(4, c.getNombre());
-            ps.setString(5, c.getTipo().name());
-            ps.setTimestamp(6, Timestamp.from(c.getFechaCreacion()));
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL,
+                    cx -> EscrituraPorLotes.ejecutarUno(cx, SQL_GUARDAR, c, this::asignarParametros),
+                    cx -> List.of(c));
         } catch (SQLException e) {
             System.err.println("[RepoCanal] Error (Posible falta de Usuario creador): " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Guarda un lote de canales en una única transacción (sincronización P2P).
+     * @return Cantidad de canales guardados, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<Canal> canales) {
+        if (canales == null || canales.isEmpty()) return 0;
+        try (Connection conn = mysql.getConnection()) {
+            indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, canales, this::asignarParametros),
+                    c -> canales);
+        } catch (SQLException e) {
+            System.err.println("[RepoCanal] Error guardando lote de " + canales.size() + " canales: " + e.getMessage());
+            return 0;
+        }
+        return canales.size();
+    }
+
+    private void asignarParametros(PreparedStatement ps, Canal c) throws SQLException {
+        ps.setString(1, c.getId().toString());
+        ps.setString(2, c.getPeerPadre() != null ? c.getPeerPadre().toString() : null);
+        ps.setString(3, c.getCreador().getId().toString());
+        ps.setString(4, c.getNombre());
+        ps.setString(5, c.getTipo().name());
+        ps.setTimestamp(6, Timestamp.from(c.getFechaCreacion()));
+    }
+
     /**
      * ✅ NUEVO: Actualiza un canal existente y actualiza su timestamp automáticamente.
      */
@@ -76,18 +82,21 @@ public class CanalRepositorio {
         c.setFechaCreacion(Instant.now());
 
         String sql = "UPDATE canales SET nombre=?, tipo=?, fecha_creacion=? WHERE id=?";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, c.getNombre());
-            ps.setString(2, c.getTipo().name());
-            ps.setTimestamp(3, Timestamp.from(c.getFechaCreacion()));
-            ps.setString(4, c.getId().toString());
-
-            int affected = ps.executeUpdate();
-            if (affected > 0) {
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_CANAL, cx -> {
+                try (PreparedStatement ps = cx.prepareStatement(sql)) {
+                    ps.setString(1, c.getNombre());
+                    ps.setString(2, c.getTipo().name());
+                    ps.setTimestamp(3, Timestamp.from(c.getFechaCreacion()));
+                    ps.setString(4, c.getId().toString());
+                    return ps.executeUpdate() > 0;
+                }
+                // El UPDATE solo toca algunas columnas: se relee la fila (en la transacción) para hashearla completa
+            }, cx -> ConsultaPorIds.buscar(cx, "SELECT * FROM canales", "id", List.of(c.getId()), this::mapear));
+            if (ok) {
                 System.out.println("[RepoCanal] ✓ Canal actualizado con timestamp: " + c.getId());
             }
-            return affected > 0;
+            return ok;
         } catch (SQLException e) {
             System.err.println("[RepoCanal] Error actualizando: " + e.getMessage());
             return false;
@@ -104,26 +113,7 @@ public class CanalRepositorio {
             ps.setString(1, id.toString());
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    Canal c = new Canal();
-                    c.setId(UUID.fromString(rs.getString("id")));
-                    c.setNombre(rs.getString("nombre"));
-                    c.setPeerPadre(rs.getString("peer_padre") != null ? UUID.fromString(rs.getString("peer_padre")) : null);
-
-                    Usuario creador = new Usuario();
-                    creador.setId(UUID.fromString(rs.getString("creador_id")));
-                    c.setCreador(creador);
-
-                    String tipoStr = rs.getString("tipo");
-                    if (tipoStr != null) {
-                        try { c.setTipo(Canal.Tipo.valueOf(tipoStr)); } 
-                        catch (IllegalArgumentException e) { 
-                            System.err.println("[RepoCanal] Tipo de canal invalido: " + tipoStr); 
-                        }
-                    }
-                    // Validar timestamp para evitar NullPointerException
-                    Timestamp ts = rs.getTimestamp("fecha_creacion");
-                    c.setFechaCreacion(ts != null ? ts.toInstant() : Instant.now());
-                    return c;
+                    return mapear(rs);
                 }
             }
         } catch (SQLException e) {
@@ -131,4 +121,76 @@ public class CanalRepositorio {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Busca varios canales por clave primaria (sincronización P2P).
+     * Los IDs que no existen se omiten.
+     */
+    public List<Canal> buscarPorIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            return ConsultaPorIds.buscar(conn, "SELECT * FROM canales", "id", ids, this::mapear);
+        } catch (SQLException e) {
+            System.err.println("[RepoCanal] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Canales a los que pertenece un usuario, ordenados por ID, en una sola consulta
+     * sobre el índice (usuario_id, canal_id) de canal_miembros.
+     *
+     * @param despuesDe Cursor: solo canales con ID mayor (null = desde el principio)
+     * @param limite    Máximo de canales (0 = sin límite)
+     */
+    public List<Canal> obtenerCanalesDeUsuario(String usuarioId, String despuesDe, int limite) {
+        List<Canal> lista = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT c.* FROM canal_miembros cm JOIN canales c ON c.id = cm.canal_id " +
+                "WHERE cm.usuario_id = ?");
+        if (despuesDe != null) sql.append(" AND cm.canal_id > ?");
+        sql.append(" ORDER BY cm.canal_id");
+        if (limite > 0) sql.append(" LIMIT ?");
+
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setString(i++, UUID.fromString(usuarioId).toString());
+            if (despuesDe != null) ps.setString(i++, UUID.fromString(despuesDe).toString());
+            if (limite > 0) ps.setInt(i, limite);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lista.add(mapear(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[RepoCanal] Error obteniendo canales del usuario: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("[RepoCanal] ID inválido: " + e.getMessage());
+        }
+        return lista;
+    }
+
+    private Canal mapear(ResultSet rs) throws SQLException {
+        Canal c = new Canal();
+        c.setId(UUID.fromString(rs.getString("id")));
+        c.setNombre(rs.getString("nombre"));
+        c.setPeerPadre(rs.getString("peer_padre") != null ? UUID.fromString(rs.getString("peer_padre")) : null);
+
+        // Para Merkle solo necesitamos el ID del creador en el objeto, no el objeto completo
+        Usuario creador = new Usuario();
+        creador.setId(UUID.fromString(rs.getString("creador_id")));
+        c.setCreador(creador);
+
+        String tipoStr = rs.getString("tipo");
+        if (tipoStr != null) {
+            try { c.setTipo(Canal.Tipo.valueOf(tipoStr)); } 
+            catch (IllegalArgumentException e) { 
+                System.err.println("[RepoCanal] Tipo de canal invalido: " + tipoStr); 
+            }
+        }
+        // Validar timestamp para evitar NullPointerException
+        Timestamp fechaCreacion = rs.getTimestamp("fecha_creacion");
+        c.setFechaCreacion(fechaCreacion != null ? fechaCreacion.toInstant() : Instant.now());
+        return c;
+    }
+}
@@ -0,0 +1,87 @@
+package repositorio.clienteServidor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lectura de varias filas por clave primaria con {@code WHERE clave IN (...)}.
+ *
+ * Sustituye a recorrer {@code obtenerTodosParaSync()} y filtrar en memoria: cada
+ * consulta resuelve hasta {@link #MAX_IDS_POR_CONSULTA} IDs usando el índice de la
+ * clave primaria, sin leer el resto de la tabla.
+ */
+final class ConsultaPorIds {
+
+    // Máximo de IDs por sentencia, para acotar el tamaño del IN (...)
+    private static final int MAX_IDS_POR_CONSULTA = 500;
+
+    @FunctionalInterface
+    interface Mapeador<T> {
+        T mapear(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface AsignadorId {
+        /** Asigna los parámetros de un ID a partir de la posición indicada. */
+        void asignar(PreparedStatement ps, int posicion, String id) throws SQLException;
+    }
+
+    private ConsultaPorIds() {
+    }
+
+    /**
+     * Busca por una clave de una sola columna.
+     *
+     * @param select  Sentencia SELECT sin cláusula WHERE
+     * @param columna Columna de la clave primaria
+     */
+    static <T> List<T> buscar(Connection conn, String select, String columna, List<String> ids,
+                              Mapeador<T> mapeador) throws SQLException {
+        return buscar(conn, select, columna, "?", 1, ids, (ps, pos, id) -> ps.setString(pos, id), mapeador);
+    }
+
+    /**
+     * Busca por una clave arbitraria (p. ej. compuesta: {@code (a, b) IN ((?, ?), ...)}).
+     *
+     * @param clave              Expresión de la clave a la izquierda del IN
+     * @param marcador           Marcador de un ID, p. ej. "?" o "(?, ?)"
+     * @param parametrosPorId    Cantidad de '?' que contiene el marcador
+     */
+    static <T> List<T> buscar(Connection conn, String select, String clave, String marcador, int parametrosPorId,
+                              List<String> ids, AsignadorId asignador, Mapeador<T> mapeador) throws SQLException {
+        return buscar(conn, select, clave, marcador, parametrosPorId, ids, asignador, mapeador, "");
+    }
+
+    /**
+     * Igual que el anterior, añadiendo un sufijo tras el IN (p. ej. " FOR UPDATE").
+     */
+    static <T> List<T> buscar(Connection conn, String select, String clave, String marcador, int parametrosPorId,
+                              List<String> ids, AsignadorId asignador, Mapeador<T> mapeador,
+                              String sufijo) throws SQLException {
+        if (ids.isEmpty()) return Collections.emptyList();
+
+        List<T> resultado = new ArrayList<>(ids.size());
+        for (int desde = 0; desde < ids.size(); desde += MAX_IDS_POR_CONSULTA) {
+            List<String> tramo = ids.subList(desde, Math.min(ids.size(), desde + MAX_IDS_POR_CONSULTA));
+            String sql = select + " WHERE " + clave + " IN (" + String.join(", ", Collections.nCopies(tramo.size(), marcador)) + ")" + sufijo;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int posicion = 1;
+                for (String id : tramo) {
+                    asignador.asignar(ps, posicion, id);
+                    posicion += parametrosPorId;
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        resultado.add(mapeador.mapear(rs));
+                    }
+                }
+            }
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,122 @@
+package repositorio.clienteServidor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Escritura agrupada (group commit) para un tipo de entidad.
+ *
+ * Los llamadores encolan entidades y reciben un futuro por cada una. Un único hilo
+ * escritor junta lo que llegue en {@link #ESPERA_MS} ms (o hasta {@link #MAX_LOTE}
+ * filas) y lo guarda con el guardarLote del repositorio, en una sola transacción.
+ * Así una ráfaga de escrituras paga un commit por lote y no uno por fila.
+ *
+ * Si el lote se revierte se reintenta fila a fila, para que una entidad inválida no
+ * haga fallar a las demás. Los futuros nunca terminan con excepción: se completan
+ * con true o false, como el guardar del repositorio.
+ */
+final class EscrituraAgrupada<T> {
+
+    static final int MAX_LOTE = 200;
+    static final long ESPERA_MS = 5;
+    private static final int CAPACIDAD_COLA = 10_000;
+
+    private final String nombre;
+    private final Function<List<T>, Integer> guardarLote;
+    private final Predicate<T> guardarUno;
+    // Con la cola llena encolar() espera: el escritor marca el ritmo
+    private final BlockingQueue<Pendiente<T>> cola = new LinkedBlockingQueue<>(CAPACIDAD_COLA);
+
+    /**
+     * @param guardarLote Guarda la lista en una transacción; 0 si se revirtió
+     * @param guardarUno  Guarda una sola entidad (reintento tras un lote revertido)
+     */
+    EscrituraAgrupada(String nombre, Function<List<T>, Integer> guardarLote, Predicate<T> guardarUno) {
+        this.nombre = nombre;
+        this.guardarLote = guardarLote;
+        this.guardarUno = guardarUno;
+
+        Thread escritor = new Thread(this::escribir, "Escritura-" + nombre);
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Encola una entidad.
+     *
+     * @return Futuro que se completa cuando la entidad está confirmada en la BD (true)
+     *         o no se pudo guardar (false)
+     */
+    CompletableFuture<Boolean> encolar(T entidad) {
+        Pendiente<T> pendiente = new Pendiente<>(entidad);
+        try {
+            cola.put(pendiente);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendiente.futuro.complete(false);
+        }
+        return pendiente.futuro;
+    }
+
+    private void escribir() {
+        List<Pendiente<T>> lote = new ArrayList<>(MAX_LOTE);
+        while (true) {
+            try {
+                lote.add(cola.take());
+                // Se da un margen corto para que se sumen escrituras concurrentes
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_MS);
+                while (lote.size() < MAX_LOTE) {
+                    if (cola.drainTo(lote, MAX_LOTE - lote.size()) > 0) continue;
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) break;
+                    Pendiente<T> siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) break;
+                    lote.add(siguiente);
+                }
+                guardar(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("[" + nombre + "] Error en escritura agrupada: " + e.getMessage());
+            } finally {
+                // Ningún llamador queda esperando, pase lo que pase
+                lote.forEach(p -> p.futuro.complete(false));
+                lote.clear();
+            }
+        }
+    }
+
+    private void guardar(List<Pendiente<T>> lote) {
+        List<T> entidades = new ArrayList<>(lote.size());
+        lote.forEach(p -> entidades.add(p.entidad));
+
+        if (guardarLote.apply(entidades) > 0) {
+            lote.forEach(p -> p.futuro.complete(true));
+            return;
+        }
+        if (lote.size() == 1) {
+            lote.get(0).futuro.complete(false);
+            return;
+        }
+        System.err.println("[" + nombre + "] Lote de " + lote.size() + " revertido. Reintentando fila a fila...");
+        for (Pendiente<T> p : lote) {
+            p.futuro.complete(guardarUno.test(p.entidad));
+        }
+    }
+
+    private static final class Pendiente<T> {
+        final T entidad;
+        final CompletableFuture<Boolean> futuro = new CompletableFuture<>();
+
+        Pendiente(T entidad) {
+            this.entidad = entidad;
+        }
+    }
+}
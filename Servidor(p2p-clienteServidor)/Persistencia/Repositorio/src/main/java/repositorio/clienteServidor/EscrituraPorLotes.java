@@ -0,0 +1,46 @@
+package repositorio.clienteServidor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Ejecuta una misma sentencia de escritura para un lote de entidades usando
+ * batch JDBC, dentro de la transacción del llamador.
+ *
+ * Lo usan los métodos guardarLote de los repositorios como escritura de
+ * {@link IndiceMerkleRepositorio#escribir}: el lote y sus hojas Merkle se confirman
+ * juntos o no se aplica nada.
+ */
+final class EscrituraPorLotes {
+
+    @FunctionalInterface
+    interface Parametros<T> {
+        void asignar(PreparedStatement ps, T entidad) throws SQLException;
+    }
+
+    private EscrituraPorLotes() {
+    }
+
+    /** @return true (para usarse directamente como {@link IndiceMerkleRepositorio.Escritura}) */
+    static <T> boolean ejecutar(Connection conn, String sql, List<? extends T> entidades,
+                                Parametros<T> parametros) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (T entidad : entidades) {
+                parametros.asignar(ps, entidad);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return true;
+    }
+
+    /** Una sola entidad (los guardar de los repositorios). */
+    static <T> boolean ejecutarUno(Connection conn, String sql, T entidad, Parametros<T> parametros) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            parametros.asignar(ps, entidad);
+            return ps.executeUpdate() > 0;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package repositorio.clienteServidor;
+
+import dominio.merkletree.IMerkleEntity;
+import dominio.merkletree.IndiceMerkle;
+import repositorio.comunicacion.MySQLManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Mantiene los índices Merkle incrementales de las entidades sincronizadas y
+ * persiste sus hashes de hoja en la tabla lateral {@code merkle_hojas}.
+ *
+ * Los repositorios hacen sus escrituras a través de {@link #escribir} y
+ * {@link #eliminar}: la fila de la entidad y su hoja se guardan en la misma
+ * transacción, así que una caída no puede dejar una sin la otra. El índice en memoria
+ * se actualiza después del commit, en O(1) por cubeta; al reiniciar basta con leer la
+ * tabla de hojas en lugar de rehashear todas las filas. Cada tipo guarda en
+ * {@code merkle_estado} la marca de la última carga verificada, y solo las hojas
+ * escritas después se comprueban contra sus entidades.
+ */
+public class IndiceMerkleRepositorio {
+
+    public static final String TIPO_USUARIO = "USUARIO";
+    public static final String TIPO_CANAL = "CANAL";
+    public static final String TIPO_MENSAJE = "MENSAJE";
+    public static final String TIPO_CANAL_MIEMBRO = "CANAL_MIEMBRO";
+    public static final String TIPO_CANAL_INVITACION = "CANAL_INVITACION";
+    public static final String TIPO_ARCHIVO = "ARCHIVO";
+
+    // Tabla de origen de cada tipo: solo se cuentan sus filas, el hash lo da getDatosParaHash()
+    private static final Map<String, String> TABLAS = Map.of(
+            TIPO_USUARIO, "usuarios",
+            TIPO_CANAL, "canales",
+            TIPO_MENSAJE, "mensajes",
+            TIPO_CANAL_MIEMBRO, "canal_miembros",
+            TIPO_CANAL_INVITACION, "canal_invitaciones",
+            TIPO_ARCHIVO, "archivos"
+    );
+
+    private static final String DDL_HOJAS = "CREATE TABLE IF NOT EXISTS merkle_hojas (" +
+            "tipo VARCHAR(32) NOT NULL, " +
+            "entidad_id VARCHAR(100) NOT NULL, " +
+            "cubeta SMALLINT NOT NULL, " +
+            "hash CHAR(64) NOT NULL, " +
+            "actualizada DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6), " +
+            "PRIMARY KEY (tipo, entidad_id), " +
+            "INDEX idx_merkle_cubeta (tipo, cubeta), " +
+            "INDEX idx_merkle_actualizada (tipo, actualizada)" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    private static final String DDL_ESTADO = "CREATE TABLE IF NOT EXISTS merkle_estado (" +
+            "tipo VARCHAR(32) NOT NULL PRIMARY KEY, " +
+            "marca DATETIME(6) NOT NULL" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    // La marca pasa a la hoja más reciente del tipo (o al instante actual si no hay hojas)
+    private static final String SQL_GUARDAR_MARCA = "REPLACE INTO merkle_estado (tipo, marca) " +
+            "SELECT ?, COALESCE(MAX(actualizada), CURRENT_TIMESTAMP(6)) FROM merkle_hojas WHERE tipo = ?";
+
+    private static final String SQL_GUARDAR_HOJA = "INSERT INTO merkle_hojas (tipo, entidad_id, cubeta, hash) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE hash = VALUES(hash)";
+    private static final String SQL_BORRAR_HOJA = "DELETE FROM merkle_hojas WHERE tipo = ? AND entidad_id = ?";
+
+    private static final int TAMANO_LOTE = 1000;
+
+    /** Escritura de la entidad, dentro de la transacción abierta por {@link #escribir}. */
+    @FunctionalInterface
+    public interface Escritura {
+        /** @return false si no se modificó nada (se revierte y no se tocan hojas) */
+        boolean ejecutar(Connection conn) throws SQLException;
+    }
+
+    /** Entidades cuya hoja hay que recalcular tras la escritura. */
+    @FunctionalInterface
+    public interface Afectadas {
+        /** Se invoca con la misma conexión, así que puede releer filas recién escritas. */
+        List<? extends IMerkleEntity> obtener(Connection conn) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface HojasNuevas {
+        /** ID -> hash nuevo, o null si la entidad ya no existe. */
+        Map<String, String> calcular(Connection conn) throws SQLException;
+    }
+
+    private static IndiceMerkleRepositorio instance;
+
+    private final MySQLManager mysql;
+    private final Map<String, IndiceMerkle> indices = new ConcurrentHashMap<>();
+    // Lectura: escrituras de entidades (concurrentes entre sí). Escritura: cargar/reconstruir
+    private final Map<String, ReadWriteLock> bloqueos = new ConcurrentHashMap<>();
+    // Tipos cuya tabla de hojas quedó desalineada (fallo al persistir): exigen reconstrucción
+    private final Set<String> invalidos = ConcurrentHashMap.newKeySet();
+    private volatile boolean tablaVerificada = false;
+
+    private IndiceMerkleRepositorio() {
+        this.mysql = MySQLManager.getInstance();
+    }
+
+    public static synchronized IndiceMerkleRepositorio getInstance() {
+        if (instance == null) {
+            instance = new IndiceMerkleRepositorio();
+        }
+        return instance;
+    }
+
+    // --- ESCRITURAS ---
+
+    /**
+     * Ejecuta la escritura de una o varias entidades y guarda sus hojas en la misma
+     * transacción: una lectura de los hashes anteriores con bloqueo de fila y un único
+     * batch de upserts, sea una entidad o un lote de la sincronización.
+     *
+     * @param conn      Conexión del llamador (se restaura su autocommit al terminar)
+     * @param afectadas Entidades a hashear tras la escritura
+     * @return false si la escritura no modificó nada
+     * @throws SQLException Si algo falla; la transacción ya está revertida
+     */
+    public boolean escribir(Connection conn, String tipo, Escritura escritura, Afectadas afectadas) throws SQLException {
+        return transaccion(conn, tipo, escritura, c -> {
+            Map<String, String> hojas = new TreeMap<>();
+            for (IMerkleEntity e : afectadas.obtener(c)) {
+                if (e != null && e.getId() != null) hojas.put(e.getId(), IndiceMerkle.hashHoja(e));
+            }
+            return hojas;
+        });
+    }
+
+    /**
+     * Como {@link #escribir}, para borrados: elimina las hojas de los IDs indicados.
+     */
+    public boolean eliminar(Connection conn, String tipo, Escritura escritura, Collection<String> ids) throws SQLException {
+        return transaccion(conn, tipo, escritura, c -> {
+            Map<String, String> hojas = new TreeMap<>();
+            for (String id : ids) {
+                if (id != null) hojas.put(id, null);
+            }
+            return hojas;
+        });
+    }
+
+    private boolean transaccion(Connection conn, String tipo, Escritura escritura, HojasNuevas nuevas) throws SQLException {
+        // El DDL hace commit implícito en MySQL: va antes y con su propia conexión
+        asegurarTabla();
+
+        Lock compartido = bloqueo(tipo).readLock();
+        compartido.lock();
+        try {
+            List<String[]> cambios;
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                if (!escritura.ejecutar(conn)) {
+                    conn.rollback();
+                    return false;
+                }
+                cambios = escribirHojas(conn, tipo, nuevas.calcular(conn));
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+            // Solo lo confirmado llega a memoria. Las sumas por cubeta son conmutativas,
+            // así que el orden entre escritores concurrentes no importa
+            IndiceMerkle indice = indices.get(tipo);
+            if (indice != null) {
+                for (String[] c : cambios) {
+                    indice.aplicar(c[0], c[1], c[2]);
+                }
+            }
+            return true;
+        } finally {
+            compartido.unlock();
+        }
+    }
+
+    /**
+     * Guarda las hojas que cambian y devuelve los cambios (id, anterior, nuevo).
+     * Los hashes anteriores se leen con FOR UPDATE: dos escrituras de la misma entidad
+     * se serializan y cada una ve el hash confirmado por la otra.
+     */
+    private List<String[]> escribirHojas(Connection conn, String tipo, Map<String, String> nuevas) throws SQLException {
+        List<String[]> cambios = new ArrayList<>();
+        if (nuevas.isEmpty()) return cambios;
+
+        Map<String, String> anteriores = new HashMap<>();
+        List<String[]> leidas = ConsultaPorIds.buscar(conn, "SELECT entidad_id, hash FROM merkle_hojas",
+                "(tipo, entidad_id)", "(?, ?)", 2, new ArrayList<>(nuevas.keySet()),
+                (ps, pos, id) -> {
+                    ps.setString(pos, tipo);
+                    ps.setString(pos + 1, id);
+                },
+                rs -> new String[]{rs.getString(1), rs.getString(2)}, " FOR UPDATE");
+        for (String[] h : leidas) {
+            anteriores.put(h[0], h[1]);
+        }
+
+        try (PreparedStatement guardar = conn.prepareStatement(SQL_GUARDAR_HOJA);
+             PreparedStatement borrar = conn.prepareStatement(SQL_BORRAR_HOJA)) {
+            int guardadas = 0;
+            int borradas = 0;
+            for (Map.Entry<String, String> hoja : nuevas.entrySet()) {
+                String id = hoja.getKey();
+                String nuevo = hoja.getValue();
+                String anterior = anteriores.get(id);
+                if (Objects.equals(nuevo, anterior)) continue;
+
+                if (nuevo != null) {
+                    guardar.setString(1, tipo);
+                    guardar.setString(2, id);
+                    guardar.setInt(3, IndiceMerkle.cubetaDe(id));
+                    guardar.setString(4, nuevo);
+                    guardar.addBatch();
+                    guardadas++;
+                } else {
+                    borrar.setString(1, tipo);
+                    borrar.setString(2, id);
+                    borrar.addBatch();
+                    borradas++;
+                }
+                cambios.add(new String[]{id, anterior, nuevo});
+            }
+            if (guardadas > 0) guardar.executeBatch();
+            if (borradas > 0) borrar.executeBatch();
+        }
+        return cambios;
+    }
+
+    // --- CARGA Y RECONSTRUCCIÓN ---
+
+    public boolean estaCargado(String tipo) {
+        return indices.containsKey(tipo);
+    }
+
+    /** Índice en memoria del tipo, o null si aún no se ha cargado. */
+    public IndiceMerkle obtenerIndice(String tipo) {
+        return indices.get(tipo);
+    }
+
+    /**
+     * Carga el índice de un tipo desde la tabla de hojas sin rehashear todas sus entidades.
+     * Se comprueba que hay tantas hojas como filas y, con {@code buscar}, que las hojas
+     * escritas desde la última carga verificada (marca en merkle_estado) coinciden con el
+     * hash de su entidad actual; las anteriores ya se verificaron en su día. Devuelve
+     * false si algo no cuadra (primer arranque, sin marca, fallo previo), en cuyo caso
+     * hay que llamar a {@link #reconstruir}. Las escrituras hechas fuera de los
+     * repositorios sobre filas ya verificadas no se detectan: tras ellas hay que reconstruir.
+     *
+     * @param buscar Entidades actuales de una colección de IDs (las ausentes no se devuelven)
+     */
+    public boolean cargar(String tipo, Function<Collection<String>, List<? extends IMerkleEntity>> buscar) {
+        String tabla = TABLAS.get(tipo);
+        if (tabla == null || invalidos.contains(tipo)) return false;
+
+        Lock exclusivo = bloqueo(tipo).writeLock();
+        exclusivo.lock();
+        try {
+            if (indices.containsKey(tipo)) return true;
+            asegurarTabla();
+            try (Connection conn = mysql.getConnection()) {
+                Timestamp marca = leerMarca(conn, tipo);
+                if (marca == null) {
+                    System.out.println("[IndiceMerkle] Sin carga verificada previa para " + tipo);
+                    return false;
+                }
+                long filas = contar(conn, "SELECT COUNT(*) FROM " + tabla, null);
+                long hojas = contar(conn, "SELECT COUNT(*) FROM merkle_hojas WHERE tipo = ?", tipo);
+                if (filas != hojas) {
+                    System.out.println("[IndiceMerkle] Hojas desalineadas para " + tipo + " (" + hojas + " hojas, "
+                            + filas + " filas)");
+                    return false;
+                }
+                int distintas = verificarRecientes(conn, tipo, marca, buscar);
+                if (distintas > 0) {
+                    System.out.println("[IndiceMerkle] " + distintas + " hojas de " + tipo
+                            + " no coinciden con su entidad desde la última carga");
+                    return false;
+                }
+
+                IndiceMerkle indice = new IndiceMerkle();
+                String sql = "SELECT cubeta, hash FROM merkle_hojas WHERE tipo = ?";
+                try (PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // Integer.MIN_VALUE activa el streaming fila a fila del driver MySQL
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setString(1, tipo);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            indice.cargarHoja(rs.getInt(1), rs.getString(2));
+                        }
+                    }
+                }
+                indice.recalcularTodo();
+                guardarMarca(conn, tipo);
+                indices.put(tipo, indice);
+                return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("[IndiceMerkle] Error cargando hojas de " + tipo + ": " + e.getMessage());
+            return false;
+        } finally {
+            exclusivo.unlock();
+        }
+    }
+
+    /**
+     * Compara las hojas escritas desde {@code marca} con el hash de sus entidades,
+     * por lotes de IDs. Devuelve cuántas no coinciden (o ya no tienen entidad).
+     */
+    private int verificarRecientes(Connection conn, String tipo, Timestamp marca,
+                                   Function<Collection<String>, List<? extends IMerkleEntity>> buscar) throws SQLException {
+        Map<String, String> recientes = new HashMap<>();
+        String sql = "SELECT entidad_id, hash FROM merkle_hojas WHERE tipo = ? AND actualizada >= ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tipo);
+            ps.setTimestamp(2, marca);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    recientes.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+
+        int distintas = 0;
+        List<String> ids = new ArrayList<>(recientes.keySet());
+        for (int i = 0; i < ids.size(); i += TAMANO_LOTE) {
+            List<String> lote = ids.subList(i, Math.min(i + TAMANO_LOTE, ids.size()));
+            Map<String, String> actuales = new HashMap<>();
+            for (IMerkleEntity e : buscar.apply(lote)) {
+                if (e != null && e.getId() != null) actuales.put(e.getId(), IndiceMerkle.hashHoja(e));
+            }
+            for (String id : lote) {
+                if (!recientes.get(id).equals(actuales.get(id))) distintas++;
+            }
+        }
+        return distintas;
+    }
+
+    /**
+     * Reconstruye el índice de un tipo hasheando todas sus entidades y reemplaza
+     * sus hojas persistidas. Es el camino lento; solo se usa cuando {@link #cargar} falla.
+     * La lectura se hace con el bloqueo exclusivo del tipo: no hay escrituras en curso
+     * que se puedan perder.
+     */
+    public IndiceMerkle reconstruir(String tipo, Supplier<List<? extends IMerkleEntity>> fuente) {
+        Lock exclusivo = bloqueo(tipo).writeLock();
+        exclusivo.lock();
+        try {
+            List<? extends IMerkleEntity> entidades = fuente.get();
+            IndiceMerkle indice = new IndiceMerkle();
+            List<Object[]> hojas = new ArrayList<>(entidades.size());
+            for (IMerkleEntity e : entidades) {
+                String id = e.getId();
+                int cubeta = IndiceMerkle.cubetaDe(id);
+                String hash = IndiceMerkle.hashHoja(e);
+                indice.cargarHoja(cubeta, hash);
+                hojas.add(new Object[]{id, cubeta, hash});
+            }
+            indice.recalcularTodo();
+
+            try (Connection conn = mysql.getConnection()) {
+                asegurarTabla();
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement del = conn.prepareStatement("DELETE FROM merkle_hojas WHERE tipo = ?")) {
+                        del.setString(1, tipo);
+                        del.executeUpdate();
+                    }
+                    String sql = "INSERT INTO merkle_hojas (tipo, entidad_id, cubeta, hash) VALUES (?, ?, ?, ?)";
+                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        int enLote = 0;
+                        for (Object[] h : hojas) {
+                            ps.setString(1, tipo);
+                            ps.setString(2, (String) h[0]);
+                            ps.setInt(3, (Integer) h[1]);
+                            ps.setString(4, (String) h[2]);
+                            ps.addBatch();
+                            if (++enLote == TAMANO_LOTE) {
+                                ps.executeBatch();
+                                enLote = 0;
+                            }
+                        }
+                        if (enLote > 0) ps.executeBatch();
+                    }
+                    guardarMarca(conn, tipo);
+                    conn.commit();
+                    invalidos.remove(tipo);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                // El índice en memoria sigue siendo correcto; solo se perderá en el próximo arranque
+                System.err.println("[IndiceMerkle] Error persistiendo hojas de " + tipo + ": " + e.getMessage());
+                invalidos.add(tipo);
+            }
+
+            indices.put(tipo, indice);
+            return indice;
+        } finally {
+            exclusivo.unlock();
+        }
+    }
+
+    /** Hojas (id, hash) de una cubeta, ordenadas por ID. */
+    public List<String[]> obtenerHojasDeCubeta(String tipo, int cubeta) {
+        List<String[]> hojas = new ArrayList<>();
+        String sql = "SELECT entidad_id, hash FROM merkle_hojas WHERE tipo = ? AND cubeta = ? ORDER BY entidad_id";
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tipo);
+            ps.setInt(2, cubeta);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hojas.add(new String[]{rs.getString(1), rs.getString(2)});
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[IndiceMerkle] Error leyendo cubeta " + cubeta + " de " + tipo + ": " + e.getMessage());
+        }
+        return hojas;
+    }
+
+    // --- INTERNOS ---
+
+    private ReadWriteLock bloqueo(String tipo) {
+        return bloqueos.computeIfAbsent(tipo, k -> new ReentrantReadWriteLock());
+    }
+
+    private void asegurarTabla() throws SQLException {
+        if (tablaVerificada) return;
+        try (Connection conn = mysql.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(DDL_HOJAS);
+            st.execute(DDL_ESTADO);
+        }
+        tablaVerificada = true;
+    }
+
+    private Timestamp leerMarca(Connection conn, String tipo) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT marca FROM merkle_estado WHERE tipo = ?")) {
+            ps.setString(1, tipo);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        }
+    }
+
+    private void guardarMarca(Connection conn, String tipo) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_GUARDAR_MARCA)) {
+            ps.setString(1, tipo);
+            ps.setString(2, tipo);
+            ps.executeUpdate();
+        }
+    }
+
+    private long contar(Connection conn, String sql, String tipo) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (tipo != null) ps.setString(1, tipo);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package repositorio.clienteServidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lectura de un rango de bytes de un archivo del Bucket con lecturas posicionales
+ * de FileChannel: el heap usado es el tamaño del rango, no el del archivo.
+ *
+ * La usan las descargas por chunks de los clientes y la transferencia P2P.
+ */
+public final class LecturaRangos {
+
+    private LecturaRangos() {
+    }
+
+    /**
+     * Lee [offset, offset + length). Si el archivo termina antes, devuelve solo los
+     * bytes leídos (nunca relleno con ceros).
+     */
+    public static byte[] leer(Path ruta, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Rango inválido: offset=" + offset + ", length=" + length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            long posicion = offset;
+            while (buffer.hasRemaining()) {
+                int leidos = canal.read(buffer, posicion);
+                if (leidos < 0) break;
+                posicion += leidos;
+            }
+        }
+        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+    }
+}
@@ -10,15 +10,35 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class MensajeRepositorio {
 
     private final MySQLManager mysql;
+    private final IndiceMerkleRepositorio indiceMerkle;
+
+    private static final String SQL_SELECT = "SELECT id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id " +
+            "FROM mensajes";
+
+    private static final String SQL_GUARDAR = "INSERT INTO mensajes (id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE contenido = VALUES(contenido), fecha_envio = VALUES(fecha_envio), " +
+            "peer_remitente_id = VALUES(peer_remitente_id), peer_destino_id = VALUES(peer_destino_id)";
+
+    // Compartidas por todas las instancias, para agrupar las escrituras de todo el servidor.
+    // Los envíos en vivo y los lotes de la sincronización van por colas distintas: un envío
+    // de chat no espera detrás de un lote de 200 filas ni paga su reintento fila a fila
+    private static EscrituraAgrupada<Mensaje> escrituraEnVivo;
+    private static EscrituraAgrupada<Mensaje> escrituraSincronizacion;
 
     public MensajeRepositorio() {
         this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
     }
 
     /**
@@ -45,35 +65,44 @@ public class MensajeRepositorio {
     }
 
     /**
-     * ✅ NUEVO: Obtiene el historial de mensajes entre dos usuarios.
-     * Retorna todos los mensajes donde uno es remitente y el otro destinatario (en ambas direcciones).
+     * Página del historial entre dos usuarios (en ambas direcciones), paginada por
+     * cursor sobre (fecha_envio, id). Cada dirección se lee por separado con el índice
+     * (remitente_id, destinatario_usuario_id, fecha_envio, id) y se unen los resultados.
+     *
+     * @param antesDe   ID de mensaje: solo los anteriores a él (null = los más recientes)
+     * @param despuesDe ID de mensaje: solo los posteriores a él (tiene prioridad sobre antesDe)
+     * @param limite    Máximo de mensajes
+     * @return Mensajes en orden cronológico
      */
-    public List<Mensaje> obtenerHistorialEntre(String userId1, String userId2) {
+    public List<Mensaje> obtenerPaginaConversacion(String userId1, String userId2, String antesDe, String despuesDe, int limite) {
         List<Mensaje> lista = new ArrayList<>();
+        String cursor = despuesDe != null ? despuesDe : antesDe;
+        boolean haciaAtras = despuesDe == null;
+        String direccion = haciaAtras ? "DESC" : "ASC";
 
-        String sql = "SELECT id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id " +
-                "FROM mensajes " +
-                "WHERE (remitente_id = ? AND destinatario_usuario_id = ?) " +
-                "   OR (remitente_id = ? AND destinatario_usuario_id = ?) " +
-                "ORDER BY fecha_envio ASC, id ASC";
+        String sql = "(" + sqlPagina("m.remitente_id = ? AND m.destinatario_usuario_id = ?", cursor != null, haciaAtras) + ")" +
+                " UNION ALL " +
+                "(" + sqlPagina("m.remitente_id = ? AND m.destinatario_usuario_id = ?", cursor != null, haciaAtras) + ")" +
+                " ORDER BY fecha_envio " + direccion + ", id " + direccion + " LIMIT ?";
 
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            // Convertir a UUID
-            UUID uuid1 = UUID.fromString(userId1);
-            UUID uuid2 = UUID.fromString(userId2);
-
-            ps.setString(1, uuid1.toString());
-            ps.setString(2, uuid2.toString());
-            ps.setString(3, uuid2.toString());
-            ps.setString(4, uuid1.toString());
-
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    lista.add(mapearMensaje(rs));
-                }
-            }
+            String uuid1 = UUID.fromString(userId1).toString();
+            String uuid2 = UUID.fromString(userId2).toString();
+
+            int i = 1;
+            if (cursor != null) ps.setString(i++, cursor);
+            ps.setString(i++, uuid1);
+            ps.setString(i++, uuid2);
+            ps.setInt(i++, limite);
+            if (cursor != null) ps.setString(i++, cursor);
+            ps.setString(i++, uuid2);
+            ps.setString(i++, uuid1);
+            ps.setInt(i++, limite);
+            ps.setInt(i, limite);
+
+            leerPagina(ps, lista, haciaAtras);
         } catch (SQLException e) {
             System.err.println("[MensajeRepo] Error obteniendo historial entre usuarios: " + e.getMessage());
         } catch (IllegalArgumentException e) {
@@ -84,31 +113,30 @@ public class MensajeRepositorio {
     }
 
     /**
-     * ✅ NUEVO: Obtiene los mensajes de un canal específico con paginación.
-     * Retorna los mensajes ordenados cronológicamente.
+     * Página de mensajes de un canal, paginada por cursor sobre (fecha_envio, id) con el
+     * índice (canal_id, fecha_envio, id): el coste no depende de cuánto se haya retrocedido.
+     *
+     * @param antesDe   ID de mensaje: solo los anteriores a él (null = los más recientes)
+     * @param despuesDe ID de mensaje: solo los posteriores a él (tiene prioridad sobre antesDe)
+     * @param limite    Máximo de mensajes
+     * @return Mensajes en orden cronológico
      */
-    public List<Mensaje> obtenerMensajesPorCanal(String canalId, int limite, int offset) {
+    public List<Mensaje> obtenerPaginaCanal(String canalId, String antesDe, String despuesDe, int limite) {
         List<Mensaje> lista = new ArrayList<>();
+        String cursor = despuesDe != null ? despuesDe : antesDe;
+        boolean haciaAtras = despuesDe == null;
 
-        String sql = "SELECT id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id " +
-                "FROM mensajes " +
-                "WHERE canal_id = ? " +
-                "ORDER BY fecha_envio DESC, id DESC " +
-                "LIMIT ? OFFSET ?";
+        String sql = sqlPagina("m.canal_id = ?", cursor != null, haciaAtras);
 
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            UUID canalUUID = UUID.fromString(canalId);
-            ps.setString(1, canalUUID.toString());
-            ps.setInt(2, limite);
-            ps.setInt(3, offset);
+            int i = 1;
+            if (cursor != null) ps.setString(i++, cursor);
+            ps.setString(i++, UUID.fromString(canalId).toString());
+            ps.setInt(i, limite);
 
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    lista.add(mapearMensaje(rs));
-                }
-            }
+            leerPagina(ps, lista, haciaAtras);
         } catch (SQLException e) {
             System.err.println("[MensajeRepo] Error obteniendo mensajes del canal: " + e.getMessage());
         } catch (IllegalArgumentException e) {
@@ -118,38 +146,147 @@ public class MensajeRepositorio {
         return lista;
     }
 
+    /**
+     * SELECT de una página. El cursor es un ID de mensaje: su (fecha_envio, id) se lee
+     * en una subconsulta por clave primaria, así el cliente no tiene que enviar la fecha.
+     * Parámetros: [cursor], los del filtro y el límite.
+     */
+    private static String sqlPagina(String filtro, boolean conCursor, boolean haciaAtras) {
+        String direccion = haciaAtras ? "DESC" : "ASC";
+        StringBuilder sql = new StringBuilder("SELECT m.id, m.remitente_id, m.destinatario_usuario_id, m.canal_id, m.tipo, " +
+                "m.contenido, m.fecha_envio, m.peer_remitente_id, m.peer_destino_id FROM mensajes m");
+        if (conCursor) {
+            sql.append(" JOIN (SELECT fecha_envio AS f, id AS i FROM mensajes WHERE id = ?) c");
+        }
+        sql.append(" WHERE ").append(filtro);
+        if (conCursor) {
+            String op = haciaAtras ? "<" : ">";
+            sql.append(" AND (m.fecha_envio ").append(op).append(" c.f OR (m.fecha_envio = c.f AND m.id ")
+                    .append(op).append(" c.i))");
+        }
+        sql.append(" ORDER BY m.fecha_envio ").append(direccion).append(", m.id ").append(direccion).append(" LIMIT ?");
+        return sql.toString();
+    }
+
+    private void leerPagina(PreparedStatement ps, List<Mensaje> lista, boolean haciaAtras) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                lista.add(mapearMensaje(rs));
+            }
+        }
+        // Hacia atrás se leen del más reciente al más antiguo
+        if (haciaAtras) Collections.reverse(lista);
+    }
+
     /**
      * Guarda un nuevo mensaje o actualiza uno existente si el ID ya está en la base de datos.
      * ✅ ACTUALIZADO: Ahora incluye los campos peer_remitente_id y peer_destino_id.
+     * La hoja Merkle se calcula con la fila releída: si el mensaje ya existía, el upsert
+     * solo cambia contenido, fecha y peers, y el resto de columnas se conserva.
      */
     public boolean guardar(Mensaje m) {
         if (m == null || m.getId() == null) return false;
 
-        String sql = "INSERT INTO mensajes (id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE contenido = VALUES(contenido), fecha_envio = VALUES(fecha_envio), " +
-                "peer_remitente_id = VALUES(peer_remitente_id), peer_destino_id = VALUES(peer_destino_id)";
-
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, m.getId());
-            ps.setString(2, m.getRemitenteId() != null ? m.getRemitenteId().toString() : null);
-            ps.setString(3, m.getDestinatarioUsuarioId() != null ? m.getDestinatarioUsuarioId().toString() : null);
-            ps.setString(4, m.getCanalId() != null ? m.getCanalId().toString() : null);
-            ps.setString(5, m.getTipo() != null ? m.getTipo().name() : Mensaje.Tipo.TEXTO.name());
-            ps.setString(6, m.getContenido());
-            ps.setTimestamp(7, m.getFechaEnvio() != null ? Timestamp.from(m.getFechaEnvio()) : Timestamp.from(Instant.now()));
-            ps.setString(8, m.getPeerRemitenteId());
-            ps.setString(9, m.getPeerDestinoId());
-
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_MENSAJE,
+                    c -> EscrituraPorLotes.ejecutarUno(c, SQL_GUARDAR, m, this::asignarParametros),
+                    c -> ConsultaPorIds.buscar(c, SQL_SELECT, "id", List.of(m.getId()), this::mapearMensaje));
         } catch (SQLException e) {
             System.err.println("[MensajeRepo] Error guardando mensaje " + m.getId() + ": " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Guarda un lote de mensajes en una única transacción (sincronización P2P).
+     * Las filas se releen en la misma transacción: sus hojas Merkle se calculan con lo
+     * que quedó persistido y el resultado cuenta las filas que existen tras el upsert.
+     * @return Cantidad de mensajes guardados, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<Mensaje> mensajes) {
+        if (mensajes == null || mensajes.isEmpty()) return 0;
+        Set<String> unicos = new LinkedHashSet<>();
+        for (Mensaje m : mensajes) {
+            if (m != null && m.getId() != null) unicos.add(m.getId());
+        }
+        List<String> ids = new ArrayList<>(unicos);
+        int[] escritos = {0};
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_MENSAJE,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, mensajes, this::asignarParametros),
+                    c -> {
+                        List<Mensaje> persistidos = ConsultaPorIds.buscar(c, SQL_SELECT, "id", ids, this::mapearMensaje);
+                        escritos[0] = persistidos.size();
+                        return persistidos;
+                    });
+            return ok ? escritos[0] : 0;
+        } catch (SQLException e) {
+            System.err.println("[MensajeRepo] Error guardando lote de " + mensajes.size() + " mensajes: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Guarda un mensaje enviado en vivo por la escritura agrupada: los envíos
+     * concurrentes se confirman juntos en una sola transacción cada pocos milisegundos.
+     * Su cola es solo de envíos en vivo, sin lotes de sincronización.
+     *
+     * @return Futuro que se completa con true cuando el mensaje está en la BD
+     */
+    public CompletableFuture<Boolean> guardarAgrupado(Mensaje m) {
+        if (m == null || m.getId() == null) return CompletableFuture.completedFuture(false);
+        return escrituraEnVivo().encolar(m);
+    }
+
+    /**
+     * Guarda varios mensajes de la sincronización por su propia escritura agrupada y
+     * espera a que terminen. A diferencia de {@link #guardarLote}, una fila inválida no
+     * revierte las demás.
+     *
+     * @return Cantidad de mensajes guardados
+     */
+    public int guardarAgrupados(List<Mensaje> mensajes) {
+        if (mensajes == null || mensajes.isEmpty()) return 0;
+        EscrituraAgrupada<Mensaje> escritura = escrituraSincronizacion();
+        List<CompletableFuture<Boolean>> futuros = new ArrayList<>(mensajes.size());
+        for (Mensaje m : mensajes) {
+            futuros.add(m == null || m.getId() == null ? CompletableFuture.completedFuture(false) : escritura.encolar(m));
+        }
+        int guardados = 0;
+        for (CompletableFuture<Boolean> futuro : futuros) {
+            if (futuro.join()) guardados++;
+        }
+        return guardados;
+    }
+
+    private static synchronized EscrituraAgrupada<Mensaje> escrituraEnVivo() {
+        if (escrituraEnVivo == null) {
+            MensajeRepositorio repo = new MensajeRepositorio();
+            escrituraEnVivo = new EscrituraAgrupada<>("MensajeRepo-Vivo", repo::guardarLote, repo::guardar);
+        }
+        return escrituraEnVivo;
+    }
+
+    private static synchronized EscrituraAgrupada<Mensaje> escrituraSincronizacion() {
+        if (escrituraSincronizacion == null) {
+            MensajeRepositorio repo = new MensajeRepositorio();
+            escrituraSincronizacion = new EscrituraAgrupada<>("MensajeRepo-Sync", repo::guardarLote, repo::guardar);
+        }
+        return escrituraSincronizacion;
+    }
+
+    private void asignarParametros(PreparedStatement ps, Mensaje m) throws SQLException {
+        ps.setString(1, m.getId());
+        ps.setString(2, m.getRemitenteId() != null ? m.getRemitenteId().toString() : null);
+        ps.setString(3, m.getDestinatarioUsuarioId() != null ? m.getDestinatarioUsuarioId().toString() : null);
+        ps.setString(4, m.getCanalId() != null ? m.getCanalId().toString() : null);
+        ps.setString(5, m.getTipo() != null ? m.getTipo().name() : Mensaje.Tipo.TEXTO.name());
+        ps.setString(6, m.getContenido());
+        ps.setTimestamp(7, m.getFechaEnvio() != null ? Timestamp.from(m.getFechaEnvio()) : Timestamp.from(Instant.now()));
+        ps.setString(8, m.getPeerRemitenteId());
+        ps.setString(9, m.getPeerDestinoId());
+    }
+
     /**
      * ✅ NUEVO: Actualiza un mensaje existente y actualiza su timestamp automáticamente.
      */
@@ -161,23 +298,63 @@ public class MensajeRepositorio {
 
         String sql = "UPDATE mensajes SET contenido=?, fecha_envio=?, peer_remitente_id=?, peer_destino_id=? WHERE id=?";
 
+        try (Connection conn = mysql.getConnection()) {
+            boolean ok = indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_MENSAJE, c -> {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, m.getContenido());
+                    ps.setTimestamp(2, Timestamp.from(m.getFechaEnvio()));
+                    ps.setString(3, m.getPeerRemitenteId());
+                    ps.setString(4, m.getPeerDestinoId());
+                    ps.setString(5, m.getId());
+                    return ps.executeUpdate() > 0;
+                }
+            }, c -> ConsultaPorIds.buscar(c, SQL_SELECT, "id", List.of(m.getId()), this::mapearMensaje));
+            if (ok) {
+                System.out.println("[MensajeRepo] ✓ Mensaje actualizado con timestamp: " + m.getId());
+            }
+            return ok;
+        } catch (SQLException e) {
+            System.err.println("[MensajeRepo] Error actualizando mensaje " + m.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Busca un mensaje por su ID.
+     */
+    public Mensaje buscarPorId(String id) {
+        if (id == null || id.isEmpty()) return null;
+
+        String sql = "SELECT id, remitente_id, destinatario_usuario_id, canal_id, tipo, contenido, fecha_envio, peer_remitente_id, peer_destino_id " +
+                "FROM mensajes WHERE id = ?";
+
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, m.getContenido());
-            ps.setTimestamp(2, Timestamp.from(m.getFechaEnvio()));
-            ps.setString(3, m.getPeerRemitenteId());
-            ps.setString(4, m.getPeerDestinoId());
-            ps.setString(5, m.getId());
+            ps.setString(1, id);
 
-            int affected = ps.executeUpdate();
-            if (affected > 0) {
-                System.out.println("[MensajeRepo] ✓ Mensaje actualizado con timestamp: " + m.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return mapearMensaje(rs);
+                }
             }
-            return affected > 0;
         } catch (SQLException e) {
-            System.err.println("[MensajeRepo] Error actualizando mensaje " + m.getId() + ": " + e.getMessage());
-            return false;
+            System.err.println("[MensajeRepo] Error buscando mensaje por ID: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Busca varios mensajes por clave primaria (sincronización P2P).
+     * Los IDs que no existen se omiten.
+     */
+    public List<Mensaje> buscarPorIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            return ConsultaPorIds.buscar(conn, SQL_SELECT, "id", ids, this::mapearMensaje);
+        } catch (SQLException e) {
+            System.err.println("[MensajeRepo] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
         }
     }
 
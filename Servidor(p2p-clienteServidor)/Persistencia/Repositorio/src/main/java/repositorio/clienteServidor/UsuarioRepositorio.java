@@ -6,14 +6,35 @@ import repositorio.comunicacion.MySQLManager;
 import java.sql.*;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public class UsuarioRepositorio {
     private final MySQLManager mysql;
+    private final IndiceMerkleRepositorio indiceMerkle;
+    private final CachePerfilesUsuario cache;
+
+    // ✅ MEJORADO: Actualizar timestamp automáticamente cuando se modifica un usuario
+    private static final String SQL_GUARDAR = "INSERT INTO usuarios (id, nombre, email, foto, peer_padre, contrasena, ip, estado, fecha_creacion) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "nombre=VALUES(nombre), " +
+            "email=VALUES(email), " +
+            "foto=VALUES(foto), " +
+            "ip=VALUES(ip), " +
+            "estado=VALUES(estado), " +
+            "contrasena=VALUES(contrasena), " +
+            "fecha_creacion=VALUES(fecha_creacion)"; // ✅ NUEVO: Actualizar timestamp en modificaciones
 
     public UsuarioRepositorio() {
         this.mysql = MySQLManager.getInstance();
+        this.indiceMerkle = IndiceMerkleRepositorio.getInstance();
+        this.cache = CachePerfilesUsuario.getInstance();
     }
 
     public List<Usuario> obtenerTodosParaSync() {
@@ -34,45 +55,57 @@ public class UsuarioRepositorio {
     }
 
     public boolean guardar(Usuario u) {
-        // ✅ MEJORADO: Actualizar timestamp automáticamente cuando se modifica un usuario
-        String sql = "INSERT INTO usuarios (id, nombre, email, foto, peer_padre, contrasena, ip, estado, fecha_creacion) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE " +
-                "nombre=VALUES(nombre), " +
-                "email=VALUES(email), " +
-                "foto=VALUES(foto), " +
-                "ip=VALUES(ip), " +
-                "estado=VALUES(estado), " +
-                "contrasena=VALUES(contrasena), " +
-                "fecha_creacion=VALUES(fecha_creacion)"; // ✅ NUEVO: Actualizar timestamp en modificaciones
-
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, u.getId().toString());
-            ps.setString(2, u.getNombre());
-            ps.setString(3, u.getEmail());
-            ps.setString(4, u.getFoto());
-            ps.setString(5, u.getPeerPadre() != null ? u.getPeerPadre().toString() : null);
-            ps.setString(6, u.getContrasena());
-            ps.setString(7, u.getIp());
-            ps.setString(8, u.getEstado().name());
-
-            // ✅ NUEVO: Si el usuario ya existe (UPDATE), usar timestamp actual
-            // Si es nuevo (INSERT), usar el timestamp que trae
-            Instant timestamp = u.getFechaCreacion();
-            if (timestamp == null) {
-                timestamp = Instant.now();
-                u.setFechaCreacion(timestamp);
-            }
-            ps.setTimestamp(9, Timestamp.from(timestamp));
-
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_USUARIO,
+                    c -> EscrituraPorLotes.ejecutarUno(c, SQL_GUARDAR, u, this::asignarParametros),
+                    c -> List.of(u));
         } catch (SQLException e) {
             System.err.println("[RepoUsuario] Error guardando: " + e.getMessage());
             return false;
+        } finally {
+            cache.invalidar(u.getId());
         }
     }
 
+    /**
+     * Guarda un lote de usuarios en una única transacción (sincronización P2P).
+     * @return Cantidad de usuarios guardados, 0 si el lote se revirtió
+     */
+    public int guardarLote(List<Usuario> usuarios) {
+        if (usuarios == null || usuarios.isEmpty()) return 0;
+        try (Connection conn = mysql.getConnection()) {
+            indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_USUARIO,
+                    c -> EscrituraPorLotes.ejecutar(c, SQL_GUARDAR, usuarios, this::asignarParametros),
+                    c -> usuarios);
+        } catch (SQLException e) {
+            System.err.println("[RepoUsuario] Error guardando lote de " + usuarios.size() + " usuarios: " + e.getMessage());
+            return 0;
+        } finally {
+            cache.invalidarTodos(usuarios);
+        }
+        return usuarios.size();
+    }
+
+    private void asignarParametros(PreparedStatement ps, Usuario u) throws SQLException {
+        ps.setString(1, u.getId().toString());
+        ps.setString(2, u.getNombre());
+        ps.setString(3, u.getEmail());
+        ps.setString(4, u.getFoto());
+        ps.setString(5, u.getPeerPadre() != null ? u.getPeerPadre().toString() : null);
+        ps.setString(6, u.getContrasena());
+        ps.setString(7, u.getIp());
+        ps.setString(8, u.getEstado().name());
+
+        // ✅ NUEVO: Si el usuario ya existe (UPDATE), usar timestamp actual
+        // Si es nuevo (INSERT), usar el timestamp que trae
+        Instant timestamp = u.getFechaCreacion();
+        if (timestamp == null) {
+            timestamp = Instant.now();
+            u.setFechaCreacion(timestamp);
+        }
+        ps.setTimestamp(9, Timestamp.from(timestamp));
+    }
+
     /**
      * Busca un usuario por su email (para login)
      */
@@ -93,16 +126,22 @@ public class UsuarioRepositorio {
     }
 
     /**
-     * Busca un usuario por su ID
+     * Busca un usuario por su ID (pasa por {@link CachePerfilesUsuario})
      */
     public Usuario buscarPorId(UUID id) {
+        Usuario enCache = cache.obtener(id.toString());
+        if (enCache != null) return enCache;
+
         String sql = "SELECT * FROM usuarios WHERE id = ?";
+        long marca = cache.marca();
         try (Connection conn = mysql.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id.toString());
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return mapear(rs);
+                    Usuario u = mapear(rs);
+                    cache.guardar(u, marca);
+                    return u;
                 }
             }
         } catch (SQLException e) {
@@ -124,20 +163,108 @@ public class UsuarioRepositorio {
         }
     }
 
+    /**
+     * Busca varios usuarios por clave primaria (sincronización P2P).
+     * Los IDs que no existen se omiten.
+     */
+    public List<Usuario> buscarPorIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        try (Connection conn = mysql.getConnection()) {
+            return ConsultaPorIds.buscar(conn, "SELECT * FROM usuarios", "id", ids, this::mapear);
+        } catch (SQLException e) {
+            System.err.println("[RepoUsuario] Error buscando por IDs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Perfiles de varios usuarios (autores de un historial, invitadores, miembros...).
+     * Los que están en {@link CachePerfilesUsuario} no tocan la BD; el resto se trae
+     * en una sola consulta. Los IDs inválidos o inexistentes se omiten.
+     *
+     * @return ID -> usuario
+     */
+    public Map<String, Usuario> buscarPerfiles(Collection<String> ids) {
+        Map<String, Usuario> perfiles = new HashMap<>();
+        if (ids == null || ids.isEmpty()) return perfiles;
+
+        Set<String> faltantes = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id == null || perfiles.containsKey(id)) continue;
+            Usuario enCache = cache.obtener(id);
+            if (enCache != null) {
+                perfiles.put(id, enCache);
+            } else {
+                faltantes.add(id);
+            }
+        }
+        if (faltantes.isEmpty()) return perfiles;
+
+        long marca = cache.marca();
+        for (Usuario u : buscarPorIds(new ArrayList<>(faltantes))) {
+            cache.guardar(u, marca);
+            perfiles.put(u.getId(), u);
+        }
+        return perfiles;
+    }
+
+    /**
+     * Miembros de un canal con su perfil, ordenados por ID, en una sola consulta
+     * sobre la clave primaria (canal_id, usuario_id) de canal_miembros.
+     *
+     * @param despuesDe Cursor: solo usuarios con ID mayor (null = desde el principio)
+     * @param limite    Máximo de miembros (0 = sin límite)
+     */
+    public List<Usuario> obtenerMiembrosDeCanal(String canalId, String despuesDe, int limite) {
+        List<Usuario> lista = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT u.* FROM canal_miembros cm JOIN usuarios u ON u.id = cm.usuario_id " +
+                "WHERE cm.canal_id = ?");
+        if (despuesDe != null) sql.append(" AND cm.usuario_id > ?");
+        sql.append(" ORDER BY cm.usuario_id");
+        if (limite > 0) sql.append(" LIMIT ?");
+
+        long marca = cache.marca();
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setString(i++, UUID.fromString(canalId).toString());
+            if (despuesDe != null) ps.setString(i++, UUID.fromString(despuesDe).toString());
+            if (limite > 0) ps.setInt(i, limite);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Usuario u = mapear(rs);
+                    cache.guardar(u, marca);
+                    lista.add(u);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[RepoUsuario] Error obteniendo miembros del canal: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("[RepoUsuario] ID inválido: " + e.getMessage());
+        }
+        return lista;
+    }
+
     /**
      * Actualiza el estado de un usuario
      */
     public boolean actualizarEstado(UUID id, Usuario.Estado estado) {
         String sql = "UPDATE usuarios SET estado = ?, fecha_creacion = ? WHERE id = ?";
-        try (Connection conn = mysql.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, estado.name());
-            ps.setTimestamp(2, Timestamp.from(Instant.now())); // ✅ Actualizar timestamp
-            ps.setString(3, id.toString());
-            return ps.executeUpdate() > 0;
+        try (Connection conn = mysql.getConnection()) {
+            return indiceMerkle.escribir(conn, IndiceMerkleRepositorio.TIPO_USUARIO, c -> {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, estado.name());
+                    ps.setTimestamp(2, Timestamp.from(Instant.now())); // ✅ Actualizar timestamp
+                    ps.setString(3, id.toString());
+                    return ps.executeUpdate() > 0;
+                }
+                // Se relee la fila en la misma transacción para hashearla con el estado nuevo
+            }, c -> ConsultaPorIds.buscar(c, "SELECT * FROM usuarios", "id", List.of(id.toString()), this::mapear));
         } catch (SQLException e) {
             System.err.println("[RepoUsuario] Error actualizando estado: " + e.getMessage());
             return false;
+        } finally {
+            cache.invalidar(id.toString());
         }
     }
 
@@ -0,0 +1,339 @@
+package repositorio.comunicacion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Migraciones versionadas del esquema, aplicadas al arrancar {@link MySQLManager}.
+ *
+ * Las tablas las crea init.sql (o el propio repositorio, como merkle_hojas); aquí van
+ * los cambios posteriores, sobre todo los índices de las consultas calientes, para que
+ * todos los nodos de la red los tengan sin pasos manuales. Cada versión aplicada queda
+ * en esquema_versiones y cada paso es idempotente: un índice se compara por sus columnas
+ * (no solo por el nombre) y se recrea si difiere, así que da igual partir de un init.sql
+ * viejo, que tenía índices de una columna con los mismos nombres, o de uno actual.
+ *
+ * Al terminar se revisa con EXPLAIN el plan de las consultas clave y se avisa si
+ * alguna recorre la tabla entera.
+ */
+class GestorEsquema {
+
+    private static final Logger logger = LoggerFactory.getLogger(GestorEsquema.class);
+
+    private static final String DDL_VERSIONES = "CREATE TABLE IF NOT EXISTS esquema_versiones (" +
+            "version INT NOT NULL PRIMARY KEY, " +
+            "descripcion VARCHAR(200) NOT NULL, " +
+            "fecha_aplicacion DATETIME(6) NOT NULL" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    // Evita que dos procesos sobre la misma BD migren a la vez
+    private static final String LOCK = "chat_esquema_migraciones";
+    private static final int ESPERA_LOCK_SEG = 60;
+
+    // Por debajo de estas filas estimadas un recorrido completo no preocupa (BD recién creada)
+    private static final long FILAS_MINIMAS_AVISO = 1000;
+    private static final String UUID_EJEMPLO = "00000000-0000-0000-0000-000000000000";
+
+    private static final List<Migracion> MIGRACIONES = List.of(
+            new Migracion(1, "Índices de listados y paginación por cursor",
+                    Indice.de("canal_miembros", "idx_miembros_usuario", "usuario_id, canal_id"),
+                    Indice.de("mensajes", "idx_mensajes_canal", "canal_id, fecha_envio, id"),
+                    Indice.de("mensajes", "idx_mensajes_conversacion", "remitente_id, destinatario_usuario_id, fecha_envio, id"),
+                    // remitente_id queda cubierto (también para su FK) por idx_mensajes_conversacion
+                    Borrado.de("mensajes", "idx_mensajes_remitente")),
+            new Migracion(2, "Índice de deduplicación de archivos por hash",
+                    Indice.de("archivos", "idx_archivos_hash", "hash_sha256")),
+            new Migracion(3, "Índice de mensajes por contenido (prefijo)",
+                    Indice.de("mensajes", "idx_mensajes_contenido", "contenido(191)")),
+            new Migracion(4, "Marca de actualización en las hojas Merkle",
+                    Columna.de("merkle_hojas", "actualizada",
+                            "DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)"),
+                    Indice.de("merkle_hojas", "idx_merkle_actualizada", "tipo, actualizada"))
+    );
+
+    private static final List<ConsultaClave> CONSULTAS_CLAVE = List.of(
+            new ConsultaClave("Página de un canal",
+                    "SELECT id FROM mensajes WHERE canal_id = ? ORDER BY fecha_envio DESC, id DESC LIMIT 50", 1),
+            new ConsultaClave("Página de una conversación",
+                    "SELECT id FROM mensajes WHERE remitente_id = ? AND destinatario_usuario_id = ? " +
+                            "ORDER BY fecha_envio DESC, id DESC LIMIT 50", 2),
+            new ConsultaClave("Mensaje por contenido",
+                    "SELECT id FROM mensajes WHERE contenido = ? LIMIT 1", 1),
+            new ConsultaClave("Canales de un usuario",
+                    "SELECT canal_id FROM canal_miembros WHERE usuario_id = ? ORDER BY canal_id", 1),
+            new ConsultaClave("Archivo por hash",
+                    "SELECT id FROM archivos WHERE hash_sha256 = ? LIMIT 1", 1)
+    );
+
+    private final DataSource dataSource;
+
+    GestorEsquema(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Aplica las migraciones pendientes y revisa los planes de las consultas clave.
+     */
+    void aplicar() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            if (!tomarLock(conn)) {
+                logger.warn("⚠️ No se obtuvo el lock de migraciones en {}s; se omiten", ESPERA_LOCK_SEG);
+                return;
+            }
+            try {
+                migrar(conn);
+            } finally {
+                liberarLock(conn);
+            }
+            verificarPlanes(conn);
+        }
+    }
+
+    private void migrar(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute(DDL_VERSIONES);
+        }
+
+        Set<Integer> aplicadas = new HashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version FROM esquema_versiones")) {
+            while (rs.next()) {
+                aplicadas.add(rs.getInt(1));
+            }
+        }
+
+        for (Migracion migracion : MIGRACIONES) {
+            if (aplicadas.contains(migracion.version)) continue;
+
+            long inicio = System.currentTimeMillis();
+            for (Paso paso : migracion.pasos) {
+                paso.aplicar(conn);
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO esquema_versiones (version, descripcion, fecha_aplicacion) VALUES (?, ?, ?)")) {
+                ps.setInt(1, migracion.version);
+                ps.setString(2, migracion.descripcion);
+                ps.setTimestamp(3, Timestamp.from(Instant.now()));
+                ps.executeUpdate();
+            }
+            logger.info("🗄️ Migración {} aplicada: {} ({} ms)", migracion.version, migracion.descripcion,
+                    System.currentTimeMillis() - inicio);
+        }
+    }
+
+    /**
+     * EXPLAIN de cada consulta clave: avisa si alguna tabla se recorre entera
+     * (type = ALL) con más de {@link #FILAS_MINIMAS_AVISO} filas estimadas.
+     */
+    private void verificarPlanes(Connection conn) {
+        for (ConsultaClave consulta : CONSULTAS_CLAVE) {
+            try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + consulta.sql)) {
+                for (int i = 1; i <= consulta.parametros; i++) {
+                    ps.setString(i, UUID_EJEMPLO);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long filas = rs.getLong("rows");
+                        if ("ALL".equalsIgnoreCase(rs.getString("type")) && filas >= FILAS_MINIMAS_AVISO) {
+                            logger.warn("⚠️ Plan sin índice en '{}': recorrido completo de {} (~{} filas)",
+                                    consulta.nombre, rs.getString("table"), filas);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                logger.warn("No se pudo revisar el plan de '{}': {}", consulta.nombre, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean tomarLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK);
+            ps.setInt(2, ESPERA_LOCK_SEG);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void liberarLock(Connection conn) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            logger.warn("No se pudo liberar el lock de migraciones: {}", e.getMessage());
+        }
+    }
+
+    private static final class Migracion {
+        final int version;
+        final String descripcion;
+        final List<Paso> pasos;
+
+        Migracion(int version, String descripcion, Paso... pasos) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.pasos = List.of(pasos);
+        }
+    }
+
+    private interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    private static final class Indice implements Paso {
+        final String tabla;
+        final String nombre;
+        final String columnas;
+
+        private Indice(String tabla, String nombre, String columnas) {
+            this.tabla = tabla;
+            this.nombre = nombre;
+            this.columnas = columnas;
+        }
+
+        static Indice de(String tabla, String nombre, String columnas) {
+            return new Indice(tabla, nombre, columnas);
+        }
+
+        /**
+         * MySQL no tiene CREATE INDEX IF NOT EXISTS: se consulta information_schema.
+         * Si ya hay un índice con ese nombre pero con otras columnas, se reemplaza en un
+         * solo ALTER (así una FK que dependa de él nunca se queda sin índice).
+         */
+        @Override
+        public void aplicar(Connection conn) throws SQLException {
+            if (!existeTabla(conn, tabla)) return;
+            String actuales = columnasActuales(conn, tabla, nombre);
+            if (columnas.equalsIgnoreCase(actuales)) return;
+
+            try (Statement st = conn.createStatement()) {
+                if (actuales == null) {
+                    st.execute("CREATE INDEX " + nombre + " ON " + tabla + " (" + columnas + ")");
+                    logger.info("   ✓ Índice {} creado en {}({})", nombre, tabla, columnas);
+                } else {
+                    st.execute("ALTER TABLE " + tabla + " DROP INDEX " + nombre + ", ADD INDEX " + nombre + " (" + columnas + ")");
+                    logger.info("   ✓ Índice {} de {} recreado: ({}) -> ({})", nombre, tabla, actuales, columnas);
+                }
+            }
+        }
+    }
+
+    private static final class Borrado implements Paso {
+        final String tabla;
+        final String nombre;
+
+        private Borrado(String tabla, String nombre) {
+            this.tabla = tabla;
+            this.nombre = nombre;
+        }
+
+        static Borrado de(String tabla, String nombre) {
+            return new Borrado(tabla, nombre);
+        }
+
+        @Override
+        public void aplicar(Connection conn) throws SQLException {
+            if (columnasActuales(conn, tabla, nombre) == null) return;
+            try (Statement st = conn.createStatement()) {
+                st.execute("DROP INDEX " + nombre + " ON " + tabla);
+            }
+            logger.info("   ✓ Índice redundante {} eliminado de {}", nombre, tabla);
+        }
+    }
+
+    private static final class Columna implements Paso {
+        final String tabla;
+        final String nombre;
+        final String definicion;
+
+        private Columna(String tabla, String nombre, String definicion) {
+            this.tabla = tabla;
+            this.nombre = nombre;
+            this.definicion = definicion;
+        }
+
+        static Columna de(String tabla, String nombre, String definicion) {
+            return new Columna(tabla, nombre, definicion);
+        }
+
+        @Override
+        public void aplicar(Connection conn) throws SQLException {
+            if (!existeTabla(conn, tabla)) return;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT 1 FROM information_schema.COLUMNS " +
+                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+                ps.setString(1, tabla);
+                ps.setString(2, nombre);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return;
+                }
+            }
+            try (Statement st = conn.createStatement()) {
+                st.execute("ALTER TABLE " + tabla + " ADD COLUMN " + nombre + " " + definicion);
+            }
+            logger.info("   ✓ Columna {} añadida a {}", nombre, tabla);
+        }
+    }
+
+    /**
+     * Las tablas que crea un repositorio al primer uso (merkle_hojas, replicacion_log)
+     * pueden no existir aún; entonces nacen ya con su forma actual y el paso se omite.
+     */
+    private static boolean existeTabla(Connection conn, String tabla) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            ps.setString(1, tabla);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Columnas de un índice en el mismo formato que {@link Indice#columnas}
+     * ("a, b, c(191)"), o null si no existe.
+     */
+    private static String columnasActuales(Connection conn, String tabla, String nombre) throws SQLException {
+        StringBuilder columnas = new StringBuilder();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COLUMN_NAME, SUB_PART FROM information_schema.STATISTICS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? ORDER BY SEQ_IN_INDEX")) {
+            ps.setString(1, tabla);
+            ps.setString(2, nombre);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (columnas.length() > 0) columnas.append(", ");
+                    columnas.append(rs.getString(1));
+                    long prefijo = rs.getLong(2);
+                    if (!rs.wasNull()) columnas.append('(').append(prefijo).append(')');
+                }
+            }
+        }
+        return columnas.length() > 0 ? columnas.toString() : null;
+    }
+
+    private static final class ConsultaClave {
+        final String nombre;
+        final String sql;
+        final int parametros;
+
+        ConsultaClave(String nombre, String sql, int parametros) {
+            this.nombre = nombre;
+            this.sql = sql;
+            this.parametros = parametros;
+        }
+    }
+}
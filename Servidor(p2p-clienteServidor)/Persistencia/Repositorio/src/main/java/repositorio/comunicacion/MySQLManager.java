@@ -41,10 +41,19 @@ public class MySQLManager {
             hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
             hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
             hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            // Un executeBatch de INSERT viaja como un solo INSERT multi-fila (lotes de entidades y hojas Merkle)
+            hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
 
             this.dataSource = new HikariDataSource(hikariConfig);
             logger.info("✅ HikariCP inicializado para MySQL: {}", jdbcUrl);
             logger.info("📊 Configuración DB: host={}, port={}, database={}, maxPool={}", host, port, db, maxPool);
+
+            // Índices y cambios de esquema pendientes; un fallo no impide arrancar
+            try {
+                new GestorEsquema(dataSource).aplicar();
+            } catch (SQLException e) {
+                logger.error("❌ Error aplicando migraciones de esquema: {}", e.getMessage());
+            }
         } catch (Exception e) {
             logger.error("❌ Error inicializando MySQLManager", e);
             throw new RuntimeException(e);
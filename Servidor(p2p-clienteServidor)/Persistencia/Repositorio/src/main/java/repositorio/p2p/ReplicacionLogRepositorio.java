@@ -0,0 +1,241 @@
+package repositorio.p2p;
+
+import repositorio.comunicacion.MySQLManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de replicación por origen para la difusión de deltas entre peers.
+ *
+ * - {@code replicacion_log}: escrituras originadas en un nodo, numeradas con una
+ *   secuencia creciente por origen. Solo guarda (tipo, id): al reenviar se lee el
+ *   estado actual de la entidad.
+ * - {@code replicacion_progreso}: última secuencia aplicada sin huecos de cada origen
+ *   remoto, para detectar huecos y descartar duplicados tras un reinicio.
+ */
+public class ReplicacionLogRepositorio {
+
+    private static final String DDL_LOG = "CREATE TABLE IF NOT EXISTS replicacion_log (" +
+            "origen VARCHAR(64) NOT NULL, " +
+            "secuencia BIGINT NOT NULL, " +
+            "tipo VARCHAR(32) NOT NULL, " +
+            "entidad_id VARCHAR(100) NOT NULL, " +
+            "fecha TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+            "PRIMARY KEY (origen, secuencia)" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    private static final String DDL_PROGRESO = "CREATE TABLE IF NOT EXISTS replicacion_progreso (" +
+            "origen VARCHAR(64) NOT NULL PRIMARY KEY, " +
+            "secuencia BIGINT NOT NULL" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    private static ReplicacionLogRepositorio instance;
+
+    private final MySQLManager mysql;
+    // Última secuencia asignada por origen (se carga de la tabla la primera vez)
+    private final Map<String, Long> ultimas = new ConcurrentHashMap<>();
+    private volatile boolean tablasVerificadas = false;
+
+    private ReplicacionLogRepositorio() {
+        this.mysql = MySQLManager.getInstance();
+    }
+
+    public static synchronized ReplicacionLogRepositorio getInstance() {
+        if (instance == null) {
+            instance = new ReplicacionLogRepositorio();
+        }
+        return instance;
+    }
+
+    // --- LOG DE ESCRITURAS ---
+
+    /**
+     * Añade una escritura al log del origen.
+     *
+     * @return Secuencia asignada, o -1 si no se pudo persistir
+     */
+    public synchronized long agregar(String origen, String tipo, String entidadId) {
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            long secuencia = ultimaSecuencia(conn, origen) + 1;
+            String sql = "INSERT INTO replicacion_log (origen, secuencia, tipo, entidad_id) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, origen);
+                ps.setLong(2, secuencia);
+                ps.setString(3, tipo);
+                ps.setString(4, entidadId);
+                ps.executeUpdate();
+            }
+            ultimas.put(origen, secuencia);
+            return secuencia;
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error agregando " + tipo + "/" + entidadId + ": " + e.getMessage());
+            ultimas.remove(origen);
+            return -1;
+        }
+    }
+
+    /** Entradas del origen con secuencia mayor que {@code despuesDe}, en orden. */
+    public List<Entrada> leerDesde(String origen, long despuesDe, int limite) {
+        List<Entrada> entradas = new ArrayList<>();
+        String sql = "SELECT secuencia, tipo, entidad_id FROM replicacion_log " +
+                "WHERE origen = ? AND secuencia > ? ORDER BY secuencia LIMIT ?";
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, origen);
+                ps.setLong(2, despuesDe);
+                ps.setInt(3, limite);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        entradas.add(new Entrada(origen, rs.getLong(1), rs.getString(2), rs.getString(3)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error leyendo log de " + origen + ": " + e.getMessage());
+        }
+        return entradas;
+    }
+
+    /** Primera secuencia aún disponible del origen (las anteriores se podaron), o 0 si está vacío. */
+    public long primeraSecuencia(String origen) {
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            return leerLong(conn, "SELECT MIN(secuencia) FROM replicacion_log WHERE origen = ?", origen);
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error leyendo inicio del log de " + origen + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public synchronized long ultimaSecuencia(String origen) {
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            return ultimaSecuencia(conn, origen);
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error leyendo fin del log de " + origen + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Borra las entradas del origen con secuencia menor o igual que {@code hasta}.
+     *
+     * @return Entradas borradas, o -1 si falló
+     */
+    public int podarHasta(String origen, long hasta) {
+        if (hasta <= 0) return 0;
+        try (Connection conn = mysql.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM replicacion_log WHERE origen = ? AND secuencia <= ?")) {
+            ps.setString(1, origen);
+            ps.setLong(2, hasta);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error podando log de " + origen + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // --- PROGRESO DE ORÍGENES REMOTOS ---
+
+    /** Última secuencia aplicada sin huecos del origen, o -1 si nunca se recibió nada de él. */
+    public long obtenerProgreso(String origen) {
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            try (PreparedStatement ps = conn.prepareStatement("SELECT secuencia FROM replicacion_progreso WHERE origen = ?")) {
+                ps.setString(1, origen);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : -1;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error leyendo progreso de " + origen + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public void guardarProgreso(String origen, long secuencia) {
+        String sql = "INSERT INTO replicacion_progreso (origen, secuencia) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE secuencia = VALUES(secuencia)";
+        try (Connection conn = mysql.getConnection()) {
+            asegurarTablas(conn);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, origen);
+                ps.setLong(2, secuencia);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            System.err.println("[ReplicacionLog] Error guardando progreso de " + origen + ": " + e.getMessage());
+        }
+    }
+
+    // --- UTILIDADES ---
+
+    private long ultimaSecuencia(Connection conn, String origen) throws SQLException {
+        Long enMemoria = ultimas.get(origen);
+        if (enMemoria != null) return enMemoria;
+        long ultima = leerLong(conn, "SELECT MAX(secuencia) FROM replicacion_log WHERE origen = ?", origen);
+        ultimas.put(origen, ultima);
+        return ultima;
+    }
+
+    private void asegurarTablas(Connection conn) throws SQLException {
+        if (tablasVerificadas) return;
+        try (Statement st = conn.createStatement()) {
+            st.execute(DDL_LOG);
+            st.execute(DDL_PROGRESO);
+        }
+        tablasVerificadas = true;
+    }
+
+    private long leerLong(Connection conn, String sql, String origen) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, origen);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Escritura registrada en el log.
+     */
+    public static class Entrada {
+        private final String origen;
+        private final long secuencia;
+        private final String tipo;
+        private final String entidadId;
+
+        public Entrada(String origen, long secuencia, String tipo, String entidadId) {
+            this.origen = origen;
+            this.secuencia = secuencia;
+            this.tipo = tipo;
+            this.entidadId = entidadId;
+        }
+
+        public String getOrigen() {
+            return origen;
+        }
+
+        public long getSecuencia() {
+            return secuencia;
+        }
+
+        public String getTipo() {
+            return tipo;
+        }
+
+        public String getEntidadId() {
+            return entidadId;
+        }
+    }
+}
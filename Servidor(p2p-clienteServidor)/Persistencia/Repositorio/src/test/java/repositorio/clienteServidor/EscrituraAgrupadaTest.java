@@ -0,0 +1,144 @@
+package repositorio.clienteServidor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EscrituraAgrupadaTest {
+
+    private static final String BLOQUEO = "bloqueo";
+
+    @Test
+    void loteConfirmadoCompletaTodosLosFuturos() throws Exception {
+        AtomicInteger filaAFila = new AtomicInteger();
+        EscrituraAgrupada<String> escritura = new EscrituraAgrupada<>("prueba-ok",
+                List::size, e -> filaAFila.incrementAndGet() > 0);
+
+        List<CompletableFuture<Boolean>> futuros = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futuros.add(escritura.encolar("e" + i));
+        }
+
+        for (CompletableFuture<Boolean> futuro : futuros) {
+            assertTrue(futuro.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, filaAFila.get());
+    }
+
+    @Test
+    void loteRevertidoSeReintentaFilaAFila() throws Exception {
+        Bloqueo bloqueo = new Bloqueo();
+        List<String> filaAFila = new ArrayList<>();
+        EscrituraAgrupada<String> escritura = new EscrituraAgrupada<>("prueba-revertido",
+                lote -> {
+                    if (bloqueo.retener(lote)) return lote.size();
+                    return lote.contains("mala") ? 0 : lote.size();
+                },
+                e -> {
+                    synchronized (filaAFila) {
+                        filaAFila.add(e);
+                    }
+                    return !e.equals("mala");
+                });
+
+        CompletableFuture<Boolean> primero = escritura.encolar(BLOQUEO);
+        bloqueo.esperarEscritor();
+        // Mientras el escritor está ocupado se acumulan en la cola y salen en un solo lote
+        CompletableFuture<Boolean> a = escritura.encolar("a");
+        CompletableFuture<Boolean> mala = escritura.encolar("mala");
+        CompletableFuture<Boolean> b = escritura.encolar("b");
+        bloqueo.liberar();
+
+        assertTrue(primero.get(5, TimeUnit.SECONDS));
+        assertTrue(a.get(5, TimeUnit.SECONDS));
+        assertFalse(mala.get(5, TimeUnit.SECONDS));
+        assertTrue(b.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "mala", "b"), filaAFila);
+    }
+
+    @Test
+    void unaSolaFilaRevertidaNoSeReintenta() throws Exception {
+        AtomicInteger filaAFila = new AtomicInteger();
+        EscrituraAgrupada<String> escritura = new EscrituraAgrupada<>("prueba-una",
+                lote -> 0, e -> filaAFila.incrementAndGet() > 0);
+
+        assertFalse(escritura.encolar("x").get(5, TimeUnit.SECONDS));
+        assertEquals(0, filaAFila.get());
+    }
+
+    @Test
+    void excepcionEnElLoteCompletaConFalse() throws Exception {
+        EscrituraAgrupada<String> escritura = new EscrituraAgrupada<>("prueba-excepcion",
+                lote -> {
+                    throw new IllegalStateException("conexión perdida");
+                }, e -> true);
+
+        assertFalse(escritura.encolar("x").get(5, TimeUnit.SECONDS));
+        // El escritor sigue vivo después del error
+        assertFalse(escritura.encolar("y").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void ningunLoteSuperaElMaximo() throws Exception {
+        Bloqueo bloqueo = new Bloqueo();
+        AtomicInteger mayorLote = new AtomicInteger();
+        AtomicInteger guardadas = new AtomicInteger();
+        EscrituraAgrupada<String> escritura = new EscrituraAgrupada<>("prueba-maximo",
+                lote -> {
+                    bloqueo.retener(lote);
+                    mayorLote.accumulateAndGet(lote.size(), Math::max);
+                    guardadas.addAndGet(lote.size());
+                    return lote.size();
+                }, e -> true);
+
+        CompletableFuture<Boolean> primero = escritura.encolar(BLOQUEO);
+        bloqueo.esperarEscritor();
+        List<CompletableFuture<Boolean>> futuros = new ArrayList<>();
+        for (int i = 0; i < EscrituraAgrupada.MAX_LOTE * 2 + 50; i++) {
+            futuros.add(escritura.encolar("e" + i));
+        }
+        bloqueo.liberar();
+
+        assertTrue(primero.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Boolean> futuro : futuros) {
+            assertTrue(futuro.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(EscrituraAgrupada.MAX_LOTE, mayorLote.get());
+        assertEquals(futuros.size() + 1, guardadas.get());
+    }
+
+    /**
+     * Retiene al hilo escritor dentro del lote que contiene {@link #BLOQUEO} hasta que
+     * la prueba termina de encolar.
+     */
+    private static class Bloqueo {
+        private final CountDownLatch escritorDentro = new CountDownLatch(1);
+        private final CountDownLatch liberado = new CountDownLatch(1);
+
+        boolean retener(List<String> lote) {
+            if (!lote.contains(BLOQUEO)) return false;
+            escritorDentro.countDown();
+            try {
+                liberado.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+
+        void esperarEscritor() throws InterruptedException {
+            assertTrue(escritorDentro.await(5, TimeUnit.SECONDS), "El escritor no tomó el primer lote");
+        }
+
+        void liberar() {
+            liberado.countDown();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 -- init.sql: esquema inicial para MySQL
 
+DROP TABLE IF EXISTS merkle_hojas;
 DROP TABLE IF EXISTS transcripciones;
 DROP TABLE IF EXISTS canal_invitaciones;
 DROP TABLE IF EXISTS canal_miembros;
@@ -40,9 +41,10 @@ CREATE TABLE archivos (
                           fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
                           fecha_actualizacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
                           INDEX idx_file_id (file_id),
-                          INDEX idx_fecha_creacion (fecha_creacion)
+                          INDEX idx_fecha_creacion (fecha_creacion),
+                          INDEX idx_archivos_hash (hash_sha256)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
-  COMMENT='Metadatos de archivos. Binarios en Bucket/';
+  COMMENT='Metadatos de archivos. Binarios en Bucket/ (contenido único en Bucket/.blobs/, por SHA-256)';
 
 CREATE TABLE canales (
                          id CHAR(36) NOT NULL PRIMARY KEY,
@@ -117,8 +119,30 @@ CREATE TABLE transcripciones (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
   COMMENT='Transcripciones de archivos de audio';
 
+-- Hojas de los árboles Merkle incrementales (hash por entidad sincronizada)
+CREATE TABLE merkle_hojas (
+                              tipo VARCHAR(32) NOT NULL,
+                              entidad_id VARCHAR(100) NOT NULL,
+                              cubeta SMALLINT NOT NULL COMMENT 'Cubeta del árbol (primeros 12 bits del SHA-256 del ID)',
+                              hash CHAR(64) NOT NULL,
+                              actualizada DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+                              PRIMARY KEY (tipo, entidad_id),
+                              INDEX idx_merkle_cubeta (tipo, cubeta),
+                              INDEX idx_merkle_actualizada (tipo, actualizada)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+  COMMENT='Hashes de hoja persistidos para no rehashear al reiniciar';
+
+-- Última carga verificada de las hojas de cada tipo: al arrancar solo se revisan las posteriores
+CREATE TABLE merkle_estado (
+                               tipo VARCHAR(32) NOT NULL PRIMARY KEY,
+                               marca DATETIME(6) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- Índices recomendados
 CREATE INDEX idx_usuarios_peerpadre ON usuarios(peer_padre);
 CREATE INDEX idx_canales_peerpadre ON canales(peer_padre);
-CREATE INDEX idx_mensajes_canal ON mensajes(canal_id);
-CREATE INDEX idx_mensajes_remitente ON mensajes(remitente_id);
+CREATE INDEX idx_miembros_usuario ON canal_miembros(usuario_id, canal_id);
+CREATE INDEX idx_mensajes_canal ON mensajes(canal_id, fecha_envio, id);
+CREATE INDEX idx_mensajes_conversacion ON mensajes(remitente_id, destinatario_usuario_id, fecha_envio, id);
+CREATE INDEX idx_mensajes_contenido ON mensajes(contenido(191));
+-- Los nodos con un esquema anterior reciben estos índices al arrancar (GestorEsquema)